@@ -0,0 +1,61 @@
+package com.truestate.retail.benchmarks;
+
+import com.truestate.retail.RetailBackendApplication;
+import com.truestate.retail.services.RemoteCsvSource;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Starts the real application against a generated CSV. The file is served through csv.url
+// (a file: URL), so every benchmark sees the same code path as a deployment with a remote
+// CSV. Result caches and the resident dataset are off unless a benchmark turns them on.
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(int rows, String... properties) throws Exception {
+        if (new ClassPathResource("sales_data.csv").exists()) {
+            throw new IllegalStateException("A sales_data.csv on the classpath would be used instead of the "
+                    + "generated file; remove it from src/main/resources before running the benchmarks");
+        }
+        Path csv = SalesDataGenerator.file(rows);
+        Path cacheDir = Files.createTempDirectory("retail-bench");
+
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("server.port", "0");
+        settings.put("spring.main.banner-mode", "off");
+        settings.put("logging.level.root", "WARN");
+        settings.put("csv.url", csv.toUri().toString());
+        settings.put("csv.cache.dir", cacheDir.toString());
+        settings.put("csv.resident.enabled", "false");
+        settings.put("csv.snapshot.enabled", "false");
+        settings.put("csv.startup.load.enabled", "false");
+        settings.put("search.cache.page-bytes", "0");
+        settings.put("search.cache.match-bytes", "0");
+        for (String property : properties) {
+            int equals = property.indexOf('=');
+            settings.put(property.substring(0, equals), property.substring(equals + 1));
+        }
+        // Command line arguments take precedence over application.properties
+        String[] args = settings.entrySet().stream()
+                .map(setting -> "--" + setting.getKey() + "=" + setting.getValue())
+                .toArray(String[]::new);
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(RetailBackendApplication.class)
+                .run(args);
+        context.getBean(RemoteCsvSource.class).awaitFile();
+        return context;
+    }
+
+    static void stop(ConfigurableApplicationContext context) {
+        if (context != null) {
+            context.close();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.truestate.retail.benchmarks;
+
+import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.services.CsvFallbackService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+
+import java.util.concurrent.TimeUnit;
+
+// Full streaming search of the CSV (scan, filter, top-K, count) for the first page and for a
+// page halfway through the matches, where the top-K window is deepest
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvSearchBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"100000"})
+    int rows;
+
+    @Param({"none", "region", "combo", "text"})
+    String filter;
+
+    @Param({"shallow", "deep"})
+    String depth;
+
+    @Param({"date"})
+    String sortBy;
+
+    private ConfigurableApplicationContext context;
+    private CsvFallbackService csvFallbackService;
+    private SearchCase search;
+    private int page;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkApplication.start(rows);
+        csvFallbackService = context.getBean(CsvFallbackService.class);
+        search = SearchCase.named(filter);
+        Page<SaleRecord> first = search(0);
+        page = "deep".equals(depth) ? first.getTotalPages() / 2 : 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkApplication.stop(context);
+    }
+
+    @Benchmark
+    public Page<SaleRecord> searchFromCsv() {
+        return search(page);
+    }
+
+    private Page<SaleRecord> search(int pageNumber) {
+        return csvFallbackService.searchFromCsv(search.query(), search.regions(), search.genders(), search.minAge(),
+                search.maxAge(), search.categories(), search.tags(), search.paymentMethods(), search.startDate(),
+                search.endDate(), sortBy, "desc", pageNumber, PAGE_SIZE);
+    }
+}
@@ -0,0 +1,76 @@
+package com.truestate.retail.benchmarks;
+
+import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.models.SaleRecordRepository;
+import com.truestate.retail.services.SaleRecordSpecification;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.concurrent.TimeUnit;
+
+// findAll(spec, pageable) on the in-memory H2 database, filled by the startup ingestion of the
+// generated CSV. Includes the COUNT query Page needs; the sort matches SaleRecordService.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JpaSearchBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"100000"})
+    int rows;
+
+    @Param({"none", "region", "combo", "text"})
+    String filter;
+
+    @Param({"shallow", "deep"})
+    String depth;
+
+    private ConfigurableApplicationContext context;
+    private SaleRecordRepository repository;
+    private Specification<SaleRecord> spec;
+    private Pageable pageable;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkApplication.start(rows, "csv.startup.load.enabled=true");
+        repository = context.getBean(SaleRecordRepository.class);
+        if (repository.count() != rows) {
+            throw new IllegalStateException("Expected " + rows + " rows in the database, found " + repository.count());
+        }
+        spec = SaleRecordSpecification.build(SearchCase.named(filter).criteria());
+        Sort sort = Sort.by("date").descending().and(Sort.by("id").descending());
+        Page<SaleRecord> first = repository.findAll(spec, PageRequest.of(0, PAGE_SIZE, sort));
+        pageable = PageRequest.of("deep".equals(depth) ? first.getTotalPages() / 2 : 0, PAGE_SIZE, sort);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkApplication.stop(context);
+    }
+
+    @Benchmark
+    public Page<SaleRecord> findAll() {
+        return repository.findAll(spec, pageable);
+    }
+}
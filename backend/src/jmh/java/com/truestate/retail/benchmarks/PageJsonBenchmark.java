@@ -0,0 +1,86 @@
+package com.truestate.retail.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.truestate.retail.controllers.PagedResponse;
+import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.services.CsvFallbackService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Serialization of a search result page. `page` is the Spring Data Page JSON with the bean
+// serializer the search API used before (a mapper without the application's modules, writing
+// dates as ISO strings like Spring Boot's), `paged` the PagedResponse envelope with the
+// application's ObjectMapper as the search API writes it now, and `pagedGzip` the same through
+// gzip as compressed responses are sent. Divide the score by pageSize / 1000 for the cost per
+// 1000 rows; the setup prints the bytes per 1000 rows of each shape.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PageJsonBenchmark {
+
+    @Param({"20", "100", "1000"})
+    int pageSize;
+
+    @Param({"page", "paged", "pagedGzip"})
+    String shape;
+
+    private ConfigurableApplicationContext context;
+    private ObjectMapper objectMapper;
+    private Object body;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkApplication.start(100_000);
+        Page<SaleRecord> page = context.getBean(CsvFallbackService.class).searchFromCsv(null, null, null, null, null,
+                null, null, null, null, null, "date", "desc", 0, pageSize);
+        if ("page".equals(shape)) {
+            objectMapper = Jackson2ObjectMapperBuilder.json()
+                    .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                    .build();
+            body = page;
+        } else {
+            objectMapper = context.getBean(ObjectMapper.class);
+            body = PagedResponse.of(page);
+        }
+        System.out.println(shape + ": " + write().length * 1000L / pageSize + " bytes per 1000 rows");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkApplication.stop(context);
+    }
+
+    @Benchmark
+    public byte[] write() throws Exception {
+        if (!"pagedGzip".equals(shape)) {
+            return objectMapper.writeValueAsBytes(body);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(gzip, body);
+        }
+        return bytes.toByteArray();
+    }
+}
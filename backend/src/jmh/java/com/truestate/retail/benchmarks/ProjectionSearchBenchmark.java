@@ -0,0 +1,72 @@
+package com.truestate.retail.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.truestate.retail.services.SaleFields;
+import com.truestate.retail.services.SaleRecordService;
+import com.truestate.retail.services.TotalMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// A database page through SaleRecordService and the response ObjectMapper, as whole entities
+// and as the columns the grid shows (`fields`). Run with -prof gc for allocation per page.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProjectionSearchBenchmark {
+
+    // The columns of the frontend sales grid
+    private static final List<String> GRID_FIELDS = List.of("transactionId", "date", "customerId", "customerName",
+            "phoneNumber", "gender", "age", "productCategory", "quantity", "finalAmount", "customerRegion",
+            "productId", "employeeName");
+
+    @Param({"100000"})
+    int rows;
+
+    @Param({"10", "100", "1000"})
+    int pageSize;
+
+    @Param({"entities", "fields"})
+    String shape;
+
+    private ConfigurableApplicationContext context;
+    private SaleRecordService service;
+    private ObjectMapper objectMapper;
+    private SaleFields fields;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkApplication.start(rows, "csv.startup.load.enabled=true");
+        service = context.getBean(SaleRecordService.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        fields = "fields".equals(shape) ? SaleFields.parse(GRID_FIELDS) : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkApplication.stop(context);
+    }
+
+    @Benchmark
+    public byte[] searchAndWrite() throws Exception {
+        return objectMapper.writeValueAsBytes(service.search(null, null, null, null, null, null, null, null,
+                null, null, "date", "desc", 0, pageSize, TotalMode.NONE, fields));
+    }
+}
@@ -0,0 +1,263 @@
+package com.truestate.retail.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+// Synthetic sales_data.csv with the columns of the real file and skewed, repeatable values:
+// a few customers place many orders (and keep their name, phone, gender, age and region),
+// products carry a fixed brand, category, price and tag set, and November/December sell more.
+// Usage: SalesDataGenerator <rows> <output.csv> [seed]
+public final class SalesDataGenerator {
+
+    static final long DEFAULT_SEED = 20240917L;
+
+    private static final String HEADER = "Transaction ID,Date,Customer ID,Customer Name,Phone Number,Gender,Age,"
+            + "Customer Region,Customer Type,Product ID,Product Name,Brand,Product Category,Tags,Quantity,"
+            + "Price per Unit,Discount Percentage,Total Amount,Final Amount,Payment Method,Order Status,"
+            + "Delivery Type,Store ID,Store Location,Salesperson ID,Employee Name";
+
+    private static final String[] FIRST_NAMES = {
+            "Amit", "Priya", "Rahul", "Sneha", "Vikram", "Anjali", "Rohan", "Neha", "Karan", "Pooja",
+            "Arjun", "Kavya", "Aditya", "Isha", "Siddharth", "Meera", "Harsh", "Divya", "Nikhil", "Riya",
+            "Manish", "Shreya", "Varun", "Tanvi", "Yash", "Ananya", "Kunal", "Sakshi", "Deepak", "Aisha",
+            "Rajesh", "Swati", "Gaurav", "Nisha", "Abhishek", "Pallavi", "Suresh", "Komal", "Vivek", "Simran"
+    };
+    private static final String[] LAST_NAMES = {
+            "Sharma", "Verma", "Gupta", "Singh", "Kumar", "Patel", "Reddy", "Nair", "Iyer", "Joshi",
+            "Mehta", "Chopra", "Malhotra", "Das", "Bose", "Rao", "Pillai", "Kapoor", "Agarwal", "Mishra",
+            "Yadav", "Khan", "Shetty", "Menon", "Bhat"
+    };
+    private static final String[] REGIONS = {"North", "South", "West", "East", "Central"};
+    private static final int[] REGION_WEIGHTS = {30, 25, 20, 15, 10};
+    private static final String[] GENDERS = {"Female", "Male"};
+    private static final int[] GENDER_WEIGHTS = {52, 48};
+    private static final String[] CUSTOMER_TYPES = {"Returning", "New", "Loyal"};
+    private static final int[] CUSTOMER_TYPE_WEIGHTS = {50, 30, 20};
+    private static final String[] CATEGORIES = {"Clothing", "Electronics", "Beauty"};
+    private static final int[] CATEGORY_WEIGHTS = {45, 33, 22};
+    private static final String[][] CATEGORY_TAGS = {
+            {"fashion", "casual", "formal", "cotton", "unisex", "accessories", "organic"},
+            {"gadgets", "wireless", "portable", "smart", "accessories", "unisex"},
+            {"skincare", "makeup", "beauty", "fragrance-free", "organic", "unisex"}
+    };
+    // Price bands per category, in rupees
+    private static final int[][] CATEGORY_PRICES = {{200, 6000}, {800, 50000}, {100, 4000}};
+    private static final String[] PAYMENT_METHODS = {"UPI", "Credit Card", "Debit Card", "Cash", "Wallet", "Net Banking"};
+    private static final int[] PAYMENT_WEIGHTS = {35, 22, 15, 12, 10, 6};
+    private static final String[] ORDER_STATUSES = {"Completed", "Pending", "Cancelled", "Returned"};
+    private static final int[] ORDER_STATUS_WEIGHTS = {70, 12, 10, 8};
+    private static final String[] DELIVERY_TYPES = {"Standard", "Express", "Store Pickup"};
+    private static final int[] DELIVERY_WEIGHTS = {60, 25, 15};
+    private static final int[] DISCOUNTS = {0, 5, 10, 15, 20, 25};
+    private static final int[] DISCOUNT_WEIGHTS = {40, 20, 15, 12, 8, 5};
+    // Relative sales per month, January first
+    private static final int[] MONTH_WEIGHTS = {8, 7, 8, 8, 9, 8, 8, 9, 9, 10, 14, 16};
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2021, 1, 1);
+    private static final int DAYS = 3 * 365;
+    private static final int PRODUCTS = 1500;
+    private static final int BRANDS = 60;
+    private static final int STORES = 40;
+    private static final int SALESPEOPLE = 250;
+
+    private SalesDataGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SalesDataGenerator <rows> <output.csv> [seed]");
+            System.exit(2);
+        }
+        int rows = Integer.parseInt(args[0]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        long startNanos = System.nanoTime();
+        generate(rows, Path.of(args[1]), seed);
+        System.out.println("Wrote " + rows + " rows to " + args[1] + " in "
+                + (System.nanoTime() - startNanos) / 1_000_000 + " ms");
+    }
+
+    // Generated file for `rows` rows under target/jmh-data, reused across benchmark runs
+    public static synchronized Path file(int rows) throws IOException {
+        Path file = Path.of("target", "jmh-data", "sales_data_" + rows + ".csv").toAbsolutePath();
+        if (!Files.exists(file)) {
+            Files.createDirectories(file.getParent());
+            Path partial = Files.createTempFile(file.getParent(), "sales_data_" + rows, ".part");
+            try {
+                generate(rows, partial, DEFAULT_SEED);
+                Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(partial);
+            }
+        }
+        return file;
+    }
+
+    public static void generate(int rows, Path output, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        Catalog catalog = new Catalog(new SplittableRandom(seed ^ 0x5DEECE66DL));
+        int customers = Math.max(1000, rows / 4);
+        int[] dayWeights = dayWeights();
+        int dayWeightTotal = dayWeights[dayWeights.length - 1];
+
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8), 1 << 20)) {
+            StringBuilder line = new StringBuilder(256);
+            out.write(HEADER);
+            out.write('\n');
+            for (int i = 0; i < rows; i++) {
+                // Squaring a uniform draw puts most orders on the first customers of the pool
+                double u = random.nextDouble();
+                int customer = (int) (customers * u * u);
+                SplittableRandom person = new SplittableRandom(seed * 31 + customer);
+                int product = (int) (PRODUCTS * Math.pow(random.nextDouble(), 1.6));
+                int category = catalog.categories[product];
+
+                int quantity = 1 + (int) (10 * Math.pow(random.nextDouble(), 2.2));
+                int discount = DISCOUNTS[pick(DISCOUNT_WEIGHTS, random)];
+                long priceCents = catalog.priceCents[product];
+                long totalCents = priceCents * quantity;
+                long finalCents = Math.round(totalCents * (100 - discount) / 100.0);
+
+                line.setLength(0);
+                line.append(i + 1).append(',');
+                line.append(FIRST_DAY.plusDays(pickDay(dayWeights, dayWeightTotal, random))).append(',');
+                line.append("CUST-").append(customer + 1).append(',');
+                line.append(FIRST_NAMES[person.nextInt(FIRST_NAMES.length)]).append(' ')
+                        .append(LAST_NAMES[person.nextInt(LAST_NAMES.length)]).append(',');
+                line.append("+91 9").append(100_000_000 + person.nextInt(900_000_000)).append(',');
+                line.append(GENDERS[pick(GENDER_WEIGHTS, person)]).append(',');
+                // About 1% of customers never gave an age
+                int age = (int) Math.round(36 + 12 * gaussian(person));
+                if (person.nextInt(100) != 0) {
+                    line.append(Math.max(18, Math.min(75, age)));
+                }
+                line.append(',');
+                line.append(REGIONS[pick(REGION_WEIGHTS, person)]).append(',');
+                line.append(CUSTOMER_TYPES[pick(CUSTOMER_TYPE_WEIGHTS, person)]).append(',');
+                line.append("PROD-").append(product + 1).append(',');
+                line.append("Product ").append(product + 1).append(',');
+                line.append("Brand").append(catalog.brands[product] + 1).append(',');
+                line.append(CATEGORIES[category]).append(',');
+                line.append('"').append(catalog.tags[product]).append('"').append(',');
+                line.append(quantity).append(',');
+                appendMoney(line, priceCents).append(',');
+                line.append(discount).append(',');
+                appendMoney(line, totalCents).append(',');
+                appendMoney(line, finalCents).append(',');
+                line.append(PAYMENT_METHODS[pick(PAYMENT_WEIGHTS, random)]).append(',');
+                line.append(ORDER_STATUSES[pick(ORDER_STATUS_WEIGHTS, random)]).append(',');
+                line.append(DELIVERY_TYPES[pick(DELIVERY_WEIGHTS, random)]).append(',');
+                int store = (int) (STORES * Math.pow(random.nextDouble(), 1.5));
+                line.append("ST-").append(store + 1).append(',');
+                line.append("City").append(store % 25 + 1).append(',');
+                int salesperson = store * (SALESPEOPLE / STORES) + random.nextInt(SALESPEOPLE / STORES);
+                line.append("SP-").append(salesperson + 1).append(',');
+                line.append("Emp ").append(salesperson + 1).append('\n');
+                out.append(line);
+            }
+        }
+    }
+
+    // Fixed attributes of every product
+    private static final class Catalog {
+
+        final int[] categories = new int[PRODUCTS];
+        final int[] brands = new int[PRODUCTS];
+        final long[] priceCents = new long[PRODUCTS];
+        final String[] tags = new String[PRODUCTS];
+
+        Catalog(SplittableRandom random) {
+            for (int product = 0; product < PRODUCTS; product++) {
+                int category = pick(CATEGORY_WEIGHTS, random);
+                categories[product] = category;
+                brands[product] = (int) (BRANDS * Math.pow(random.nextDouble(), 1.8));
+                int[] band = CATEGORY_PRICES[category];
+                // Log-uniform inside the band: many cheap products, a few expensive ones
+                double price = band[0] * Math.pow((double) band[1] / band[0], random.nextDouble());
+                priceCents[product] = Math.round(price * 100);
+                tags[product] = productTags(CATEGORY_TAGS[category], random);
+            }
+        }
+
+        private static String productTags(String[] pool, SplittableRandom random) {
+            int count = 1 + pick(new int[]{45, 35, 15, 5}, random);
+            StringBuilder tags = new StringBuilder();
+            boolean[] used = new boolean[pool.length];
+            while (count > 0) {
+                int tag = (int) (pool.length * Math.pow(random.nextDouble(), 1.4));
+                if (!used[tag]) {
+                    used[tag] = true;
+                    if (tags.length() > 0) {
+                        tags.append(',');
+                    }
+                    tags.append(pool[tag]);
+                    count--;
+                }
+            }
+            return tags.toString();
+        }
+    }
+
+    // Cumulative weight of each day since FIRST_DAY
+    private static int[] dayWeights() {
+        int[] cumulative = new int[DAYS];
+        int total = 0;
+        for (int day = 0; day < DAYS; day++) {
+            total += MONTH_WEIGHTS[FIRST_DAY.plusDays(day).getMonthValue() - 1];
+            cumulative[day] = total;
+        }
+        return cumulative;
+    }
+
+    private static int pickDay(int[] cumulative, int total, SplittableRandom random) {
+        int target = random.nextInt(total);
+        int lo = 0;
+        int hi = cumulative.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cumulative[mid] <= target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int pick(int[] weights, SplittableRandom random) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int target = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            target -= weights[i];
+            if (target < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller; SplittableRandom has no nextGaussian on Java 17
+        double u = 1.0 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    // Always two decimals
+    private static StringBuilder appendMoney(StringBuilder line, long cents) {
+        line.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) {
+            line.append('0');
+        }
+        return line.append(fraction);
+    }
+}
@@ -0,0 +1,43 @@
+package com.truestate.retail.benchmarks;
+
+import com.truestate.retail.services.SaleRecordSpecification;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Filter combinations shared by the benchmarks, named by their @Param value. The values exist
+// in every file SalesDataGenerator writes, with the generator's skew deciding how many rows match.
+public record SearchCase(
+        String query,
+        List<String> regions,
+        List<String> genders,
+        Integer minAge,
+        Integer maxAge,
+        List<String> categories,
+        List<String> tags,
+        List<String> paymentMethods,
+        LocalDate startDate,
+        LocalDate endDate
+) {
+
+    public static SearchCase named(String name) {
+        return switch (name) {
+            case "none" -> new SearchCase(null, null, null, null, null, null, null, null, null, null);
+            case "region" -> new SearchCase(null, List.of("North"), null, null, null, null, null, null, null, null);
+            case "age" -> new SearchCase(null, null, null, 30, 40, null, null, null, null, null);
+            case "date" -> new SearchCase(null, null, null, null, null, null, null, null,
+                    LocalDate.of(2022, 1, 1), LocalDate.of(2022, 3, 31));
+            case "tag" -> new SearchCase(null, null, null, null, null, null, List.of("organic"), null, null, null);
+            case "text" -> new SearchCase("amit", null, null, null, null, null, null, null, null, null);
+            case "combo" -> new SearchCase(null, List.of("North", "West"), List.of("Female"), 25, 45,
+                    List.of("Clothing", "Beauty"), List.of("organic"), List.of("UPI", "Credit Card"),
+                    LocalDate.of(2021, 6, 1), LocalDate.of(2023, 6, 30));
+            default -> throw new IllegalArgumentException("Unknown search case: " + name);
+        };
+    }
+
+    public SaleRecordSpecification.SearchCriteria criteria() {
+        return new SaleRecordSpecification.SearchCriteria(query, regions, genders, minAge, maxAge, categories,
+                tags, paymentMethods, startDate, endDate);
+    }
+}
@@ -0,0 +1,90 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.benchmarks.SalesDataGenerator;
+import com.truestate.retail.models.SaleRecord;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Per-row cost of reading the CSV the way the resident load does: Commons CSV parsing,
+// mapCsvRecord, and both together. Scores are rows per second over a 100k-row file held in memory.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvParseBenchmark {
+
+    private static final int ROWS = 100_000;
+
+    private byte[] csv;
+    private List<CSVRecord> records;
+    // mapCsvRecord uses none of the service's collaborators
+    private final CsvFallbackService csvFallbackService = new CsvFallbackService(null, null, null, 0);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        csv = Files.readAllBytes(SalesDataGenerator.file(ROWS));
+        records = new ArrayList<>(ROWS);
+        try (CSVParser parser = parser()) {
+            parser.forEach(records::add);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void parse(Blackhole blackhole) throws IOException {
+        try (CSVParser parser = parser()) {
+            for (CSVRecord record : parser) {
+                blackhole.consume(record);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mapCsvRecord(Blackhole blackhole) {
+        for (CSVRecord record : records) {
+            blackhole.consume(csvFallbackService.mapCsvRecord(record));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void parseAndMap(Blackhole blackhole) throws IOException {
+        try (CSVParser parser = parser()) {
+            for (CSVRecord record : parser) {
+                SaleRecord sale = csvFallbackService.mapCsvRecord(record);
+                blackhole.consume(sale);
+            }
+        }
+    }
+
+    private CSVParser parser() throws IOException {
+        return new CSVParser(new InputStreamReader(new ByteArrayInputStream(csv), StandardCharsets.UTF_8),
+                CSVFormat.DEFAULT.withFirstRecordAsHeader());
+    }
+}
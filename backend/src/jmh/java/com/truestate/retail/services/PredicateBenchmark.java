@@ -0,0 +1,73 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.benchmarks.SalesDataGenerator;
+import com.truestate.retail.benchmarks.SearchCase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// The compiled CsvRowFilter over every row of a mapped file, next to a scan that tests nothing,
+// so the difference between the two is the cost of predicate evaluation
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PredicateBenchmark {
+
+    @Param({"100000"})
+    int rows;
+
+    private MappedCsvScanner scanner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        scanner = MappedCsvScanner.open(SalesDataGenerator.file(rows));
+    }
+
+    @Benchmark
+    public long filteredScan(CompiledFilter compiled) throws IOException {
+        long[] matches = new long[1];
+        scanner.scan(scanner.all(), row -> {
+            if (compiled.rowFilter.matches(row)) {
+                matches[0]++;
+            }
+            return true;
+        });
+        return matches[0];
+    }
+
+    @Benchmark
+    public long bareScan() throws IOException {
+        return scanner.scan(scanner.all(), row -> true);
+    }
+
+    // Separate state so the filter parameter does not multiply the bare scan
+    @State(Scope.Benchmark)
+    public static class CompiledFilter {
+
+        @Param({"region", "age", "date", "tag", "text", "combo"})
+        String filter;
+
+        CsvRowFilter rowFilter;
+
+        @Setup(Level.Trial)
+        public void setUp(PredicateBenchmark benchmark) throws IOException {
+            MappedCsvScanner scanner = benchmark.scanner;
+            rowFilter = new CsvRowFilter(scanner, SearchCase.named(filter).criteria(), ColumnStats.of(scanner));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.truestate.retail.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.services.SaleRecordSerializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JsonConfig {
+
+    // Spring Boot adds Module beans to the ObjectMapper MVC writes responses with
+    @Bean
+    public Module saleRecordJsonModule() {
+        return new SimpleModule("SaleRecordJson").addSerializer(SaleRecord.class, new SaleRecordSerializer());
+    }
+}
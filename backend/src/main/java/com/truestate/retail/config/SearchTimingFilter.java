@@ -0,0 +1,66 @@
+package com.truestate.retail.config;
+
+import com.truestate.retail.services.SearchMetrics;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+
+// Opens the per-request stage timing for the search endpoints. With search.server-timing.enabled
+// the stages are returned in a Server-Timing header; the body is buffered for that so the
+// header can still be set after serialization. Exports stream and are left alone.
+@Component
+public class SearchTimingFilter extends OncePerRequestFilter {
+
+    private final SearchMetrics searchMetrics;
+    private final boolean serverTimingEnabled;
+    private final String allowedOrigins;
+
+    public SearchTimingFilter(SearchMetrics searchMetrics,
+                              @Value("${search.server-timing.enabled:false}") boolean serverTimingEnabled,
+                              @Value("${allowed.origins}") String allowedOrigins) {
+        this.searchMetrics = searchMetrics;
+        this.serverTimingEnabled = serverTimingEnabled;
+        this.allowedOrigins = allowedOrigins;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith("/api/sales") || path.startsWith("/api/sales/export");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        searchMetrics.beginRequest();
+        if (!serverTimingEnabled) {
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                searchMetrics.endRequest();
+            }
+            return;
+        }
+
+        ContentCachingResponseWrapper buffered = new ContentCachingResponseWrapper(response);
+        SearchMetrics.RequestTiming timing;
+        try {
+            chain.doFilter(request, buffered);
+        } finally {
+            timing = searchMetrics.endRequest();
+        }
+        if (timing != null) {
+            buffered.setHeader("Server-Timing", timing.serverTiming(System.nanoTime() - start));
+            buffered.setHeader("Timing-Allow-Origin", allowedOrigins);
+        }
+        buffered.copyBodyToResponse();
+    }
+}
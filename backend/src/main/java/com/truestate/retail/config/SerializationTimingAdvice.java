@@ -0,0 +1,35 @@
+package com.truestate.retail.config;
+
+import com.truestate.retail.services.SearchMetrics;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+// Marks where a controller's return value is handed to the message converter, so the time up
+// to the end of the request is recorded as the serialize stage
+@ControllerAdvice
+public class SerializationTimingAdvice implements ResponseBodyAdvice<Object> {
+
+    private final SearchMetrics searchMetrics;
+
+    public SerializationTimingAdvice(SearchMetrics searchMetrics) {
+        this.searchMetrics = searchMetrics;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType contentType,
+                                  Class<? extends HttpMessageConverter<?>> converterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        searchMetrics.serializationStarted();
+        return body;
+    }
+}
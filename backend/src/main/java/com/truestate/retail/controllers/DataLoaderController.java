@@ -2,6 +2,11 @@ package com.truestate.retail.controllers;
 
 import com.truestate.retail.models.SaleRecordRepository;
 import com.truestate.retail.services.CsvFallbackService;
+import com.truestate.retail.services.CsvIngestionService;
+import com.truestate.retail.services.RemoteCsvSource;
+import com.truestate.retail.services.ResidentDatasetService;
+import com.truestate.retail.services.SaleRecordService;
+import com.truestate.retail.services.SalesAppendService;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -15,10 +20,24 @@ public class DataLoaderController {
 
     private final SaleRecordRepository repository;
     private final CsvFallbackService csvFallbackService;
+    private final ResidentDatasetService residentDatasetService;
+    private final CsvIngestionService csvIngestionService;
+    private final SaleRecordService saleRecordService;
+    private final RemoteCsvSource remoteCsvSource;
+    private final SalesAppendService salesAppendService;
 
-    public DataLoaderController(SaleRecordRepository repository, CsvFallbackService csvFallbackService) {
+    public DataLoaderController(SaleRecordRepository repository, CsvFallbackService csvFallbackService,
+                                ResidentDatasetService residentDatasetService,
+                                CsvIngestionService csvIngestionService, SaleRecordService saleRecordService,
+                                RemoteCsvSource remoteCsvSource,
+                                SalesAppendService salesAppendService) {
         this.repository = repository;
         this.csvFallbackService = csvFallbackService;
+        this.residentDatasetService = residentDatasetService;
+        this.csvIngestionService = csvIngestionService;
+        this.saleRecordService = saleRecordService;
+        this.remoteCsvSource = remoteCsvSource;
+        this.salesAppendService = salesAppendService;
     }
 
     @GetMapping("/load-data")
@@ -27,10 +46,19 @@ public class DataLoaderController {
 
         long existingCount = repository.count();
         response.put("existingRecords", existingCount);
-
+        response.put("residentDataset", residentDatasetService.getFootprint());
+        response.put("ingestion", csvIngestionService.getLastReport());
+        response.put("lastAppend", salesAppendService.getLastReport());
+        response.put("searchCache", saleRecordService.cacheStats());
+        if (remoteCsvSource.isConfigured()) {
+            response.put("csvSource", remoteCsvSource.status());
+        }
 
         response.put("success", true);
-        response.put("message", "Database-backed preload is disabled. Data is served via streaming CSV fallback when the database is empty.");
+        response.put("message", existingCount > 0
+                ? "Data is served from the database, loaded at startup by the CSV ingestion pipeline."
+                : "Database is empty (enable csv.startup.load.enabled to ingest the CSV at startup). "
+                + "Data is served from the resident dataset or the streaming CSV fallback.");
 
         return response;
     }
@@ -0,0 +1,29 @@
+package com.truestate.retail.controllers;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+// Envelope of a search page. Replaces the Page JSON Spring Data writes, whose layout
+// (pageable, sort, ...) is not guaranteed to stay the same across versions. The totals are
+// left out when the search ran without a count (withTotal=false).
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PagedResponse<T>(
+        List<T> content,
+        int page,
+        int size,
+        Long totalElements,
+        Integer totalPages,
+        boolean hasNext
+) {
+
+    public static <T> PagedResponse<T> of(Slice<T> slice) {
+        if (slice instanceof Page<T> page) {
+            return new PagedResponse<>(page.getContent(), page.getNumber(), page.getSize(),
+                    page.getTotalElements(), page.getTotalPages(), page.hasNext());
+        }
+        return new PagedResponse<>(slice.getContent(), slice.getNumber(), slice.getSize(), null, null, slice.hasNext());
+    }
+}
@@ -1,12 +1,30 @@
 package com.truestate.retail.controllers;
 
 import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.services.CursorPage;
+import com.truestate.retail.services.ExportFormat;
+import com.truestate.retail.services.SaleFields;
 import com.truestate.retail.services.SaleRecordService;
-import org.springframework.data.domain.Page;
+import com.truestate.retail.services.SaleRecordSpecification;
+import com.truestate.retail.services.SalesAppendService;
+import com.truestate.retail.services.SalesExportWriter;
+import com.truestate.retail.services.SalesFacets;
+import com.truestate.retail.services.SalesSummary;
+import com.truestate.retail.services.TotalMode;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/sales")
@@ -14,13 +32,18 @@ import java.util.List;
 public class SaleRecordController {
 
     private final SaleRecordService service;
+    private final SalesAppendService salesAppendService;
 
-    public SaleRecordController(SaleRecordService service) {
+    public SaleRecordController(SaleRecordService service, SalesAppendService salesAppendService) {
         this.service = service;
+        this.salesAppendService = salesAppendService;
     }
 
+    // withTotal=false skips the count query (the response has no totalElements/totalPages);
+    // approxTotal=true returns an estimated total and flags it with X-Total-Count-Approximate;
+    // fields=customerName,date,... returns only those properties (plus id) per row
     @GetMapping
-    public Page<SaleRecord> search(
+    public ResponseEntity<PagedResponse<?>> search(
             @RequestParam(required = false) String q,
             @RequestParam(required = false) List<String> customerRegion,
             @RequestParam(required = false) List<String> gender,
@@ -34,12 +57,19 @@ public class SaleRecordController {
             @RequestParam(defaultValue = "date") String sortBy,
             @RequestParam(defaultValue = "desc") String direction,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "true") boolean withTotal,
+            @RequestParam(defaultValue = "false") boolean approxTotal,
+            @RequestParam(required = false) List<String> fields
     ) {
-        LocalDate start = startDate != null && !startDate.isBlank() ? LocalDate.parse(startDate) : null;
-        LocalDate end = endDate != null && !endDate.isBlank() ? LocalDate.parse(endDate) : null;
-
-        return service.search(
+        TotalMode totalMode = !withTotal ? TotalMode.NONE : approxTotal ? TotalMode.APPROXIMATE : TotalMode.EXACT;
+        SaleFields selectedFields;
+        try {
+            selectedFields = SaleFields.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        Slice<?> result = service.search(
                 q,
                 customerRegion,
                 gender,
@@ -48,13 +78,191 @@ public class SaleRecordController {
                 productCategory,
                 tag,
                 paymentMethod,
-                start,
-                end,
+                parseDate(startDate),
+                parseDate(endDate),
                 sortBy,
                 direction,
                 page,
-                size
+                size,
+                totalMode,
+                selectedFields
+        );
+        if (totalMode == TotalMode.APPROXIMATE) {
+            return ResponseEntity.ok().header("X-Total-Count-Approximate", "true").body(PagedResponse.of(result));
+        }
+        return ResponseEntity.ok(PagedResponse.of(result));
+    }
+
+    // Keyset pagination: selected when a `cursor` parameter is present (empty for the first page)
+    @GetMapping(params = "cursor")
+    public CursorPage<SaleRecord> searchAfter(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) List<String> customerRegion,
+            @RequestParam(required = false) List<String> gender,
+            @RequestParam(required = false) Integer minAge,
+            @RequestParam(required = false) Integer maxAge,
+            @RequestParam(required = false) List<String> productCategory,
+            @RequestParam(required = false) List<String> tag,
+            @RequestParam(required = false) List<String> paymentMethod,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate,
+            @RequestParam(defaultValue = "date") String sortBy,
+            @RequestParam(defaultValue = "desc") String direction,
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        var criteria = new SaleRecordSpecification.SearchCriteria(
+                q,
+                customerRegion,
+                gender,
+                minAge,
+                maxAge,
+                productCategory,
+                tag,
+                paymentMethod,
+                parseDate(startDate),
+                parseDate(endDate)
+        );
+        try {
+            return service.searchAfter(criteria, sortBy, direction, cursor, size);
+        } catch (IllegalArgumentException e) {
+            // Malformed cursor, or one issued for a different sort
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // Whole matching set in search order, streamed as NDJSON (default) or CSV while it is produced
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) List<String> customerRegion,
+            @RequestParam(required = false) List<String> gender,
+            @RequestParam(required = false) Integer minAge,
+            @RequestParam(required = false) Integer maxAge,
+            @RequestParam(required = false) List<String> productCategory,
+            @RequestParam(required = false) List<String> tag,
+            @RequestParam(required = false) List<String> paymentMethod,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate,
+            @RequestParam(defaultValue = "date") String sortBy,
+            @RequestParam(defaultValue = "desc") String direction,
+            @RequestParam(defaultValue = "ndjson") String format
+    ) {
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.parse(format);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        var criteria = new SaleRecordSpecification.SearchCriteria(
+                q,
+                customerRegion,
+                gender,
+                minAge,
+                maxAge,
+                productCategory,
+                tag,
+                paymentMethod,
+                parseDate(startDate),
+                parseDate(endDate)
         );
+
+        StreamingResponseBody body = output ->
+                service.export(criteria, sortBy, direction, SalesExportWriter.create(exportFormat, output));
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"sales." + exportFormat.extension() + "\"")
+                .body(body);
+    }
+
+    @GetMapping("/summary")
+    public SalesSummary summary(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) List<String> customerRegion,
+            @RequestParam(required = false) List<String> gender,
+            @RequestParam(required = false) Integer minAge,
+            @RequestParam(required = false) Integer maxAge,
+            @RequestParam(required = false) List<String> productCategory,
+            @RequestParam(required = false) List<String> tag,
+            @RequestParam(required = false) List<String> paymentMethod,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate
+    ) {
+        return service.summarize(new SaleRecordSpecification.SearchCriteria(
+                q,
+                customerRegion,
+                gender,
+                minAge,
+                maxAge,
+                productCategory,
+                tag,
+                paymentMethod,
+                parseDate(startDate),
+                parseDate(endDate)
+        ));
+    }
+
+    // For every multi-select option, age band and month: the number of matches if it were
+    // selected, counted under all the other filters (a dimension's own selection is ignored)
+    @GetMapping("/facets")
+    public SalesFacets facets(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) List<String> customerRegion,
+            @RequestParam(required = false) List<String> gender,
+            @RequestParam(required = false) Integer minAge,
+            @RequestParam(required = false) Integer maxAge,
+            @RequestParam(required = false) List<String> productCategory,
+            @RequestParam(required = false) List<String> tag,
+            @RequestParam(required = false) List<String> paymentMethod,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate
+    ) {
+        return service.facets(new SaleRecordSpecification.SearchCriteria(
+                q,
+                customerRegion,
+                gender,
+                minAge,
+                maxAge,
+                productCategory,
+                tag,
+                paymentMethod,
+                parseDate(startDate),
+                parseDate(endDate)
+        ));
+    }
+
+    // Appends sales to the loaded stores while searches keep running; the body is streamed and
+    // applied in batches. text/csv takes the layout of the source CSV, application/x-ndjson one
+    // sale per line in the JSON the search API returns.
+    @PostMapping(value = "/ingest", consumes = "text/csv")
+    public Map<String, Object> ingestCsv(InputStream body) throws IOException {
+        return ingest(() -> salesAppendService.appendCsv(body));
+    }
+
+    @PostMapping(value = "/ingest", consumes = "application/x-ndjson")
+    public Map<String, Object> ingestNdjson(InputStream body) throws IOException {
+        return ingest(() -> salesAppendService.appendNdjson(body));
+    }
+
+    private Map<String, Object> ingest(IngestCall call) throws IOException {
+        if (!salesAppendService.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Ingest is disabled (sales.ingest.enabled=false)");
+        }
+        try {
+            return call.run();
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private interface IngestCall {
+        Map<String, Object> run() throws IOException;
+    }
+
+    private static LocalDate parseDate(String value) {
+        return value != null && !value.isBlank() ? LocalDate.parse(value) : null;
     }
 }
 
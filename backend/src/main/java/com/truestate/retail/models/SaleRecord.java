@@ -4,10 +4,25 @@ import jakarta.persistence.*;
 import java.time.LocalDate;
 
 @Entity
-@Table(name = "sale_records")
+// Composite indexes follow the search patterns: a multi-select filter narrowed by a date range,
+// and the date and quantity sorts with id as their tie-break, so a page can be read in index order.
+// The single column region and category indexes stay for filters without a date range, where
+// H2 reads them in id order rather than jumping around the table in date order.
+@Table(name = "sale_records", indexes = {
+        @Index(name = "idx_sale_records_region", columnList = "customerRegion"),
+        @Index(name = "idx_sale_records_gender", columnList = "gender"),
+        @Index(name = "idx_sale_records_category", columnList = "productCategory"),
+        @Index(name = "idx_sale_records_payment", columnList = "paymentMethod"),
+        @Index(name = "idx_sale_records_date", columnList = "date DESC, id DESC"),
+        @Index(name = "idx_sale_records_region_date", columnList = "customerRegion, date DESC, id DESC"),
+        @Index(name = "idx_sale_records_category_date", columnList = "productCategory, date DESC, id DESC"),
+        @Index(name = "idx_sale_records_quantity", columnList = "quantity DESC, id DESC")
+})
 public class SaleRecord {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence ids: IDENTITY would force one INSERT round-trip per row and disable batching
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sale_records_seq")
+    @SequenceGenerator(name = "sale_records_seq", sequenceName = "sale_records_seq", allocationSize = 500)
     private Long id;
 
     private String transactionId;
@@ -26,8 +41,9 @@ public class SaleRecord {
     private String brand;
     private String productCategory;
 
+    // Comma separated tags as in the CSV; filtering goes through sale_record_tags
     @Column(length = 512)
-    private String tags; // comma separated tags
+    private String tags;
 
     private Integer quantity;
     private Double pricePerUnit;
@@ -0,0 +1,33 @@
+package com.truestate.retail.models;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface SaleRecordRepositoryCustom {
+
+    // Page content without the COUNT(*) query; fetches one extra row to detect a next page
+    Slice<SaleRecord> findSlice(Specification<SaleRecord> spec, Pageable pageable);
+
+    // Page of the named properties only, one Object[] per row in the given order. Nothing is
+    // hydrated into entities, so the persistence context stays empty.
+    Slice<Object[]> findColumns(Specification<SaleRecord> spec, Pageable pageable, List<String> properties);
+
+    // Ids spread evenly over the whole id range, at most sampleRows of them, and the table size.
+    // Only valid until the table changes; callers keep it until the next data change.
+    EstimateSample estimateSample(int sampleRows);
+
+    // Matching rows among the sampled ids, scaled up to the table: one count served by
+    // primary-key lookups, however many rows the filter matches
+    long estimateCount(Specification<SaleRecord> spec, EstimateSample sample);
+
+    record EstimateSample(long tableRows, List<Long> ids) {}
+
+    // Every matching row through a forward-only cursor, fetchSize rows per round trip. Rows are
+    // detached once read so the persistence context does not grow; needs an open transaction.
+    Stream<SaleRecord> streamAll(Specification<SaleRecord> spec, Sort sort, int fetchSize);
+}
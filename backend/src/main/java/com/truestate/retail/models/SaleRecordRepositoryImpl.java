@@ -0,0 +1,130 @@
+package com.truestate.retail.models;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class SaleRecordRepositoryImpl implements SaleRecordRepositoryCustom {
+
+    private final EntityManager entityManager;
+
+    public SaleRecordRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Slice<SaleRecord> findSlice(Specification<SaleRecord> spec, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<SaleRecord> query = cb.createQuery(SaleRecord.class);
+        Root<SaleRecord> root = query.from(SaleRecord.class);
+        query.select(root).where(spec.toPredicate(root, query, cb));
+
+        query.orderBy(orders(cb, root, pageable.getSort()));
+
+        TypedQuery<SaleRecord> typed = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1);
+        List<SaleRecord> rows = typed.getResultList();
+
+        boolean hasNext = rows.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? rows.subList(0, pageable.getPageSize()) : rows, pageable, hasNext);
+    }
+
+    @Override
+    public Slice<Object[]> findColumns(Specification<SaleRecord> spec, Pageable pageable, List<String> properties) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<SaleRecord> root = query.from(SaleRecord.class);
+        List<Selection<?>> selections = new ArrayList<>(properties.size());
+        for (String property : properties) {
+            selections.add(root.get(property));
+        }
+        query.multiselect(selections).where(spec.toPredicate(root, query, cb))
+                .orderBy(orders(cb, root, pageable.getSort()));
+
+        List<Object[]> rows = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1)
+                .getResultList();
+
+        boolean hasNext = rows.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? rows.subList(0, pageable.getPageSize()) : rows, pageable, hasNext);
+    }
+
+    @Override
+    public Stream<SaleRecord> streamAll(Specification<SaleRecord> spec, Sort sort, int fetchSize) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<SaleRecord> query = cb.createQuery(SaleRecord.class);
+        Root<SaleRecord> root = query.from(SaleRecord.class);
+        query.select(root).where(spec.toPredicate(root, query, cb)).orderBy(orders(cb, root, sort));
+
+        return entityManager.createQuery(query)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream()
+                .map(sale -> {
+                    entityManager.detach(sale);
+                    return sale;
+                });
+    }
+
+    private static List<Order> orders(CriteriaBuilder cb, Root<SaleRecord> root, Sort sort) {
+        List<Order> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            orders.add(order.isAscending() ? cb.asc(root.get(order.getProperty())) : cb.desc(root.get(order.getProperty())));
+        }
+        return orders;
+    }
+
+    @Override
+    public EstimateSample estimateSample(int sampleRows) {
+        Object[] bounds = (Object[]) entityManager
+                .createQuery("SELECT COUNT(s), MIN(s.id), MAX(s.id) FROM SaleRecord s")
+                .getSingleResult();
+        long tableRows = ((Number) bounds[0]).longValue();
+        if (tableRows == 0) {
+            return new EstimateSample(0, List.of());
+        }
+        long minId = ((Number) bounds[1]).longValue();
+        long maxId = ((Number) bounds[2]).longValue();
+
+        // Every stride-th id from the smallest on, so the sample follows the whole table and not
+        // the first rows written; ids that were never used are simply not in it
+        long stride = Math.max(1, (maxId - minId) / Math.max(1, sampleRows) + 1);
+        List<Long> ids = entityManager
+                .createQuery("SELECT s.id FROM SaleRecord s WHERE MOD(s.id - :minId, :stride) = 0 ORDER BY s.id",
+                        Long.class)
+                .setParameter("minId", minId)
+                .setParameter("stride", stride)
+                .getResultList();
+        return new EstimateSample(tableRows, List.copyOf(ids));
+    }
+
+    @Override
+    public long estimateCount(Specification<SaleRecord> spec, EstimateSample sample) {
+        if (sample.ids().isEmpty()) {
+            return 0;
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<SaleRecord> root = query.from(SaleRecord.class);
+        query.select(cb.count(root))
+                .where(cb.and(root.<Long>get("id").in(sample.ids()), spec.toPredicate(root, query, cb)));
+        long matched = entityManager.createQuery(query).getSingleResult();
+        return Math.round((double) matched / sample.ids().size() * sample.tableRows());
+    }
+}
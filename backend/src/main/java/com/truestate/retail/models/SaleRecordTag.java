@@ -0,0 +1,47 @@
+package com.truestate.retail.models;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+// One row per (sale, tag). The (tag, sale) index turns a tag filter into index lookups.
+@Entity
+@IdClass(SaleRecordTag.Key.class)
+@Table(name = "sale_record_tags", indexes = {
+        @Index(name = "idx_sale_record_tags_tag", columnList = "tagId, saleRecordId")
+})
+public class SaleRecordTag {
+    @Id
+    private Long saleRecordId;
+
+    @Id
+    private Integer tagId;
+
+    protected SaleRecordTag() {}
+
+    public SaleRecordTag(Long saleRecordId, Integer tagId) {
+        this.saleRecordId = saleRecordId;
+        this.tagId = tagId;
+    }
+
+    public Long getSaleRecordId() { return saleRecordId; }
+
+    public Integer getTagId() { return tagId; }
+
+    public static class Key implements Serializable {
+        private Long saleRecordId;
+        private Integer tagId;
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key
+                    && Objects.equals(saleRecordId, key.saleRecordId) && Objects.equals(tagId, key.tagId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(saleRecordId, tagId);
+        }
+    }
+}
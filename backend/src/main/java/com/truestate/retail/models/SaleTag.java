@@ -0,0 +1,27 @@
+package com.truestate.retail.models;
+
+import jakarta.persistence.*;
+
+// Distinct tag names. Small enough that a substring filter scans it, and the matching ids
+// are then looked up in sale_record_tags.
+@Entity
+@Table(name = "sale_tags")
+public class SaleTag {
+    // Assigned by the ingestion writer in first-seen order
+    @Id
+    private Integer id;
+
+    @Column(length = 512, nullable = false)
+    private String name;
+
+    protected SaleTag() {}
+
+    public SaleTag(Integer id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public Integer getId() { return id; }
+
+    public String getName() { return name; }
+}
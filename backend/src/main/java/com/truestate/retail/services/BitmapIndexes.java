@@ -0,0 +1,206 @@
+package com.truestate.retail.services;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Per-value row bitmaps for the multi-select filter columns and for every individual
+// tag. A filter combination becomes OR within a dimension and AND across dimensions,
+// and the match count is a popcount. Plain BitSets are used because these columns are
+// low-cardinality, so each bitmap is dense and run/array containers would not shrink it.
+public class BitmapIndexes {
+
+    private final ColumnarSaleStore data;
+    private final int rows;
+    private final BitSet[] regions;
+    private final BitSet[] genders;
+    private final BitSet[] categories;
+    private final BitSet[] paymentMethods;
+    private final Map<String, BitSet> tags;
+
+    private BitmapIndexes(ColumnarSaleStore data, int rows, BitSet[] regions, BitSet[] genders, BitSet[] categories,
+                          BitSet[] paymentMethods, Map<String, BitSet> tags) {
+        this.data = data;
+        this.rows = rows;
+        this.regions = regions;
+        this.genders = genders;
+        this.categories = categories;
+        this.paymentMethods = paymentMethods;
+        this.tags = tags;
+    }
+
+    public static BitmapIndexes build(ColumnarSaleStore data) {
+        int rows = data.size();
+        Map<String, BitSet> tags = new HashMap<>();
+        for (int row = 0; row < rows; row++) {
+            String rowTags = data.tags[row];
+            if (rowTags == null) {
+                continue;
+            }
+            for (String tag : rowTags.split(",")) {
+                String trimmed = tag.trim();
+                if (!trimmed.isEmpty()) {
+                    tags.computeIfAbsent(trimmed, key -> new BitSet(rows)).set(row);
+                }
+            }
+        }
+
+        return new BitmapIndexes(
+                data,
+                rows,
+                byCode(data.regionCodes, data.regions.size(), rows),
+                byCode(data.genderCodes, data.genders.size(), rows),
+                byCode(data.categoryCodes, data.categories.size(), rows),
+                byCode(data.paymentCodes, data.paymentMethods.size(), rows),
+                tags
+        );
+    }
+
+    // Indexes over `data`, whose rows from `fromRow` on were appended after this index was built.
+    // Bitmaps the new rows fall into are copied before they are set, so readers of this index
+    // keep seeing exactly the rows it was built over.
+    public BitmapIndexes appended(ColumnarSaleStore data, int fromRow) {
+        int rows = data.size();
+        Map<String, BitSet> appendedTags = new HashMap<>(tags);
+        Set<String> copiedTags = new HashSet<>();
+        for (int row = fromRow; row < rows; row++) {
+            String rowTags = data.tags[row];
+            if (rowTags == null) {
+                continue;
+            }
+            for (String tag : rowTags.split(",")) {
+                String trimmed = tag.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                BitSet bits = appendedTags.get(trimmed);
+                if (bits == null) {
+                    bits = new BitSet(rows);
+                    appendedTags.put(trimmed, bits);
+                    copiedTags.add(trimmed);
+                } else if (copiedTags.add(trimmed)) {
+                    bits = (BitSet) bits.clone();
+                    appendedTags.put(trimmed, bits);
+                }
+                bits.set(row);
+            }
+        }
+
+        return new BitmapIndexes(
+                data,
+                rows,
+                appendedByCode(regions, data.regionCodes, data.regions.size(), fromRow, rows),
+                appendedByCode(genders, data.genderCodes, data.genders.size(), fromRow, rows),
+                appendedByCode(categories, data.categoryCodes, data.categories.size(), fromRow, rows),
+                appendedByCode(paymentMethods, data.paymentCodes, data.paymentMethods.size(), fromRow, rows),
+                appendedTags
+        );
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    // Rows whose region is any of the selected values; null when the filter is not set
+    BitSet regions(List<String> values) {
+        return union(regions, data.regions, values);
+    }
+
+    BitSet genders(List<String> values) {
+        return union(genders, data.genders, values);
+    }
+
+    BitSet categories(List<String> values) {
+        return union(categories, data.categories, values);
+    }
+
+    BitSet paymentMethods(List<String> values) {
+        return union(paymentMethods, data.paymentMethods, values);
+    }
+
+    // Rows carrying any of the requested tag names, matched exactly; null when none is requested
+    BitSet tags(List<String> values) {
+        List<String> names = SaleRecordSpecification.requestedTags(values);
+        if (names == null) {
+            return null;
+        }
+        BitSet result = new BitSet(rows);
+        for (String name : names) {
+            BitSet bits = tags.get(name);
+            if (bits != null) {
+                result.or(bits);
+            }
+        }
+        return result;
+    }
+
+    // Every indexed tag with its rows; the bitmaps are shared and must not be modified
+    Map<String, BitSet> tagRows() {
+        return Collections.unmodifiableMap(tags);
+    }
+
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (BitSet[] column : new BitSet[][] {regions, genders, categories, paymentMethods}) {
+            for (BitSet bits : column) {
+                bytes += bitsetBytes(bits);
+            }
+        }
+        for (Map.Entry<String, BitSet> entry : tags.entrySet()) {
+            bytes += 48 + MemoryFootprint.stringBytes(entry.getKey()) + bitsetBytes(entry.getValue());
+        }
+        return bytes;
+    }
+
+    private BitSet union(BitSet[] index, StringDictionary dictionary, List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        BitSet result = new BitSet(rows);
+        for (String value : values) {
+            int code = dictionary.lookup(value);
+            if (code >= 0 && code < index.length) {
+                result.or(index[code]);
+            }
+        }
+        return result;
+    }
+
+    private static BitSet[] byCode(CodeColumn codes, int cardinality, int rows) {
+        BitSet[] index = new BitSet[cardinality];
+        for (int code = 0; code < cardinality; code++) {
+            index[code] = new BitSet(rows);
+        }
+        for (int row = 0; row < rows; row++) {
+            index[codes.get(row)].set(row);
+        }
+        return index;
+    }
+
+    private static BitSet[] appendedByCode(BitSet[] built, CodeColumn codes, int cardinality, int fromRow, int rows) {
+        BitSet[] index = Arrays.copyOf(built, cardinality);
+        boolean[] copied = new boolean[cardinality];
+        for (int code = built.length; code < cardinality; code++) {
+            index[code] = new BitSet(rows);
+            copied[code] = true;
+        }
+        for (int row = fromRow; row < rows; row++) {
+            int code = codes.get(row);
+            if (!copied[code]) {
+                index[code] = (BitSet) index[code].clone();
+                copied[code] = true;
+            }
+            index[code].set(row);
+        }
+        return index;
+    }
+
+    private static long bitsetBytes(BitSet bits) {
+        return 24 + MemoryFootprint.array(bits.size() / 64, 8);
+    }
+}
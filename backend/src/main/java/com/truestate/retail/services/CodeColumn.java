@@ -0,0 +1,72 @@
+package com.truestate.retail.services;
+
+import java.util.Arrays;
+
+// Dictionary codes for one column. Starts as one byte per row and widens to
+// int codes only if the dictionary outgrows 256 entries.
+final class CodeColumn {
+
+    private byte[] narrow;
+    private int[] wide;
+
+    CodeColumn(int capacity) {
+        this.narrow = new byte[capacity];
+    }
+
+    private CodeColumn(byte[] narrow, int[] wide) {
+        this.narrow = narrow;
+        this.wide = wide;
+    }
+
+    // Adopts codes read back from a snapshot without copying them
+    static CodeColumn ofNarrow(byte[] codes) {
+        return new CodeColumn(codes, null);
+    }
+
+    static CodeColumn ofWide(int[] codes) {
+        return new CodeColumn(null, codes);
+    }
+
+    int get(int row) {
+        return narrow != null ? narrow[row] & 0xFF : wide[row];
+    }
+
+    void set(int row, int code) {
+        if (narrow != null) {
+            if (code <= 0xFF) {
+                narrow[row] = (byte) code;
+                return;
+            }
+            widen();
+        }
+        wide[row] = code;
+    }
+
+    int capacity() {
+        return narrow != null ? narrow.length : wide.length;
+    }
+
+    CodeColumn copyOf(int capacity) {
+        return narrow != null
+                ? new CodeColumn(Arrays.copyOf(narrow, capacity), null)
+                : new CodeColumn(null, Arrays.copyOf(wide, capacity));
+    }
+
+    // Same code array under a new wrapper; widening the copy leaves this column untouched
+    CodeColumn share() {
+        return new CodeColumn(narrow, wide);
+    }
+
+    long estimatedBytes() {
+        return narrow != null ? MemoryFootprint.array(narrow.length, 1) : MemoryFootprint.array(wide.length, 4);
+    }
+
+    private void widen() {
+        int[] widened = new int[narrow.length];
+        for (int i = 0; i < narrow.length; i++) {
+            widened[i] = narrow[i] & 0xFF;
+        }
+        wide = widened;
+        narrow = null;
+    }
+}
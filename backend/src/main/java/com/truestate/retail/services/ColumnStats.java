@@ -0,0 +1,223 @@
+package com.truestate.retail.services;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Evenly spaced sample of the filterable columns, used to estimate how many rows each
+// filter lets through so compiled filters can test the most selective predicate first.
+// Estimates only decide evaluation order; they never change which rows match.
+final class ColumnStats {
+
+    static final ColumnStats EMPTY = new ColumnStats(0);
+
+    private static final int SAMPLE_ROWS = 4096;
+    private static final int CSV_SAMPLE_RANGES = 16;
+
+    private final int size;
+    private final String[] regions;
+    private final String[] genders;
+    private final String[] categories;
+    private final String[] paymentMethods;
+    private final String[] tags;
+    private final String[] lowerNames;
+    private final String[] phones;
+    // Sorted; missing values are MISSING_INT and so come first
+    private final int[] ages;
+    private final int[] days;
+
+    private ColumnStats(int capacity) {
+        size = capacity;
+        regions = new String[capacity];
+        genders = new String[capacity];
+        categories = new String[capacity];
+        paymentMethods = new String[capacity];
+        tags = new String[capacity];
+        lowerNames = new String[capacity];
+        phones = new String[capacity];
+        ages = new int[capacity];
+        days = new int[capacity];
+    }
+
+    static ColumnStats of(ColumnarSaleStore data) {
+        int stride = Math.max(1, data.size() / SAMPLE_ROWS);
+        ColumnStats stats = new ColumnStats((data.size() + stride - 1) / stride);
+        int i = 0;
+        for (int row = 0; row < data.size() && i < stats.size; row += stride, i++) {
+            stats.regions[i] = data.regions.decode(data.regionCodes.get(row));
+            stats.genders[i] = data.genders.decode(data.genderCodes.get(row));
+            stats.categories[i] = data.categories.decode(data.categoryCodes.get(row));
+            stats.paymentMethods[i] = data.paymentMethods.decode(data.paymentCodes.get(row));
+            stats.tags[i] = data.tags[row];
+            stats.lowerNames[i] = data.customerNames[row] != null ? data.customerNames[row].toLowerCase() : null;
+            stats.phones[i] = data.phoneNumbers[row];
+            stats.ages[i] = data.ages[row];
+            stats.days[i] = data.dates[row];
+        }
+        return stats.sorted();
+    }
+
+    // The first rows of a few ranges spread over the file, so a file sorted by some column
+    // is not judged by its head alone
+    static ColumnStats of(MappedCsvScanner scanner) throws IOException {
+        List<MappedCsvScanner.Range> ranges = scanner.split(Math.max(1, scanner.dataBytes() / CSV_SAMPLE_RANGES));
+        int perRange = Math.max(1, SAMPLE_ROWS / ranges.size());
+        int regionColumn = scanner.column("Customer Region");
+        int genderColumn = scanner.column("Gender");
+        int categoryColumn = scanner.column("Product Category");
+        int paymentColumn = scanner.column("Payment Method");
+        int tagsColumn = scanner.column("Tags");
+        int nameColumn = scanner.column("Customer Name");
+        int phoneColumn = scanner.column("Phone Number");
+        int ageColumn = scanner.column("Age");
+        int dateColumn = scanner.column("Date");
+
+        ColumnStats stats = new ColumnStats(perRange * ranges.size());
+        int[] count = new int[1];
+        for (MappedCsvScanner.Range range : ranges) {
+            int[] taken = new int[1];
+            scanner.scan(range, row -> {
+                int i = count[0]++;
+                stats.regions[i] = row.string(regionColumn);
+                stats.genders[i] = row.string(genderColumn);
+                stats.categories[i] = row.string(categoryColumn);
+                stats.paymentMethods[i] = row.string(paymentColumn);
+                stats.tags[i] = row.string(tagsColumn);
+                stats.lowerNames[i] = row.string(nameColumn).toLowerCase();
+                stats.phones[i] = row.string(phoneColumn);
+                stats.ages[i] = row.intValue(ageColumn, ColumnarSaleStore.MISSING_INT);
+                try {
+                    stats.days[i] = row.epochDay(dateColumn);
+                } catch (RuntimeException e) {
+                    stats.days[i] = ColumnarSaleStore.MISSING_INT;
+                }
+                return ++taken[0] < perRange;
+            });
+        }
+        return stats.truncated(count[0]).sorted();
+    }
+
+    // Estimated share of rows whose column value is one of `values`
+    double inRate(Column column, List<String> values) {
+        if (size == 0) {
+            return 1.0;
+        }
+        Set<String> wanted = new HashSet<>(values);
+        String[] sample = switch (column) {
+            case REGION -> regions;
+            case GENDER -> genders;
+            case CATEGORY -> categories;
+            case PAYMENT_METHOD -> paymentMethods;
+        };
+        int hits = 0;
+        for (String value : sample) {
+            if (wanted.contains(value)) {
+                hits++;
+            }
+        }
+        return (double) hits / size;
+    }
+
+    // Missing ages pass an age filter, as on every path
+    double ageRate(int minAge, int maxAge) {
+        if (size == 0) {
+            return 1.0;
+        }
+        int missing = countBetween(ages, ColumnarSaleStore.MISSING_INT, ColumnarSaleStore.MISSING_INT);
+        int low = Math.max(minAge, ColumnarSaleStore.MISSING_INT + 1);
+        return (double) (missing + countBetween(ages, low, maxAge)) / size;
+    }
+
+    double dayRate(int startDay, int endDay) {
+        return size == 0 ? 1.0 : (double) countBetween(days, startDay, endDay) / size;
+    }
+
+    // Share of sampled rows carrying one of the tag names
+    double tagRate(List<String> names) {
+        if (size == 0) {
+            return 1.0;
+        }
+        int hits = 0;
+        for (String value : tags) {
+            if (value == null) {
+                continue;
+            }
+            for (String tag : value.split(",")) {
+                if (names.contains(tag.trim())) {
+                    hits++;
+                    break;
+                }
+            }
+        }
+        return (double) hits / size;
+    }
+
+    double textRate(String lowerQuery, String query) {
+        if (size == 0) {
+            return 1.0;
+        }
+        int hits = 0;
+        for (int i = 0; i < size; i++) {
+            if ((lowerNames[i] != null && lowerNames[i].contains(lowerQuery))
+                    || (phones[i] != null && phones[i].contains(query))) {
+                hits++;
+            }
+        }
+        return (double) hits / size;
+    }
+
+    private static int countBetween(int[] sorted, int low, int high) {
+        if (low > high) {
+            return 0;
+        }
+        return upperBound(sorted, high) - upperBound(sorted, low - 1L);
+    }
+
+    // Number of values <= bound
+    private static int upperBound(int[] sorted, long bound) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= bound) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private ColumnStats truncated(int count) {
+        if (count == size) {
+            return this;
+        }
+        ColumnStats copy = new ColumnStats(count);
+        System.arraycopy(regions, 0, copy.regions, 0, count);
+        System.arraycopy(genders, 0, copy.genders, 0, count);
+        System.arraycopy(categories, 0, copy.categories, 0, count);
+        System.arraycopy(paymentMethods, 0, copy.paymentMethods, 0, count);
+        System.arraycopy(tags, 0, copy.tags, 0, count);
+        System.arraycopy(lowerNames, 0, copy.lowerNames, 0, count);
+        System.arraycopy(phones, 0, copy.phones, 0, count);
+        System.arraycopy(ages, 0, copy.ages, 0, count);
+        System.arraycopy(days, 0, copy.days, 0, count);
+        return copy;
+    }
+
+    private ColumnStats sorted() {
+        Arrays.sort(ages);
+        Arrays.sort(days);
+        return this;
+    }
+
+    enum Column { REGION, GENDER, CATEGORY, PAYMENT_METHOD }
+
+    // Evaluation order key of a predicate: cheapest expected work first, so one that is
+    // costly or lets most rows through goes later (the classic cost / (1 - pass rate) rule)
+    static double rank(double passRate, double cost) {
+        return passRate >= 1.0 ? Double.MAX_VALUE : cost / (1.0 - passRate);
+    }
+}
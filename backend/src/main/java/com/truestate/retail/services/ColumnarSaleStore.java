@@ -0,0 +1,310 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.models.SaleRecord;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Column-oriented, in-memory copy of the sales dataset. Numbers live in primitive
+// arrays (missing values are MISSING_INT / NaN), dates are epoch days and the
+// low-cardinality columns (the filter columns and the repeated descriptive ones such as
+// brand, status and store location) are dictionary codes. Rows are only turned back
+// into SaleRecord objects when they are returned to the caller.
+public class ColumnarSaleStore {
+
+    public static final int MISSING_INT = Integer.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int STRING_COLUMNS = 9;
+
+    StringDictionary regions = new StringDictionary();
+    StringDictionary genders = new StringDictionary();
+    StringDictionary categories = new StringDictionary();
+    StringDictionary paymentMethods = new StringDictionary();
+    StringDictionary customerTypes = new StringDictionary();
+    StringDictionary brands = new StringDictionary();
+    StringDictionary orderStatuses = new StringDictionary();
+    StringDictionary deliveryTypes = new StringDictionary();
+    StringDictionary storeLocations = new StringDictionary();
+    StringDictionary employeeNames = new StringDictionary();
+
+    int size;
+    private long stringBytes;
+
+    int[] dates = new int[INITIAL_CAPACITY];
+    int[] ages = new int[INITIAL_CAPACITY];
+    int[] quantities = new int[INITIAL_CAPACITY];
+    double[] pricePerUnit = new double[INITIAL_CAPACITY];
+    double[] discountPercentage = new double[INITIAL_CAPACITY];
+    double[] totalAmount = new double[INITIAL_CAPACITY];
+    double[] finalAmount = new double[INITIAL_CAPACITY];
+
+    CodeColumn regionCodes = new CodeColumn(INITIAL_CAPACITY);
+    CodeColumn genderCodes = new CodeColumn(INITIAL_CAPACITY);
+    CodeColumn categoryCodes = new CodeColumn(INITIAL_CAPACITY);
+    CodeColumn paymentCodes = new CodeColumn(INITIAL_CAPACITY);
+    CodeColumn customerTypeCodes = new CodeColumn(INITIAL_CAPACITY);
+    CodeColumn brandCodes = new CodeColumn(INITIAL_CAPACITY);
+    CodeColumn orderStatusCodes = new CodeColumn(INITIAL_CAPACITY);
+    CodeColumn deliveryTypeCodes = new CodeColumn(INITIAL_CAPACITY);
+    CodeColumn storeLocationCodes = new CodeColumn(INITIAL_CAPACITY);
+    CodeColumn employeeNameCodes = new CodeColumn(INITIAL_CAPACITY);
+
+    String[] transactionIds = new String[INITIAL_CAPACITY];
+    String[] customerIds = new String[INITIAL_CAPACITY];
+    String[] customerNames = new String[INITIAL_CAPACITY];
+    String[] phoneNumbers = new String[INITIAL_CAPACITY];
+    String[] productIds = new String[INITIAL_CAPACITY];
+    String[] productNames = new String[INITIAL_CAPACITY];
+    String[] tags = new String[INITIAL_CAPACITY];
+    String[] storeIds = new String[INITIAL_CAPACITY];
+    String[] salespersonIds = new String[INITIAL_CAPACITY];
+
+    public int size() {
+        return size;
+    }
+
+    public void append(SaleRecord sale) {
+        if (size == dates.length) {
+            resize(dates.length * 2);
+        }
+        int row = size;
+
+        dates[row] = sale.getDate() != null ? (int) sale.getDate().toEpochDay() : MISSING_INT;
+        ages[row] = sale.getAge() != null ? sale.getAge() : MISSING_INT;
+        quantities[row] = sale.getQuantity() != null ? sale.getQuantity() : MISSING_INT;
+        pricePerUnit[row] = toPrimitive(sale.getPricePerUnit());
+        discountPercentage[row] = toPrimitive(sale.getDiscountPercentage());
+        totalAmount[row] = toPrimitive(sale.getTotalAmount());
+        finalAmount[row] = toPrimitive(sale.getFinalAmount());
+
+        regionCodes.set(row, regions.encode(sale.getCustomerRegion()));
+        genderCodes.set(row, genders.encode(sale.getGender()));
+        categoryCodes.set(row, categories.encode(sale.getProductCategory()));
+        paymentCodes.set(row, paymentMethods.encode(sale.getPaymentMethod()));
+        customerTypeCodes.set(row, customerTypes.encode(sale.getCustomerType()));
+        brandCodes.set(row, brands.encode(sale.getBrand()));
+        orderStatusCodes.set(row, orderStatuses.encode(sale.getOrderStatus()));
+        deliveryTypeCodes.set(row, deliveryTypes.encode(sale.getDeliveryType()));
+        storeLocationCodes.set(row, storeLocations.encode(sale.getStoreLocation()));
+        employeeNameCodes.set(row, employeeNames.encode(sale.getEmployeeName()));
+
+        transactionIds[row] = sale.getTransactionId();
+        customerIds[row] = sale.getCustomerId();
+        customerNames[row] = sale.getCustomerName();
+        phoneNumbers[row] = sale.getPhoneNumber();
+        productIds[row] = sale.getProductId();
+        productNames[row] = sale.getProductName();
+        tags[row] = sale.getTags();
+        storeIds[row] = sale.getStoreId();
+        salespersonIds[row] = sale.getSalespersonId();
+
+        for (int column = 0; column < STRING_COLUMNS; column++) {
+            stringBytes += MemoryFootprint.stringBytes(stringColumn(column)[row]);
+        }
+        size++;
+    }
+
+    // The store to append the next rows to. It shares the column arrays, where it only writes
+    // rows past `size` that readers of this store never look at (growing copies them as usual),
+    // and copies the dictionaries and code wrappers, which an append changes in place.
+    ColumnarSaleStore forAppend() {
+        ColumnarSaleStore next = new ColumnarSaleStore();
+        next.regions = regions.copy();
+        next.genders = genders.copy();
+        next.categories = categories.copy();
+        next.paymentMethods = paymentMethods.copy();
+        next.customerTypes = customerTypes.copy();
+        next.brands = brands.copy();
+        next.orderStatuses = orderStatuses.copy();
+        next.deliveryTypes = deliveryTypes.copy();
+        next.storeLocations = storeLocations.copy();
+        next.employeeNames = employeeNames.copy();
+        next.size = size;
+        next.stringBytes = stringBytes;
+
+        next.dates = dates;
+        next.ages = ages;
+        next.quantities = quantities;
+        next.pricePerUnit = pricePerUnit;
+        next.discountPercentage = discountPercentage;
+        next.totalAmount = totalAmount;
+        next.finalAmount = finalAmount;
+
+        next.regionCodes = regionCodes.share();
+        next.genderCodes = genderCodes.share();
+        next.categoryCodes = categoryCodes.share();
+        next.paymentCodes = paymentCodes.share();
+        next.customerTypeCodes = customerTypeCodes.share();
+        next.brandCodes = brandCodes.share();
+        next.orderStatusCodes = orderStatusCodes.share();
+        next.deliveryTypeCodes = deliveryTypeCodes.share();
+        next.storeLocationCodes = storeLocationCodes.share();
+        next.employeeNameCodes = employeeNameCodes.share();
+
+        next.transactionIds = transactionIds;
+        next.customerIds = customerIds;
+        next.customerNames = customerNames;
+        next.phoneNumbers = phoneNumbers;
+        next.productIds = productIds;
+        next.productNames = productNames;
+        next.tags = tags;
+        next.storeIds = storeIds;
+        next.salespersonIds = salespersonIds;
+        return next;
+    }
+
+    // Drops the spare capacity left over from doubling once loading is finished
+    public void trimToSize() {
+        if (dates.length != size) {
+            resize(size);
+        }
+    }
+
+    public SaleRecord toSaleRecord(int row) {
+        SaleRecord sale = new SaleRecord();
+        // Row ids are stable for the lifetime of the store, so expose them as the record id
+        sale.setId((long) row + 1);
+        sale.setTransactionId(transactionIds[row]);
+        sale.setDate(dates[row] != MISSING_INT ? LocalDate.ofEpochDay(dates[row]) : null);
+        sale.setCustomerId(customerIds[row]);
+        sale.setCustomerName(customerNames[row]);
+        sale.setPhoneNumber(phoneNumbers[row]);
+        sale.setGender(genders.decode(genderCodes.get(row)));
+        sale.setAge(ages[row] != MISSING_INT ? ages[row] : null);
+        sale.setCustomerRegion(regions.decode(regionCodes.get(row)));
+        sale.setCustomerType(customerTypes.decode(customerTypeCodes.get(row)));
+        sale.setProductId(productIds[row]);
+        sale.setProductName(productNames[row]);
+        sale.setBrand(brands.decode(brandCodes.get(row)));
+        sale.setProductCategory(categories.decode(categoryCodes.get(row)));
+        sale.setTags(tags[row]);
+        sale.setQuantity(quantities[row] != MISSING_INT ? quantities[row] : null);
+        sale.setPricePerUnit(toBoxed(pricePerUnit[row]));
+        sale.setDiscountPercentage(toBoxed(discountPercentage[row]));
+        sale.setTotalAmount(toBoxed(totalAmount[row]));
+        sale.setFinalAmount(toBoxed(finalAmount[row]));
+        sale.setPaymentMethod(paymentMethods.decode(paymentCodes.get(row)));
+        sale.setOrderStatus(orderStatuses.decode(orderStatusCodes.get(row)));
+        sale.setDeliveryType(deliveryTypes.decode(deliveryTypeCodes.get(row)));
+        sale.setStoreId(storeIds[row]);
+        sale.setStoreLocation(storeLocations.decode(storeLocationCodes.get(row)));
+        sale.setSalespersonId(salespersonIds[row]);
+        sale.setEmployeeName(employeeNames.decode(employeeNameCodes.get(row)));
+        return sale;
+    }
+
+    // Snapshot restore: columns are sized for the final row count and filled in place
+    void allocate(int rows) {
+        resize(rows);
+    }
+
+    // Strings restored from a snapshot are shared per distinct value, so the caller counts
+    // each distinct string once instead of once per row
+    void restored(int rows, long distinctStringBytes) {
+        size = rows;
+        stringBytes = distinctStringBytes;
+    }
+
+    // Every dictionary and, in the same order, its code column
+    StringDictionary[] dictionaries() {
+        return new StringDictionary[] {regions, genders, categories, paymentMethods, customerTypes, brands,
+                orderStatuses, deliveryTypes, storeLocations, employeeNames};
+    }
+
+    CodeColumn[] codeColumns() {
+        return new CodeColumn[] {regionCodes, genderCodes, categoryCodes, paymentCodes, customerTypeCodes, brandCodes,
+                orderStatusCodes, deliveryTypeCodes, storeLocationCodes, employeeNameCodes};
+    }
+
+    // Snapshot restore: adopts code columns read back in codeColumns() order
+    void restoreCodes(CodeColumn[] columns) {
+        regionCodes = columns[0];
+        genderCodes = columns[1];
+        categoryCodes = columns[2];
+        paymentCodes = columns[3];
+        customerTypeCodes = columns[4];
+        brandCodes = columns[5];
+        orderStatusCodes = columns[6];
+        deliveryTypeCodes = columns[7];
+        storeLocationCodes = columns[8];
+        employeeNameCodes = columns[9];
+    }
+
+    String[][] stringColumns() {
+        String[][] columns = new String[STRING_COLUMNS][];
+        for (int column = 0; column < STRING_COLUMNS; column++) {
+            columns[column] = stringColumn(column);
+        }
+        return columns;
+    }
+
+    // Estimated retained heap of the columns, dictionaries and the strings they reference
+    public long estimatedBytes() {
+        int capacity = dates.length;
+        long bytes = 3 * MemoryFootprint.array(capacity, 4)
+                + 4 * MemoryFootprint.array(capacity, 8);
+        for (CodeColumn codes : codeColumns()) {
+            bytes += codes.estimatedBytes();
+        }
+        for (StringDictionary dictionary : dictionaries()) {
+            bytes += dictionary.estimatedBytes();
+        }
+
+        bytes += STRING_COLUMNS * MemoryFootprint.array(capacity, (int) MemoryFootprint.REFERENCE);
+        return bytes + stringBytes;
+    }
+
+    private String[] stringColumn(int column) {
+        return switch (column) {
+            case 0 -> transactionIds;
+            case 1 -> customerIds;
+            case 2 -> customerNames;
+            case 3 -> phoneNumbers;
+            case 4 -> productIds;
+            case 5 -> productNames;
+            case 6 -> tags;
+            case 7 -> storeIds;
+            default -> salespersonIds;
+        };
+    }
+
+    private void resize(int capacity) {
+        dates = Arrays.copyOf(dates, capacity);
+        ages = Arrays.copyOf(ages, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        pricePerUnit = Arrays.copyOf(pricePerUnit, capacity);
+        discountPercentage = Arrays.copyOf(discountPercentage, capacity);
+        totalAmount = Arrays.copyOf(totalAmount, capacity);
+        finalAmount = Arrays.copyOf(finalAmount, capacity);
+
+        regionCodes = regionCodes.copyOf(capacity);
+        genderCodes = genderCodes.copyOf(capacity);
+        categoryCodes = categoryCodes.copyOf(capacity);
+        paymentCodes = paymentCodes.copyOf(capacity);
+        customerTypeCodes = customerTypeCodes.copyOf(capacity);
+        brandCodes = brandCodes.copyOf(capacity);
+        orderStatusCodes = orderStatusCodes.copyOf(capacity);
+        deliveryTypeCodes = deliveryTypeCodes.copyOf(capacity);
+        storeLocationCodes = storeLocationCodes.copyOf(capacity);
+        employeeNameCodes = employeeNameCodes.copyOf(capacity);
+
+        transactionIds = Arrays.copyOf(transactionIds, capacity);
+        customerIds = Arrays.copyOf(customerIds, capacity);
+        customerNames = Arrays.copyOf(customerNames, capacity);
+        phoneNumbers = Arrays.copyOf(phoneNumbers, capacity);
+        productIds = Arrays.copyOf(productIds, capacity);
+        productNames = Arrays.copyOf(productNames, capacity);
+        tags = Arrays.copyOf(tags, capacity);
+        storeIds = Arrays.copyOf(storeIds, capacity);
+        salespersonIds = Arrays.copyOf(salespersonIds, capacity);
+    }
+
+    private static double toPrimitive(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    private static Double toBoxed(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
@@ -1,29 +1,85 @@
 package com.truestate.retail.services;
 
 import com.truestate.retail.models.SaleRecord;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
 
 @Service
 public class CsvFallbackService {
 
-    @Value("${csv.url:}")
-    private String csvUrl;
+    // Data source tag of the search metrics
+    private static final String CSV = "csv";
+    private static final long FINGERPRINT_WINDOW_BYTES = 1L << 30;
+    // Per column; values past this many distinct ones are no longer shared
+    private static final int MAX_INTERNED_VALUES = 4096;
+    // CSV columns in SalesExportWriter.FIELDS order, after the id
+    private static final String[] EXPORT_COLUMNS = {
+            "Transaction ID", "Date", "Customer ID", "Customer Name", "Phone Number", "Gender", "Age",
+            "Customer Region", "Customer Type", "Product ID", "Product Name", "Brand", "Product Category", "Tags",
+            "Quantity", "Price per Unit", "Discount Percentage", "Total Amount", "Final Amount", "Payment Method",
+            "Order Status", "Delivery Type", "Store ID", "Store Location", "Salesperson ID", "Employee Name"
+    };
+
+    private final RemoteCsvSource remoteCsvSource;
+    private final SegmentedScan segmentedScan;
+    private final SearchMetrics searchMetrics;
+    private final Map<String, ValueInterner> interners = new ConcurrentHashMap<>();
+    // Calendar months per date partition; 0 leaves date range searches streaming the whole file
+    private final int partitionMonths;
+
+    // Rankings an export holds at once; more matches than this take another pass over the file
+    @Value("${search.export.window-rows:50000}")
+    private int exportWindowRows;
+
+    private Path localCopy;
+    private volatile MappedCsvScanner scanner;
+    private volatile ScanRanges scanRanges;
+    private volatile ScanPartitions scanPartitions;
+    private volatile ScannerStats scannerStats;
+
+    public CsvFallbackService(RemoteCsvSource remoteCsvSource, SegmentedScan segmentedScan,
+                              SearchMetrics searchMetrics,
+                              @Value("${search.partition.months:1}") int partitionMonths) {
+        this.remoteCsvSource = remoteCsvSource;
+        this.segmentedScan = segmentedScan;
+        this.searchMetrics = searchMetrics;
+        this.partitionMonths = partitionMonths;
+    }
+
+    // A new download of the remote CSV may have a different layout
+    @EventListener
+    public void onSalesDataChanged(SalesDataChangedEvent event) {
+        if ("csv".equals(event.source())) {
+            scanner = null;
+            scanRanges = null;
+            scanPartitions = null;
+            scannerStats = null;
+        }
+    }
 
     public Page<SaleRecord> searchFromCsv(
             String query,
@@ -41,28 +97,52 @@ public class CsvFallbackService {
             int page,
             int size
     ) {
+        var criteria = new SaleRecordSpecification.SearchCriteria(query, customerRegions, genders, minAge, maxAge,
+                productCategories, tags, paymentMethods, startDate, endDate);
         int pageStart = page * size;
-        int pageEnd = pageStart + size;
-        int matchIndex = 0;
-        List<SaleRecord> pageContent = new ArrayList<>(size);
-
-        try (InputStreamReader reader = openCsvReader();
-             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
-
-            for (CSVRecord csvRecord : csvParser) {
-                SaleRecord sale = mapCsvRecord(csvRecord);
-                if (!matchesFilters(sale, query, customerRegions, genders, minAge, maxAge,
-                        productCategories, tags, paymentMethods, startDate, endDate)) {
-                    continue;
-                }
+        long matchCount = 0;
+        // Global order needs the best (page + 1) * size matches; everything else is discarded.
+        // Ties on the sort key fall back to file order in the sort direction, like the other paths.
+        Comparator<RankedRow> order = resultOrder(sortBy, sortDirection);
+        TopKCollector<RankedRow> window = new TopKCollector<>(pageStart + size, order);
+        List<SaleRecord> pageContent;
 
-                if (matchIndex >= pageStart && matchIndex < pageEnd) {
-                    pageContent.add(sale);
-                }
-
-                matchIndex++;
+        try {
+            MappedCsvScanner scanner = scanner();
+            long start = System.nanoTime();
+            CsvRowFilter filter = new CsvRowFilter(scanner, criteria, columnStats(scanner));
+            SortKey sortKey = new SortKey(scanner, sortBy);
+
+            // Each range keeps its own best rows; the page is the best of their union
+            long rowCount = 0;
+            for (RangeMatches range : scanRanges(scanner, criteria, part -> {
+                TopKCollector<RankedRow> rangeWindow = new TopKCollector<>(pageStart + size, order);
+                long[] rangeMatches = new long[1];
+                long rangeRows = part.scan(row -> {
+                    if (filter.matches(row)) {
+                        rangeWindow.offer(sortKey.rank(row));
+                        rangeMatches[0]++;
+                    }
+                    return true;
+                });
+                return new RangeMatches(rangeWindow.sorted(), rangeMatches[0], rangeRows);
+            })) {
+                range.ranked().forEach(window::offer);
+                matchCount += range.matches();
+                rowCount += range.rows();
             }
-
+            long sortStart = searchMetrics.record(SearchMetrics.Stage.FILTER, CSV, start);
+            searchMetrics.rows(CSV, rowCount, matchCount);
+
+            List<RankedRow> ranked = window.sorted();
+            long parseStart = searchMetrics.record(SearchMetrics.Stage.SORT, CSV, sortStart);
+            pageContent = new ArrayList<>(size);
+            for (int i = pageStart; i < ranked.size(); i++) {
+                pageContent.add(materialize(scanner, ranked.get(i)));
+            }
+            searchMetrics.record(SearchMetrics.Stage.PARSE, CSV, parseStart);
+        } catch (CsvSourceUnavailableException e) {
+            throw e;
         } catch (IOException e) {
             System.err.println("Error reading CSV stream: " + e.getMessage());
             e.printStackTrace();
@@ -73,141 +153,599 @@ public class CsvFallbackService {
             return Page.empty();
         }
 
-        long totalElements = matchIndex;
-        // Apply sort within the current page to respect UI expectations
-        applyInPageSort(pageContent, sortBy, sortDirection);
-
         Pageable pageable = PageRequest.of(page, size);
-        return new PageImpl<>(pageContent, pageable, totalElements);
+        return new PageImpl<>(pageContent, pageable, matchCount);
     }
 
-    private InputStreamReader openCsvReader() throws Exception {
-        var resource = new ClassPathResource("sales_data.csv");
+    // Keyset page over the stream: rows at or before the cursor are skipped and only the
+    // next size + 1 rows are kept, so memory stays at one page however deep the cursor is
+    public CursorPage<SaleRecord> searchAfterFromCsv(SaleRecordSpecification.SearchCriteria criteria,
+                                                     String sortBy, String sortDirection,
+                                                     SeekCursor cursor, int size) {
+        Comparator<RankedRow> order = resultOrder(sortBy, sortDirection);
+        TopKCollector<RankedRow> window = new TopKCollector<>(size + 1, order);
+        List<SaleRecord> content = new ArrayList<>(size);
+        boolean hasNext;
 
-        if (resource.exists()) {
-            System.out.println("Streaming CSV from classpath");
-            return new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8);
+        try {
+            MappedCsvScanner scanner = scanner();
+            long start = System.nanoTime();
+            CsvRowFilter filter = new CsvRowFilter(scanner, criteria, columnStats(scanner));
+            SortKey sortKey = new SortKey(scanner, sortBy);
+            RankedRow position = cursor != null ? sortKey.cursorPosition(cursor) : null;
+
+            long rowCount = 0;
+            long matchCount = 0;
+            for (RangeMatches range : scanRanges(scanner, criteria, part -> {
+                TopKCollector<RankedRow> rangeWindow = new TopKCollector<>(size + 1, order);
+                long[] rangeMatches = new long[1];
+                long rangeRows = part.scan(row -> {
+                    if (filter.matches(row)) {
+                        rangeMatches[0]++;
+                        RankedRow ranked = sortKey.rank(row);
+                        if (position == null || order.compare(ranked, position) > 0) {
+                            rangeWindow.offer(ranked);
+                        }
+                    }
+                    return true;
+                });
+                return new RangeMatches(rangeWindow.sorted(), rangeMatches[0], rangeRows);
+            })) {
+                range.ranked().forEach(window::offer);
+                matchCount += range.matches();
+                rowCount += range.rows();
+            }
+            long sortStart = searchMetrics.record(SearchMetrics.Stage.FILTER, CSV, start);
+            searchMetrics.rows(CSV, rowCount, matchCount);
+
+            List<RankedRow> ranked = window.sorted();
+            long parseStart = searchMetrics.record(SearchMetrics.Stage.SORT, CSV, sortStart);
+            hasNext = ranked.size() > size;
+            for (int i = 0; i < Math.min(size, ranked.size()); i++) {
+                content.add(materialize(scanner, ranked.get(i)));
+            }
+            searchMetrics.record(SearchMetrics.Stage.PARSE, CSV, parseStart);
+        } catch (CsvSourceUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            System.err.println("Error during CSV keyset search: " + e.getMessage());
+            e.printStackTrace();
+            return new CursorPage<>(List.of(), size, false, null);
         }
 
-        if (csvUrl != null && !csvUrl.isBlank()) {
-            System.out.println("CSV not in classpath, streaming from URL: " + csvUrl);
-            URL url = new URL(csvUrl);
-            return new InputStreamReader(new BufferedInputStream(url.openStream()), StandardCharsets.UTF_8);
+        String next = hasNext ? SeekCursor.after(content.get(content.size() - 1), sortBy, sortDirection).encode() : null;
+        return new CursorPage<>(content, size, hasNext, next);
+    }
+
+    // Writes the matches a window at a time: each pass ranks the next exportWindowRows matches
+    // after the last row written, like a keyset page, then re-reads them in result order through
+    // a single mapped reader and writes each row straight from its fields. Memory stays at one
+    // window of rankings (sort key and file position) however many rows match; a result larger
+    // than one window costs one more scan of the file per window.
+    public void exportFromCsv(SaleRecordSpecification.SearchCriteria criteria, String sortBy, String sortDirection,
+                              SalesExportWriter writer) throws Exception {
+        MappedCsvScanner scanner = scanner();
+        CsvRowFilter filter = new CsvRowFilter(scanner, criteria, columnStats(scanner));
+        SortKey sortKey = new SortKey(scanner, sortBy);
+        Comparator<RankedRow> order = resultOrder(sortBy, sortDirection);
+        int[] columns = new int[EXPORT_COLUMNS.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = scanner.column(EXPORT_COLUMNS[i]);
         }
 
-        throw new IllegalStateException("CSV file not found in classpath and no CSV URL provided");
+        RankedRow written = null;
+        while (true) {
+            RankedRow position = written;
+            TopKCollector<RankedRow> window = new TopKCollector<>(exportWindowRows, order);
+            for (RangeMatches range : scanRanges(scanner, criteria, part -> {
+                TopKCollector<RankedRow> rangeWindow = new TopKCollector<>(exportWindowRows, order);
+                long[] rangeMatches = new long[1];
+                long rangeRows = part.scan(row -> {
+                    if (filter.matches(row)) {
+                        RankedRow ranked = sortKey.rank(row);
+                        if (position == null || order.compare(ranked, position) > 0) {
+                            rangeWindow.offer(ranked);
+                            rangeMatches[0]++;
+                        }
+                    }
+                    return true;
+                });
+                return new RangeMatches(rangeWindow.sorted(), rangeMatches[0], rangeRows);
+            })) {
+                range.ranked().forEach(window::offer);
+            }
+
+            List<RankedRow> ranked = window.sorted();
+            try (MappedCsvScanner.RowReader reader = scanner.reader()) {
+                for (RankedRow row : ranked) {
+                    writeExportRow(writer, reader.read(row.position(), row.sequence()), columns);
+                }
+            }
+            if (ranked.size() < exportWindowRows) {
+                return;
+            }
+            written = ranked.get(ranked.size() - 1);
+        }
     }
 
-    private SaleRecord mapCsvRecord(CSVRecord csvRecord) {
-        SaleRecord sale = new SaleRecord();
-        sale.setTransactionId(csvRecord.get("Transaction ID"));
-        sale.setDate(LocalDate.parse(csvRecord.get("Date")));
-        sale.setCustomerId(csvRecord.get("Customer ID"));
-        sale.setCustomerName(csvRecord.get("Customer Name"));
-        sale.setPhoneNumber(csvRecord.get("Phone Number"));
-        sale.setGender(csvRecord.get("Gender"));
-        sale.setAge(parseInt(csvRecord.get("Age")));
-        sale.setCustomerRegion(csvRecord.get("Customer Region"));
-        sale.setCustomerType(csvRecord.get("Customer Type"));
-        sale.setProductId(csvRecord.get("Product ID"));
-        sale.setProductName(csvRecord.get("Product Name"));
-        sale.setBrand(csvRecord.get("Brand"));
-        sale.setProductCategory(csvRecord.get("Product Category"));
-        sale.setTags(csvRecord.get("Tags"));
-        sale.setQuantity(parseInt(csvRecord.get("Quantity")));
-        sale.setPricePerUnit(parseDouble(csvRecord.get("Price per Unit")));
-        sale.setDiscountPercentage(parseDouble(csvRecord.get("Discount Percentage")));
-        sale.setTotalAmount(parseDouble(csvRecord.get("Total Amount")));
-        sale.setFinalAmount(parseDouble(csvRecord.get("Final Amount")));
-        sale.setPaymentMethod(csvRecord.get("Payment Method"));
-        sale.setOrderStatus(csvRecord.get("Order Status"));
-        sale.setDeliveryType(csvRecord.get("Delivery Type"));
-        sale.setStoreId(csvRecord.get("Store ID"));
-        sale.setStoreLocation(csvRecord.get("Store Location"));
-        sale.setSalespersonId(csvRecord.get("Salesperson ID"));
-        sale.setEmployeeName(csvRecord.get("Employee Name"));
-        return sale;
+    public SalesSummary summarizeFromCsv(SaleRecordSpecification.SearchCriteria criteria) {
+        StringDictionary regions = new StringDictionary();
+        StringDictionary categories = new StringDictionary();
+        StringDictionary paymentMethods = new StringDictionary();
+        SummaryAccumulator summary = new SummaryAccumulator();
+
+        try {
+            MappedCsvScanner scanner = scanner();
+            CsvRowFilter filter = new CsvRowFilter(scanner, criteria, columnStats(scanner));
+            int quantityColumn = scanner.column("Quantity");
+            int totalColumn = scanner.column("Total Amount");
+            int finalColumn = scanner.column("Final Amount");
+            int regionColumn = scanner.column("Customer Region");
+            int categoryColumn = scanner.column("Product Category");
+            int paymentColumn = scanner.column("Payment Method");
+            var regionCodes = new MappedCsvScanner.FieldCodes(regions);
+            var categoryCodes = new MappedCsvScanner.FieldCodes(categories);
+            var paymentCodes = new MappedCsvScanner.FieldCodes(paymentMethods);
+
+            // One part after another on this thread, since the dictionaries are not shared safely
+            MappedCsvScanner.RowVisitor visitor = row -> {
+                if (filter.matches(row)) {
+                    summary.add(
+                            row.intValue(quantityColumn, ColumnarSaleStore.MISSING_INT),
+                            row.doubleValue(totalColumn),
+                            row.doubleValue(finalColumn),
+                            regionCodes.encode(row, regionColumn),
+                            categoryCodes.encode(row, categoryColumn),
+                            paymentCodes.encode(row, paymentColumn)
+                    );
+                }
+                return true;
+            };
+            long rows = 0;
+            for (ScanPart part : scanPlan(scanner, criteria).parts()) {
+                rows += part.scan(visitor);
+            }
+            searchMetrics.rows(CSV, rows, summary.count());
+        } catch (CsvSourceUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            System.err.println("Error summarizing CSV stream: " + e.getMessage());
+            e.printStackTrace();
+            return new SummaryAccumulator().toSummary(regions::decode, categories::decode, paymentMethods::decode);
+        }
+
+        return summary.toSummary(regions::decode, categories::decode, paymentMethods::decode);
     }
 
-    private void applyInPageSort(List<SaleRecord> records, String sortBy, String sortDirection) {
-        boolean ascending = "asc".equalsIgnoreCase(sortDirection);
+    // Facet counts from one scan. The free-text query gates every row; each dimension's own
+    // filter is compiled apart, so a row failing exactly one of them is counted for that one.
+    public SalesFacets facetsFromCsv(SaleRecordSpecification.SearchCriteria criteria) {
+        StringDictionary regions = new StringDictionary();
+        StringDictionary genders = new StringDictionary();
+        StringDictionary categories = new StringDictionary();
+        StringDictionary tags = new StringDictionary();
+        StringDictionary paymentMethods = new StringDictionary();
+        FacetAccumulator facets = new FacetAccumulator();
 
-        if ("quantity".equalsIgnoreCase(sortBy)) {
-            records.sort((a, b) -> {
-                Integer qtyA = a.getQuantity() != null ? a.getQuantity() : 0;
-                Integer qtyB = b.getQuantity() != null ? b.getQuantity() : 0;
-                return ascending ? qtyA.compareTo(qtyB) : qtyB.compareTo(qtyA);
-            });
-        } else if ("customerName".equalsIgnoreCase(sortBy)) {
-            records.sort((a, b) -> {
-                String nameA = a.getCustomerName() != null ? a.getCustomerName() : "";
-                String nameB = b.getCustomerName() != null ? b.getCustomerName() : "";
-                return ascending ? nameA.compareTo(nameB) : nameB.compareTo(nameA);
-            });
-        } else {
-            // Default: sort by date
-            records.sort((a, b) -> {
-                if (a.getDate() == null || b.getDate() == null) {
-                    return 0;
+        try {
+            MappedCsvScanner scanner = scanner();
+            ColumnStats stats = columnStats(scanner);
+            CsvRowFilter text = new CsvRowFilter(scanner, new SaleRecordSpecification.SearchCriteria(
+                    criteria.query(), null, null, null, null, null, null, null, null, null), stats);
+            CsvRowFilter[] checks = new CsvRowFilter[FacetAccumulator.DIMENSIONS.length];
+            for (FacetAccumulator.Dimension dimension : FacetAccumulator.DIMENSIONS) {
+                if (dimension.isSet(criteria)) {
+                    checks[dimension.ordinal()] = new CsvRowFilter(scanner, dimension.only(criteria), stats);
+                }
+            }
+            int regionColumn = scanner.column("Customer Region");
+            int genderColumn = scanner.column("Gender");
+            int categoryColumn = scanner.column("Product Category");
+            int tagsColumn = scanner.column("Tags");
+            int paymentColumn = scanner.column("Payment Method");
+            int ageColumn = scanner.column("Age");
+            int dateColumn = scanner.column("Date");
+            var regionCodes = new MappedCsvScanner.FieldCodes(regions);
+            var genderCodes = new MappedCsvScanner.FieldCodes(genders);
+            var categoryCodes = new MappedCsvScanner.FieldCodes(categories);
+            var paymentCodes = new MappedCsvScanner.FieldCodes(paymentMethods);
+
+            long rows = scanner.scan(scanner.all(), row -> {
+                if (!text.matches(row)) {
+                    return true;
                 }
-                return ascending ? a.getDate().compareTo(b.getDate()) : b.getDate().compareTo(a.getDate());
+                int failed = FacetAccumulator.MATCHED;
+                for (int dimension = 0; dimension < checks.length; dimension++) {
+                    if (checks[dimension] != null && !checks[dimension].matches(row)) {
+                        if (failed != FacetAccumulator.MATCHED) {
+                            return true;
+                        }
+                        failed = dimension;
+                    }
+                }
+                if (FacetAccumulator.counts(failed, FacetAccumulator.Dimension.TAG) && !row.isEmpty(tagsColumn)) {
+                    for (int tag : tagCodes(row.string(tagsColumn), tags)) {
+                        facets.addTag(tag, 1);
+                    }
+                }
+                int day = FacetAccumulator.counts(failed, FacetAccumulator.Dimension.DATE) && !row.isEmpty(dateColumn)
+                        ? row.epochDay(dateColumn) : ColumnarSaleStore.MISSING_INT;
+                facets.add(failed, regionCodes.encode(row, regionColumn), genderCodes.encode(row, genderColumn),
+                        categoryCodes.encode(row, categoryColumn), paymentCodes.encode(row, paymentColumn),
+                        row.intValue(ageColumn, ColumnarSaleStore.MISSING_INT), day);
+                return true;
             });
+            searchMetrics.rows(CSV, rows, facets.count());
+        } catch (CsvSourceUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            System.err.println("Error counting CSV facets: " + e.getMessage());
+            e.printStackTrace();
+            return new FacetAccumulator().toFacets(regions::decode, genders::decode, categories::decode,
+                    tags::decode, paymentMethods::decode);
+        }
+
+        return facets.toFacets(regions::decode, genders::decode, categories::decode, tags::decode,
+                paymentMethods::decode);
+    }
+
+    // Distinct tags of a raw tags field, split and trimmed as the bitmap index does
+    private static int[] tagCodes(String rowTags, StringDictionary tags) {
+        String[] split = rowTags.split(",");
+        int[] codes = new int[split.length];
+        int count = 0;
+        for (String tag : split) {
+            String trimmed = tag.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int code = tags.encode(trimmed);
+            boolean seen = false;
+            for (int i = 0; i < count && !seen; i++) {
+                seen = codes[i] == code;
+            }
+            if (!seen) {
+                codes[count++] = code;
+            }
+        }
+        return Arrays.copyOf(codes, count);
+    }
+
+    // The scanner needs random access. A CSV at csv.url is read from the copy the background
+    // fetch keeps (503 until it exists, never a download on the request thread); one that only
+    // exists inside the jar is copied to a temporary file once and reused for the life of the process.
+    Path localCsvFile() throws Exception {
+        if (remoteCsvSource.isConfigured()) {
+            return remoteCsvSource.file();
+        }
+        return classpathCsvFile();
+    }
+
+    // Startup loaders may wait for the first download of a remote CSV; requests never do
+    Path awaitLocalCsvFile() throws Exception {
+        if (remoteCsvSource.isConfigured()) {
+            return remoteCsvSource.awaitFile();
+        }
+        return classpathCsvFile();
+    }
+
+    // For the startup loader: waits for the first download attempt of a remote CSV and tells
+    // whether a copy exists to load from. A CSV inside the jar is always there.
+    public boolean awaitCsvAvailable() throws InterruptedException {
+        if (!remoteCsvSource.isConfigured()) {
+            return true;
+        }
+        try {
+            remoteCsvSource.awaitFile();
+            return true;
+        } catch (CsvSourceUnavailableException e) {
+            return false;
+        }
+    }
+
+    private synchronized Path classpathCsvFile() throws Exception {
+        if (localCopy != null) {
+            return localCopy;
         }
+        var resource = new ClassPathResource("sales_data.csv");
+        if (resource.exists() && resource.isFile()) {
+            return resource.getFile().toPath();
+        }
+        Path copy = Files.createTempFile("sales_data", ".csv");
+        copy.toFile().deleteOnExit();
+        try (InputStream in = openCsvStream()) {
+            Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+        }
+        localCopy = copy;
+        return copy;
+    }
+
+    // Identifies the CSV content a snapshot was built from: the server's validator of the
+    // cached remote copy when it sent one, otherwise the size and CRC32C of the local file
+    String sourceFingerprint() throws Exception {
+        Path file = awaitLocalCsvFile();
+        if (remoteCsvSource.isConfigured()) {
+            String validator = remoteCsvSource.validator();
+            if (validator != null) {
+                return "url " + remoteCsvSource.url() + " " + validator;
+            }
+        }
+
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += FINGERPRINT_WINDOW_BYTES) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(FINGERPRINT_WINDOW_BYTES, size - position)));
+            }
+            return "content " + size + " " + Long.toHexString(crc.getValue());
+        }
+    }
+
+    private MappedCsvScanner scanner() throws Exception {
+        MappedCsvScanner current = scanner;
+        if (current == null) {
+            current = MappedCsvScanner.open(localCsvFile());
+            scanner = current;
+        }
+        return current;
+    }
+
+    // Column sample of the file, taken once per scanner, that orders the compiled filters
+    private ColumnStats columnStats(MappedCsvScanner scanner) {
+        ScannerStats current = scannerStats;
+        if (current != null && current.scanner() == scanner) {
+            return current.stats();
+        }
+        ColumnStats stats;
+        try {
+            stats = ColumnStats.of(scanner);
+        } catch (Exception e) {
+            System.err.println("Could not sample the CSV columns, filters keep their default order: " + e.getMessage());
+            stats = ColumnStats.EMPTY;
+        }
+        scannerStats = new ScannerStats(scanner, stats);
+        return stats;
     }
 
-    private boolean matchesFilters(SaleRecord record, String query, List<String> customerRegions,
-                                     List<String> genders, Integer minAge, Integer maxAge,
-                                     List<String> productCategories, List<String> tags,
-                                     List<String> paymentMethods, LocalDate startDate, LocalDate endDate) {
+    // Runs `scan` on every part of the scan plan, in parallel when there are several, and
+    // returns the results in plan order
+    private <T> List<T> scanRanges(MappedCsvScanner scanner, SaleRecordSpecification.SearchCriteria criteria,
+                                   RangeScan<T> scan) throws IOException {
+        ScanPlan plan = scanPlan(scanner, criteria);
+        List<ScanPart> parts = plan.parts();
+        return segmentedScan.parts(parts.size(), plan.parallel(), i -> scan.scan(parts.get(i)));
+    }
 
-        // Search query (name or phone)
-        if (query != null && !query.isBlank()) {
-            String lowerQuery = query.toLowerCase();
-            boolean matchesName = record.getCustomerName() != null &&
-                    record.getCustomerName().toLowerCase().contains(lowerQuery);
-            boolean matchesPhone = record.getPhoneNumber() != null &&
-                    record.getPhoneNumber().contains(query);
-            if (!matchesName && !matchesPhone) return false;
+    // The ranges of the file, or for a date range search the slices of the date partitions
+    // whose zone maps overlap its windows, when those hold under a quarter of the rows (a row
+    // read by position costs about 2.5 streamed ones). Record numbers are the global ones either way.
+    private ScanPlan scanPlan(MappedCsvScanner scanner, SaleRecordSpecification.SearchCriteria criteria)
+            throws IOException {
+        List<MappedCsvScanner.Range> ranges = ranges(scanner);
+        CsvPartitions partitions = criteria.startDate() != null || criteria.endDate() != null
+                ? partitions(scanner, ranges) : null;
+        if (partitions != null) {
+            List<CsvPartitions.Unit> units = partitions.units(criteria, segmentedScan.segmentRows());
+            long rows = CsvPartitions.rows(units);
+            if (rows * 4 < partitions.rows()) {
+                List<ScanPart> parts = new ArrayList<>(units.size());
+                for (CsvPartitions.Unit unit : units) {
+                    parts.add(visitor -> unit.scan(scanner, visitor));
+                }
+                return new ScanPlan(parts, parts.size() > 1 && segmentedScan.parallel(rows));
+            }
         }
+        List<ScanPart> parts = new ArrayList<>(ranges.size());
+        for (MappedCsvScanner.Range range : ranges) {
+            parts.add(visitor -> scanner.scan(range, visitor));
+        }
+        return new ScanPlan(parts, ranges.size() > 1);
+    }
 
-        // Customer Region
-        if (customerRegions != null && !customerRegions.isEmpty()) {
-            if (!customerRegions.contains(record.getCustomerRegion())) return false;
+    // Built on the first date range search per scanner and kept with it; null when partitioning
+    // is off or a date does not parse, and the search then streams the file and fails as before
+    private CsvPartitions partitions(MappedCsvScanner scanner, List<MappedCsvScanner.Range> ranges) {
+        ScanPartitions current = scanPartitions;
+        if (current != null && current.scanner() == scanner) {
+            return current.partitions();
+        }
+        CsvPartitions partitions = null;
+        if (partitionMonths > 0) {
+            try {
+                long start = System.nanoTime();
+                partitions = CsvPartitions.build(scanner, ranges, partitionMonths, segmentedScan);
+                System.out.println("Partitioned the CSV by date: " + partitions.partitionCount() + " partitions of "
+                        + partitions.rows() + " rows in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            } catch (Exception e) {
+                System.err.println("Could not partition the CSV by date, date range searches scan every row: "
+                        + e.getMessage());
+            }
         }
+        scanPartitions = new ScanPartitions(scanner, partitions);
+        return partitions;
+    }
 
-        // Gender
-        if (genders != null && !genders.isEmpty()) {
-            if (!genders.contains(record.getGender())) return false;
+    // Line-aligned ranges of about segment-rows rows each with the row count before each,
+    // found by one counting pass per file. A file under the parallel threshold is one range.
+    private List<MappedCsvScanner.Range> ranges(MappedCsvScanner scanner) throws IOException {
+        ScanRanges current = scanRanges;
+        if (current != null && current.scanner() == scanner) {
+            return current.ranges();
+        }
+        long rows = scanner.estimatedRows();
+        if (!segmentedScan.parallel(rows)) {
+            return List.of(scanner.all());
         }
+        List<MappedCsvScanner.Range> split = scanner.split(scanner.dataBytes() / Math.max(1, rows) * segmentedScan.segmentRows());
+        List<Long> counts = segmentedScan.parts(split.size(), true, i -> scanner.scan(split.get(i), row -> true));
+        List<MappedCsvScanner.Range> ranges = new ArrayList<>(split.size());
+        long recordsBefore = 0;
+        for (int i = 0; i < split.size(); i++) {
+            ranges.add(new MappedCsvScanner.Range(split.get(i).start(), split.get(i).end(), recordsBefore));
+            recordsBefore += counts.get(i);
+        }
+        scanRanges = new ScanRanges(scanner, ranges);
+        return ranges;
+    }
 
-        // Age range
-        if (minAge != null && record.getAge() != null && record.getAge() < minAge) return false;
-        if (maxAge != null && record.getAge() != null && record.getAge() > maxAge) return false;
+    // Only the rows that make the page are turned into entities, read again by file position
+    private SaleRecord materialize(MappedCsvScanner scanner, RankedRow ranked) throws IOException {
+        MappedCsvScanner.Row row = scanner.readRow(ranked.position(), ranked.sequence());
+        SaleRecord sale = mapFields(row::get);
+        // Same id the resident store assigns, so cursors work across both paths
+        sale.setId(ranked.sequence());
+        return sale;
+    }
 
-        // Product Category
-        if (productCategories != null && !productCategories.isEmpty()) {
-            if (!productCategories.contains(record.getProductCategory())) return false;
+    // Same values mapFields and materialize would put in a SaleRecord, without building one
+    private void writeExportRow(SalesExportWriter writer, MappedCsvScanner.Row row, int[] columns) throws IOException {
+        writer.beginRow();
+        writer.number(row.recordNumber());
+        for (int i = 0; i < columns.length; i++) {
+            String value = row.string(columns[i]);
+            switch (EXPORT_COLUMNS[i]) {
+                case "Date" -> writer.date(LocalDate.parse(value));
+                case "Age", "Quantity" -> writer.number(parseInt(value));
+                case "Price per Unit", "Discount Percentage", "Total Amount", "Final Amount" ->
+                        writer.number(parseDouble(value));
+                default -> writer.text(value);
+            }
         }
+        writer.endRow();
+    }
 
-        // Tags
-        if (tags != null && !tags.isEmpty()) {
-            if (record.getTags() == null) return false;
-            boolean hasAnyTag = tags.stream().anyMatch(tag -> record.getTags().contains(tag));
-            if (!hasAnyTag) return false;
+    InputStreamReader openCsvReader() throws Exception {
+        return new InputStreamReader(openCsvStream(), StandardCharsets.UTF_8);
+    }
+
+    InputStream openCsvStream() throws Exception {
+        var resource = new ClassPathResource("sales_data.csv");
+
+        if (resource.exists()) {
+            System.out.println("Streaming CSV from classpath");
+            return resource.getInputStream();
         }
 
-        // Payment Method
-        if (paymentMethods != null && !paymentMethods.isEmpty()) {
-            if (!paymentMethods.contains(record.getPaymentMethod())) return false;
+        if (remoteCsvSource.isConfigured()) {
+            Path file = remoteCsvSource.awaitFile();
+            System.out.println("CSV not in classpath, streaming the copy of " + remoteCsvSource.url() + " at " + file);
+            return new BufferedInputStream(Files.newInputStream(file));
         }
 
-        // Date range
-        if (startDate != null && record.getDate().isBefore(startDate)) return false;
-        if (endDate != null && record.getDate().isAfter(endDate)) return false;
+        throw new IllegalStateException("CSV file not found in classpath and no CSV URL provided");
+    }
+
+    SaleRecord mapCsvRecord(CSVRecord csvRecord) {
+        return mapFields(csvRecord::get);
+    }
+
+    private SaleRecord mapFields(Function<String, String> csvRecord) {
+        SaleRecord sale = new SaleRecord();
+        sale.setTransactionId(csvRecord.apply("Transaction ID"));
+        sale.setDate(LocalDate.parse(csvRecord.apply("Date")));
+        sale.setCustomerId(csvRecord.apply("Customer ID"));
+        sale.setCustomerName(csvRecord.apply("Customer Name"));
+        sale.setPhoneNumber(csvRecord.apply("Phone Number"));
+        sale.setGender(repeated(csvRecord, "Gender"));
+        sale.setAge(parseInt(csvRecord.apply("Age")));
+        sale.setCustomerRegion(repeated(csvRecord, "Customer Region"));
+        sale.setCustomerType(repeated(csvRecord, "Customer Type"));
+        sale.setProductId(csvRecord.apply("Product ID"));
+        sale.setProductName(csvRecord.apply("Product Name"));
+        sale.setBrand(repeated(csvRecord, "Brand"));
+        sale.setProductCategory(repeated(csvRecord, "Product Category"));
+        sale.setTags(csvRecord.apply("Tags"));
+        sale.setQuantity(parseInt(csvRecord.apply("Quantity")));
+        sale.setPricePerUnit(parseDouble(csvRecord.apply("Price per Unit")));
+        sale.setDiscountPercentage(parseDouble(csvRecord.apply("Discount Percentage")));
+        sale.setTotalAmount(parseDouble(csvRecord.apply("Total Amount")));
+        sale.setFinalAmount(parseDouble(csvRecord.apply("Final Amount")));
+        sale.setPaymentMethod(repeated(csvRecord, "Payment Method"));
+        sale.setOrderStatus(repeated(csvRecord, "Order Status"));
+        sale.setDeliveryType(repeated(csvRecord, "Delivery Type"));
+        sale.setStoreId(csvRecord.apply("Store ID"));
+        sale.setStoreLocation(repeated(csvRecord, "Store Location"));
+        sale.setSalespersonId(csvRecord.apply("Salesperson ID"));
+        sale.setEmployeeName(repeated(csvRecord, "Employee Name"));
+        return sale;
+    }
+
+    // Shared instance of a value from a column with few distinct values
+    private String repeated(Function<String, String> csvRecord, String column) {
+        return interners.computeIfAbsent(column, name -> new ValueInterner(MAX_INTERNED_VALUES))
+                .intern(csvRecord.apply(column));
+    }
+
+    // Sort key, then file position; both follow the sort direction so results are stable
+    // across requests and line up with keyset cursors
+    private Comparator<RankedRow> resultOrder(String sortBy, String sortDirection) {
+        Comparator<RankedRow> byKey = "customerName".equals(SeekCursor.normalizeSortBy(sortBy))
+                ? Comparator.comparing(RankedRow::text)
+                : Comparator.comparingLong(RankedRow::key);
+        Comparator<RankedRow> order = byKey.thenComparingLong(RankedRow::sequence);
+        return "asc".equalsIgnoreCase(sortDirection) ? order : order.reversed();
+    }
+
+    private interface RangeScan<T> {
+        T scan(ScanPart part) throws Exception;
+    }
 
-        return true;
+    // A file range or a partition slice; visits its rows and returns how many it visited
+    private interface ScanPart {
+        long scan(MappedCsvScanner.RowVisitor visitor) throws IOException;
     }
 
+    private record ScanPlan(List<ScanPart> parts, boolean parallel) {}
+
+    // Best or all matches of one range, in any order, and how many rows matched there
+    private record RangeMatches(List<RankedRow> ranked, long matches, long rows) {}
+
+    // Ranges and column sample computed for one scanner, dropped with it
+    private record ScanRanges(MappedCsvScanner scanner, List<MappedCsvScanner.Range> ranges) {}
+
+    private record ScannerStats(MappedCsvScanner scanner, ColumnStats stats) {}
+
+    private record ScanPartitions(MappedCsvScanner scanner, CsvPartitions partitions) {}
+
+    // A matching row reduced to what ordering needs: the numeric (date, quantity) or text
+    // (customer name) sort key, its record number and where it starts in the file
+    private record RankedRow(long key, String text, long sequence, long position) {}
+
+    private static final class SortKey {
+        private final String field;
+        private final int column;
+
+        SortKey(MappedCsvScanner scanner, String sortBy) {
+            field = SeekCursor.normalizeSortBy(sortBy);
+            column = scanner.column(switch (field) {
+                case "quantity" -> "Quantity";
+                case "customerName" -> "Customer Name";
+                default -> "Date";
+            });
+        }
+
+        RankedRow rank(MappedCsvScanner.Row row) {
+            return switch (field) {
+                // Missing quantities order first, like nulls on the other paths
+                case "quantity" -> new RankedRow(row.intValue(column, Integer.MIN_VALUE), null,
+                        row.recordNumber(), row.position());
+                case "customerName" -> new RankedRow(0, row.string(column), row.recordNumber(), row.position());
+                default -> new RankedRow(row.epochDay(column), null, row.recordNumber(), row.position());
+            };
+        }
+
+        RankedRow cursorPosition(SeekCursor cursor) {
+            String key = cursor.key();
+            return switch (field) {
+                case "quantity" -> new RankedRow(key != null ? Integer.parseInt(key) : Integer.MIN_VALUE, null,
+                        cursor.id(), -1);
+                case "customerName" -> new RankedRow(0, key != null ? key : "", cursor.id(), -1);
+                default -> new RankedRow(key != null ? LocalDate.parse(key).toEpochDay() : Long.MIN_VALUE, null,
+                        cursor.id(), -1);
+            };
+        }
+    }
 
     private Integer parseInt(String value) {
         try {
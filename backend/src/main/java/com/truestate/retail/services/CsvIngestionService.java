@@ -0,0 +1,379 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.models.SaleRecordTag;
+import com.truestate.retail.models.SaleTag;
+import jakarta.persistence.EntityManager;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Loads the CSV into the database in three stages joined by bounded queues: one reader
+// cuts the file into byte chunks that end on a line boundary, a pool of parsers turns
+// chunks into SaleRecord batches, and one writer persists each batch in its own
+// transaction so Hibernate sends it as JDBC batches. A full queue blocks the stage that
+// feeds it, so only a few chunks and batches are ever held in memory.
+// Chunks are numbered as they are cut and the writer persists their batches in that order, so
+// ids follow the file like the rows of the resident dataset and equal sort keys tie the same
+// way on both. The reader holds a permit per unwritten chunk, which bounds the batches that
+// arrive early and wait for an earlier chunk.
+// Chunks are cut at newlines, which assumes quoted fields never contain line breaks.
+@Service
+public class CsvIngestionService {
+
+    private static final Chunk NO_MORE_CHUNKS = new Chunk(-1, new byte[0], 0);
+    private static final Batch NO_MORE_BATCHES = new Batch(-1, true, List.of());
+    private static final int HEADER_READ_BYTES = 64 * 1024;
+
+    private final CsvFallbackService csvFallbackService;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // 0 = one parser per core, leaving one core for the reader and writer
+    @Value("${csv.ingest.parsers:0}")
+    private int parserThreads;
+
+    @Value("${csv.ingest.chunk-bytes:4194304}")
+    private int chunkBytes;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}")
+    private int batchSize;
+
+    // Capacity of each queue, in chunks (reader -> parsers) and batches (parsers -> writer)
+    @Value("${csv.ingest.queue-capacity:4}")
+    private int queueCapacity;
+
+    private volatile boolean running;
+    private volatile Map<String, Object> lastReport = Map.of("ran", false);
+    // Tag name -> sale_tags id, assigned as tags first appear; only touched while ingest() or append() runs
+    private final Map<String, Integer> tagIds = new HashMap<>();
+
+    public CsvIngestionService(CsvFallbackService csvFallbackService, EntityManager entityManager,
+                               PlatformTransactionManager transactionManager,
+                               ApplicationEventPublisher eventPublisher) {
+        this.csvFallbackService = csvFallbackService;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public Map<String, Object> getLastReport() {
+        return lastReport;
+    }
+
+    public synchronized Map<String, Object> ingest() throws Exception {
+        int parsers = parserThreads > 0 ? parserThreads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        long startNanos = System.nanoTime();
+        AtomicLong peakHeap = new AtomicLong(usedHeap());
+        AtomicInteger chunkCount = new AtomicInteger();
+
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(queueCapacity);
+        // Chunks queued, being parsed or waiting to be written; each queue can fill behind them
+        Semaphore unwritten = new Semaphore(parsers + 2 * queueCapacity);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parsers + 2, runnable -> {
+            Thread thread = new Thread(runnable, "csv-ingest-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<Long> stages = new ExecutorCompletionService<>(pool);
+
+        running = true;
+        tagIds.clear();
+        long rows = 0;
+        try {
+            Path file = csvFallbackService.awaitLocalCsvFile();
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                Header header = readHeader(channel);
+                CSVFormat format = CSVFormat.DEFAULT.withHeader(header.names());
+
+                stages.submit(() -> readChunks(channel, header.end(), chunks, parsers, unwritten, chunkCount,
+                        peakHeap));
+                for (int i = 0; i < parsers; i++) {
+                    stages.submit(() -> parseChunks(format, chunks, batches));
+                }
+                stages.submit(() -> writeBatches(batches, parsers, unwritten, peakHeap));
+
+                // Fail fast: a dead stage would otherwise leave its neighbours blocked on a queue
+                for (int finished = 0; finished < parsers + 2; finished++) {
+                    try {
+                        long result = stages.take().get();
+                        if (result > rows) {
+                            rows = result;
+                        }
+                    } catch (ExecutionException e) {
+                        discardPartialLoad(pool);
+                        throw e.getCause() instanceof Exception cause ? cause : e;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            running = false;
+        }
+
+        long elapsedMs = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("ran", true);
+        report.put("rows", rows);
+        report.put("chunks", chunkCount.get());
+        report.put("parserThreads", parsers);
+        report.put("batchSize", batchSize);
+        report.put("loadMillis", elapsedMs);
+        report.put("rowsPerSecond", rows * 1000 / elapsedMs);
+        // Sampled after every chunk read and every batch written
+        report.put("peakHeapBytes", peakHeap.get());
+        report.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        lastReport = report;
+
+        System.out.println("CSV ingestion finished: " + rows + " rows in " + elapsedMs + " ms ("
+                + report.get("rowsPerSecond") + " rows/s), peak heap " + (peakHeap.get() >> 20) + " MB");
+        eventPublisher.publishEvent(new SalesDataChangedEvent("database"));
+        return report;
+    }
+
+    // Persists sales added after the load in one transaction, tags included, and returns once
+    // it has committed. Callers publish the data change event.
+    public synchronized void append(List<SaleRecord> sales) {
+        if (tagIds.isEmpty()) {
+            // Loaded by an earlier run of the application, so the ids were never seen here
+            for (SaleTag tag : entityManager.createQuery("SELECT t FROM SaleTag t", SaleTag.class).getResultList()) {
+                tagIds.put(tag.getName(), tag.getId());
+            }
+        }
+        Map<String, Integer> known = new HashMap<>(tagIds);
+        try {
+            persistBatch(sales);
+        } catch (RuntimeException e) {
+            // Ids handed out in the rolled back transaction were never written
+            tagIds.clear();
+            tagIds.putAll(known);
+            throw e;
+        }
+    }
+
+    // Batches already committed would otherwise be served as if they were the whole dataset
+    private void discardPartialLoad(ExecutorService pool) throws InterruptedException {
+        pool.shutdownNow();
+        pool.awaitTermination(30, TimeUnit.SECONDS);
+        tagIds.clear();
+        transactionTemplate.executeWithoutResult(status -> {
+            entityManager.createQuery("DELETE FROM SaleRecordTag").executeUpdate();
+            entityManager.createQuery("DELETE FROM SaleTag").executeUpdate();
+            entityManager.createQuery("DELETE FROM SaleRecord").executeUpdate();
+        });
+    }
+
+    // Reader stage: numbered chunks of roughly chunkBytes, each ending right after a newline
+    private long readChunks(FileChannel channel, long start, BlockingQueue<Chunk> chunks, int parsers,
+                            Semaphore unwritten, AtomicInteger chunkCount, AtomicLong peakHeap) throws Exception {
+        long size = channel.size();
+        long position = start;
+        while (position < size) {
+            unwritten.acquire();
+            int wanted = chunkBytes;
+            while (true) {
+                int length = (int) Math.min(wanted, size - position);
+                byte[] bytes = new byte[length];
+                readFully(channel, bytes, position);
+
+                int end = position + length == size ? length : lastNewline(bytes, length) + 1;
+                if (end > 0) {
+                    chunks.put(new Chunk(chunkCount.getAndIncrement(), bytes, end));
+                    position += end;
+                    break;
+                }
+                // A single line longer than the chunk; retry with a larger window
+                wanted *= 2;
+            }
+            peakHeap.accumulateAndGet(usedHeap(), Math::max);
+        }
+        for (int i = 0; i < parsers; i++) {
+            chunks.put(NO_MORE_CHUNKS);
+        }
+        return 0;
+    }
+
+    // Parser stage: maps rows exactly like the streaming fallback and hands over full batches,
+    // each tagged with its chunk; the chunk's last batch, possibly short or empty, is marked
+    private long parseChunks(CSVFormat format, BlockingQueue<Chunk> chunks,
+                             BlockingQueue<Batch> batches) throws Exception {
+        while (true) {
+            Chunk chunk = chunks.take();
+            if (chunk == NO_MORE_CHUNKS) {
+                break;
+            }
+            List<SaleRecord> batch = new ArrayList<>(batchSize);
+            var input = new ByteArrayInputStream(chunk.bytes(), 0, chunk.length());
+            try (CSVParser parser = new CSVParser(new InputStreamReader(input, StandardCharsets.UTF_8), format)) {
+                for (CSVRecord csvRecord : parser) {
+                    batch.add(csvFallbackService.mapCsvRecord(csvRecord));
+                    if (batch.size() == batchSize) {
+                        batches.put(new Batch(chunk.number(), false, batch));
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            }
+            batches.put(new Batch(chunk.number(), true, batch));
+        }
+        batches.put(NO_MORE_BATCHES);
+        return 0;
+    }
+
+    // Writer stage: one transaction per batch; ids come from a pooled sequence so inserts can be batched.
+    // Batches are persisted in chunk order; those of later chunks wait until every earlier chunk is written.
+    // Each sale's tags are written to sale_record_tags, with tag ids assigned here as tags first appear.
+    private long writeBatches(BlockingQueue<Batch> batches, int parsers, Semaphore unwritten, AtomicLong peakHeap)
+            throws Exception {
+        long written = 0;
+        int finishedParsers = 0;
+        int nextChunk = 0;
+        Map<Integer, ArrayDeque<Batch>> early = new HashMap<>();
+        while (finishedParsers < parsers) {
+            Batch batch = batches.take();
+            if (batch == NO_MORE_BATCHES) {
+                finishedParsers++;
+                continue;
+            }
+            early.computeIfAbsent(batch.chunk(), chunk -> new ArrayDeque<>()).add(batch);
+            ArrayDeque<Batch> ready;
+            while ((ready = early.get(nextChunk)) != null && !ready.isEmpty()) {
+                Batch next = ready.poll();
+                if (!next.sales().isEmpty()) {
+                    persistBatch(next.sales());
+                    written += next.sales().size();
+                    peakHeap.accumulateAndGet(usedHeap(), Math::max);
+                }
+                if (next.last()) {
+                    early.remove(nextChunk++);
+                    unwritten.release();
+                }
+            }
+        }
+        return written;
+    }
+
+    private void persistBatch(List<SaleRecord> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (SaleRecord sale : batch) {
+                entityManager.persist(sale);
+                for (String tag : tagNames(sale.getTags())) {
+                    Integer tagId = tagIds.get(tag);
+                    if (tagId == null) {
+                        tagId = tagIds.size() + 1;
+                        tagIds.put(tag, tagId);
+                        entityManager.persist(new SaleTag(tagId, tag));
+                    }
+                    entityManager.persist(new SaleRecordTag(sale.getId(), tagId));
+                }
+            }
+        });
+    }
+
+    // Split like the resident bitmap index: trimmed, empty entries dropped, each tag once
+    private static Set<String> tagNames(String tags) {
+        Set<String> names = new LinkedHashSet<>();
+        if (tags != null) {
+            for (String tag : tags.split(",")) {
+                String trimmed = tag.trim();
+                if (!trimmed.isEmpty()) {
+                    names.add(trimmed);
+                }
+            }
+        }
+        return names;
+    }
+
+    private static Header readHeader(FileChannel channel) throws IOException {
+        byte[] bytes = new byte[(int) Math.min(HEADER_READ_BYTES, channel.size())];
+        readFully(channel, bytes, 0);
+        int newline = indexOf(bytes, (byte) '\n');
+        if (newline < 0) {
+            throw new IllegalStateException("CSV header line not found");
+        }
+        String line = new String(bytes, 0, newline, StandardCharsets.UTF_8).strip();
+        try (CSVParser parser = CSVParser.parse(line, CSVFormat.DEFAULT)) {
+            List<String> names = parser.getRecords().get(0).toList();
+            return new Header(names.toArray(String[]::new), newline + 1);
+        }
+    }
+
+    private static void readFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of CSV file");
+            }
+        }
+    }
+
+    private static int lastNewline(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private record Chunk(int number, byte[] bytes, int length) {}
+
+    // Sales parsed from chunk `chunk`, in file order; `last` marks the chunk's final batch
+    private record Batch(int chunk, boolean last, List<SaleRecord> sales) {}
+
+    private record Header(String[] names, long end) {}
+}
@@ -0,0 +1,142 @@
+package com.truestate.retail.services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Where the rows of a CSV file start, grouped into the calendar periods DatePartitions uses,
+// with a zone map per partition. Built by one pass over the file; a date range search then
+// re-reads only the rows of the partitions whose zone maps overlap its windows, by position,
+// instead of streaming the whole file. About 12 bytes per row.
+final class CsvPartitions {
+
+    private final ZoneMap[] zones;
+    // File positions and record numbers of each partition's rows, in file order
+    private final long[][] positions;
+    private final int[][] recordNumbers;
+    private final long rows;
+
+    private CsvPartitions(ZoneMap[] zones, long[][] positions, int[][] recordNumbers, long rows) {
+        this.zones = zones;
+        this.positions = positions;
+        this.recordNumbers = recordNumbers;
+        this.rows = rows;
+    }
+
+    // Partitions every row of `ranges` (their record numbers already global). Throws like the
+    // record mapper when a date does not parse.
+    static CsvPartitions build(MappedCsvScanner scanner, List<MappedCsvScanner.Range> ranges, int months,
+                               SegmentedScan segmentedScan) throws IOException {
+        int dateColumn = scanner.column("Date");
+        int ageColumn = scanner.column("Age");
+        List<Map<Integer, Builder>> perRange = segmentedScan.parts(ranges.size(), ranges.size() > 1, i -> {
+            Map<Integer, Builder> partitions = new HashMap<>();
+            scanner.scan(ranges.get(i), row -> {
+                int day = row.epochDay(dateColumn);
+                partitions.computeIfAbsent(DatePartitions.key(day, months), key -> new Builder())
+                        .add(row.position(), row.recordNumber(), day, row.intValue(ageColumn, ColumnarSaleStore.MISSING_INT));
+                return true;
+            });
+            return partitions;
+        });
+
+        // Each partition's rows joined in range order, so they stay in file order
+        TreeMap<Integer, List<Builder>> byKey = new TreeMap<>();
+        for (Map<Integer, Builder> partitions : perRange) {
+            partitions.forEach((key, builder) -> byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(builder));
+        }
+        ZoneMap[] zones = new ZoneMap[byKey.size()];
+        long[][] positions = new long[byKey.size()][];
+        int[][] recordNumbers = new int[byKey.size()][];
+        long rows = 0;
+        int index = 0;
+        for (List<Builder> parts : byKey.values()) {
+            int count = 0;
+            for (Builder part : parts) {
+                count += part.count;
+            }
+            ZoneMap.Builder zone = new ZoneMap.Builder();
+            positions[index] = new long[count];
+            recordNumbers[index] = new int[count];
+            int offset = 0;
+            for (Builder part : parts) {
+                System.arraycopy(part.positions, 0, positions[index], offset, part.count);
+                System.arraycopy(part.recordNumbers, 0, recordNumbers[index], offset, part.count);
+                offset += part.count;
+                zone.add(part.zone.build());
+            }
+            zones[index++] = zone.build();
+            rows += count;
+        }
+        return new CsvPartitions(zones, positions, recordNumbers, rows);
+    }
+
+    // Slices of at most unitRows rows of the partitions whose zone maps overlap the date and
+    // age windows of the criteria, in partition order
+    List<Unit> units(SaleRecordSpecification.SearchCriteria criteria, int unitRows) {
+        int startDay = criteria.startDate() != null ? (int) criteria.startDate().toEpochDay() : Integer.MIN_VALUE;
+        int endDay = criteria.endDate() != null ? (int) criteria.endDate().toEpochDay() : Integer.MAX_VALUE;
+        int minAge = criteria.minAge() != null ? criteria.minAge() : Integer.MIN_VALUE;
+        int maxAge = criteria.maxAge() != null ? criteria.maxAge() : Integer.MAX_VALUE;
+        List<Unit> units = new ArrayList<>();
+        for (int i = 0; i < zones.length; i++) {
+            if (!zones[i].overlaps(startDay, endDay, minAge, maxAge)) {
+                continue;
+            }
+            for (int from = 0; from < positions[i].length; from += unitRows) {
+                units.add(new Unit(positions[i], recordNumbers[i], from, Math.min(from + unitRows, positions[i].length)));
+            }
+        }
+        return units;
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    int partitionCount() {
+        return zones.length;
+    }
+
+    static long rows(List<Unit> units) {
+        long total = 0;
+        for (Unit unit : units) {
+            total += unit.to() - unit.from();
+        }
+        return total;
+    }
+
+    // Rows from .. to - 1 of one partition
+    record Unit(long[] positions, int[] recordNumbers, int from, int to) {
+
+        long scan(MappedCsvScanner scanner, MappedCsvScanner.RowVisitor visitor) throws IOException {
+            try (MappedCsvScanner.RowReader reader = scanner.reader()) {
+                return reader.scan(positions, recordNumbers, from, to, visitor);
+            }
+        }
+    }
+
+    // Rows of one partition found in one range
+    private static final class Builder {
+
+        private long[] positions = new long[64];
+        private int[] recordNumbers = new int[64];
+        private int count;
+        private final ZoneMap.Builder zone = new ZoneMap.Builder();
+
+        void add(long position, long recordNumber, int day, int age) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                recordNumbers = Arrays.copyOf(recordNumbers, count * 2);
+            }
+            positions[count] = position;
+            recordNumbers[count] = (int) recordNumber;
+            count++;
+            zone.add(day, age);
+        }
+    }
+}
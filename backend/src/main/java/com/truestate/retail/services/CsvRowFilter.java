@@ -0,0 +1,174 @@
+package com.truestate.retail.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// The streaming filter evaluated on raw CSV bytes, compiled once per request into a chain
+// holding only the filters that are set. Multi-select values are encoded to UTF-8 up front
+// and compared against the field bytes, age/date bounds are checked on numbers parsed in
+// place, and the chain is ordered by estimated pass rate and cost from the column sample,
+// so most rows are rejected by the first test and never become Strings.
+final class CsvRowFilter {
+
+    // Relative per-row cost of each kind of test
+    private static final double EQUALS_COST = 1.0;
+    private static final double RANGE_COST = 1.5;
+    private static final double CONTAINS_COST = 3.0;
+    private static final double TEXT_COST = 6.0;
+
+    private final RowPredicate[] chain;
+
+    CsvRowFilter(MappedCsvScanner scanner, SaleRecordSpecification.SearchCriteria criteria, ColumnStats stats) {
+        List<Step> steps = new ArrayList<>();
+
+        addOneOf(steps, scanner.column("Customer Region"), criteria.customerRegions(), stats, ColumnStats.Column.REGION);
+        addOneOf(steps, scanner.column("Gender"), criteria.genders(), stats, ColumnStats.Column.GENDER);
+        addOneOf(steps, scanner.column("Product Category"), criteria.productCategories(), stats, ColumnStats.Column.CATEGORY);
+        addOneOf(steps, scanner.column("Payment Method"), criteria.paymentMethods(), stats, ColumnStats.Column.PAYMENT_METHOD);
+
+        if (criteria.minAge() != null || criteria.maxAge() != null) {
+            int minAge = criteria.minAge() != null ? criteria.minAge() : Integer.MIN_VALUE;
+            int maxAge = criteria.maxAge() != null ? criteria.maxAge() : Integer.MAX_VALUE;
+            steps.add(new Step(new AgeRange(scanner.column("Age"), minAge, maxAge),
+                    ColumnStats.rank(stats.ageRate(minAge, maxAge), RANGE_COST)));
+        }
+
+        if (criteria.startDate() != null || criteria.endDate() != null) {
+            int startDay = criteria.startDate() != null ? (int) criteria.startDate().toEpochDay() : Integer.MIN_VALUE;
+            int endDay = criteria.endDate() != null ? (int) criteria.endDate().toEpochDay() : Integer.MAX_VALUE;
+            steps.add(new Step(new DayRange(scanner.column("Date"), startDay, endDay),
+                    ColumnStats.rank(stats.dayRate(startDay, endDay), RANGE_COST)));
+        }
+
+        List<String> tagNames = SaleRecordSpecification.requestedTags(criteria.tags());
+        if (tagNames != null) {
+            byte[][] tags = needles(tagNames);
+            steps.add(new Step(new AnyTag(scanner.column("Tags"), tags),
+                    ColumnStats.rank(stats.tagRate(tagNames), CONTAINS_COST * tags.length)));
+        }
+
+        String query = criteria.query();
+        if (query != null && !query.isBlank()) {
+            String lowerQuery = query.toLowerCase();
+            steps.add(new Step(new TextMatch(scanner.column("Customer Name"), scanner.column("Phone Number"),
+                    lowerQuery, query), ColumnStats.rank(stats.textRate(lowerQuery, query), TEXT_COST)));
+        }
+
+        // Stable, so equal ranks keep the order above
+        steps.sort(Comparator.comparingDouble(Step::rank));
+        chain = steps.stream().map(Step::predicate).toArray(RowPredicate[]::new);
+    }
+
+    boolean matches(MappedCsvScanner.Row row) {
+        for (RowPredicate predicate : chain) {
+            if (!predicate.test(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addOneOf(List<Step> steps, int column, List<String> values, ColumnStats stats,
+                                 ColumnStats.Column statsColumn) {
+        byte[][] needles = needles(values);
+        if (needles == null) {
+            return;
+        }
+        RowPredicate predicate = needles.length == 1 ? new Equals(column, needles[0]) : new OneOf(column, needles);
+        steps.add(new Step(predicate, ColumnStats.rank(stats.inRate(statsColumn, values), EQUALS_COST * needles.length)));
+    }
+
+    // Distinct non-null values as UTF-8; null when the filter is not set
+    private static byte[][] needles(List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        List<byte[]> needles = new ArrayList<>(values.size());
+        List<String> seen = new ArrayList<>(values.size());
+        for (String value : values) {
+            if (value != null && !seen.contains(value)) {
+                seen.add(value);
+                needles.add(value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return needles.toArray(byte[][]::new);
+    }
+
+    private record Step(RowPredicate predicate, double rank) {}
+
+    private interface RowPredicate {
+        boolean test(MappedCsvScanner.Row row);
+    }
+
+    private record Equals(int column, byte[] value) implements RowPredicate {
+        @Override
+        public boolean test(MappedCsvScanner.Row row) {
+            return row.equalsBytes(column, value);
+        }
+    }
+
+    private record OneOf(int column, byte[][] values) implements RowPredicate {
+        @Override
+        public boolean test(MappedCsvScanner.Row row) {
+            return row.equalsAny(column, values);
+        }
+    }
+
+    // Rows without a parseable age pass, like the other paths
+    private record AgeRange(int column, int minAge, int maxAge) implements RowPredicate {
+        @Override
+        public boolean test(MappedCsvScanner.Row row) {
+            int age = row.intValue(column, ColumnarSaleStore.MISSING_INT);
+            return age == ColumnarSaleStore.MISSING_INT || (age >= minAge && age <= maxAge);
+        }
+    }
+
+    private record DayRange(int column, int startDay, int endDay) implements RowPredicate {
+        @Override
+        public boolean test(MappedCsvScanner.Row row) {
+            int day = row.epochDay(column);
+            return day >= startDay && day <= endDay;
+        }
+    }
+
+    // One of the row's comma-separated tags is one of the requested names
+    private record AnyTag(int column, byte[][] tags) implements RowPredicate {
+        @Override
+        public boolean test(MappedCsvScanner.Row row) {
+            for (byte[] tag : tags) {
+                if (row.hasItem(column, tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Case-insensitive on the name, as typed on the phone number
+    private static final class TextMatch implements RowPredicate {
+
+        private final int nameColumn;
+        private final int phoneColumn;
+        private final String lowerQuery;
+        private final byte[] lowerQueryBytes;
+        private final boolean asciiQuery;
+        private final byte[] queryBytes;
+
+        TextMatch(int nameColumn, int phoneColumn, String lowerQuery, String query) {
+            this.nameColumn = nameColumn;
+            this.phoneColumn = phoneColumn;
+            this.lowerQuery = lowerQuery;
+            this.lowerQueryBytes = lowerQuery.getBytes(StandardCharsets.UTF_8);
+            this.asciiQuery = MappedCsvScanner.isAscii(lowerQueryBytes);
+            this.queryBytes = query.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public boolean test(MappedCsvScanner.Row row) {
+            return row.containsIgnoreCase(nameColumn, lowerQueryBytes, lowerQuery, asciiQuery)
+                    || row.contains(phoneColumn, queryBytes);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.truestate.retail.services;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// The remote CSV has no local copy yet; requests answer 503 instead of waiting on the download
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class CsvSourceUnavailableException extends RuntimeException {
+
+    public CsvSourceUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,6 @@
+package com.truestate.retail.services;
+
+import java.util.List;
+
+// Keyset page: no total count, just the rows and where to continue from
+public record CursorPage<T>(List<T> content, int size, boolean hasNext, String nextCursor) {}
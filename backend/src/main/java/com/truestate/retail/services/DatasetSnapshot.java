@@ -0,0 +1,421 @@
+package com.truestate.retail.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+// Binary copy of a ColumnarSaleStore so a restart can skip CSV parsing. Layout, all
+// little-endian: magic, format version, source fingerprint, row count, the int and
+// double columns as raw arrays, then every dictionary/string column as its distinct
+// values (one UTF-8 blob plus offsets) followed by one code per row, 1 or 4 bytes wide,
+// and a CRC32C of everything before it. Reads go through memory-mapped windows and
+// bulk-copy straight into the arrays.
+final class DatasetSnapshot {
+
+    private static final int MAGIC = 0x52534E50; // "RSNP"
+    // Bump whenever the layout or the meaning of a column changes
+    private static final int VERSION = 2;
+    private static final int WINDOW_BYTES = 256 << 20;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private DatasetSnapshot() {
+    }
+
+    static void write(ColumnarSaleStore data, String fingerprint, Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Output out = new Output(FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            int rows = data.size();
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            byte[] fingerprintBytes = fingerprint.getBytes(StandardCharsets.UTF_8);
+            out.putInt(fingerprintBytes.length);
+            out.putBytes(fingerprintBytes, fingerprintBytes.length);
+            out.putInt(rows);
+
+            for (int[] column : new int[][] {data.dates, data.ages, data.quantities}) {
+                out.putInts(column, rows);
+            }
+            for (double[] column : new double[][] {data.pricePerUnit, data.discountPercentage,
+                    data.totalAmount, data.finalAmount}) {
+                out.putDoubles(column, rows);
+            }
+
+            for (StringDictionary dictionary : data.dictionaries()) {
+                List<String> values = new ArrayList<>(dictionary.size());
+                for (int code = 1; code < dictionary.size(); code++) {
+                    values.add(dictionary.decode(code));
+                }
+                writeValues(out, values);
+            }
+            for (CodeColumn codes : data.codeColumns()) {
+                int[] rowCodes = new int[rows];
+                for (int row = 0; row < rows; row++) {
+                    rowCodes[row] = codes.get(row);
+                }
+                writeCodes(out, rowCodes, rows);
+            }
+
+            for (String[] column : data.stringColumns()) {
+                writeStringColumn(out, column, rows);
+            }
+            out.finish();
+        }
+        // Readers never see a half-written file
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Null when the file is missing, from another format version, built from a different
+    // source, or corrupt; the caller then rebuilds from the CSV
+    static ColumnarSaleStore read(Path file, String fingerprint) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (!checksumMatches(channel)) {
+                System.out.println("Snapshot " + file + " failed its checksum, rebuilding from CSV");
+                return null;
+            }
+
+            Input in = new Input(channel, channel.size() - Long.BYTES);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                System.out.println("Snapshot " + file + " has an unknown format version, rebuilding from CSV");
+                return null;
+            }
+            int fingerprintLength = in.getInt();
+            String stored = new String(in.getBytes(fingerprintLength), StandardCharsets.UTF_8);
+            if (!stored.equals(fingerprint)) {
+                System.out.println("Snapshot " + file + " is stale (source CSV changed), rebuilding from CSV");
+                return null;
+            }
+
+            int rows = in.getInt();
+            ColumnarSaleStore data = new ColumnarSaleStore();
+            data.allocate(rows);
+
+            for (int[] column : new int[][] {data.dates, data.ages, data.quantities}) {
+                in.getInts(column, rows);
+            }
+            for (double[] column : new double[][] {data.pricePerUnit, data.discountPercentage,
+                    data.totalAmount, data.finalAmount}) {
+                in.getDoubles(column, rows);
+            }
+
+            StringDictionary[] dictionaries = data.dictionaries();
+            for (StringDictionary dictionary : dictionaries) {
+                for (String value : readValues(in).values()) {
+                    dictionary.encode(value);
+                }
+            }
+            CodeColumn[] codes = new CodeColumn[dictionaries.length];
+            for (int column = 0; column < codes.length; column++) {
+                codes[column] = readCodeColumn(in, rows);
+            }
+            data.restoreCodes(codes);
+
+            long stringBytes = 0;
+            for (String[] column : data.stringColumns()) {
+                stringBytes += readStringColumn(in, column, rows);
+            }
+            data.restored(rows, stringBytes);
+            return data;
+        }
+    }
+
+    // Free-form columns are dictionary-encoded too; repeated values (store and product ids,
+    // customer names) collapse to one String instance each when read back
+    private static void writeStringColumn(Output out, String[] column, int rows) throws IOException {
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> values = new ArrayList<>();
+        int[] rowCodes = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            String value = column[row];
+            if (value == null) {
+                continue;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                values.add(value);
+                code = values.size();
+                codes.put(value, code);
+            }
+            rowCodes[row] = code;
+        }
+        writeValues(out, values);
+        writeCodes(out, rowCodes, rows);
+    }
+
+    // Returns the estimated heap taken by the distinct strings, each counted once
+    private static long readStringColumn(Input in, String[] column, int rows) throws IOException {
+        Values values = readValues(in);
+        int[] rowCodes = readCodes(in, rows);
+        List<String> decoded = values.values();
+        for (int row = 0; row < rows; row++) {
+            int code = rowCodes[row];
+            column[row] = code == 0 ? null : decoded.get(code - 1);
+        }
+        return values.estimatedBytes();
+    }
+
+    private static void writeValues(Output out, List<String> values) throws IOException {
+        int[] offsets = new int[values.size() + 1];
+        List<byte[]> encoded = new ArrayList<>(values.size());
+        long total = 0;
+        for (int i = 0; i < values.size(); i++) {
+            byte[] bytes = values.get(i).getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            total += bytes.length;
+            if (total > Integer.MAX_VALUE) {
+                throw new IOException("Column too large for the snapshot format");
+            }
+            offsets[i + 1] = (int) total;
+        }
+        out.putInt(values.size());
+        out.putInts(offsets, offsets.length);
+        for (byte[] bytes : encoded) {
+            out.putBytes(bytes, bytes.length);
+        }
+    }
+
+    private static Values readValues(Input in) throws IOException {
+        int count = in.getInt();
+        int[] offsets = new int[count + 1];
+        in.getInts(offsets, offsets.length);
+        byte[] blob = in.getBytes(offsets[count]);
+        List<String> values = new ArrayList<>(count);
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            String value = new String(blob, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+            values.add(value);
+            bytes += MemoryFootprint.stringBytes(value);
+        }
+        return new Values(values, bytes);
+    }
+
+    private static void writeCodes(Output out, int[] codes, int rows) throws IOException {
+        int max = 0;
+        for (int row = 0; row < rows; row++) {
+            max = Math.max(max, codes[row]);
+        }
+        if (max <= 0xFF) {
+            out.putInt(1);
+            byte[] narrow = new byte[rows];
+            for (int row = 0; row < rows; row++) {
+                narrow[row] = (byte) codes[row];
+            }
+            out.putBytes(narrow, rows);
+        } else {
+            out.putInt(4);
+            out.putInts(codes, rows);
+        }
+    }
+
+    private static int[] readCodes(Input in, int rows) throws IOException {
+        int width = in.getInt();
+        int[] codes = new int[rows];
+        if (width == 1) {
+            byte[] narrow = in.getBytes(rows);
+            for (int row = 0; row < rows; row++) {
+                codes[row] = narrow[row] & 0xFF;
+            }
+        } else {
+            in.getInts(codes, rows);
+        }
+        return codes;
+    }
+
+    private static CodeColumn readCodeColumn(Input in, int rows) throws IOException {
+        int width = in.getInt();
+        if (width == 1) {
+            return CodeColumn.ofNarrow(in.getBytes(rows));
+        }
+        int[] codes = new int[rows];
+        in.getInts(codes, rows);
+        return CodeColumn.ofWide(codes);
+    }
+
+    private static boolean checksumMatches(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < Long.BYTES) {
+            return false;
+        }
+        long contentSize = size - Long.BYTES;
+        CRC32C crc = new CRC32C();
+        for (long position = 0; position < contentSize; position += WINDOW_BYTES) {
+            long length = Math.min(WINDOW_BYTES, contentSize - position);
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (trailer.hasRemaining()) {
+            if (channel.read(trailer, contentSize + trailer.position()) < 0) {
+                return false;
+            }
+        }
+        return trailer.getLong(0) == crc.getValue();
+    }
+
+    private record Values(List<String> values, long estimatedBytes) {}
+
+    // Buffered channel writer that checksums everything it writes
+    private static final class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C crc = new CRC32C();
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putInts(int[] values, int count) throws IOException {
+            int offset = 0;
+            while (offset < count) {
+                ensure(Integer.BYTES);
+                int length = Math.min(buffer.remaining() / Integer.BYTES, count - offset);
+                buffer.asIntBuffer().put(values, offset, length);
+                buffer.position(buffer.position() + length * Integer.BYTES);
+                offset += length;
+            }
+        }
+
+        void putDoubles(double[] values, int count) throws IOException {
+            int offset = 0;
+            while (offset < count) {
+                ensure(Double.BYTES);
+                int length = Math.min(buffer.remaining() / Double.BYTES, count - offset);
+                buffer.asDoubleBuffer().put(values, offset, length);
+                buffer.position(buffer.position() + length * Double.BYTES);
+                offset += length;
+            }
+        }
+
+        void putBytes(byte[] values, int count) throws IOException {
+            int offset = 0;
+            while (offset < count) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), count - offset);
+                buffer.put(values, offset, length);
+                offset += length;
+            }
+        }
+
+        void finish() throws IOException {
+            flush();
+            buffer.putLong(crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Sequential reader over consecutive read-only mappings of the file
+    private static final class Input {
+        private final FileChannel channel;
+        private final long limit;
+        private long base;
+        private MappedByteBuffer window;
+
+        Input(FileChannel channel, long limit) throws IOException {
+            this.channel = channel;
+            this.limit = limit;
+            this.window = map(0);
+        }
+
+        int getInt() throws IOException {
+            ensure(Integer.BYTES);
+            return window.getInt();
+        }
+
+        byte[] getBytes(int count) throws IOException {
+            byte[] bytes = new byte[count];
+            int offset = 0;
+            while (offset < count) {
+                ensure(1);
+                int length = Math.min(window.remaining(), count - offset);
+                window.get(bytes, offset, length);
+                offset += length;
+            }
+            return bytes;
+        }
+
+        void getInts(int[] target, int count) throws IOException {
+            int offset = 0;
+            while (offset < count) {
+                ensure(Integer.BYTES);
+                int length = Math.min(window.remaining() / Integer.BYTES, count - offset);
+                window.asIntBuffer().get(target, offset, length);
+                window.position(window.position() + length * Integer.BYTES);
+                offset += length;
+            }
+        }
+
+        void getDoubles(double[] target, int count) throws IOException {
+            int offset = 0;
+            while (offset < count) {
+                ensure(Double.BYTES);
+                int length = Math.min(window.remaining() / Double.BYTES, count - offset);
+                window.asDoubleBuffer().get(target, offset, length);
+                window.position(window.position() + length * Double.BYTES);
+                offset += length;
+            }
+        }
+
+        // Remaps so at least `bytes` are available, starting at the current position
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() >= bytes) {
+                return;
+            }
+            base += window.position();
+            if (limit - base < bytes) {
+                throw new IOException("Snapshot is truncated");
+            }
+            window = map(base);
+        }
+
+        private MappedByteBuffer map(long position) throws IOException {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(WINDOW_BYTES, limit - position));
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            return mapped;
+        }
+    }
+}
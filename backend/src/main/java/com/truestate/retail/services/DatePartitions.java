@@ -0,0 +1,138 @@
+package com.truestate.retail.services;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Row ids of the resident dataset grouped by calendar period of `months` months, with a zone
+// map per partition. A date range search visits only the partitions whose zone maps overlap
+// its windows, and leaves out the row checks where a partition lies entirely inside them.
+// Immutable: an append rebuilds just the partitions its rows fall into and shares the rest
+// with the previous state.
+final class DatePartitions {
+
+    private final int months;
+    // Ascending partition keys; rows without a date are under Integer.MIN_VALUE
+    private final int[] keys;
+    // Ascending row ids of each partition
+    private final int[][] rows;
+    private final ZoneMap[] zones;
+
+    private DatePartitions(int months, int[] keys, int[][] rows, ZoneMap[] zones) {
+        this.months = months;
+        this.keys = keys;
+        this.rows = rows;
+        this.zones = zones;
+    }
+
+    static DatePartitions build(ColumnarSaleStore data, int months) {
+        return new DatePartitions(months, new int[0], new int[0][], new ZoneMap[0]).appended(data, 0);
+    }
+
+    // Partition of an epoch day: consecutive periods of `months` calendar months
+    static int key(int day, int months) {
+        if (day == ColumnarSaleStore.MISSING_INT) {
+            return Integer.MIN_VALUE;
+        }
+        LocalDate date = LocalDate.ofEpochDay(day);
+        return Math.floorDiv(date.getYear() * 12 + date.getMonthValue() - 1, months);
+    }
+
+    // Adds rows fromRow .. data.size() - 1, which come after every row already partitioned
+    DatePartitions appended(ColumnarSaleStore data, int fromRow) {
+        int[] rowKeys = new int[data.size() - fromRow];
+        Map<Integer, Integer> added = new TreeMap<>();
+        for (int i = 0; i < rowKeys.length; i++) {
+            rowKeys[i] = key(data.dates[fromRow + i], months);
+            added.merge(rowKeys[i], 1, Integer::sum);
+        }
+
+        TreeMap<Integer, Integer> positions = new TreeMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            positions.put(keys[i], i);
+        }
+        for (Integer key : added.keySet()) {
+            positions.putIfAbsent(key, -1);
+        }
+        int[] nextKeys = new int[positions.size()];
+        int[][] nextRows = new int[positions.size()][];
+        ZoneMap[] nextZones = new ZoneMap[positions.size()];
+        int[] filled = new int[positions.size()];
+        int index = 0;
+        for (Map.Entry<Integer, Integer> entry : positions.entrySet()) {
+            int key = entry.getKey();
+            int previous = entry.getValue();
+            int[] existing = previous >= 0 ? rows[previous] : new int[0];
+            Integer count = added.get(key);
+            nextKeys[index] = key;
+            nextRows[index] = count != null ? Arrays.copyOf(existing, existing.length + count) : existing;
+            nextZones[index] = previous >= 0 ? zones[previous] : null;
+            filled[index] = existing.length;
+            index++;
+        }
+        for (int i = 0; i < rowKeys.length; i++) {
+            int partition = Arrays.binarySearch(nextKeys, rowKeys[i]);
+            nextRows[partition][filled[partition]++] = fromRow + i;
+        }
+
+        // Zone maps of the partitions that gained rows, widened by the new rows only
+        for (Integer key : added.keySet()) {
+            int partition = Arrays.binarySearch(nextKeys, key);
+            ZoneMap.Builder zone = new ZoneMap.Builder();
+            if (nextZones[partition] != null) {
+                zone.add(nextZones[partition]);
+            }
+            int[] partitionRows = nextRows[partition];
+            for (int i = partitionRows.length - added.get(key); i < partitionRows.length; i++) {
+                zone.add(data.dates[partitionRows[i]], data.ages[partitionRows[i]]);
+            }
+            nextZones[partition] = zone.build();
+        }
+        return new DatePartitions(months, nextKeys, nextRows, nextZones);
+    }
+
+    // Slices of at most unitRows rows of the partitions whose zone maps overlap the windows,
+    // in partition order. A slice needs its row checks unless the zone map shows every row
+    // passes them.
+    List<Unit> units(int startDay, int endDay, int fromAge, int toAge, int unitRows) {
+        List<Unit> units = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (!zones[i].overlaps(startDay, endDay, fromAge, toAge)) {
+                continue;
+            }
+            boolean rowChecks = !zones[i].within(startDay, endDay, fromAge, toAge);
+            for (int from = 0; from < rows[i].length; from += unitRows) {
+                units.add(new Unit(rows[i], from, Math.min(from + unitRows, rows[i].length), rowChecks));
+            }
+        }
+        return units;
+    }
+
+    int partitionCount() {
+        return keys.length;
+    }
+
+    long estimatedBytes() {
+        long bytes = MemoryFootprint.array(keys.length, 4)
+                + 2 * MemoryFootprint.array(keys.length, (int) MemoryFootprint.REFERENCE);
+        // Each partition's row ids and its zone map (header, four ints, a flag)
+        for (int[] partition : rows) {
+            bytes += MemoryFootprint.array(partition.length, 4) + MemoryFootprint.align(12 + 16 + 1);
+        }
+        return bytes;
+    }
+
+    static long rows(List<Unit> units) {
+        long total = 0;
+        for (Unit unit : units) {
+            total += unit.to() - unit.from();
+        }
+        return total;
+    }
+
+    // Positions from .. to - 1 of one partition's row ids
+    record Unit(int[] rows, int from, int to, boolean rowChecks) {}
+}
@@ -0,0 +1,34 @@
+package com.truestate.retail.services;
+
+// Output formats of the bulk export
+public enum ExportFormat {
+    // One JSON object per line, same fields and value formats as the search API
+    NDJSON("application/x-ndjson", "ndjson"),
+    // Header row with the same field names, then one line per sale
+    CSV("text/csv", "csv");
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public static ExportFormat parse(String value) {
+        for (ExportFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported export format: " + value);
+    }
+}
@@ -0,0 +1,211 @@
+package com.truestate.retail.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+// Single-pass facet counting. A row is counted for a dimension when it fails no filter other
+// than that dimension's own, so one pass over the rows that match the free-text query yields
+// every dimension's counts; a row failing two filters counts nowhere. Keys arrive as
+// dictionary codes, ages and epoch days so the counts are plain array slots; days are
+// folded into months only when the result is built.
+final class FacetAccumulator {
+
+    // The filter dimensions facets are counted for, in SalesFacets order
+    enum Dimension {
+        REGION, GENDER, CATEGORY, TAG, PAYMENT_METHOD, AGE, DATE;
+
+        boolean isSet(SaleRecordSpecification.SearchCriteria criteria) {
+            return switch (this) {
+                case REGION -> isSet(criteria.customerRegions());
+                case GENDER -> isSet(criteria.genders());
+                case CATEGORY -> isSet(criteria.productCategories());
+                case TAG -> isSet(criteria.tags());
+                case PAYMENT_METHOD -> isSet(criteria.paymentMethods());
+                case AGE -> criteria.minAge() != null || criteria.maxAge() != null;
+                case DATE -> criteria.startDate() != null || criteria.endDate() != null;
+            };
+        }
+
+        // The criteria with this dimension's filter cleared
+        SaleRecordSpecification.SearchCriteria without(SaleRecordSpecification.SearchCriteria criteria) {
+            return select(criteria, true, dimension -> dimension != this);
+        }
+
+        // Only this dimension's filter, without the free-text query
+        SaleRecordSpecification.SearchCriteria only(SaleRecordSpecification.SearchCriteria criteria) {
+            return select(criteria, false, dimension -> dimension == this);
+        }
+
+        private static boolean isSet(List<String> values) {
+            return values != null && !values.isEmpty();
+        }
+
+        private static SaleRecordSpecification.SearchCriteria select(SaleRecordSpecification.SearchCriteria criteria,
+                                                                     boolean query, Predicate<Dimension> keep) {
+            return new SaleRecordSpecification.SearchCriteria(
+                    query ? criteria.query() : null,
+                    keep.test(REGION) ? criteria.customerRegions() : null,
+                    keep.test(GENDER) ? criteria.genders() : null,
+                    keep.test(AGE) ? criteria.minAge() : null,
+                    keep.test(AGE) ? criteria.maxAge() : null,
+                    keep.test(CATEGORY) ? criteria.productCategories() : null,
+                    keep.test(TAG) ? criteria.tags() : null,
+                    keep.test(PAYMENT_METHOD) ? criteria.paymentMethods() : null,
+                    keep.test(DATE) ? criteria.startDate() : null,
+                    keep.test(DATE) ? criteria.endDate() : null
+            );
+        }
+    }
+
+    static final Dimension[] DIMENSIONS = Dimension.values();
+
+    // `failed` of a row that passes every filter, and of one that fails two or more and is skipped
+    static final int MATCHED = -1;
+    static final int UNCOUNTED = -2;
+
+    private long count;
+    // Per dimension, counts by code; ages by band, dates by epoch day minus firstDay
+    private final long[][] counts = new long[DIMENSIONS.length][8];
+    private int firstDay = Integer.MIN_VALUE;
+
+    // True when a row that fails `failed` is counted for `dimension`
+    static boolean counts(int failed, Dimension dimension) {
+        return failed == MATCHED || failed == dimension.ordinal();
+    }
+
+    // One row that fails only the filter of dimension `failed`, or MATCHED. Codes are dictionary
+    // codes; age and day may be MISSING_INT. Its tags are added with addTag when counted for TAG.
+    void add(int failed, int regionCode, int genderCode, int categoryCode, int paymentCode, int age, int day) {
+        if (failed == MATCHED) {
+            count++;
+        }
+        if (counts(failed, Dimension.REGION)) add(Dimension.REGION, regionCode, 1);
+        if (counts(failed, Dimension.GENDER)) add(Dimension.GENDER, genderCode, 1);
+        if (counts(failed, Dimension.CATEGORY)) add(Dimension.CATEGORY, categoryCode, 1);
+        if (counts(failed, Dimension.PAYMENT_METHOD)) add(Dimension.PAYMENT_METHOD, paymentCode, 1);
+        if (counts(failed, Dimension.AGE) && age != ColumnarSaleStore.MISSING_INT) {
+            add(Dimension.AGE, RollupCube.bandOf(age), 1);
+        }
+        if (counts(failed, Dimension.DATE) && day != ColumnarSaleStore.MISSING_INT) {
+            addDay(day, 1);
+        }
+    }
+
+    // `rows` more rows counted for TAG that carry the tag
+    void addTag(int tagCode, long rows) {
+        add(Dimension.TAG, tagCode, rows);
+    }
+
+    // Folds in the accumulator of another scan segment
+    void merge(FacetAccumulator other) {
+        count += other.count;
+        for (Dimension dimension : DIMENSIONS) {
+            long[] theirs = other.counts[dimension.ordinal()];
+            for (int code = 0; code < theirs.length; code++) {
+                if (theirs[code] == 0) {
+                    continue;
+                }
+                if (dimension == Dimension.DATE) {
+                    addDay(other.firstDay + code, theirs[code]);
+                } else {
+                    add(dimension, code, theirs[code]);
+                }
+            }
+        }
+    }
+
+    long count() {
+        return count;
+    }
+
+    SalesFacets toFacets(IntFunction<String> regions, IntFunction<String> genders, IntFunction<String> categories,
+                         IntFunction<String> tags, IntFunction<String> paymentMethods) {
+        return new SalesFacets(
+                count,
+                buckets(Dimension.REGION, regions),
+                buckets(Dimension.GENDER, genders),
+                buckets(Dimension.CATEGORY, categories),
+                buckets(Dimension.TAG, tags),
+                buckets(Dimension.PAYMENT_METHOD, paymentMethods),
+                buckets(Dimension.AGE, FacetAccumulator::ageBand),
+                months()
+        );
+    }
+
+    // "18-24", or "65+" for the last band
+    static String ageBand(int band) {
+        int[] starts = RollupCube.AGE_BAND_STARTS;
+        return band + 1 < starts.length ? starts[band] + "-" + (starts[band + 1] - 1) : starts[band] + "+";
+    }
+
+    // yyyy-MM of a RollupCube month number
+    static String month(int month) {
+        return String.format("%04d-%02d", (month - 1) / 12, (month - 1) % 12 + 1);
+    }
+
+    // Ordered by value, as the database path's ORDER BY returns them; null and blank values
+    // cannot be selected and are left out
+    static List<SalesFacets.Bucket> sorted(List<SalesFacets.Bucket> buckets) {
+        List<SalesFacets.Bucket> kept = new ArrayList<>(buckets.size());
+        for (SalesFacets.Bucket bucket : buckets) {
+            if (bucket.value() != null && !bucket.value().isEmpty() && bucket.count() > 0) {
+                kept.add(bucket);
+            }
+        }
+        kept.sort(Comparator.comparing(SalesFacets.Bucket::value));
+        return kept;
+    }
+
+    private List<SalesFacets.Bucket> buckets(Dimension dimension, IntFunction<String> values) {
+        long[] byCode = counts[dimension.ordinal()];
+        List<SalesFacets.Bucket> buckets = new ArrayList<>();
+        for (int code = 0; code < byCode.length; code++) {
+            if (byCode[code] > 0) {
+                buckets.add(new SalesFacets.Bucket(values.apply(code), byCode[code]));
+            }
+        }
+        return sorted(buckets);
+    }
+
+    private void add(Dimension dimension, int code, long rows) {
+        long[] byCode = counts[dimension.ordinal()];
+        if (code >= byCode.length) {
+            byCode = Arrays.copyOf(byCode, Math.max(code + 1, byCode.length * 2));
+            counts[dimension.ordinal()] = byCode;
+        }
+        byCode[code] += rows;
+    }
+
+    private List<SalesFacets.Bucket> months() {
+        long[] byDay = counts[Dimension.DATE.ordinal()];
+        Map<Integer, Long> byMonth = new HashMap<>();
+        for (int code = 0; code < byDay.length; code++) {
+            if (byDay[code] > 0) {
+                byMonth.merge(RollupCube.monthOf(firstDay + code), byDay[code], Long::sum);
+            }
+        }
+        List<SalesFacets.Bucket> buckets = new ArrayList<>();
+        byMonth.forEach((month, rows) -> buckets.add(new SalesFacets.Bucket(month(month), rows)));
+        return sorted(buckets);
+    }
+
+    private void addDay(int day, long rows) {
+        if (firstDay == Integer.MIN_VALUE) {
+            firstDay = day;
+        } else if (day < firstDay) {
+            // Shift the counts up so the earlier day becomes slot 0
+            long[] byDay = counts[Dimension.DATE.ordinal()];
+            long[] shifted = new long[byDay.length + firstDay - day];
+            System.arraycopy(byDay, 0, shifted, firstDay - day, byDay.length);
+            counts[Dimension.DATE.ordinal()] = shifted;
+            firstDay = day;
+        }
+        add(Dimension.DATE, day - firstDay, rows);
+    }
+}
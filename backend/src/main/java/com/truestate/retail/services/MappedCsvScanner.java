@@ -0,0 +1,680 @@
+package com.truestate.retail.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Scans a local CSV file through read-only memory mappings instead of a Reader. Each
+// line is split into field offsets in place; numbers and ISO dates are parsed straight
+// from the bytes and Strings are only built for fields a caller asks for. The visitor
+// sees one reused Row per line, so a full scan allocates almost nothing per row.
+// Same dialect as CSVFormat.DEFAULT: comma separated, double-quote quoting with "" as
+// the escape, CRLF or LF line ends, empty lines skipped.
+public class MappedCsvScanner {
+
+    // Files larger than this are mapped in consecutive windows, each starting on a line
+    private static final long WINDOW_BYTES = 1L << 30;
+    private static final int SINGLE_ROW_BYTES = 8 * 1024;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private final Path file;
+    private final Map<String, Integer> columns;
+    private final long dataStart;
+    private final long size;
+    private final long estimatedRows;
+
+    private MappedCsvScanner(Path file, Map<String, Integer> columns, long dataStart, long size, long estimatedRows) {
+        this.file = file;
+        this.columns = columns;
+        this.dataStart = dataStart;
+        this.size = size;
+        this.estimatedRows = estimatedRows;
+    }
+
+    public static MappedCsvScanner open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Row header = new Row(null);
+            long end = readRowAt(channel, 0, header);
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < header.fieldCount; i++) {
+                columns.put(header.string(i).strip(), i);
+            }
+            // Data bytes over the length of the first data line
+            long size = channel.size();
+            long estimatedRows = 0;
+            if (end < size) {
+                long firstRowBytes = readRowAt(channel, end, new Row(null)) - end;
+                estimatedRows = (size - end) / Math.max(1, firstRowBytes);
+            }
+            return new MappedCsvScanner(file, columns, end, size, estimatedRows);
+        }
+    }
+
+    // Rough row count for sizing scan segments, not a record count
+    public long estimatedRows() {
+        return estimatedRows;
+    }
+
+    // Every data row as one range
+    public Range all() {
+        return new Range(dataStart, size, 0);
+    }
+
+    public long dataBytes() {
+        return size - dataStart;
+    }
+
+    public int column(String name) {
+        Integer index = columns.get(name);
+        if (index == null) {
+            throw new IllegalStateException("CSV column not found: " + name);
+        }
+        return index;
+    }
+
+    // Visits every data row in file order; the visitor returns false to stop early
+    public void scan(RowVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            scan(channel, new Range(dataStart, channel.size(), 0), visitor);
+        }
+    }
+
+    // Visits the rows of one range from split(), numbering them on from range.recordsBefore().
+    // Returns how many rows were visited.
+    public long scan(Range range, RowVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return scan(channel, range, visitor);
+        }
+    }
+
+    // Consecutive ranges of about `bytes` each covering all data rows, every one starting on
+    // a line. Like the ingestion chunker this assumes quoted fields never contain line breaks.
+    // recordsBefore is 0 in every range; callers count the rows and fill it in.
+    public List<Range> split(long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Range> ranges = new ArrayList<>();
+            long start = dataStart;
+            ByteBuffer probe = ByteBuffer.allocate(SINGLE_ROW_BYTES);
+            while (start < size) {
+                long end = Math.min(size, start + Math.max(1, bytes));
+                // Move the cut just past the next line end
+                while (end < size) {
+                    probe.clear();
+                    int read = channel.read(probe, end);
+                    int newline = -1;
+                    for (int i = 0; i < read && newline < 0; i++) {
+                        if (probe.get(i) == '\n') {
+                            newline = i;
+                        }
+                    }
+                    if (newline >= 0) {
+                        end += newline + 1;
+                        break;
+                    }
+                    end += Math.max(read, 1);
+                }
+                ranges.add(new Range(start, Math.min(end, size), 0));
+                start = end;
+            }
+            return ranges;
+        }
+    }
+
+    private long scan(FileChannel channel, Range range, RowVisitor visitor) throws IOException {
+        long position = range.start();
+        long recordNumber = range.recordsBefore();
+        Row row = new Row(this);
+
+        while (position < range.end()) {
+            int length = (int) Math.min(WINDOW_BYTES, range.end() - position);
+            boolean lastWindow = position + length == range.end();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            int offset = 0;
+            while (offset < length) {
+                int next = row.parse(buffer, offset, length, lastWindow);
+                if (next < 0) {
+                    break;
+                }
+                if (!row.isEmpty()) {
+                    row.recordNumber = ++recordNumber;
+                    row.position = position + offset;
+                    if (!visitor.visit(row)) {
+                        return recordNumber - range.recordsBefore();
+                    }
+                }
+                offset = next;
+            }
+            if (offset == 0) {
+                throw new IOException("CSV row at byte " + position + " is larger than the mapping window");
+            }
+            position += offset;
+        }
+        return recordNumber - range.recordsBefore();
+    }
+
+    // Byte range [start, end) of whole lines and the number of data rows before it
+    public record Range(long start, long end, long recordsBefore) {}
+
+    // Re-reads one row from the byte position reported by Row.position()
+    public Row readRow(long position, long recordNumber) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Row row = new Row(this);
+            readRowAt(channel, position, row);
+            row.recordNumber = recordNumber;
+            row.position = position;
+            return row;
+        }
+    }
+
+    // Random access for re-reading many rows: keeps the channel open and reuses the mapped
+    // window while positions fall inside it, instead of opening and mapping once per row
+    public RowReader reader() throws IOException {
+        return new RowReader(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    public final class RowReader implements Closeable {
+
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private int windowLength;
+
+        private RowReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        public Row read(long position, long recordNumber) throws IOException {
+            return read(new Row(MappedCsvScanner.this), position, recordNumber);
+        }
+
+        // Visits the rows starting at positions[from .. to), in that order and numbered by
+        // recordNumbers, through one reused Row as scan() does; returns how many were visited
+        public long scan(long[] positions, int[] recordNumbers, int from, int to, RowVisitor visitor) throws IOException {
+            Row row = new Row(MappedCsvScanner.this);
+            for (int i = from; i < to; i++) {
+                if (!visitor.visit(read(row, positions[i], recordNumbers[i]))) {
+                    return i + 1 - from;
+                }
+            }
+            return to - from;
+        }
+
+        private Row read(Row row, long position, long recordNumber) throws IOException {
+            if (window == null || position < windowStart || position >= windowStart + windowLength
+                    || parseInWindow(row, position) < 0) {
+                // Not mapped yet, or the row runs past the end of the current window
+                windowStart = position;
+                windowLength = (int) Math.min(WINDOW_BYTES, size - position);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+                if (parseInWindow(row, position) < 0) {
+                    throw new IOException("CSV row at byte " + position + " is larger than the mapping window");
+                }
+            }
+            row.recordNumber = recordNumber;
+            row.position = position;
+            return row;
+        }
+
+        private int parseInWindow(Row row, long position) {
+            return row.parse(window, (int) (position - windowStart), windowLength, windowStart + windowLength == size);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static long readRowAt(FileChannel channel, long position, Row row) throws IOException {
+        long size = channel.size();
+        int length = (int) Math.min(SINGLE_ROW_BYTES, size - position);
+        while (true) {
+            boolean toEnd = position + length == size;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            int next = row.parse(buffer, 0, length, toEnd);
+            if (next >= 0) {
+                return position + next;
+            }
+            length = (int) Math.min((long) length * 2, size - position);
+        }
+    }
+
+    static boolean isAscii(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public interface RowVisitor {
+        boolean visit(Row row) throws IOException;
+    }
+
+    // Field offsets of the current line. Only valid inside the visit call that received it,
+    // unless it came from readRow.
+    public static final class Row {
+
+        private final MappedCsvScanner scanner;
+        private MappedByteBuffer buffer;
+        private int[] starts = new int[32];
+        private int[] ends = new int[32];
+        private boolean[] escaped = new boolean[32];
+        private int fieldCount;
+        private boolean quoted;
+        private long recordNumber;
+        private long position;
+
+        private Row(MappedCsvScanner scanner) {
+            this.scanner = scanner;
+        }
+
+        // 1-based data row number, the same value CSVRecord.getRecordNumber() reports
+        public long recordNumber() {
+            return recordNumber;
+        }
+
+        public long position() {
+            return position;
+        }
+
+        public String get(String column) {
+            return string(scanner.column(column));
+        }
+
+        // Like CSVRecord.get: an empty field is "", never null
+        public String string(int column) {
+            if (column >= fieldCount) {
+                return "";
+            }
+            int start = starts[column];
+            byte[] bytes = new byte[ends[column] - start];
+            buffer.get(start, bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            return escaped[column] ? value.replace("\"\"", "\"") : value;
+        }
+
+        // Same result as Integer.parseInt(value.trim()) with blank or malformed values as missing
+        public int intValue(int column, int missing) {
+            if (column >= fieldCount) {
+                return missing;
+            }
+            int start = starts[column];
+            int end = ends[column];
+            while (start < end && isSpace(buffer.get(start))) start++;
+            while (end > start && isSpace(buffer.get(end - 1))) end--;
+            if (start == end) {
+                return missing;
+            }
+            boolean negative = false;
+            byte first = buffer.get(start);
+            if (first == '-' || first == '+') {
+                negative = first == '-';
+                start++;
+            }
+            if (start == end) {
+                return missing;
+            }
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+                    return missing;
+                }
+                value = value * 10 + digit;
+            }
+            value = negative ? -value : value;
+            return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? missing : (int) value;
+        }
+
+        // Same result as Double.parseDouble(value.trim()), NaN when blank or malformed. Plain
+        // decimals with up to 15 significant digits are computed exactly from the bytes;
+        // anything else (exponents, long mantissas) goes through Double.parseDouble.
+        public double doubleValue(int column) {
+            if (column >= fieldCount) {
+                return Double.NaN;
+            }
+            int start = starts[column];
+            int end = ends[column];
+            while (start < end && isSpace(buffer.get(start))) start++;
+            while (end > start && isSpace(buffer.get(end - 1))) end--;
+            if (start == end) {
+                return Double.NaN;
+            }
+            int i = start;
+            boolean negative = false;
+            byte first = buffer.get(i);
+            if (first == '-' || first == '+') {
+                negative = first == '-';
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int scale = -1;
+            for (; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b == '.' && scale < 0) {
+                    scale = 0;
+                    continue;
+                }
+                if (b < '0' || b > '9' || digits == 15) {
+                    return parseDoubleSlow(column);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            }
+            if (digits == 0) {
+                return parseDoubleSlow(column);
+            }
+            double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+            return negative ? -value : value;
+        }
+
+        private double parseDoubleSlow(int column) {
+            try {
+                return Double.parseDouble(string(column).trim());
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
+        // Epoch day of a yyyy-MM-dd field; anything else goes through LocalDate.parse,
+        // which throws for invalid input exactly like the record mapper does
+        public int epochDay(int column) {
+            if (column < fieldCount && ends[column] - starts[column] == 10 && !escaped[column]) {
+                int s = starts[column];
+                if (buffer.get(s + 4) == '-' && buffer.get(s + 7) == '-') {
+                    int year = digits(s, 4);
+                    int month = digits(s + 5, 2);
+                    int day = digits(s + 8, 2);
+                    if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month)) {
+                        return (int) epochDay(year, month, day);
+                    }
+                }
+            }
+            return (int) LocalDate.parse(string(column)).toEpochDay();
+        }
+
+        public boolean isEmpty(int column) {
+            return column >= fieldCount || starts[column] == ends[column];
+        }
+
+        public boolean equalsBytes(int column, byte[] value) {
+            if (column >= fieldCount) {
+                return value.length == 0;
+            }
+            if (escaped[column]) {
+                return string(column).equals(new String(value, StandardCharsets.UTF_8));
+            }
+            int start = starts[column];
+            if (ends[column] - start != value.length) {
+                return false;
+            }
+            for (int i = 0; i < value.length; i++) {
+                if (buffer.get(start + i) != value[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public boolean equalsAny(int column, byte[][] values) {
+            for (byte[] value : values) {
+                if (equalsBytes(column, value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean contains(int column, byte[] needle) {
+            if (column >= fieldCount) {
+                return needle.length == 0;
+            }
+            if (escaped[column]) {
+                return string(column).contains(new String(needle, StandardCharsets.UTF_8));
+            }
+            return indexOf(starts[column], ends[column], needle, false) >= 0;
+        }
+
+        // True when one of the comma-separated items of the field, trimmed like String.trim(), is `item`
+        public boolean hasItem(int column, byte[] item) {
+            if (column >= fieldCount) {
+                return false;
+            }
+            if (escaped[column]) {
+                String value = new String(item, StandardCharsets.UTF_8);
+                for (String part : string(column).split(",")) {
+                    if (part.trim().equals(value)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            int end = ends[column];
+            for (int from = starts[column]; from <= end; ) {
+                int to = from;
+                while (to < end && buffer.get(to) != ',') to++;
+                int start = from;
+                int stop = to;
+                while (start < stop && isSpace(buffer.get(start))) start++;
+                while (stop > start && isSpace(buffer.get(stop - 1))) stop--;
+                if (stop - start == item.length && indexOf(start, stop, item, false) == start) {
+                    return true;
+                }
+                from = to + 1;
+            }
+            return false;
+        }
+
+        // ASCII-only fields are matched byte by byte with ASCII case folding; any non-ASCII
+        // byte (asciiNeedle is isAscii(lowerNeedle), checked once by the caller) falls back to
+        // String.toLowerCase() so results match the String-based filter
+        public boolean containsIgnoreCase(int column, byte[] lowerNeedle, String lowerQuery, boolean asciiNeedle) {
+            if (column >= fieldCount) {
+                return lowerNeedle.length == 0;
+            }
+            int start = starts[column];
+            int end = ends[column];
+            boolean ascii = !escaped[column];
+            for (int i = start; ascii && i < end; i++) {
+                ascii = buffer.get(i) >= 0;
+            }
+            if (!ascii || !asciiNeedle) {
+                return string(column).toLowerCase().contains(lowerQuery);
+            }
+            return indexOf(start, end, lowerNeedle, true) >= 0;
+        }
+
+        private int indexOf(int start, int end, byte[] needle, boolean foldCase) {
+            int last = end - needle.length;
+            outer:
+            for (int i = start; i <= last; i++) {
+                for (int j = 0; j < needle.length; j++) {
+                    byte b = buffer.get(i + j);
+                    if (foldCase && b >= 'A' && b <= 'Z') {
+                        b += 'a' - 'A';
+                    }
+                    if (b != needle[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        private int digits(int start, int count) {
+            int value = 0;
+            for (int i = start; i < start + count; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        boolean isEmpty() {
+            return fieldCount == 1 && starts[0] == ends[0] && !quoted;
+        }
+
+        // Splits the line starting at offset. Returns the offset after its line end, or -1
+        // when the line runs past limit and more input may follow (atEnd == false).
+        int parse(MappedByteBuffer source, int offset, int limit, boolean atEnd) {
+            buffer = source;
+            fieldCount = 0;
+            quoted = false;
+            int i = offset;
+            while (true) {
+                ensureCapacity(fieldCount + 1);
+                boolean fieldEscaped = false;
+                int start;
+                int end;
+                if (i < limit && source.get(i) == '"') {
+                    quoted = true;
+                    start = ++i;
+                    while (true) {
+                        if (i >= limit) {
+                            if (!atEnd) {
+                                return -1;
+                            }
+                            end = i;
+                            break;
+                        }
+                        if (source.get(i) == '"') {
+                            if (i + 1 < limit && source.get(i + 1) == '"') {
+                                fieldEscaped = true;
+                                i += 2;
+                                continue;
+                            }
+                            if (i + 1 >= limit && !atEnd) {
+                                return -1;
+                            }
+                            end = i++;
+                            break;
+                        }
+                        i++;
+                    }
+                    // Anything between the closing quote and the delimiter is ignored
+                    while (i < limit && source.get(i) != ',' && source.get(i) != '\n') {
+                        i++;
+                    }
+                } else {
+                    start = i;
+                    while (i < limit && source.get(i) != ',' && source.get(i) != '\n') {
+                        i++;
+                    }
+                    end = i;
+                    boolean lineEnd = i >= limit || source.get(i) == '\n';
+                    if (lineEnd && end > start && source.get(end - 1) == '\r') {
+                        end--;
+                    }
+                }
+
+                if (i >= limit && !atEnd) {
+                    return -1;
+                }
+                starts[fieldCount] = start;
+                ends[fieldCount] = end;
+                escaped[fieldCount] = fieldEscaped;
+                fieldCount++;
+
+                if (i >= limit) {
+                    return limit;
+                }
+                if (source.get(i) == '\n') {
+                    return i + 1;
+                }
+                i++;
+            }
+        }
+
+        private void ensureCapacity(int fields) {
+            if (fields > starts.length) {
+                starts = Arrays.copyOf(starts, fields * 2);
+                ends = Arrays.copyOf(ends, fields * 2);
+                escaped = Arrays.copyOf(escaped, fields * 2);
+            }
+        }
+
+        private static boolean isSpace(byte b) {
+            return b >= 0 && b <= ' ';
+        }
+
+        private static int lengthOfMonth(int year, int month) {
+            if (month == 2) {
+                return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+            }
+            return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+        }
+
+        // Days since 1970-01-01 for a valid proleptic Gregorian date (same algorithm as LocalDate)
+        private static long epochDay(long year, int month, int day) {
+            long total = 365 * year;
+            if (year >= 0) {
+                total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+            } else {
+                total -= year / -4 - year / -100 + year / -400;
+            }
+            total += (367 * month - 362) / 12;
+            total += day - 1;
+            if (month > 2) {
+                total--;
+                boolean leap = (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+                if (!leap) {
+                    total--;
+                }
+            }
+            return total - 719528;
+        }
+    }
+
+    // Dictionary codes for a low-cardinality column without building a String per row:
+    // the raw bytes of every value seen so far are compared first
+    public static final class FieldCodes {
+
+        private final StringDictionary dictionary;
+        private final List<byte[]> values = new ArrayList<>();
+        private final List<Integer> codes = new ArrayList<>();
+
+        public FieldCodes(StringDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        public int encode(Row row, int column) {
+            for (int i = 0; i < values.size(); i++) {
+                if (row.equalsBytes(column, values.get(i))) {
+                    return codes.get(i);
+                }
+            }
+            String value = row.string(column);
+            int code = dictionary.encode(value);
+            values.add(value.getBytes(StandardCharsets.UTF_8));
+            codes.add(code);
+            return code;
+        }
+    }
+}
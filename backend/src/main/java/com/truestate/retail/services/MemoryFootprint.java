@@ -0,0 +1,27 @@
+package com.truestate.retail.services;
+
+// Rough 64-bit JVM (compressed oops) sizes used to report resident heap usage.
+final class MemoryFootprint {
+
+    static final long ARRAY_HEADER = 16;
+    static final long REFERENCE = 4;
+
+    private MemoryFootprint() {
+    }
+
+    static long stringBytes(String value) {
+        if (value == null) {
+            return 0;
+        }
+        // String object + backing byte[] (Latin-1 compact strings)
+        return 24 + align(ARRAY_HEADER + value.length());
+    }
+
+    static long array(int length, int elementBytes) {
+        return align(ARRAY_HEADER + (long) length * elementBytes);
+    }
+
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
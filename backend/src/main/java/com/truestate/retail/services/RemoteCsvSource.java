@@ -0,0 +1,238 @@
+package com.truestate.retail.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Local copy of the CSV at csv.url, kept under csv.cache.dir. The download runs on a single
+// background thread, so no request ever waits on the network: until a first copy exists the
+// CSV paths answer 503, and a copy left by an earlier run is served right away while it is
+// revalidated with If-None-Match / If-Modified-Since. A changed file replaces the copy
+// atomically, so a reader never sees a partial download.
+@Service
+public class RemoteCsvSource {
+
+    private static final String FILE_NAME = "sales_data.csv";
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int READ_TIMEOUT_MILLIS = 60_000;
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final ScheduledExecutorService fetcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "csv-fetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Released once the first fetch attempt has finished, whatever its outcome
+    private final CountDownLatch firstAttempt = new CountDownLatch(1);
+
+    @Value("${csv.url:}")
+    private String csvUrl;
+
+    @Value("${csv.cache.dir:${java.io.tmpdir}/retail-backend}")
+    private String cacheDir;
+
+    @Value("${csv.cache.retry-seconds:30}")
+    private long retrySeconds;
+
+    private volatile boolean started;
+    private volatile Path file;
+    private volatile String etag;
+    private volatile String lastModified;
+    private volatile Map<String, Object> lastFetch = Map.of("status", "not started");
+
+    public RemoteCsvSource(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    // Only used when there is no CSV on the classpath
+    public boolean isConfigured() {
+        return csvUrl != null && !csvUrl.isBlank() && !new ClassPathResource(FILE_NAME).exists();
+    }
+
+    // Runs before the startup loader, which then waits for the first attempt off the request path
+    @EventListener(ApplicationStartedEvent.class)
+    public synchronized void start() {
+        if (started || !isConfigured()) {
+            return;
+        }
+        started = true;
+        restoreCachedCopy();
+        fetcher.execute(this::fetch);
+    }
+
+    // Never blocks: the current copy, or 503 while the first download is still running
+    public Path file() {
+        Path current = file;
+        if (current == null) {
+            throw new CsvSourceUnavailableException("CSV source is still being downloaded from " + csvUrl);
+        }
+        return current;
+    }
+
+    // For the startup loader: waits for the first fetch attempt, then behaves like file()
+    public Path awaitFile() throws InterruptedException {
+        start();
+        firstAttempt.await();
+        return file();
+    }
+
+    // Server validator of the current copy plus its size, or null when the server sent none
+    public String validator() throws IOException {
+        Path current = file();
+        String validator = etag != null ? etag : lastModified;
+        return validator != null ? validator + " " + Files.size(current) : null;
+    }
+
+    public String url() {
+        return csvUrl;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("url", csvUrl);
+        status.put("cachedFile", file != null ? file.toString() : null);
+        status.put("etag", etag);
+        status.put("lastModified", lastModified);
+        status.putAll(lastFetch);
+        return status;
+    }
+
+    private void fetch() {
+        long startNanos = System.nanoTime();
+        lastFetch = Map.of("status", "in progress");
+        boolean downloaded = false;
+        try {
+            URLConnection connection = new URL(csvUrl).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            if (connection instanceof HttpURLConnection http) {
+                if (file != null && etag != null) {
+                    http.setRequestProperty("If-None-Match", etag);
+                }
+                if (file != null && lastModified != null) {
+                    http.setRequestProperty("If-Modified-Since", lastModified);
+                }
+                int status = http.getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    http.disconnect();
+                    System.out.println("Cached CSV is current (304 from " + csvUrl + ")");
+                    recordFetch("not modified", startNanos);
+                    return;
+                }
+                if (status != HttpURLConnection.HTTP_OK) {
+                    http.disconnect();
+                    throw new IOException("HTTP " + status + " from " + csvUrl);
+                }
+            }
+            download(connection);
+            recordFetch("downloaded", startNanos);
+            System.out.println("Downloaded CSV from " + csvUrl + " to " + file + " in "
+                    + (System.nanoTime() - startNanos) / 1_000_000 + " ms");
+            downloaded = true;
+        } catch (Exception e) {
+            recordFetch("failed: " + e.getMessage(), startNanos);
+            if (file != null) {
+                System.err.println("Could not revalidate the CSV, serving the cached copy: " + e.getMessage());
+            } else {
+                System.err.println("Could not download the CSV, retrying in " + retrySeconds + " s: " + e.getMessage());
+                fetcher.schedule(this::fetch, retrySeconds, TimeUnit.SECONDS);
+            }
+        } finally {
+            firstAttempt.countDown();
+        }
+        // Listeners may load the new copy, waiting on the first attempt themselves
+        if (downloaded) {
+            eventPublisher.publishEvent(new SalesDataChangedEvent("csv"));
+        }
+    }
+
+    // Body into a temporary file next to the copy, then moved over it along with its validators
+    private void download(URLConnection connection) throws IOException {
+        Path directory = Path.of(cacheDir);
+        Files.createDirectories(directory);
+        Path target = directory.resolve(FILE_NAME);
+        Path partial = Files.createTempFile(directory, FILE_NAME, ".part");
+        try {
+            try (InputStream in = connection.getInputStream()) {
+                Files.copy(in, partial, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String newEtag = connection.getHeaderField("ETag");
+            String newLastModified = connection.getHeaderField("Last-Modified");
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            etag = newEtag;
+            lastModified = newLastModified;
+            file = target;
+            writeMetadata(directory);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    // Copy and validators of an earlier run against the same URL
+    private void restoreCachedCopy() {
+        Path directory = Path.of(cacheDir);
+        Path target = directory.resolve(FILE_NAME);
+        Path metadata = directory.resolve(FILE_NAME + ".properties");
+        if (!Files.isRegularFile(target) || !Files.isRegularFile(metadata)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(metadata)) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable CSV cache metadata: " + e.getMessage());
+            return;
+        }
+        if (!csvUrl.equals(properties.getProperty("url"))) {
+            return;
+        }
+        etag = properties.getProperty("etag");
+        lastModified = properties.getProperty("lastModified");
+        file = target;
+        System.out.println("Serving cached CSV " + target + " while it is revalidated against " + csvUrl);
+    }
+
+    private void writeMetadata(Path directory) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("url", csvUrl);
+        if (etag != null) {
+            properties.setProperty("etag", etag);
+        }
+        if (lastModified != null) {
+            properties.setProperty("lastModified", lastModified);
+        }
+        Path partial = Files.createTempFile(directory, FILE_NAME, ".properties.part");
+        try (OutputStream out = Files.newOutputStream(partial)) {
+            properties.store(out, "Validators of " + FILE_NAME);
+        }
+        Files.move(partial, directory.resolve(FILE_NAME + ".properties"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void recordFetch(String status, long startNanos) {
+        Map<String, Object> fetch = new LinkedHashMap<>();
+        fetch.put("status", status);
+        fetch.put("fetchMillis", (System.nanoTime() - startNanos) / 1_000_000);
+        lastFetch = fetch;
+    }
+}
@@ -0,0 +1,1071 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.models.SaleRecord;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+@Service
+public class ResidentDatasetService {
+
+    // Data source tag of the search metrics
+    private static final String RESIDENT = "resident";
+
+    private static final int BUDGET_CHECK_INTERVAL = 16_384;
+    private static final int APPROXIMATE_COUNT_SAMPLE = 10_000;
+
+    private final CsvFallbackService csvFallbackService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SegmentedScan segmentedScan;
+
+    @Value("${csv.resident.enabled:true}")
+    private boolean residentEnabled;
+
+    // Share of the max heap the resident columns may take before we give up and keep streaming
+    @Value("${csv.resident.max-heap-fraction:0.4}")
+    private double maxHeapFraction;
+
+    // Binary copy of the parsed columns reused across restarts while the source CSV is unchanged
+    @Value("${csv.snapshot.enabled:true}")
+    private boolean snapshotEnabled;
+
+    @Value("${csv.snapshot.path:${java.io.tmpdir}/retail-backend/sales.snapshot}")
+    private String snapshotPath;
+
+    // Calendar months per date partition; 0 leaves the rows unpartitioned
+    @Value("${search.partition.months:1}")
+    private int partitionMonths;
+
+    // The loaded dataset with everything derived from it; replaced whole by each load and append
+    private volatile ResidentState state;
+    // Rows added through append() since the load; guarded by this
+    private long appendedRows;
+    // Every matching row of a query in page order, so later pages of it skip filtering and sorting
+    private final WeightedLruCache<MatchKey, int[]> matchCache;
+    private final SearchMetrics searchMetrics;
+    private volatile Map<String, Object> footprint = Map.of("loaded", false);
+
+    public ResidentDatasetService(CsvFallbackService csvFallbackService, ApplicationEventPublisher eventPublisher,
+                                  SegmentedScan segmentedScan, SearchMetrics searchMetrics,
+                                  @Value("${search.cache.match-bytes:67108864}") long matchCacheBytes) {
+        this.csvFallbackService = csvFallbackService;
+        this.eventPublisher = eventPublisher;
+        this.segmentedScan = segmentedScan;
+        this.searchMetrics = searchMetrics;
+        this.matchCache = new WeightedLruCache<>(matchCacheBytes, rows -> MemoryFootprint.array(rows.length, 4));
+        searchMetrics.bindCache("resident-matches", matchCache);
+    }
+
+    public boolean isEnabled() {
+        return residentEnabled;
+    }
+
+    public boolean isLoaded() {
+        return state != null;
+    }
+
+    public Map<String, Object> getFootprint() {
+        return footprint;
+    }
+
+    public Map<String, Object> matchCacheStats() {
+        return matchCache.stats();
+    }
+
+    @EventListener
+    public void onSalesDataChanged(SalesDataChangedEvent event) {
+        matchCache.invalidateAll();
+    }
+
+    public synchronized boolean load() {
+        if (state != null) {
+            return true;
+        }
+
+        long budget = (long) (Runtime.getRuntime().maxMemory() * maxHeapFraction);
+        long heapBefore = usedHeap();
+        long startNanos = System.nanoTime();
+        String fingerprint = snapshotEnabled ? sourceFingerprint() : null;
+        ColumnarSaleStore loading = restoreSnapshot(fingerprint);
+        String source = loading != null ? "snapshot" : "csv";
+        long snapshotWriteMillis = 0;
+
+        if (loading != null && loading.estimatedBytes() > budget) {
+            System.out.println("Resident dataset from snapshot would exceed " + (budget >> 20)
+                    + " MB, staying on streaming CSV fallback");
+            footprint = Map.of("loaded", false, "reason", "heap budget exceeded", "budgetBytes", budget);
+            return false;
+        }
+
+        if (loading == null) {
+            loading = new ColumnarSaleStore();
+
+            try (InputStreamReader reader = csvFallbackService.openCsvReader();
+                 CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+
+                for (CSVRecord csvRecord : csvParser) {
+                    loading.append(csvFallbackService.mapCsvRecord(csvRecord));
+
+                    if (loading.size() % BUDGET_CHECK_INTERVAL == 0 && loading.estimatedBytes() > budget) {
+                        System.out.println("Resident dataset would exceed " + (budget >> 20) + " MB after "
+                                + loading.size() + " rows, staying on streaming CSV fallback");
+                        footprint = Map.of("loaded", false, "reason", "heap budget exceeded", "budgetBytes", budget);
+                        return false;
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("Error loading resident dataset: " + e.getMessage());
+                e.printStackTrace();
+                footprint = Map.of("loaded", false, "reason", String.valueOf(e.getMessage()));
+                return false;
+            }
+
+            loading.trimToSize();
+            if (fingerprint != null) {
+                long writeStart = System.nanoTime();
+                writeSnapshot(loading, fingerprint);
+                snapshotWriteMillis = (System.nanoTime() - writeStart) / 1_000_000;
+            }
+        }
+
+        BitmapIndexes loadedIndexes = BitmapIndexes.build(loading);
+        RollupCube loadedRollup = RollupCube.build(loading);
+        // Lowercased names match the case-insensitive name search; phones are matched as typed
+        TrigramSegments loadedNameIndex = TrigramSegments.build(loading.customerNames, loading.size(), String::toLowerCase);
+        TrigramSegments loadedPhoneIndex = TrigramSegments.build(loading.phoneNumbers, loading.size(), value -> value);
+        ColumnStats loadedStats = ColumnStats.of(loading);
+        DatePartitions loadedPartitions = partitionMonths > 0 ? DatePartitions.build(loading, partitionMonths) : null;
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+        long estimated = loading.estimatedBytes();
+        long indexBytes = loadedIndexes.estimatedBytes();
+        long measured = Math.max(0, usedHeap() - heapBefore);
+        int rows = loading.size();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("loaded", true);
+        report.put("source", source);
+        report.put("rows", rows);
+        report.put("loadMillis", elapsedMs);
+        report.put("snapshotWriteMillis", snapshotWriteMillis);
+        report.put("estimatedBytes", estimated);
+        report.put("estimatedBytesPerRow", rows > 0 ? estimated / rows : 0);
+        report.put("bitmapIndexBytes", indexBytes);
+        report.put("textIndexBytes", loadedNameIndex.estimatedBytes() + loadedPhoneIndex.estimatedBytes());
+        report.put("textIndexGrams", loadedNameIndex.gramCount() + loadedPhoneIndex.gramCount());
+        report.put("rollupCells", loadedRollup.cellCount());
+        putPartitions(report, loadedPartitions);
+        report.put("parallelScan", segmentedScan.settings());
+        // Heap growth is noisy (GC timing, parser garbage) but is a useful cross-check of the estimate
+        report.put("measuredHeapGrowthBytes", measured);
+        report.put("budgetBytes", budget);
+        footprint = report;
+
+        state = new ResidentState(loading, loadedIndexes, loadedNameIndex, loadedPhoneIndex, loadedRollup,
+                loadedPartitions, loadedStats, new ConcurrentHashMap<>());
+        System.out.println("Resident dataset loaded from " + source + ": " + rows + " rows in " + elapsedMs + " ms, ~"
+                + report.get("estimatedBytesPerRow") + " bytes/row (" + (estimated >> 20) + " MB)");
+
+        eventPublisher.publishEvent(new SalesDataChangedEvent("resident"));
+        return true;
+    }
+
+    // Appends a batch behind the current state and publishes the next one. The caller publishes
+    // the data change event once every store has the batch.
+    public synchronized void append(List<SaleRecord> sales) {
+        prepareAppend(sales).publish();
+    }
+
+    // Builds the state with the batch appended without publishing it, so a caller writing the
+    // batch to another store too can make it visible here only once that write has succeeded.
+    // Bitmaps, rollup cells and built sort orders are extended copy-on-write and the text
+    // indexes gain a segment, so the work follows the batch and the structures it touches
+    // rather than the dataset size, and the current state keeps serving readers unchanged.
+    public synchronized PreparedAppend prepareAppend(List<SaleRecord> sales) {
+        ResidentState current = state;
+        if (current == null) {
+            throw new IllegalStateException("Resident dataset is not loaded");
+        }
+        ColumnarSaleStore data = current.data.forAppend();
+        int fromRow = data.size();
+        for (SaleRecord sale : sales) {
+            data.append(sale);
+        }
+        int rows = data.size();
+
+        // Orders nobody has asked for yet stay unbuilt, as after a load
+        Map<String, int[]> sortedRows = new ConcurrentHashMap<>();
+        int[] nameRanks = null;
+        for (Map.Entry<String, int[]> entry : current.sortedRows.entrySet()) {
+            int[] merged = mergeSortedRows(data, entry.getKey(), entry.getValue(), fromRow);
+            sortedRows.put(entry.getKey(), merged);
+            if ("customerName".equals(entry.getKey())) {
+                nameRanks = nameRanks(data, merged);
+            }
+        }
+        ResidentState next = new ResidentState(data,
+                current.indexes.appended(data, fromRow),
+                current.nameIndex.appended(data.customerNames, rows),
+                current.phoneIndex.appended(data.phoneNumbers, rows),
+                current.rollup.appended(data, fromRow),
+                current.partitions != null ? current.partitions.appended(data, fromRow) : null,
+                current.columnStats,
+                sortedRows);
+        next.customerNameRanks = nameRanks;
+        return new PreparedAppend(current, next, sales.size());
+    }
+
+    // A batch appended behind the state it was prepared from. Dropping it leaves the dataset as
+    // it was: the rows it wrote past the end of the shared columns are overwritten by the next
+    // append.
+    public final class PreparedAppend {
+
+        private final ResidentState base;
+        private final ResidentState next;
+        private final int rows;
+
+        private PreparedAppend(ResidentState base, ResidentState next, int rows) {
+            this.base = base;
+            this.next = next;
+            this.rows = rows;
+        }
+
+        public void publish() {
+            synchronized (ResidentDatasetService.this) {
+                if (state != base) {
+                    throw new IllegalStateException("Resident dataset changed since the append was prepared");
+                }
+                state = next;
+                appendedRows += rows;
+
+                Map<String, Object> report = new LinkedHashMap<>(footprint);
+                report.put("rows", next.data.size());
+                report.put("appendedRows", appendedRows);
+                report.put("estimatedBytes", next.data.estimatedBytes());
+                report.put("bitmapIndexBytes", next.indexes.estimatedBytes());
+                report.put("textIndexBytes", next.nameIndex.estimatedBytes() + next.phoneIndex.estimatedBytes());
+                report.put("textIndexSegments", next.nameIndex.segmentCount());
+                report.put("rollupCells", next.rollup.cellCount());
+                putPartitions(report, next.partitions);
+                footprint = report;
+            }
+        }
+    }
+
+    public Page<SaleRecord> search(SaleRecordSpecification.SearchCriteria criteria,
+                                   String sortBy, String sortDirection, int page, int size) {
+        ResidentState current = state;
+        ColumnarSaleStore data = current.data;
+        boolean ascending = "asc".equalsIgnoreCase(sortDirection);
+        int[] ordered = matchCache.get(matchKey(data, criteria, sortBy, ascending),
+                () -> orderedMatches(current, criteria, sortBy, ascending));
+        int matchCount = ordered.length;
+
+        long start = System.nanoTime();
+        int pageStart = (int) Math.min((long) page * size, matchCount);
+        int pageEnd = (int) Math.min((long) pageStart + size, matchCount);
+        List<SaleRecord> content = new ArrayList<>(pageEnd - pageStart);
+        for (int i = pageStart; i < pageEnd; i++) {
+            content.add(data.toSaleRecord(ordered[i]));
+        }
+        searchMetrics.record(SearchMetrics.Stage.PARSE, RESIDENT, start);
+
+        return new PageImpl<>(content, PageRequest.of(page, size, toSort(sortBy, sortDirection)), matchCount);
+    }
+
+    private int[] orderedMatches(ResidentState current, SaleRecordSpecification.SearchCriteria criteria,
+                                 String sortBy, boolean ascending) {
+        ColumnarSaleStore data = current.data;
+        long start = System.nanoTime();
+        ResidentFilter filter = filter(current, criteria);
+        List<DatePartitions.Unit> units = partitionUnits(current, filter);
+        int[] matches = matchingRows(data, filter, units);
+        long sortStart = searchMetrics.record(SearchMetrics.Stage.FILTER, RESIDENT, start);
+        searchMetrics.rows(RESIDENT, units != null ? DatePartitions.rows(units) : rowsVisited(data, filter), matches.length);
+
+        long[] packed = sortKeys(current, matches, matches.length, sortBy, ascending);
+        segmentedScan.sort(packed);
+        for (int i = 0; i < packed.length; i++) {
+            matches[i] = unpackRow(packed[i], ascending);
+        }
+        searchMetrics.record(SearchMetrics.Stage.SORT, RESIDENT, sortStart);
+        return matches;
+    }
+
+    // The store is part of the key so rows are never resolved against a different load or append
+    private static MatchKey matchKey(ColumnarSaleStore data, SaleRecordSpecification.SearchCriteria criteria,
+                                     String sortBy, boolean ascending) {
+        return new MatchKey(data, criteria.normalized(), SeekCursor.normalizeSortBy(sortBy), ascending);
+    }
+
+    // Page without a total: walks the presorted row order and stops after the page plus one
+    // row, so shallow pages never look at most of the dataset
+    public Slice<SaleRecord> searchWithoutTotal(SaleRecordSpecification.SearchCriteria criteria,
+                                                String sortBy, String sortDirection, int page, int size) {
+        ResidentState current = state;
+        ColumnarSaleStore data = current.data;
+        boolean ascending = "asc".equalsIgnoreCase(sortDirection);
+        int[] cached = matchCache.peek(matchKey(data, criteria, sortBy, ascending));
+        if (cached != null) {
+            long start = System.nanoTime();
+            int pageStart = (int) Math.min((long) page * size, cached.length);
+            int pageEnd = (int) Math.min((long) pageStart + size, cached.length);
+            List<SaleRecord> content = new ArrayList<>(pageEnd - pageStart);
+            for (int i = pageStart; i < pageEnd; i++) {
+                content.add(data.toSaleRecord(cached[i]));
+            }
+            searchMetrics.record(SearchMetrics.Stage.PARSE, RESIDENT, start);
+            return new SliceImpl<>(content, PageRequest.of(page, size, toSort(sortBy, sortDirection)),
+                    pageEnd < cached.length);
+        }
+
+        ResidentFilter filter = filter(current, criteria);
+        String field = SeekCursor.normalizeSortBy(sortBy);
+        int[] order = sortedRows(current, field);
+
+        // The walk interleaves filtering with building the page, so it is timed as one filter stage
+        long start = System.nanoTime();
+        long toSkip = (long) page * size;
+        List<SaleRecord> content = new ArrayList<>(size);
+        boolean hasNext = false;
+        int walked = 0;
+        long matched = 0;
+        for (; walked < order.length; walked++) {
+            int row = order[ascending ? walked : order.length - 1 - walked];
+            if (!filter.matches(row)) {
+                continue;
+            }
+            matched++;
+            if (toSkip > 0) {
+                toSkip--;
+                continue;
+            }
+            if (content.size() == size) {
+                hasNext = true;
+                break;
+            }
+            content.add(data.toSaleRecord(row));
+        }
+        searchMetrics.record(SearchMetrics.Stage.FILTER, RESIDENT, start);
+        searchMetrics.rows(RESIDENT, walked, matched);
+        return new SliceImpl<>(content, PageRequest.of(page, size, toSort(sortBy, sortDirection)), hasNext);
+    }
+
+    // Every match in result order, written straight from the columns. Walks the presorted
+    // row order like searchWithoutTotal, so nothing proportional to the result is held.
+    public void export(SaleRecordSpecification.SearchCriteria criteria, String sortBy, String sortDirection,
+                       SalesExportWriter writer) throws IOException {
+        ResidentState current = state;
+        ColumnarSaleStore data = current.data;
+        ResidentFilter filter = filter(current, criteria);
+        String field = SeekCursor.normalizeSortBy(sortBy);
+        boolean ascending = "asc".equalsIgnoreCase(sortDirection);
+        int[] order = sortedRows(current, field);
+
+        for (int i = 0; i < order.length; i++) {
+            int row = order[ascending ? i : order.length - 1 - i];
+            if (filter.matches(row)) {
+                writer.write(data, row);
+            }
+        }
+    }
+
+    // Exact when bitmaps or the rollup can answer; otherwise extrapolated from an evenly spaced sample
+    public long estimateCount(SaleRecordSpecification.SearchCriteria criteria) {
+        ResidentState current = state;
+        ColumnarSaleStore data = current.data;
+        ResidentFilter filter = filter(current, criteria);
+        if (!filter.hasRowChecks() || current.rollup.summarize(data, criteria) != null) {
+            return count(current, criteria);
+        }
+        int stride = Math.max(1, data.size() / APPROXIMATE_COUNT_SAMPLE);
+        long sampled = 0;
+        long matched = 0;
+        for (int row = 0; row < data.size(); row += stride) {
+            sampled++;
+            if (filter.matches(row)) {
+                matched++;
+            }
+        }
+        return sampled == 0 ? 0 : Math.round((double) matched / sampled * data.size());
+    }
+
+    // Keyset page: binary search to the cursor in the presorted row order, then walk until
+    // `size` rows pass the filter. Cost does not depend on how deep the cursor is.
+    public CursorPage<SaleRecord> searchAfter(SaleRecordSpecification.SearchCriteria criteria,
+                                              String sortBy, String sortDirection, SeekCursor cursor, int size) {
+        ResidentState current = state;
+        ColumnarSaleStore data = current.data;
+        ResidentFilter filter = filter(current, criteria);
+        String field = SeekCursor.normalizeSortBy(sortBy);
+        boolean ascending = "asc".equalsIgnoreCase(sortDirection);
+        int[] order = sortedRows(current, field);
+
+        int position;
+        if (cursor == null) {
+            position = ascending ? 0 : order.length - 1;
+        } else {
+            // First index whose (key, row) is after the cursor in ascending order
+            int after = seek(data, order, field, cursor);
+            position = ascending ? after : after - 1;
+            if (!ascending && position >= 0 && compareToCursor(data, field, order[position], cursor) == 0) {
+                position--;
+            }
+        }
+
+        long start = System.nanoTime();
+        List<SaleRecord> content = new ArrayList<>(size);
+        boolean hasNext = false;
+        int step = ascending ? 1 : -1;
+        long walked = 0;
+        long matched = 0;
+        for (; position >= 0 && position < order.length; position += step) {
+            int row = order[position];
+            walked++;
+            if (!filter.matches(row)) {
+                continue;
+            }
+            matched++;
+            if (content.size() == size) {
+                hasNext = true;
+                break;
+            }
+            content.add(data.toSaleRecord(row));
+        }
+        searchMetrics.record(SearchMetrics.Stage.FILTER, RESIDENT, start);
+        searchMetrics.rows(RESIDENT, walked, matched);
+
+        String next = hasNext ? SeekCursor.after(content.get(content.size() - 1), field, sortDirection).encode() : null;
+        return new CursorPage<>(content, size, hasNext, next);
+    }
+
+    public SalesSummary summarize(SaleRecordSpecification.SearchCriteria criteria) {
+        ResidentState current = state;
+        ColumnarSaleStore data = current.data;
+        SummaryAccumulator fromRollup = current.rollup.summarize(data, criteria);
+        if (fromRollup != null) {
+            return fromRollup.toSummary(data.regions::decode, data.categories::decode, data.paymentMethods::decode);
+        }
+        return scanSummary(current, criteria);
+    }
+
+    // One pass over the rows matching the free-text query. Each dimension's filter is probed
+    // on its own (bitmap lookups, age/date compares), so a row failing exactly one of them is
+    // still counted for that one. Tags are counted by intersecting the rows counted for the tag
+    // dimension with each tag's bitmap, so the tags strings are never split.
+    public SalesFacets facets(SaleRecordSpecification.SearchCriteria criteria) {
+        ResidentState current = state;
+        ColumnarSaleStore data = current.data;
+        ResidentFilter[] checks = new ResidentFilter[FacetAccumulator.DIMENSIONS.length];
+        for (FacetAccumulator.Dimension dimension : FacetAccumulator.DIMENSIONS) {
+            if (dimension.isSet(criteria)) {
+                checks[dimension.ordinal()] = filter(current, dimension.only(criteria));
+            }
+        }
+        BitSet text = ResidentFilter.textMatches(current.nameIndex, current.phoneIndex, criteria.query());
+        Map<String, BitSet> tagIndex = current.indexes.tagRows();
+        String[] tagNames = tagIndex.keySet().toArray(String[]::new);
+        BitSet[] tagRows = new BitSet[tagNames.length];
+        for (int i = 0; i < tagNames.length; i++) {
+            tagRows[i] = tagIndex.get(tagNames[i]);
+        }
+
+        long visited = text != null ? text.cardinality() : data.size();
+        FacetAccumulator facets = new FacetAccumulator();
+        for (FacetAccumulator segment : segmentedScan.overRows(data.size(), visited, (from, to) -> {
+            FacetAccumulator segmentFacets = new FacetAccumulator();
+            // Rows counted for the tag dimension, from `from` on
+            BitSet tagCounted = new BitSet(to - from);
+            for (int row = text != null ? text.nextSetBit(from) : from; row >= 0 && row < to;
+                 row = text != null ? text.nextSetBit(row + 1) : row + 1) {
+                int failed = facetFailure(checks, row);
+                if (failed == FacetAccumulator.UNCOUNTED) {
+                    continue;
+                }
+                if (FacetAccumulator.counts(failed, FacetAccumulator.Dimension.TAG)) {
+                    tagCounted.set(row - from);
+                }
+                segmentFacets.add(failed, data.regionCodes.get(row), data.genderCodes.get(row),
+                        data.categoryCodes.get(row), data.paymentCodes.get(row), data.ages[row], data.dates[row]);
+            }
+            for (int tag = 0; tag < tagRows.length; tag++) {
+                BitSet carrying = tagRows[tag].get(from, to);
+                carrying.and(tagCounted);
+                segmentFacets.addTag(tag, carrying.cardinality());
+            }
+            return segmentFacets;
+        })) {
+            facets.merge(segment);
+        }
+        searchMetrics.rows(RESIDENT, visited, facets.count());
+        return facets.toFacets(data.regions::decode, data.genders::decode, data.categories::decode,
+                tag -> tagNames[tag], data.paymentMethods::decode);
+    }
+
+    // The dimension whose filter the row fails, MATCHED when it fails none, UNCOUNTED for several
+    private static int facetFailure(ResidentFilter[] checks, int row) {
+        int failed = FacetAccumulator.MATCHED;
+        for (int dimension = 0; dimension < checks.length; dimension++) {
+            if (checks[dimension] != null && !checks[dimension].matches(row)) {
+                if (failed != FacetAccumulator.MATCHED) {
+                    return FacetAccumulator.UNCOUNTED;
+                }
+                failed = dimension;
+            }
+        }
+        return failed;
+    }
+
+    public long count(SaleRecordSpecification.SearchCriteria criteria) {
+        return count(state, criteria);
+    }
+
+    private long count(ResidentState current, SaleRecordSpecification.SearchCriteria criteria) {
+        ColumnarSaleStore data = current.data;
+        SummaryAccumulator fromRollup = current.rollup.summarize(data, criteria);
+        if (fromRollup != null) {
+            return fromRollup.count();
+        }
+        ResidentFilter filter = filter(current, criteria);
+        if (filter.candidates() != null && !filter.hasRowChecks()) {
+            return filter.candidates().cardinality();
+        }
+        List<DatePartitions.Unit> units = partitionUnits(current, filter);
+        List<Integer> counts = units != null
+                ? overUnits(units, unit -> {
+                    int unitCount = 0;
+                    for (int i = unit.from(); i < unit.to(); i++) {
+                        if (filter.matches(unit.rows()[i], unit.rowChecks())) {
+                            unitCount++;
+                        }
+                    }
+                    return unitCount;
+                })
+                : segmentedScan.overRows(data.size(), rowsVisited(data, filter), (from, to) -> {
+                    int segmentCount = 0;
+                    for (int row = filter.nextMatch(from, to); row >= 0; row = filter.nextMatch(row + 1, to)) {
+                        segmentCount++;
+                    }
+                    return segmentCount;
+                });
+        long matchCount = 0;
+        for (int count : counts) {
+            matchCount += count;
+        }
+        return matchCount;
+    }
+
+    // The rollup's answer, or null when it cannot answer the criteria exactly. With
+    // scanSummary below, lets tests check the cube against the rows.
+    SalesSummary rollupSummary(SaleRecordSpecification.SearchCriteria criteria) {
+        ResidentState current = state;
+        ColumnarSaleStore data = current.data;
+        SummaryAccumulator fromRollup = current.rollup.summarize(data, criteria);
+        return fromRollup != null
+                ? fromRollup.toSummary(data.regions::decode, data.categories::decode, data.paymentMethods::decode)
+                : null;
+    }
+
+    SalesSummary scanSummary(SaleRecordSpecification.SearchCriteria criteria) {
+        return scanSummary(state, criteria);
+    }
+
+    // Aggregated per row segment or partition slice and merged in that order, so the
+    // floating-point sums come out the same whether the parts ran in parallel or on this thread
+    private SalesSummary scanSummary(ResidentState current, SaleRecordSpecification.SearchCriteria criteria) {
+        ColumnarSaleStore data = current.data;
+        ResidentFilter filter = filter(current, criteria);
+        List<DatePartitions.Unit> units = partitionUnits(current, filter);
+        List<SummaryAccumulator> parts = units != null
+                ? overUnits(units, unit -> {
+                    SummaryAccumulator unitSummary = new SummaryAccumulator();
+                    for (int i = unit.from(); i < unit.to(); i++) {
+                        int row = unit.rows()[i];
+                        if (filter.matches(row, unit.rowChecks())) {
+                            summarizeRow(unitSummary, data, row);
+                        }
+                    }
+                    return unitSummary;
+                })
+                : segmentedScan.overRows(data.size(), rowsVisited(data, filter), (from, to) -> {
+                    SummaryAccumulator segmentSummary = new SummaryAccumulator();
+                    for (int row = filter.nextMatch(from, to); row >= 0; row = filter.nextMatch(row + 1, to)) {
+                        summarizeRow(segmentSummary, data, row);
+                    }
+                    return segmentSummary;
+                });
+
+        SummaryAccumulator summary = new SummaryAccumulator();
+        for (SummaryAccumulator part : parts) {
+            summary.merge(part);
+        }
+        searchMetrics.rows(RESIDENT, units != null ? DatePartitions.rows(units) : rowsVisited(data, filter), summary.count());
+        return summary.toSummary(data.regions::decode, data.categories::decode, data.paymentMethods::decode);
+    }
+
+    private static void summarizeRow(SummaryAccumulator summary, ColumnarSaleStore data, int row) {
+        summary.add(data.quantities[row], data.totalAmount[row], data.finalAmount[row],
+                data.regionCodes.get(row), data.categoryCodes.get(row), data.paymentCodes.get(row));
+    }
+
+    // Null disables the snapshot for this load (turned off, or the source could not be identified)
+    private String sourceFingerprint() {
+        try {
+            return csvFallbackService.sourceFingerprint();
+        } catch (Exception e) {
+            System.err.println("Could not fingerprint the CSV source, snapshot skipped: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private ColumnarSaleStore restoreSnapshot(String fingerprint) {
+        if (fingerprint == null) {
+            return null;
+        }
+        try {
+            return DatasetSnapshot.read(Path.of(snapshotPath), fingerprint);
+        } catch (Exception e) {
+            System.err.println("Could not read snapshot " + snapshotPath + ", rebuilding from CSV: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeSnapshot(ColumnarSaleStore data, String fingerprint) {
+        try {
+            DatasetSnapshot.write(data, fingerprint, Path.of(snapshotPath));
+            System.out.println("Wrote resident dataset snapshot to " + snapshotPath);
+        } catch (Exception e) {
+            System.err.println("Could not write snapshot " + snapshotPath + ": " + e.getMessage());
+        }
+    }
+
+    // Matching rows in no particular order; the caller sorts them
+    private int[] matchingRows(ColumnarSaleStore data, ResidentFilter filter, List<DatePartitions.Unit> units) {
+        BitSet candidates = filter.candidates();
+        if (candidates != null && !filter.hasRowChecks()) {
+            return candidates.stream().toArray();
+        }
+
+        // Each segment or partition slice collects its matches on its own; joined in that order
+        // they come out the same on any number of threads
+        List<int[]> segments = units != null
+                ? overUnits(units, unit -> {
+                    int[] unitMatches = new int[unit.to() - unit.from()];
+                    int unitCount = 0;
+                    for (int i = unit.from(); i < unit.to(); i++) {
+                        int row = unit.rows()[i];
+                        if (filter.matches(row, unit.rowChecks())) {
+                            unitMatches[unitCount++] = row;
+                        }
+                    }
+                    return Arrays.copyOf(unitMatches, unitCount);
+                })
+                : segmentedScan.overRows(data.size(), rowsVisited(data, filter), (from, to) -> {
+                    int[] segmentMatches = new int[to - from];
+                    int segmentCount = 0;
+                    for (int row = filter.nextMatch(from, to); row >= 0; row = filter.nextMatch(row + 1, to)) {
+                        segmentMatches[segmentCount++] = row;
+                    }
+                    return Arrays.copyOf(segmentMatches, segmentCount);
+                });
+        int matchCount = 0;
+        for (int[] segment : segments) {
+            matchCount += segment.length;
+        }
+        int[] matches = new int[matchCount];
+        int offset = 0;
+        for (int[] segment : segments) {
+            System.arraycopy(segment, 0, matches, offset, segment.length);
+            offset += segment.length;
+        }
+        return matches;
+    }
+
+    // Rows a scan will look at: only those the bitmaps let through when any are set
+    private static long rowsVisited(ColumnarSaleStore data, ResidentFilter filter) {
+        return filter.candidates() != null ? filter.candidates().cardinality() : data.size();
+    }
+
+    // Slices of the date partitions a date range search has to visit, or null to scan the rows
+    // as usual: no date window, partitioning off, or the partitions left would not be fewer rows
+    private List<DatePartitions.Unit> partitionUnits(ResidentState current, ResidentFilter filter) {
+        if (current.partitions == null || !filter.hasDayCheck()) {
+            return null;
+        }
+        List<DatePartitions.Unit> units = filter.partitionUnits(current.partitions, segmentedScan.segmentRows());
+        return DatePartitions.rows(units) < rowsVisited(current.data, filter) ? units : null;
+    }
+
+    // Results of every slice in slice order, computed on the pool when they hold enough rows
+    private <T> List<T> overUnits(List<DatePartitions.Unit> units, Function<DatePartitions.Unit, T> scan) {
+        return segmentedScan.parts(units.size(), segmentedScan.parallel(DatePartitions.rows(units)),
+                index -> scan.apply(units.get(index)));
+    }
+
+    private static void putPartitions(Map<String, Object> report, DatePartitions partitions) {
+        if (partitions != null) {
+            report.put("datePartitions", partitions.partitionCount());
+            report.put("partitionIndexBytes", partitions.estimatedBytes());
+        }
+    }
+
+    // Packs (sort key, row) into one long so a primitive sort orders by key and breaks ties
+    // by row, both in the requested direction (bitwise NOT flips the order for descending)
+    private long[] sortKeys(ResidentState current, int[] matches, int count, String sortBy, boolean ascending) {
+        int[] keys = sortKeyColumn(current, SeekCursor.normalizeSortBy(sortBy));
+
+        long[] packed = new long[count];
+        for (int i = 0; i < count; i++) {
+            int row = matches[i];
+            packed[i] = ascending
+                    ? ((long) keys[row] << 32) | row
+                    : ((long) ~keys[row] << 32) | (~row & 0xFFFFFFFFL);
+        }
+        return packed;
+    }
+
+    private static int unpackRow(long packed, boolean ascending) {
+        return ascending ? (int) packed : ~(int) packed;
+    }
+
+    private int[] sortedRows(ResidentState current, String field) {
+        return current.sortedRows.computeIfAbsent(field, key -> buildSortedRows(current, key));
+    }
+
+    private int[] buildSortedRows(ResidentState current, String field) {
+        int[] keys = sortKeyColumn(current, field);
+        long[] packed = new long[current.data.size()];
+        for (int row = 0; row < packed.length; row++) {
+            packed[row] = ((long) keys[row] << 32) | row;
+        }
+        segmentedScan.sort(packed);
+        int[] rows = new int[packed.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = (int) packed[i];
+        }
+        return rows;
+    }
+
+    private int seek(ColumnarSaleStore data, int[] order, String field, SeekCursor cursor) {
+        int low = 0;
+        int high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareToCursor(data, field, order[mid], cursor) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Compares a row's (sort key, row) with the cursor's (key, id - 1) in ascending order
+    private int compareToCursor(ColumnarSaleStore data, String field, int row, SeekCursor cursor) {
+        int byKey;
+        if ("customerName".equals(field)) {
+            byKey = sortableName(data.customerNames[row]).compareTo(sortableName(cursor.key()));
+        } else if ("quantity".equals(field)) {
+            int key = cursor.key() != null ? Integer.parseInt(cursor.key()) : ColumnarSaleStore.MISSING_INT;
+            byKey = Integer.compare(data.quantities[row], key);
+        } else {
+            int key = cursor.key() != null ? (int) LocalDate.parse(cursor.key()).toEpochDay() : ColumnarSaleStore.MISSING_INT;
+            byKey = Integer.compare(data.dates[row], key);
+        }
+        return byKey != 0 ? byKey : Long.compare(row, cursor.id() - 1);
+    }
+
+    private int[] sortKeyColumn(ResidentState current, String field) {
+        if ("quantity".equals(field)) {
+            return current.data.quantities;
+        }
+        if ("customerName".equals(field)) {
+            return customerNameRanks(current);
+        }
+        return current.data.dates;
+    }
+
+    private int[] customerNameRanks(ResidentState current) {
+        int[] ranks = current.customerNameRanks;
+        if (ranks != null) {
+            return ranks;
+        }
+        ColumnarSaleStore data = current.data;
+        Integer[] rows = new Integer[data.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        String[] names = data.customerNames;
+        // Stable, so equal names stay in row order
+        Arrays.sort(rows, (a, b) -> sortableName(names[a]).compareTo(sortableName(names[b])));
+        ranks = nameRanks(data, Arrays.stream(rows).mapToInt(Integer::intValue).toArray());
+        current.customerNameRanks = ranks;
+        return ranks;
+    }
+
+    // Rank of each row's name: the position of the first row with that name in the name order
+    private static int[] nameRanks(ColumnarSaleStore data, int[] byName) {
+        String[] names = data.customerNames;
+        int[] ranks = new int[byName.length];
+        int rank = 0;
+        for (int i = 0; i < byName.length; i++) {
+            if (i > 0 && !sortableName(names[byName[i]]).equals(sortableName(names[byName[i - 1]]))) {
+                rank = i;
+            }
+            ranks[byName[i]] = rank;
+        }
+        return ranks;
+    }
+
+    // The order of the existing rows with rows [fromRow, size) merged in. Appended rows have the
+    // highest row ids, so among equal keys they follow every existing row, as a full sort puts
+    // them. Each new row's place is found by binary search and the existing runs between those
+    // places are block copied, so the cost is a copy of the order plus a few compares per new row.
+    private static int[] mergeSortedRows(ColumnarSaleStore data, String field, int[] order, int fromRow) {
+        Integer[] added = new Integer[data.size() - fromRow];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = fromRow + i;
+        }
+        Arrays.sort(added, (a, b) -> compareSortKeys(data, field, a, b));
+        int[] merged = new int[order.length + added.length];
+        int copied = 0;
+        int filled = 0;
+        for (int row : added) {
+            int low = copied;
+            int high = order.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareSortKeys(data, field, order[mid], row) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            System.arraycopy(order, copied, merged, filled, low - copied);
+            filled += low - copied;
+            copied = low;
+            merged[filled++] = row;
+        }
+        System.arraycopy(order, copied, merged, filled, order.length - copied);
+        return merged;
+    }
+
+    private static int compareSortKeys(ColumnarSaleStore data, String field, int left, int right) {
+        if ("customerName".equals(field)) {
+            return sortableName(data.customerNames[left]).compareTo(sortableName(data.customerNames[right]));
+        }
+        if ("quantity".equals(field)) {
+            return Integer.compare(data.quantities[left], data.quantities[right]);
+        }
+        return Integer.compare(data.dates[left], data.dates[right]);
+    }
+
+    private static String sortableName(String name) {
+        return name != null ? name : "";
+    }
+
+    private Sort toSort(String sortBy, String direction) {
+        String property = "quantity".equalsIgnoreCase(sortBy) || "customerName".equalsIgnoreCase(sortBy) ? sortBy : "date";
+        Sort sort = Sort.by(property);
+        return "asc".equalsIgnoreCase(direction) ? sort.ascending() : sort.descending();
+    }
+
+    private ResidentFilter filter(ResidentState current, SaleRecordSpecification.SearchCriteria criteria) {
+        return new ResidentFilter(current.data, current.indexes, current.nameIndex, current.phoneIndex,
+                current.columnStats, criteria);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private record MatchKey(ColumnarSaleStore data, SaleRecordSpecification.SearchCriteria criteria,
+                            String sortField, boolean ascending) {}
+
+    // One published version of the dataset and everything derived from it. A load or an append
+    // builds the next state beside the current one and publishes it with one volatile write, so
+    // a request that reads the state once sees the same rows in every column and index until
+    // it finishes, and readers never wait for a writer.
+    private static final class ResidentState {
+
+        final ColumnarSaleStore data;
+        final BitmapIndexes indexes;
+        final TrigramSegments nameIndex;
+        final TrigramSegments phoneIndex;
+        final RollupCube rollup;
+        // Null when partitioning is turned off
+        final DatePartitions partitions;
+        // Sampled at load; it only orders the row checks, so appends leave it as it is
+        final ColumnStats columnStats;
+        // Row ids ordered ascending by (sort key, row), built on first use per sort field
+        final Map<String, int[]> sortedRows;
+        volatile int[] customerNameRanks;
+
+        ResidentState(ColumnarSaleStore data, BitmapIndexes indexes, TrigramSegments nameIndex,
+                      TrigramSegments phoneIndex, RollupCube rollup, DatePartitions partitions,
+                      ColumnStats columnStats, Map<String, int[]> sortedRows) {
+            this.data = data;
+            this.indexes = indexes;
+            this.nameIndex = nameIndex;
+            this.phoneIndex = phoneIndex;
+            this.rollup = rollup;
+            this.partitions = partitions;
+            this.columnStats = columnStats;
+            this.sortedRows = sortedRows;
+        }
+    }
+
+    // Mirrors CsvRowFilter. The multi-select filters are answered from the bitmap indexes
+    // and the free-text query from the trigram indexes; only age and date are checked row by row,
+    // each only when set and the one the column sample expects to reject more rows first.
+    static final class ResidentFilter {
+
+        private final ColumnarSaleStore data;
+        private final BitSet candidates;
+        private final int minAge;
+        private final int maxAge;
+        private final int startDay;
+        private final int endDay;
+        private final boolean ageCheck;
+        private final boolean dayCheck;
+        private final boolean ageFirst;
+        private final boolean rowChecks;
+
+        ResidentFilter(ColumnarSaleStore data, BitmapIndexes indexes, TrigramSegments nameIndex, TrigramSegments phoneIndex,
+                       ColumnStats stats, SaleRecordSpecification.SearchCriteria criteria) {
+            this.data = data;
+            this.candidates = intersect(
+                    indexes.regions(criteria.customerRegions()),
+                    indexes.genders(criteria.genders()),
+                    indexes.categories(criteria.productCategories()),
+                    indexes.tags(criteria.tags()),
+                    indexes.paymentMethods(criteria.paymentMethods()),
+                    textMatches(nameIndex, phoneIndex, criteria.query())
+            );
+            this.minAge = criteria.minAge() != null ? criteria.minAge() : Integer.MIN_VALUE;
+            this.maxAge = criteria.maxAge() != null ? criteria.maxAge() : Integer.MAX_VALUE;
+            this.startDay = epochDay(criteria.startDate(), Integer.MIN_VALUE);
+            this.endDay = epochDay(criteria.endDate(), Integer.MAX_VALUE);
+            this.ageCheck = criteria.minAge() != null || criteria.maxAge() != null;
+            this.dayCheck = criteria.startDate() != null || criteria.endDate() != null;
+            this.ageFirst = ageCheck && dayCheck
+                    && stats.ageRate(minAge, maxAge) <= stats.dayRate(startDay, endDay);
+            this.rowChecks = ageCheck || dayCheck;
+        }
+
+        // Rows allowed by the bitmap filters, or null when none of them is set
+        BitSet candidates() {
+            return candidates;
+        }
+
+        // False when the bitmaps alone decide the result, so the count is a popcount
+        boolean hasRowChecks() {
+            return rowChecks;
+        }
+
+        boolean matches(int row) {
+            return matches(row, rowChecks);
+        }
+
+        // Inside a partition slice the row checks are left out when its zone map shows all rows pass
+        boolean matches(int row, boolean withRowChecks) {
+            if (candidates != null && !candidates.get(row)) return false;
+            return !withRowChecks || matchesRowChecks(row);
+        }
+
+        boolean hasDayCheck() {
+            return dayCheck;
+        }
+
+        List<DatePartitions.Unit> partitionUnits(DatePartitions partitions, int unitRows) {
+            return partitions.units(startDay, endDay, minAge, maxAge, unitRows);
+        }
+
+        // First matching row in [row, to), or -1; walks only the bitmap candidates when there are any
+        int nextMatch(int row, int to) {
+            if (candidates != null) {
+                for (row = candidates.nextSetBit(row); row >= 0 && row < to; row = candidates.nextSetBit(row + 1)) {
+                    if (!rowChecks || matchesRowChecks(row)) {
+                        return row;
+                    }
+                }
+                return -1;
+            }
+            for (; row < to; row++) {
+                if (!rowChecks || matchesRowChecks(row)) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+
+        boolean matchesRowChecks(int row) {
+            if (ageFirst) {
+                return ageMatches(row) && (!dayCheck || dayMatches(row));
+            }
+            return (!dayCheck || dayMatches(row)) && (!ageCheck || ageMatches(row));
+        }
+
+        private boolean ageMatches(int row) {
+            int age = data.ages[row];
+            return age == ColumnarSaleStore.MISSING_INT || (age >= minAge && age <= maxAge);
+        }
+
+        private boolean dayMatches(int row) {
+            int day = data.dates[row];
+            return day >= startDay && day <= endDay;
+        }
+
+        // Case-insensitive on the name, as typed on the phone number; null when there is no query
+        private static BitSet textMatches(TrigramSegments nameIndex, TrigramSegments phoneIndex, String query) {
+            if (query == null || query.isBlank()) {
+                return null;
+            }
+            BitSet rows = nameIndex.rows(query.toLowerCase());
+            rows.or(phoneIndex.rows(query));
+            return rows;
+        }
+
+        private static BitSet intersect(BitSet... filters) {
+            BitSet result = null;
+            for (BitSet filter : filters) {
+                if (filter == null) {
+                    continue;
+                }
+                if (result == null) {
+                    result = filter;
+                } else {
+                    result.and(filter);
+                }
+            }
+            return result;
+        }
+
+        private static int epochDay(LocalDate date, int fallback) {
+            return date != null ? (int) date.toEpochDay() : fallback;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.truestate.retail.services;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Pre-aggregated counts and sums per (month, region, gender, category, payment method,
+// age band). Filters without a free-text query or tags can be answered by merging
+// cells instead of touching rows, as long as every month and age band the filter
+// touches is either fully inside or fully outside the requested range.
+public class RollupCube {
+
+    // Lower bounds of the age bands, matching the age groups the UI slider snaps to
+    static final int[] AGE_BAND_STARTS = {0, 18, 25, 35, 45, 55, 65};
+    static final int MISSING_BAND = AGE_BAND_STARTS.length;
+    static final int NO_MONTH = 0;
+
+    private static final int CODE_BITS = 9;
+    private static final int MAX_CODE = (1 << CODE_BITS) - 1;
+
+    private final Map<Long, Cell> cells = new HashMap<>();
+    // Observed value range per month and per age band, used to decide whether a bucket
+    // lies completely inside a date/age filter
+    private final Map<Integer, int[]> monthDays = new HashMap<>();
+    private final int[][] bandAges = new int[AGE_BAND_STARTS.length][];
+    private boolean usable = true;
+
+    public static RollupCube build(ColumnarSaleStore data) {
+        RollupCube cube = new RollupCube();
+        for (int row = 0; row < data.size(); row++) {
+            cube.add(data, row);
+        }
+        return cube;
+    }
+
+    // Called for every loaded row; cells are updated in place, never rebuilt
+    public void add(ColumnarSaleStore data, int row) {
+        add(data, row, null);
+    }
+
+    // A cube that also covers rows [fromRow, data.size()). Cells the new rows fall into are
+    // copied before they are updated, so this cube keeps answering its readers unchanged.
+    public RollupCube appended(ColumnarSaleStore data, int fromRow) {
+        RollupCube cube = new RollupCube();
+        cube.usable = usable;
+        if (usable) {
+            cube.cells.putAll(cells);
+            monthDays.forEach((month, range) -> cube.monthDays.put(month, range.clone()));
+            for (int band = 0; band < bandAges.length; band++) {
+                cube.bandAges[band] = bandAges[band] != null ? bandAges[band].clone() : null;
+            }
+        }
+        Set<Long> copied = new HashSet<>();
+        for (int row = fromRow; row < data.size(); row++) {
+            cube.add(data, row, copied);
+        }
+        return cube;
+    }
+
+    // `copied` holds the cells this cube owns; others are shared with the cube it was copied from
+    private void add(ColumnarSaleStore data, int row, Set<Long> copied) {
+        int region = data.regionCodes.get(row);
+        int gender = data.genderCodes.get(row);
+        int category = data.categoryCodes.get(row);
+        int payment = data.paymentCodes.get(row);
+        if (region > MAX_CODE || gender > MAX_CODE || category > MAX_CODE || payment > MAX_CODE) {
+            // Too many distinct values to be worth a rollup; queries fall back to scanning
+            usable = false;
+            cells.clear();
+            return;
+        }
+        if (!usable) {
+            return;
+        }
+
+        int day = data.dates[row];
+        int month = NO_MONTH;
+        if (day != ColumnarSaleStore.MISSING_INT) {
+            month = monthOf(day);
+            widen(monthDays.computeIfAbsent(month, key -> new int[] {Integer.MAX_VALUE, Integer.MIN_VALUE}), day);
+        }
+
+        int age = data.ages[row];
+        int band = MISSING_BAND;
+        if (age != ColumnarSaleStore.MISSING_INT) {
+            band = bandOf(age);
+            if (bandAges[band] == null) {
+                bandAges[band] = new int[] {Integer.MAX_VALUE, Integer.MIN_VALUE};
+            }
+            widen(bandAges[band], age);
+        }
+
+        long key = key(month, band, region, gender, category, payment);
+        Cell cell;
+        if (copied == null) {
+            cell = cells.computeIfAbsent(key, k -> new Cell());
+        } else if (copied.add(key)) {
+            // First appended row in this cell: a new cell, or a copy of the shared one
+            Cell shared = cells.get(key);
+            cell = shared != null ? shared.copy() : new Cell();
+            cells.put(key, cell);
+        } else {
+            cell = cells.get(key);
+        }
+        cell.add(data.quantities[row], data.totalAmount[row], data.finalAmount[row]);
+    }
+
+    public boolean isUsable() {
+        return usable;
+    }
+
+    public int cellCount() {
+        return cells.size();
+    }
+
+    // Null when the criteria cannot be answered exactly from the cube
+    SummaryAccumulator summarize(ColumnarSaleStore data, SaleRecordSpecification.SearchCriteria criteria) {
+        if (!usable || hasText(criteria.query()) || (criteria.tags() != null && !criteria.tags().isEmpty())) {
+            return null;
+        }
+
+        Map<Integer, Boolean> months = monthSelection(criteria.startDate(), criteria.endDate());
+        boolean[] bands = bandSelection(criteria.minAge(), criteria.maxAge());
+        if (months == null || bands == null) {
+            return null;
+        }
+
+        boolean[] regions = codeSelection(data.regions, criteria.customerRegions());
+        boolean[] genders = codeSelection(data.genders, criteria.genders());
+        boolean[] categories = codeSelection(data.categories, criteria.productCategories());
+        boolean[] payments = codeSelection(data.paymentMethods, criteria.paymentMethods());
+
+        SummaryAccumulator summary = new SummaryAccumulator();
+        for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+            long key = entry.getKey();
+            int payment = (int) (key & MAX_CODE);
+            int category = (int) ((key >>> CODE_BITS) & MAX_CODE);
+            int gender = (int) ((key >>> (2 * CODE_BITS)) & MAX_CODE);
+            int region = (int) ((key >>> (3 * CODE_BITS)) & MAX_CODE);
+            int band = (int) ((key >>> (4 * CODE_BITS)) & 0xF);
+            int month = (int) (key >>> (4 * CODE_BITS + 4));
+
+            if (!selected(regions, region) || !selected(genders, gender)
+                    || !selected(categories, category) || !selected(payments, payment)
+                    || !bands[band] || !months.getOrDefault(month, false)) {
+                continue;
+            }
+            summary.addCell(entry.getValue(), region, category, payment);
+        }
+        return summary;
+    }
+
+    // month -> included; null if some month straddles the requested range
+    private Map<Integer, Boolean> monthSelection(LocalDate startDate, LocalDate endDate) {
+        Map<Integer, Boolean> selection = new HashMap<>();
+        // Missing dates are stored below every real day, so only a start date excludes them
+        selection.put(NO_MONTH, startDate == null);
+
+        int start = startDate != null ? (int) startDate.toEpochDay() : Integer.MIN_VALUE;
+        int end = endDate != null ? (int) endDate.toEpochDay() : Integer.MAX_VALUE;
+        for (Map.Entry<Integer, int[]> entry : monthDays.entrySet()) {
+            Boolean included = coverage(entry.getValue(), start, end);
+            if (included == null) {
+                return null;
+            }
+            selection.put(entry.getKey(), included);
+        }
+        return selection;
+    }
+
+    private boolean[] bandSelection(Integer minAge, Integer maxAge) {
+        boolean[] selection = new boolean[AGE_BAND_STARTS.length + 1];
+        // Rows without an age pass the age filter, same as the row-level check
+        selection[MISSING_BAND] = true;
+
+        int min = minAge != null ? minAge : Integer.MIN_VALUE;
+        int max = maxAge != null ? maxAge : Integer.MAX_VALUE;
+        for (int band = 0; band < AGE_BAND_STARTS.length; band++) {
+            if (bandAges[band] == null) {
+                continue;
+            }
+            Boolean included = coverage(bandAges[band], min, max);
+            if (included == null) {
+                return null;
+            }
+            selection[band] = included;
+        }
+        return selection;
+    }
+
+    // TRUE if [observedMin, observedMax] is inside [from, to], FALSE if disjoint, null if it straddles
+    private static Boolean coverage(int[] observed, int from, int to) {
+        if (observed[0] >= from && observed[1] <= to) {
+            return Boolean.TRUE;
+        }
+        if (observed[1] < from || observed[0] > to) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    private static boolean[] codeSelection(StringDictionary dictionary, List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        boolean[] selected = new boolean[dictionary.size()];
+        for (String value : values) {
+            int code = dictionary.lookup(value);
+            if (code >= 0) {
+                selected[code] = true;
+            }
+        }
+        return selected;
+    }
+
+    private static boolean selected(boolean[] selection, int code) {
+        return selection == null || (code < selection.length && selection[code]);
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    private static void widen(int[] range, int value) {
+        range[0] = Math.min(range[0], value);
+        range[1] = Math.max(range[1], value);
+    }
+
+    static int bandOf(int age) {
+        int band = 0;
+        while (band + 1 < AGE_BAND_STARTS.length && age >= AGE_BAND_STARTS[band + 1]) {
+            band++;
+        }
+        return band;
+    }
+
+    // Months are counted from year 0 and shifted by one so NO_MONTH never collides
+    static int monthOf(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return date.getYear() * 12 + date.getMonthValue();
+    }
+
+    private static long key(int month, int band, int region, int gender, int category, int payment) {
+        return ((long) month << (4 * CODE_BITS + 4))
+                | ((long) band << (4 * CODE_BITS))
+                | ((long) region << (3 * CODE_BITS))
+                | ((long) gender << (2 * CODE_BITS))
+                | ((long) category << CODE_BITS)
+                | payment;
+    }
+
+    static final class Cell {
+        long count;
+        final SummaryAccumulator.MetricAccumulator quantity = new SummaryAccumulator.MetricAccumulator();
+        final SummaryAccumulator.MetricAccumulator totalAmount = new SummaryAccumulator.MetricAccumulator();
+        final SummaryAccumulator.MetricAccumulator finalAmount = new SummaryAccumulator.MetricAccumulator();
+        final SummaryAccumulator.MetricAccumulator discount = new SummaryAccumulator.MetricAccumulator();
+
+        void add(int qty, double total, double fin) {
+            count++;
+            if (qty != ColumnarSaleStore.MISSING_INT) {
+                quantity.add(qty);
+            }
+            totalAmount.add(total);
+            finalAmount.add(fin);
+            discount.add(total - fin);
+        }
+
+        Cell copy() {
+            Cell copy = new Cell();
+            copy.count = count;
+            copy.quantity.merge(quantity);
+            copy.totalAmount.merge(totalAmount);
+            copy.finalAmount.merge(finalAmount);
+            copy.discount.merge(discount);
+            return copy;
+        }
+    }
+}
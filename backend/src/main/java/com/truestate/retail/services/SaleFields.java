@@ -0,0 +1,155 @@
+package com.truestate.retail.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.truestate.retail.models.SaleRecord;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+// The SaleRecord properties a search returns when the client lists them in `fields`. Names
+// follow the order of the SaleRecord JSON and always start with id, so rows stay addressable.
+// The database path selects just these columns; the other paths trim the records they built.
+public final class SaleFields {
+
+    private static final Map<String, Function<SaleRecord, Object>> ACCESSORS = new LinkedHashMap<>();
+
+    static {
+        ACCESSORS.put("id", SaleRecord::getId);
+        ACCESSORS.put("transactionId", SaleRecord::getTransactionId);
+        ACCESSORS.put("date", SaleRecord::getDate);
+        ACCESSORS.put("customerId", SaleRecord::getCustomerId);
+        ACCESSORS.put("customerName", SaleRecord::getCustomerName);
+        ACCESSORS.put("phoneNumber", SaleRecord::getPhoneNumber);
+        ACCESSORS.put("gender", SaleRecord::getGender);
+        ACCESSORS.put("age", SaleRecord::getAge);
+        ACCESSORS.put("customerRegion", SaleRecord::getCustomerRegion);
+        ACCESSORS.put("customerType", SaleRecord::getCustomerType);
+        ACCESSORS.put("productId", SaleRecord::getProductId);
+        ACCESSORS.put("productName", SaleRecord::getProductName);
+        ACCESSORS.put("brand", SaleRecord::getBrand);
+        ACCESSORS.put("productCategory", SaleRecord::getProductCategory);
+        ACCESSORS.put("tags", SaleRecord::getTags);
+        ACCESSORS.put("quantity", SaleRecord::getQuantity);
+        ACCESSORS.put("pricePerUnit", SaleRecord::getPricePerUnit);
+        ACCESSORS.put("discountPercentage", SaleRecord::getDiscountPercentage);
+        ACCESSORS.put("totalAmount", SaleRecord::getTotalAmount);
+        ACCESSORS.put("finalAmount", SaleRecord::getFinalAmount);
+        ACCESSORS.put("paymentMethod", SaleRecord::getPaymentMethod);
+        ACCESSORS.put("orderStatus", SaleRecord::getOrderStatus);
+        ACCESSORS.put("deliveryType", SaleRecord::getDeliveryType);
+        ACCESSORS.put("storeId", SaleRecord::getStoreId);
+        ACCESSORS.put("storeLocation", SaleRecord::getStoreLocation);
+        ACCESSORS.put("salespersonId", SaleRecord::getSalespersonId);
+        ACCESSORS.put("employeeName", SaleRecord::getEmployeeName);
+    }
+
+    private final List<String> names;
+    private final List<Function<SaleRecord, Object>> accessors;
+
+    private SaleFields(List<String> names) {
+        this.names = names;
+        this.accessors = names.stream().map(ACCESSORS::get).toList();
+    }
+
+    // null when nothing is requested, meaning whole records; unknown names are rejected
+    public static SaleFields parse(List<String> requested) {
+        if (requested == null) {
+            return null;
+        }
+        Set<String> wanted = new LinkedHashSet<>();
+        for (String value : requested) {
+            for (String name : value.split(",")) {
+                String trimmed = name.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                if (!ACCESSORS.containsKey(trimmed)) {
+                    throw new IllegalArgumentException("Unknown field: " + trimmed);
+                }
+                wanted.add(trimmed);
+            }
+        }
+        if (wanted.isEmpty()) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : ACCESSORS.keySet()) {
+            if (name.equals("id") || wanted.contains(name)) {
+                names.add(name);
+            }
+        }
+        return new SaleFields(List.copyOf(names));
+    }
+
+    // Entity property names, which are also the JSON keys
+    public List<String> names() {
+        return names;
+    }
+
+    Row project(SaleRecord sale) {
+        Object[] values = new Object[accessors.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = accessors.get(i).apply(sale);
+        }
+        return new Row(this, values);
+    }
+
+    // values are in names() order, as the database projection returns them; the array is kept
+    Row project(Object[] values) {
+        return new Row(this, values);
+    }
+
+    // One projected row, written as a JSON object of its fields without an intermediate map
+    @JsonSerialize(using = RowSerializer.class)
+    public static final class Row {
+
+        private final SaleFields fields;
+        private final Object[] values;
+
+        private Row(SaleFields fields, Object[] values) {
+            this.fields = fields;
+            this.values = values;
+        }
+
+        int size() {
+            return values.length;
+        }
+    }
+
+    static final class RowSerializer extends StdSerializer<Row> {
+
+        RowSerializer() {
+            super(Row.class);
+        }
+
+        @Override
+        public void serialize(Row row, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject(row);
+            List<String> names = row.fields.names;
+            for (int i = 0; i < row.values.length; i++) {
+                generator.writeFieldName(names.get(i));
+                provider.defaultSerializeValue(row.values[i], generator);
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof SaleFields fields && names.equals(fields.names);
+    }
+
+    @Override
+    public int hashCode() {
+        return names.hashCode();
+    }
+}
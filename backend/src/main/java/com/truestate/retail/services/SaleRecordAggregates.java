@@ -0,0 +1,200 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.models.SaleRecordTag;
+import com.truestate.retail.models.SaleTag;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// SQL-side aggregation for the database path: one aggregate query plus one GROUP BY
+// per breakdown or facet dimension, so no SaleRecord entities are loaded.
+@Component
+public class SaleRecordAggregates {
+
+    private final EntityManager entityManager;
+
+    public SaleRecordAggregates(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Transactional(readOnly = true)
+    public SalesSummary summarize(SaleRecordSpecification.SearchCriteria criteria) {
+        Specification<SaleRecord> spec = SaleRecordSpecification.build(criteria);
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<SaleRecord> root = query.from(SaleRecord.class);
+
+        Expression<Integer> quantity = root.get("quantity");
+        Expression<Double> totalAmount = root.get("totalAmount");
+        Expression<Double> finalAmount = root.get("finalAmount");
+        Expression<Double> discount = cb.diff(totalAmount, finalAmount);
+
+        List<Selection<?>> selections = new ArrayList<>();
+        selections.add(cb.count(root));
+        for (Expression<? extends Number> metric : List.of(quantity, totalAmount, finalAmount, discount)) {
+            selections.add(cb.count(metric));
+            selections.add(cb.sum(metric));
+            selections.add(cb.min(metric));
+            selections.add(cb.max(metric));
+        }
+        query.multiselect(selections).where(spec.toPredicate(root, query, cb));
+        Tuple totals = entityManager.createQuery(query).getSingleResult();
+
+        return new SalesSummary(
+                totals.get(0, Long.class),
+                metric(totals, 1),
+                metric(totals, 5),
+                metric(totals, 9),
+                metric(totals, 13),
+                groups(criteria, "customerRegion"),
+                groups(criteria, "productCategory"),
+                groups(criteria, "paymentMethod")
+        );
+    }
+
+    private List<SalesSummary.Group> groups(SaleRecordSpecification.SearchCriteria criteria, String attribute) {
+        Specification<SaleRecord> spec = SaleRecordSpecification.build(criteria);
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<SaleRecord> root = query.from(SaleRecord.class);
+
+        Expression<String> key = root.get(attribute);
+        Expression<Double> totalAmount = root.get("totalAmount");
+        Expression<Double> finalAmount = root.get("finalAmount");
+        query.multiselect(
+                        key,
+                        cb.count(root),
+                        cb.sum(root.<Integer>get("quantity")),
+                        cb.sum(totalAmount),
+                        cb.sum(finalAmount),
+                        cb.sum(cb.diff(totalAmount, finalAmount)))
+                .where(spec.toPredicate(root, query, cb))
+                .groupBy(key)
+                .orderBy(cb.asc(key));
+
+        List<SalesSummary.Group> groups = new ArrayList<>();
+        for (Tuple row : entityManager.createQuery(query).getResultList()) {
+            groups.add(new SalesSummary.Group(
+                    row.get(0, String.class),
+                    row.get(1, Long.class),
+                    asNumber(row.get(2)).longValue(),
+                    asNumber(row.get(3)).doubleValue(),
+                    asNumber(row.get(4)).doubleValue(),
+                    asNumber(row.get(5)).doubleValue()
+            ));
+        }
+        return groups;
+    }
+
+    // One count plus one GROUP BY per dimension, each under the criteria with that dimension's
+    // own filter cleared. Ages and dates are grouped by value and folded into bands and months here.
+    @Transactional(readOnly = true)
+    public SalesFacets facets(SaleRecordSpecification.SearchCriteria criteria) {
+        return new SalesFacets(
+                count(criteria),
+                facet(criteria, FacetAccumulator.Dimension.REGION, "customerRegion"),
+                facet(criteria, FacetAccumulator.Dimension.GENDER, "gender"),
+                facet(criteria, FacetAccumulator.Dimension.CATEGORY, "productCategory"),
+                buckets(FacetAccumulator.Dimension.TAG.without(criteria), (root, query, cb, where) -> {
+                    Root<SaleRecordTag> saleTag = query.from(SaleRecordTag.class);
+                    Root<SaleTag> tag = query.from(SaleTag.class);
+                    where.add(cb.equal(saleTag.get("saleRecordId"), root.get("id")));
+                    where.add(cb.equal(saleTag.get("tagId"), tag.get("id")));
+                    return List.of(tag.get("name"));
+                }, row -> row.get(0, String.class)),
+                facet(criteria, FacetAccumulator.Dimension.PAYMENT_METHOD, "paymentMethod"),
+                buckets(FacetAccumulator.Dimension.AGE.without(criteria), (root, query, cb, where) -> {
+                    where.add(cb.isNotNull(root.get("age")));
+                    return List.of(root.get("age"));
+                }, row -> FacetAccumulator.ageBand(RollupCube.bandOf(row.get(0, Integer.class)))),
+                buckets(FacetAccumulator.Dimension.DATE.without(criteria), (root, query, cb, where) -> {
+                    Expression<LocalDate> date = root.get("date");
+                    where.add(cb.isNotNull(date));
+                    return List.of(cb.function("year", Integer.class, date), cb.function("month", Integer.class, date));
+                }, row -> FacetAccumulator.month(row.get(0, Integer.class) * 12 + row.get(1, Integer.class)))
+        );
+    }
+
+    private long count(SaleRecordSpecification.SearchCriteria criteria) {
+        Specification<SaleRecord> spec = SaleRecordSpecification.build(criteria);
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<SaleRecord> root = query.from(SaleRecord.class);
+        query.select(cb.count(root)).where(spec.toPredicate(root, query, cb));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    private List<SalesFacets.Bucket> facet(SaleRecordSpecification.SearchCriteria criteria,
+                                           FacetAccumulator.Dimension dimension, String attribute) {
+        return buckets(dimension.without(criteria), (root, query, cb, where) -> List.of(root.get(attribute)),
+                row -> row.get(0, String.class));
+    }
+
+    // Row counts grouped by the given keys; rows whose keys map to the same value are added up
+    private List<SalesFacets.Bucket> buckets(SaleRecordSpecification.SearchCriteria criteria, GroupKeys groupKeys,
+                                             Function<Tuple, String> value) {
+        Specification<SaleRecord> spec = SaleRecordSpecification.build(criteria);
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<SaleRecord> root = query.from(SaleRecord.class);
+
+        List<Predicate> where = new ArrayList<>();
+        where.add(spec.toPredicate(root, query, cb));
+        List<Expression<?>> keys = groupKeys.keys(root, query, cb, where);
+        List<Selection<?>> selections = new ArrayList<>(keys);
+        selections.add(cb.count(root));
+        query.multiselect(selections).where(where.toArray(new Predicate[0])).groupBy(keys);
+
+        Map<String, Long> counts = new HashMap<>();
+        for (Tuple row : entityManager.createQuery(query).getResultList()) {
+            if (row.get(0) != null) {
+                counts.merge(value.apply(row), row.get(keys.size(), Long.class), Long::sum);
+            }
+        }
+        List<SalesFacets.Bucket> buckets = new ArrayList<>();
+        counts.forEach((key, count) -> buckets.add(new SalesFacets.Bucket(key, count)));
+        return FacetAccumulator.sorted(buckets);
+    }
+
+    // Group-by expressions over the sale root; may join further roots by adding to `where`
+    private interface GroupKeys {
+        List<Expression<?>> keys(Root<SaleRecord> root, CriteriaQuery<Tuple> query, CriteriaBuilder cb,
+                                 List<Predicate> where);
+    }
+
+    // Columns are laid out as count, sum, min, max starting at `offset`
+    private static SalesSummary.Metric metric(Tuple row, int offset) {
+        long count = row.get(offset, Long.class);
+        if (count == 0) {
+            return new SalesSummary.Metric(0, 0, null, null, null);
+        }
+        double sum = asNumber(row.get(offset + 1)).doubleValue();
+        return new SalesSummary.Metric(
+                count,
+                sum,
+                sum / count,
+                asNumber(row.get(offset + 2)).doubleValue(),
+                asNumber(row.get(offset + 3)).doubleValue()
+        );
+    }
+
+    private static Number asNumber(Object value) {
+        return value instanceof Number number ? number : 0;
+    }
+}
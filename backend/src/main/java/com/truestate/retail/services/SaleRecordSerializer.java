@@ -0,0 +1,104 @@
+package com.truestate.retail.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.truestate.retail.models.SaleRecord;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+// SaleRecord JSON written field by field, registered on the application's ObjectMapper by
+// JsonConfig. Same keys, order and values as the bean serializer it replaces (and as the
+// NDJSON export), without resolving a property writer and boxing through reflection per
+// field; the keys are encoded once.
+public final class SaleRecordSerializer extends StdSerializer<SaleRecord> {
+
+    private static final SerializedString[] NAMES = new SerializedString[SalesExportWriter.FIELDS.length];
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            NAMES[i] = new SerializedString(SalesExportWriter.FIELDS[i]);
+        }
+    }
+
+    public SaleRecordSerializer() {
+        super(SaleRecord.class);
+    }
+
+    @Override
+    public void serialize(SaleRecord sale, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(sale);
+        int field = 0;
+        number(generator, field++, sale.getId());
+        text(generator, field++, sale.getTransactionId());
+        date(generator, field++, sale.getDate());
+        text(generator, field++, sale.getCustomerId());
+        text(generator, field++, sale.getCustomerName());
+        text(generator, field++, sale.getPhoneNumber());
+        text(generator, field++, sale.getGender());
+        number(generator, field++, sale.getAge());
+        text(generator, field++, sale.getCustomerRegion());
+        text(generator, field++, sale.getCustomerType());
+        text(generator, field++, sale.getProductId());
+        text(generator, field++, sale.getProductName());
+        text(generator, field++, sale.getBrand());
+        text(generator, field++, sale.getProductCategory());
+        text(generator, field++, sale.getTags());
+        number(generator, field++, sale.getQuantity());
+        number(generator, field++, sale.getPricePerUnit());
+        number(generator, field++, sale.getDiscountPercentage());
+        number(generator, field++, sale.getTotalAmount());
+        number(generator, field++, sale.getFinalAmount());
+        text(generator, field++, sale.getPaymentMethod());
+        text(generator, field++, sale.getOrderStatus());
+        text(generator, field++, sale.getDeliveryType());
+        text(generator, field++, sale.getStoreId());
+        text(generator, field++, sale.getStoreLocation());
+        text(generator, field++, sale.getSalespersonId());
+        text(generator, field, sale.getEmployeeName());
+        generator.writeEndObject();
+    }
+
+    private static void text(JsonGenerator generator, int field, String value) throws IOException {
+        generator.writeFieldName(NAMES[field]);
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value);
+        }
+    }
+
+    // ISO yyyy-MM-dd, as the JavaTimeModule writes dates with timestamps disabled
+    private static void date(JsonGenerator generator, int field, LocalDate value) throws IOException {
+        text(generator, field, value != null ? value.toString() : null);
+    }
+
+    private static void number(JsonGenerator generator, int field, Long value) throws IOException {
+        generator.writeFieldName(NAMES[field]);
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value.longValue());
+        }
+    }
+
+    private static void number(JsonGenerator generator, int field, Integer value) throws IOException {
+        generator.writeFieldName(NAMES[field]);
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value.intValue());
+        }
+    }
+
+    private static void number(JsonGenerator generator, int field, Double value) throws IOException {
+        generator.writeFieldName(NAMES[field]);
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value.doubleValue());
+        }
+    }
+}
@@ -2,28 +2,92 @@ package com.truestate.retail.services;
 
 import com.truestate.retail.models.SaleRecord;
 import com.truestate.retail.models.SaleRecordRepository;
+import com.truestate.retail.models.SaleRecordRepositoryCustom;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 @Service
 public class SaleRecordService {
 
+    // Rough heap size of one materialized SaleRecord with its strings, and of one projected field
+    private static final long RECORD_BYTES = 1024;
+    private static final long FIELD_BYTES = 64;
+
+    // Search metrics tag of the requests answered from the page cache
+    private static final String CACHE = "cache";
+
+    // Where a request is served from; `tag` names it in the search metrics
+    private enum DataSource {
+        DATABASE("database"), RESIDENT("resident"), CSV("csv");
+
+        private final String tag;
+
+        DataSource(String tag) {
+            this.tag = tag;
+        }
+    }
+
     private final SaleRecordRepository repository;
     private final CsvFallbackService csvFallbackService;
+    private final ResidentDatasetService residentDatasetService;
+    private final SaleRecordAggregates aggregates;
+    private final CsvIngestionService csvIngestionService;
+    private final SearchMetrics searchMetrics;
+
+    // Finished pages keyed by normalized criteria, sort, window and fields; emptied whenever data changes
+    private final WeightedLruCache<PageKey, Slice<?>> pageCache;
+
+    // Read-only transaction for projected pages and for keeping the export cursor open while rows are written
+    private final TransactionTemplate readOnlyTransaction;
+
+    @Value("${search.export.fetch-size:1000}")
+    private int exportFetchSize;
 
-    public SaleRecordService(SaleRecordRepository repository, CsvFallbackService csvFallbackService) {
+    // Ids an approximate total is counted over; at most this many, drawn across the whole table
+    @Value("${search.estimate.sample-rows:2000}")
+    private int estimateSampleRows;
+
+    private volatile Boolean databaseHasData;
+    private volatile SaleRecordRepositoryCustom.EstimateSample estimateSample;
+
+    public SaleRecordService(SaleRecordRepository repository, CsvFallbackService csvFallbackService,
+                             ResidentDatasetService residentDatasetService, SaleRecordAggregates aggregates,
+                             CsvIngestionService csvIngestionService, PlatformTransactionManager transactionManager,
+                             SearchMetrics searchMetrics,
+                             @Value("${search.cache.page-bytes:16777216}") long pageCacheBytes) {
         this.repository = repository;
         this.csvFallbackService = csvFallbackService;
+        this.residentDatasetService = residentDatasetService;
+        this.aggregates = aggregates;
+        this.csvIngestionService = csvIngestionService;
+        this.searchMetrics = searchMetrics;
+        this.pageCache = new WeightedLruCache<>(pageCacheBytes, SaleRecordService::pageWeight);
+        searchMetrics.bindCache("pages", pageCache);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
-    public Page<SaleRecord> search(
+    // Whole SaleRecords when fields is null, otherwise rows holding only the requested fields
+    public Slice<?> search(
             String query,
             List<String> customerRegions,
             List<String> genders,
@@ -37,22 +101,10 @@ public class SaleRecordService {
             String sortBy,
             String sortDirection,
             int page,
-            int size
+            int size,
+            TotalMode totalMode,
+            SaleFields fields
     ) {
-        // Check if database has data
-        long count = repository.count();
-
-        if (count == 0) {
-            System.out.println("Database is empty, using CSV fallback service");
-            // Use CSV fallback if database is empty
-            return csvFallbackService.searchFromCsv(
-                    query, customerRegions, genders, minAge, maxAge,
-                    productCategories, tags, paymentMethods, startDate, endDate,
-                    sortBy, sortDirection, page, size
-            );
-        }
-
-        // Use database if it has data
         var criteria = new SaleRecordSpecification.SearchCriteria(
                 query,
                 customerRegions,
@@ -64,15 +116,306 @@ public class SaleRecordService {
                 paymentMethods,
                 startDate,
                 endDate
+        ).normalized();
+
+        PageKey key = new PageKey(criteria, sortBy, sortDirection, page, size, totalMode, fields);
+        long start = System.nanoTime();
+        boolean[] computed = new boolean[1];
+        Slice<?> result = pageCache.get(key, () -> {
+            computed[0] = true;
+            return searchUncached(criteria, sortBy, sortDirection, page, size, totalMode, fields);
+        });
+        if (!computed[0]) {
+            searchMetrics.record(SearchMetrics.Stage.SOURCE, CACHE, start);
+            searchMetrics.served(CACHE);
+        }
+        searchMetrics.returned(result.getNumberOfElements());
+        return result;
+    }
+
+    public Map<String, Object> cacheStats() {
+        return Map.of("pages", pageCache.stats(), "residentMatches", residentDatasetService.matchCacheStats());
+    }
+
+    private Slice<?> searchUncached(SaleRecordSpecification.SearchCriteria criteria, String sortBy,
+                                    String sortDirection, int page, int size, TotalMode totalMode,
+                                    SaleFields fields) {
+        DataSource source = selectSource();
+        if (source == DataSource.DATABASE && fields != null) {
+            return searchColumns(criteria, sortBy, sortDirection, page, size, totalMode, fields);
+        }
+        Slice<SaleRecord> records = searchRecords(source, criteria, sortBy, sortDirection, page, size, totalMode);
+        if (fields == null) {
+            return records;
+        }
+        long start = System.nanoTime();
+        Slice<SaleFields.Row> projected = records.map(fields::project);
+        searchMetrics.record(SearchMetrics.Stage.PARSE, source.tag, start);
+        return projected;
+    }
+
+    private Slice<SaleRecord> searchRecords(DataSource source, SaleRecordSpecification.SearchCriteria criteria,
+                                            String sortBy, String sortDirection, int page, int size,
+                                            TotalMode totalMode) {
+        return switch (source) {
+            case DATABASE -> searchDatabase(criteria, sortBy, sortDirection, page, size, totalMode);
+            case RESIDENT -> searchResident(criteria, sortBy, sortDirection, page, size, totalMode);
+            case CSV -> searchCsv(criteria, sortBy, sortDirection, page, size, totalMode);
+        };
+    }
+
+    // Serve from the in-memory columns loaded at startup
+    private Slice<SaleRecord> searchResident(SaleRecordSpecification.SearchCriteria criteria, String sortBy,
+                                             String sortDirection, int page, int size, TotalMode totalMode) {
+        return switch (totalMode) {
+            case NONE -> residentDatasetService.searchWithoutTotal(criteria, sortBy, sortDirection, page, size);
+            case APPROXIMATE -> {
+                Slice<SaleRecord> slice = residentDatasetService.searchWithoutTotal(criteria, sortBy, sortDirection, page, size);
+                long start = System.nanoTime();
+                long estimate = residentDatasetService.estimateCount(criteria);
+                searchMetrics.record(SearchMetrics.Stage.COUNT, DataSource.RESIDENT.tag, start);
+                yield new PageImpl<>(slice.getContent(), slice.getPageable(), estimatedTotal(slice, estimate));
+            }
+            default -> residentDatasetService.search(criteria, sortBy, sortDirection, page, size);
+        };
+    }
+
+    // Streaming CSV fallback: the count comes for free with the full scan
+    private Slice<SaleRecord> searchCsv(SaleRecordSpecification.SearchCriteria criteria, String sortBy,
+                                        String sortDirection, int page, int size, TotalMode totalMode) {
+        Page<SaleRecord> result = csvFallbackService.searchFromCsv(
+                criteria.query(), criteria.customerRegions(), criteria.genders(), criteria.minAge(),
+                criteria.maxAge(), criteria.productCategories(), criteria.tags(), criteria.paymentMethods(),
+                criteria.startDate(), criteria.endDate(), sortBy, sortDirection, page, size
         );
+        return totalMode == TotalMode.NONE
+                ? new SliceImpl<>(result.getContent(), result.getPageable(), result.hasNext())
+                : result;
+    }
+
+    private Slice<SaleRecord> searchDatabase(SaleRecordSpecification.SearchCriteria criteria, String sortBy,
+                                             String sortDirection, int page, int size, TotalMode totalMode) {
         Specification<SaleRecord> spec = SaleRecordSpecification.build(criteria);
 
         Sort sort = buildSort(sortBy, sortDirection);
         Pageable pageable = PageRequest.of(page, size, sort);
-        return repository.findAll(spec, pageable);
+        long start = System.nanoTime();
+        return switch (totalMode) {
+            case NONE -> {
+                Slice<SaleRecord> slice = repository.findSlice(spec, pageable);
+                searchMetrics.record(SearchMetrics.Stage.QUERY, DataSource.DATABASE.tag, start);
+                yield slice;
+            }
+            case APPROXIMATE -> {
+                Slice<SaleRecord> slice = repository.findSlice(spec, pageable);
+                long counted = searchMetrics.record(SearchMetrics.Stage.QUERY, DataSource.DATABASE.tag, start);
+                long estimate = estimateDatabaseCount(spec);
+                searchMetrics.record(SearchMetrics.Stage.COUNT, DataSource.DATABASE.tag, counted);
+                yield new PageImpl<>(slice.getContent(), pageable, estimatedTotal(slice, estimate));
+            }
+            default -> {
+                // findAll runs the page query and the count query; both are timed as one round trip
+                Page<SaleRecord> result = repository.findAll(spec, pageable);
+                searchMetrics.record(SearchMetrics.Stage.QUERY, DataSource.DATABASE.tag, start);
+                yield result;
+            }
+        };
+    }
+
+    // Selects only the requested columns in one read-only transaction (page and count share a
+    // connection). Rows wrap the selected values, so no entities are built, tracked or serialized.
+    private Slice<SaleFields.Row> searchColumns(SaleRecordSpecification.SearchCriteria criteria, String sortBy,
+                                                String sortDirection, int page, int size, TotalMode totalMode,
+                                                SaleFields fields) {
+        Specification<SaleRecord> spec = SaleRecordSpecification.build(criteria);
+        Pageable pageable = PageRequest.of(page, size, buildSort(sortBy, sortDirection));
+        return readOnlyTransaction.execute(status -> {
+            long start = System.nanoTime();
+            Slice<Object[]> rows = repository.findColumns(spec, pageable, fields.names());
+            long queried = searchMetrics.record(SearchMetrics.Stage.QUERY, DataSource.DATABASE.tag, start);
+            List<SaleFields.Row> content = rows.getContent().stream().map(fields::project).toList();
+            long projected = searchMetrics.record(SearchMetrics.Stage.PARSE, DataSource.DATABASE.tag, queried);
+            return switch (totalMode) {
+                case NONE -> new SliceImpl<>(content, pageable, rows.hasNext());
+                case APPROXIMATE -> {
+                    long estimate = estimateDatabaseCount(spec);
+                    searchMetrics.record(SearchMetrics.Stage.COUNT, DataSource.DATABASE.tag, projected);
+                    yield new PageImpl<>(content, pageable, estimatedTotal(rows, estimate));
+                }
+                default -> {
+                    // Counted only when the page itself cannot tell the total, as findAll does
+                    Page<SaleFields.Row> result = PageableExecutionUtils.getPage(content, pageable,
+                            () -> repository.count(spec));
+                    searchMetrics.record(SearchMetrics.Stage.COUNT, DataSource.DATABASE.tag, projected);
+                    yield result;
+                }
+            };
+        });
+    }
+
+    // Picks the data source for this request and records the decision
+    private DataSource selectSource() {
+        long start = System.nanoTime();
+        DataSource source = databaseHasData() ? DataSource.DATABASE
+                : residentDatasetService.isLoaded() ? DataSource.RESIDENT : DataSource.CSV;
+        searchMetrics.record(SearchMetrics.Stage.SOURCE, source.tag, start);
+        searchMetrics.served(source.tag);
+        return source;
+    }
+
+    // An estimate must never contradict what the current page already proves
+    private static long estimatedTotal(Slice<?> slice, long estimate) {
+        long seen = slice.getPageable().getOffset() + slice.getNumberOfElements();
+        long minimum = slice.hasNext() ? seen + 1 : seen;
+        return slice.hasNext() ? Math.max(estimate, minimum) : minimum;
+    }
+
+    // Cached answer to "does the database hold rows?"; reset whenever data is loaded.
+    // A half-written table is never served, so the CSV paths answer until ingestion finishes.
+    private boolean databaseHasData() {
+        if (csvIngestionService.isRunning()) {
+            return false;
+        }
+        Boolean cached = databaseHasData;
+        if (cached == null) {
+            cached = repository.count() > 0;
+            databaseHasData = cached;
+        }
+        return cached;
+    }
+
+    // The sample is drawn on the first estimate after a data change and reused until the next,
+    // so an approximate total costs a single count over the sampled ids
+    private long estimateDatabaseCount(Specification<SaleRecord> spec) {
+        SaleRecordRepositoryCustom.EstimateSample sample = estimateSample;
+        if (sample == null) {
+            sample = repository.estimateSample(estimateSampleRows);
+            estimateSample = sample;
+        }
+        return repository.estimateCount(spec, sample);
+    }
+
+    @EventListener
+    public void onSalesDataChanged(SalesDataChangedEvent event) {
+        databaseHasData = null;
+        estimateSample = null;
+        pageCache.invalidateAll();
+    }
+
+    public CursorPage<SaleRecord> searchAfter(
+            SaleRecordSpecification.SearchCriteria criteria,
+            String sortBy,
+            String sortDirection,
+            String cursorToken,
+            int size
+    ) {
+        SeekCursor cursor = SeekCursor.decode(cursorToken);
+        if (cursor != null && !cursor.matches(sortBy, sortDirection)) {
+            throw new IllegalArgumentException("Cursor was issued for a different sort");
+        }
+
+        return switch (selectSource()) {
+            case DATABASE -> searchAfterInDatabase(criteria, sortBy, sortDirection, cursor, size);
+            case RESIDENT -> residentDatasetService.searchAfter(criteria, sortBy, sortDirection, cursor, size);
+            case CSV -> csvFallbackService.searchAfterFromCsv(criteria, sortBy, sortDirection, cursor, size);
+        };
+    }
+
+    private CursorPage<SaleRecord> searchAfterInDatabase(SaleRecordSpecification.SearchCriteria criteria,
+                                                         String sortBy, String sortDirection, SeekCursor cursor,
+                                                         int size) {
+        // No OFFSET: seek past the cursor and fetch one extra row to know whether there is a next page
+        Specification<SaleRecord> spec = SaleRecordSpecification.build(criteria)
+                .and(SaleRecordSpecification.after(cursor));
+        Sort.Direction direction = "asc".equalsIgnoreCase(sortDirection) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        Sort sort = Sort.by(direction, SeekCursor.normalizeSortBy(sortBy)).and(Sort.by(direction, "id"));
+        long start = System.nanoTime();
+        List<SaleRecord> rows = repository.findBy(spec, query -> query.sortBy(sort).limit(size + 1).all());
+        searchMetrics.record(SearchMetrics.Stage.QUERY, DataSource.DATABASE.tag, start);
+
+        boolean hasNext = rows.size() > size;
+        List<SaleRecord> content = hasNext ? rows.subList(0, size) : rows;
+        String next = hasNext ? SeekCursor.after(content.get(size - 1), sortBy, sortDirection).encode() : null;
+        return new CursorPage<>(content, size, hasNext, next);
+    }
+
+    // Streams every match in search order to the writer; no path holds the result rows
+    public void export(SaleRecordSpecification.SearchCriteria criteria, String sortBy, String sortDirection,
+                       SalesExportWriter writer) throws IOException {
+        switch (selectSource()) {
+            case DATABASE -> exportFromDatabase(criteria, sortBy, sortDirection, writer);
+            case RESIDENT -> residentDatasetService.export(criteria, sortBy, sortDirection, writer);
+            case CSV -> {
+                try {
+                    csvFallbackService.exportFromCsv(criteria, sortBy, sortDirection, writer);
+                } catch (IOException | CsvSourceUnavailableException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("CSV export failed", e);
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private void exportFromDatabase(SaleRecordSpecification.SearchCriteria criteria, String sortBy,
+                                    String sortDirection, SalesExportWriter writer) throws IOException {
+        Specification<SaleRecord> spec = SaleRecordSpecification.build(criteria);
+        Sort sort = buildSort(sortBy, sortDirection);
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<SaleRecord> rows = repository.streamAll(spec, sort, exportFetchSize)) {
+                    rows.forEach(sale -> {
+                        try {
+                            writer.write(sale);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public SalesSummary summarize(SaleRecordSpecification.SearchCriteria criteria) {
+        DataSource source = selectSource();
+        long start = System.nanoTime();
+        SalesSummary summary = switch (source) {
+            case DATABASE -> aggregates.summarize(criteria);
+            case RESIDENT -> residentDatasetService.summarize(criteria);
+            case CSV -> csvFallbackService.summarizeFromCsv(criteria);
+        };
+        searchMetrics.record(SearchMetrics.Stage.AGGREGATE, source.tag, start);
+        return summary;
+    }
+
+    // Per-option counts for the filter sidebar, from the same source a search would use
+    public SalesFacets facets(SaleRecordSpecification.SearchCriteria criteria) {
+        DataSource source = selectSource();
+        long start = System.nanoTime();
+        SalesFacets facets = switch (source) {
+            case DATABASE -> aggregates.facets(criteria);
+            case RESIDENT -> residentDatasetService.facets(criteria);
+            case CSV -> csvFallbackService.facetsFromCsv(criteria);
+        };
+        searchMetrics.record(SearchMetrics.Stage.AGGREGATE, source.tag, start);
+        return facets;
+    }
+
+    private record PageKey(SaleRecordSpecification.SearchCriteria criteria, String sortBy, String sortDirection,
+                           int page, int size, TotalMode totalMode, SaleFields fields) {}
+
+    private static long pageWeight(Slice<?> slice) {
+        List<?> content = slice.getContent();
+        if (!content.isEmpty() && content.get(0) instanceof SaleFields.Row row) {
+            return 64 + content.size() * (64 + row.size() * FIELD_BYTES);
+        }
+        return 64 + content.size() * RECORD_BYTES;
     }
 
-    private Sort buildSort(String sortBy, String direction) {
+    static Sort buildSort(String sortBy, String direction) {
         Sort sort;
         if ("quantity".equalsIgnoreCase(sortBy)) {
             sort = Sort.by("quantity");
@@ -82,10 +425,11 @@ public class SaleRecordService {
             // default: date newest first
             sort = Sort.by("date");
         }
+        // id breaks ties in the same direction, matching the CSV and resident paths
         if ("asc".equalsIgnoreCase(direction)) {
-            return sort.ascending();
+            return sort.ascending().and(Sort.by("id").ascending());
         }
         // default desc for date (newest first) and quantity
-        return sort.descending();
+        return sort.descending().and(Sort.by("id").descending());
     }
 }
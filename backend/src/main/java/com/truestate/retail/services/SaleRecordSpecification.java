@@ -1,11 +1,18 @@
 package com.truestate.retail.services;
 
 import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.models.SaleRecordTag;
+import com.truestate.retail.models.SaleTag;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 public class SaleRecordSpecification {
@@ -21,7 +28,36 @@ public class SaleRecordSpecification {
             List<String> paymentMethods,
             LocalDate startDate,
             LocalDate endDate
-    ) {}
+    ) {
+
+        // Equal for requests that select the same rows: multi-select lists are order- and
+        // duplicate-insensitive and an empty list or blank query means "not set". The query
+        // is not trimmed because surrounding spaces are part of the substring match.
+        public SearchCriteria normalized() {
+            return new SearchCriteria(
+                    query != null && !query.isBlank() ? query : null,
+                    normalizedList(customerRegions),
+                    normalizedList(genders),
+                    minAge,
+                    maxAge,
+                    normalizedList(productCategories),
+                    normalizedList(tags),
+                    normalizedList(paymentMethods),
+                    startDate,
+                    endDate
+            );
+        }
+
+        private static List<String> normalizedList(List<String> values) {
+            if (values == null || values.isEmpty()) {
+                return null;
+            }
+            return values.stream()
+                    .distinct()
+                    .sorted(Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .toList();
+        }
+    }
 
     public static Specification<SaleRecord> build(SearchCriteria criteria) {
         return (root, query, cb) -> {
@@ -53,31 +89,37 @@ public class SaleRecordSpecification {
                 predicates.add(root.get("paymentMethod").in(criteria.paymentMethods()));
             }
 
-            // Age range handling (including invalid ranges)
+            // Age range handling (including invalid ranges). A missing age passes the range, as
+            // on the resident and CSV paths, so facets and totals agree whichever path answers.
             if (criteria.minAge() != null && criteria.maxAge() != null) {
                 if (criteria.minAge() > criteria.maxAge()) {
                     // invalid range: always false predicate => no results
                     predicates.add(cb.equal(cb.literal(1), 0));
                 } else {
-                    predicates.add(cb.between(root.get("age"), criteria.minAge(), criteria.maxAge()));
+                    predicates.add(cb.or(cb.isNull(root.get("age")),
+                            cb.between(root.get("age"), criteria.minAge(), criteria.maxAge())));
                 }
             } else if (criteria.minAge() != null) {
-                predicates.add(cb.greaterThanOrEqualTo(root.get("age"), criteria.minAge()));
+                predicates.add(cb.or(cb.isNull(root.get("age")),
+                        cb.greaterThanOrEqualTo(root.get("age"), criteria.minAge())));
             } else if (criteria.maxAge() != null) {
-                predicates.add(cb.lessThanOrEqualTo(root.get("age"), criteria.maxAge()));
+                predicates.add(cb.or(cb.isNull(root.get("age")),
+                        cb.lessThanOrEqualTo(root.get("age"), criteria.maxAge())));
             }
 
-            // Tags filter: treat tags as comma-separated string, match any tag (case-insensitive)
-            if (criteria.tags() != null && !criteria.tags().isEmpty()) {
-                List<Predicate> tagPredicates = new ArrayList<>();
-                for (String tag : criteria.tags()) {
-                    if (tag == null || tag.isBlank()) continue;
-                    String tagPattern = "%" + tag.toLowerCase() + "%";
-                    tagPredicates.add(cb.like(cb.lower(root.get("tags")), tagPattern));
-                }
-                if (!tagPredicates.isEmpty()) {
-                    predicates.add(cb.or(tagPredicates.toArray(new Predicate[0])));
-                }
+            // Tags filter: a sale matches when one of its tags is a requested tag name, compared
+            // exactly like the other multi-select filters. The tag ids come from the small
+            // sale_tags table, then their rows are looked up through the tag index of
+            // sale_record_tags instead of scanning the tags strings.
+            List<String> tagNames = requestedTags(criteria.tags());
+            if (tagNames != null) {
+                Subquery<Integer> tagIds = query.subquery(Integer.class);
+                Root<SaleTag> tag = tagIds.from(SaleTag.class);
+                tagIds.select(tag.get("id")).where(tag.get("name").in(tagNames));
+                Subquery<Long> tagged = query.subquery(Long.class);
+                Root<SaleRecordTag> saleTag = tagged.from(SaleRecordTag.class);
+                tagged.select(saleTag.get("saleRecordId")).where(saleTag.get("tagId").in(tagIds));
+                predicates.add(root.get("id").in(tagged));
             }
 
             // Date range handling (including invalid ranges)
@@ -96,4 +138,55 @@ public class SaleRecordSpecification {
             return cb.and(predicates.toArray(new Predicate[0]));
         };
     }
+
+    // The tag names a search asks for, once each; blank names are dropped, and null when none are
+    // left so the tag filter is unset. Every data source matches a sale's trimmed tags against these.
+    static List<String> requestedTags(List<String> tags) {
+        if (tags == null) {
+            return null;
+        }
+        List<String> names = tags.stream().filter(tag -> tag != null && !tag.isBlank()).distinct().toList();
+        return names.isEmpty() ? null : names;
+    }
+
+    // Rows strictly after the cursor in (sort key, id) order; both follow the sort direction.
+    // Written as plain comparisons on the raw columns so H2 can seek on an index.
+    public static Specification<SaleRecord> after(SeekCursor cursor) {
+        return (root, query, cb) -> {
+            if (cursor == null) {
+                return cb.conjunction();
+            }
+            Path<Long> id = root.get("id");
+            Predicate tieBreak = cursor.ascending() ? cb.greaterThan(id, cursor.id()) : cb.lessThan(id, cursor.id());
+
+            switch (cursor.sortBy()) {
+                case "quantity" -> {
+                    Path<Integer> key = root.get("quantity");
+                    Integer value = cursor.key() != null ? Integer.valueOf(cursor.key()) : null;
+                    return seek(cb, key, value, cursor.ascending(), tieBreak);
+                }
+                case "customerName" -> {
+                    Path<String> key = root.get("customerName");
+                    return seek(cb, key, cursor.key(), cursor.ascending(), tieBreak);
+                }
+                default -> {
+                    Path<LocalDate> key = root.get("date");
+                    LocalDate value = cursor.key() != null ? LocalDate.parse(cursor.key()) : null;
+                    return seek(cb, key, value, cursor.ascending(), tieBreak);
+                }
+            }
+        };
+    }
+
+    private static <T extends Comparable<? super T>> Predicate seek(CriteriaBuilder cb, Path<T> key, T value,
+                                                                   boolean ascending, Predicate tieBreak) {
+        // H2 orders rows without a sort key first ascending and last descending, so the
+        // predicate has to cross that boundary in the same direction as the ORDER BY
+        if (value == null) {
+            Predicate sameKey = cb.and(cb.isNull(key), tieBreak);
+            return ascending ? cb.or(sameKey, cb.isNotNull(key)) : sameKey;
+        }
+        Predicate beyond = ascending ? cb.greaterThan(key, value) : cb.or(cb.lessThan(key, value), cb.isNull(key));
+        return cb.or(beyond, cb.and(cb.equal(key, value), tieBreak));
+    }
 }
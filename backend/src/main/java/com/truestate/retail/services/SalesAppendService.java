@@ -0,0 +1,183 @@
+package com.truestate.retail.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.models.SaleRecordRepository;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Appends posted sales to every store that serves data: the database once it holds the loaded
+// CSV, and the resident dataset when it is loaded. The body is read as a stream and applied in
+// batches. Each batch is first built beside the resident dataset without being published, then
+// committed to the database, then published to resident readers, then announced with one data
+// change event so cached pages from before it are dropped. A batch that fails in either store
+// is in neither, and the batches before it, or before a malformed record, stay appended.
+@Service
+public class SalesAppendService {
+
+    private final CsvFallbackService csvFallbackService;
+    private final CsvIngestionService csvIngestionService;
+    private final ResidentDatasetService residentDatasetService;
+    private final SaleRecordRepository repository;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Off by default: the endpoint writes without authentication
+    @Value("${sales.ingest.enabled:false}")
+    private boolean enabled;
+
+    @Value("${sales.ingest.batch-rows:5000}")
+    private int batchRows;
+
+    private volatile Map<String, Object> lastReport = Map.of("ran", false);
+
+    public SalesAppendService(CsvFallbackService csvFallbackService, CsvIngestionService csvIngestionService,
+                              ResidentDatasetService residentDatasetService, SaleRecordRepository repository,
+                              ObjectMapper objectMapper, ApplicationEventPublisher eventPublisher) {
+        this.csvFallbackService = csvFallbackService;
+        this.csvIngestionService = csvIngestionService;
+        this.residentDatasetService = residentDatasetService;
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Map<String, Object> getLastReport() {
+        return lastReport;
+    }
+
+    // Same header row and value formats as the source CSV
+    public Map<String, Object> appendCsv(InputStream body) throws IOException {
+        CSVParser parser = new CSVParser(new InputStreamReader(body, StandardCharsets.UTF_8),
+                CSVFormat.DEFAULT.withFirstRecordAsHeader());
+        Iterator<CSVRecord> records = parser.iterator();
+        return append(new SaleReader() {
+            @Override
+            public SaleRecord next() {
+                return records.hasNext() ? csvFallbackService.mapCsvRecord(records.next()) : null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                parser.close();
+            }
+        });
+    }
+
+    // One SaleRecord JSON object per line, as the search API and the NDJSON export write them
+    public Map<String, Object> appendNdjson(InputStream body) throws IOException {
+        MappingIterator<SaleRecord> values = objectMapper.readerFor(SaleRecord.class).readValues(body);
+        return append(new SaleReader() {
+            @Override
+            public SaleRecord next() throws IOException {
+                return values.hasNextValue() ? values.nextValue() : null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                values.close();
+            }
+        });
+    }
+
+    // Appends are serialized; searches keep running against the last published data meanwhile
+    private synchronized Map<String, Object> append(SaleReader reader) throws IOException {
+        if (csvIngestionService.isRunning()) {
+            throw new IllegalStateException("The startup database load is still running");
+        }
+        boolean toDatabase = repository.count() > 0;
+        boolean toResident = residentDatasetService.isLoaded();
+        if (!toDatabase && !toResident) {
+            throw new IllegalStateException("Sales are served from the streaming CSV fallback, which cannot be appended to");
+        }
+
+        long startNanos = System.nanoTime();
+        long databaseNanos = 0;
+        long residentNanos = 0;
+        long rows = 0;
+        int batches = 0;
+        List<SaleRecord> batch = new ArrayList<>(batchRows);
+        try (reader) {
+            while (true) {
+                SaleRecord sale;
+                try {
+                    sale = reader.next();
+                } catch (JsonProcessingException | RuntimeException e) {
+                    throw new IllegalArgumentException("Record " + (rows + batch.size() + 1) + " could not be read ("
+                            + e.getMessage() + "); the " + rows + " rows before its batch were appended", e);
+                }
+                if (sale != null) {
+                    // Ids belong to the store the sale is appended to
+                    sale.setId(null);
+                    batch.add(sale);
+                }
+                if (batch.size() == batchRows || (sale == null && !batch.isEmpty())) {
+                    long batchStart = System.nanoTime();
+                    ResidentDatasetService.PreparedAppend resident =
+                            toResident ? residentDatasetService.prepareAppend(batch) : null;
+                    long residentDone = System.nanoTime();
+                    if (toDatabase) {
+                        csvIngestionService.append(batch);
+                    }
+                    // Only a committed batch becomes visible in memory; a failed commit drops the prepared one
+                    if (resident != null) {
+                        resident.publish();
+                    }
+                    residentNanos += residentDone - batchStart;
+                    databaseNanos += System.nanoTime() - residentDone;
+                    eventPublisher.publishEvent(new SalesDataChangedEvent("ingest"));
+                    rows += batch.size();
+                    batches++;
+                    batch = new ArrayList<>(batchRows);
+                }
+                if (sale == null) {
+                    break;
+                }
+            }
+        } finally {
+            long elapsedMs = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("ran", true);
+            report.put("rows", rows);
+            report.put("batches", batches);
+            report.put("batchRows", batchRows);
+            report.put("database", toDatabase);
+            report.put("resident", toResident);
+            report.put("millis", elapsedMs);
+            // Time spent applying batches; the rest went to reading and parsing the body
+            report.put("databaseMillis", databaseNanos / 1_000_000);
+            report.put("residentMillis", residentNanos / 1_000_000);
+            report.put("rowsPerSecond", rows * 1000 / elapsedMs);
+            lastReport = report;
+        }
+        System.out.println("Appended " + rows + " sales in " + batches + " batches ("
+                + lastReport.get("rowsPerSecond") + " rows/s)");
+        return lastReport;
+    }
+
+    private interface SaleReader extends Closeable {
+        // Next sale, or null at the end of the body
+        SaleRecord next() throws IOException;
+    }
+}
@@ -0,0 +1,5 @@
+package com.truestate.retail.services;
+
+// Published whenever rows are loaded into or appended to a data source, so anything
+// derived from the data (source selection, caches) can be invalidated
+public record SalesDataChangedEvent(String source) {}
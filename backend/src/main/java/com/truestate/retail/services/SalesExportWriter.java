@@ -0,0 +1,329 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.models.SaleRecord;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+// Writes sales one row at a time to an output stream through a small buffer, so an export
+// holds a few rows in memory whatever the result size. Every source emits the fields of a
+// row in FIELDS order through the typed methods below; the resident and streaming CSV
+// paths write straight from their columns without building SaleRecord objects.
+public abstract class SalesExportWriter implements Flushable {
+
+    // Same names and order as the SaleRecord JSON of the search API
+    static final String[] FIELDS = {
+            "id", "transactionId", "date", "customerId", "customerName", "phoneNumber", "gender", "age",
+            "customerRegion", "customerType", "productId", "productName", "brand", "productCategory", "tags",
+            "quantity", "pricePerUnit", "discountPercentage", "totalAmount", "finalAmount", "paymentMethod",
+            "orderStatus", "deliveryType", "storeId", "storeLocation", "salespersonId", "employeeName"
+    };
+
+    private static final int BUFFER_CHARS = 64 * 1024;
+
+    // Rows are formatted into an unsynchronized buffer and handed to the encoder in chunks
+    protected final StringBuilder out = new StringBuilder(BUFFER_CHARS + 4096);
+    protected int field;
+    private final Writer sink;
+    private long rows;
+
+    protected SalesExportWriter(OutputStream output) {
+        this.sink = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+    }
+
+    public static SalesExportWriter create(ExportFormat format, OutputStream output) {
+        return format == ExportFormat.CSV ? new CsvWriter(output) : new NdjsonWriter(output);
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public void write(SaleRecord sale) throws IOException {
+        beginRow();
+        number(sale.getId());
+        text(sale.getTransactionId());
+        date(sale.getDate());
+        text(sale.getCustomerId());
+        text(sale.getCustomerName());
+        text(sale.getPhoneNumber());
+        text(sale.getGender());
+        number(sale.getAge());
+        text(sale.getCustomerRegion());
+        text(sale.getCustomerType());
+        text(sale.getProductId());
+        text(sale.getProductName());
+        text(sale.getBrand());
+        text(sale.getProductCategory());
+        text(sale.getTags());
+        number(sale.getQuantity());
+        number(sale.getPricePerUnit());
+        number(sale.getDiscountPercentage());
+        number(sale.getTotalAmount());
+        number(sale.getFinalAmount());
+        text(sale.getPaymentMethod());
+        text(sale.getOrderStatus());
+        text(sale.getDeliveryType());
+        text(sale.getStoreId());
+        text(sale.getStoreLocation());
+        text(sale.getSalespersonId());
+        text(sale.getEmployeeName());
+        endRow();
+    }
+
+    // Same values ColumnarSaleStore.toSaleRecord would produce for the row
+    void write(ColumnarSaleStore data, int row) throws IOException {
+        beginRow();
+        number(row + 1L);
+        text(data.transactionIds[row]);
+        epochDay(data.dates[row]);
+        text(data.customerIds[row]);
+        text(data.customerNames[row]);
+        text(data.phoneNumbers[row]);
+        text(data.genders.decode(data.genderCodes.get(row)));
+        integer(data.ages[row]);
+        text(data.regions.decode(data.regionCodes.get(row)));
+        text(data.customerTypes.decode(data.customerTypeCodes.get(row)));
+        text(data.productIds[row]);
+        text(data.productNames[row]);
+        text(data.brands.decode(data.brandCodes.get(row)));
+        text(data.categories.decode(data.categoryCodes.get(row)));
+        text(data.tags[row]);
+        integer(data.quantities[row]);
+        decimal(data.pricePerUnit[row]);
+        decimal(data.discountPercentage[row]);
+        decimal(data.totalAmount[row]);
+        decimal(data.finalAmount[row]);
+        text(data.paymentMethods.decode(data.paymentCodes.get(row)));
+        text(data.orderStatuses.decode(data.orderStatusCodes.get(row)));
+        text(data.deliveryTypes.decode(data.deliveryTypeCodes.get(row)));
+        text(data.storeIds[row]);
+        text(data.storeLocations.decode(data.storeLocationCodes.get(row)));
+        text(data.salespersonIds[row]);
+        text(data.employeeNames.decode(data.employeeNameCodes.get(row)));
+        endRow();
+    }
+
+    void beginRow() {
+        field = 0;
+        startRow();
+    }
+
+    void endRow() throws IOException {
+        finishRow();
+        rows++;
+        if (out.length() >= BUFFER_CHARS) {
+            drain();
+        }
+    }
+
+    void text(String value) {
+        if (value == null) {
+            nullValue();
+            return;
+        }
+        startValue();
+        writeText(value);
+    }
+
+    void number(Long value) {
+        if (value == null) {
+            nullValue();
+            return;
+        }
+        startValue();
+        out.append(value.longValue());
+    }
+
+    void number(Integer value) {
+        if (value == null) {
+            nullValue();
+            return;
+        }
+        startValue();
+        out.append(value.intValue());
+    }
+
+    // Same digits as Double.toString, which is how Jackson writes the Double fields of SaleRecord
+    void number(Double value) {
+        if (value == null) {
+            nullValue();
+            return;
+        }
+        startValue();
+        out.append(value.doubleValue());
+    }
+
+    // Resident ints: MISSING_INT is written as null
+    void integer(int value) {
+        number(value != ColumnarSaleStore.MISSING_INT ? Integer.valueOf(value) : null);
+    }
+
+    // Resident doubles: NaN is written as null
+    void decimal(double value) {
+        if (Double.isNaN(value)) {
+            nullValue();
+            return;
+        }
+        startValue();
+        out.append(value);
+    }
+
+    void date(LocalDate value) {
+        text(value != null ? value.toString() : null);
+    }
+
+    void epochDay(int value) {
+        date(value != ColumnarSaleStore.MISSING_INT ? LocalDate.ofEpochDay(value) : null);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        sink.flush();
+    }
+
+    private void drain() throws IOException {
+        sink.append(out);
+        out.setLength(0);
+    }
+
+    protected abstract void startRow();
+
+    protected abstract void finishRow();
+
+    // Called before each value; advances `field`
+    protected abstract void startValue();
+
+    protected abstract void nullValue();
+
+    protected abstract void writeText(String value);
+
+    private static final class NdjsonWriter extends SalesExportWriter {
+
+        NdjsonWriter(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        protected void startRow() {
+            out.append('{');
+        }
+
+        @Override
+        protected void finishRow() {
+            out.append("}\n");
+        }
+
+        @Override
+        protected void startValue() {
+            if (field > 0) {
+                out.append(',');
+            }
+            out.append('"');
+            out.append(FIELDS[field++]);
+            out.append("\":");
+        }
+
+        @Override
+        protected void nullValue() {
+            startValue();
+            out.append("null");
+        }
+
+        // Most values need no escaping and are appended whole; otherwise each run between escapes is
+        @Override
+        protected void writeText(String value) {
+            out.append('"');
+            int first = firstEscape(value);
+            if (first == value.length()) {
+                out.append(value).append('"');
+                return;
+            }
+            int runStart = 0;
+            for (int i = first; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    continue;
+                }
+                out.append(value, runStart, i);
+                runStart = i + 1;
+                switch (c) {
+                    case '"' -> out.append("\\\"");
+                    case '\\' -> out.append("\\\\");
+                    case '\n' -> out.append("\\n");
+                    case '\r' -> out.append("\\r");
+                    case '\t' -> out.append("\\t");
+                    case '\b' -> out.append("\\b");
+                    case '\f' -> out.append("\\f");
+                    default -> out.append(String.format("\\u%04X", (int) c));
+                }
+            }
+            out.append(value, runStart, value.length());
+            out.append('"');
+        }
+
+        private static int firstEscape(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x20 || c == '"' || c == '\\') {
+                    return i;
+                }
+            }
+            return value.length();
+        }
+    }
+
+    private static final class CsvWriter extends SalesExportWriter {
+
+        CsvWriter(OutputStream output) {
+            super(output);
+            out.append(String.join(",", FIELDS));
+            out.append("\r\n");
+        }
+
+        @Override
+        protected void startRow() {
+        }
+
+        @Override
+        protected void finishRow() {
+            out.append("\r\n");
+        }
+
+        @Override
+        protected void startValue() {
+            if (field++ > 0) {
+                out.append(',');
+            }
+        }
+
+        // Missing values are empty fields
+        @Override
+        protected void nullValue() {
+            startValue();
+        }
+
+        // Quoted only when needed, with "" as the escape (CSVFormat.DEFAULT)
+        @Override
+        protected void writeText(String value) {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                out.append(value);
+                return;
+            }
+            out.append('"');
+            out.append(value.replace("\"", "\"\""));
+            out.append('"');
+        }
+    }
+}
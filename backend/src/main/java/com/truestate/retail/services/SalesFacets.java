@@ -0,0 +1,22 @@
+package com.truestate.retail.services;
+
+import java.util.List;
+
+// Match counts per filter option for the filter sidebar. Each dimension is counted under
+// every filter except its own, so an option's count is what the search returns with that
+// option as the dimension's only selection; options without matches are left out. Tags are
+// counted per stored tag, ages in the bands the UI slider snaps to and dates per month
+// (yyyy-MM); rows without an age or a date are not in those histograms.
+public record SalesFacets(
+        long count,
+        List<Bucket> customerRegion,
+        List<Bucket> gender,
+        List<Bucket> productCategory,
+        List<Bucket> tag,
+        List<Bucket> paymentMethod,
+        List<Bucket> age,
+        List<Bucket> month
+) {
+
+    public record Bucket(String value, long count) {}
+}
@@ -0,0 +1,21 @@
+package com.truestate.retail.services;
+
+import java.util.List;
+
+// Aggregates over every row matching a search, not just the current page.
+// Discount is totalAmount - finalAmount, the same figure the summary cards show.
+public record SalesSummary(
+        long count,
+        Metric quantity,
+        Metric totalAmount,
+        Metric finalAmount,
+        Metric discount,
+        List<Group> byRegion,
+        List<Group> byCategory,
+        List<Group> byPaymentMethod
+) {
+
+    public record Metric(long count, double sum, Double avg, Double min, Double max) {}
+
+    public record Group(String key, long count, long quantity, double totalAmount, double finalAmount, double discount) {}
+}
@@ -0,0 +1,196 @@
+package com.truestate.retail.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Search instrumentation published through Micrometer (/actuator/prometheus): a timer per
+// stage and data source, requests per source, rows scanned, matched and returned, and the result
+// caches. Stages are timed on the request thread around whole steps, parallel ones
+// included. While a request scope is open the same durations are also summed per request
+// for the Server-Timing header.
+@Service
+public class SearchMetrics {
+
+    public enum Stage {
+        // Choosing the database, resident dataset, streaming CSV or a cached page
+        SOURCE,
+        // Scanning rows against the filters (on the CSV paths this includes parsing the scanned fields)
+        FILTER,
+        SORT,
+        COUNT,
+        // Turning the page's rows into SaleRecord objects
+        PARSE,
+        // A database query, where filtering, sorting and counting happen in one round trip
+        QUERY,
+        AGGREGATE,
+        SERIALIZE;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ThreadLocal<RequestTiming> currentRequest = new ThreadLocal<>();
+
+    public SearchMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    // Records the time since startNanos and returns the current time, so consecutive stages chain
+    public long record(Stage stage, String source, long startNanos) {
+        long now = System.nanoTime();
+        long elapsed = now - startNanos;
+        timers.computeIfAbsent(stage.tag + ' ' + source, key -> Timer.builder("search.stage")
+                .description("Time spent in one stage of a search request")
+                .tag("stage", stage.tag)
+                .tag("source", source)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry)).record(elapsed, TimeUnit.NANOSECONDS);
+        RequestTiming request = currentRequest.get();
+        if (request != null) {
+            request.nanos[stage.ordinal()] += elapsed;
+        }
+        return now;
+    }
+
+    public void served(String source) {
+        counter("search.requests", source).increment();
+        RequestTiming request = currentRequest.get();
+        if (request != null) {
+            request.source = source;
+        }
+    }
+
+    public void rows(String source, long scanned, long matched) {
+        counter("search.rows.scanned", source).increment(scanned);
+        counter("search.rows.matched", source).increment(matched);
+    }
+
+    // Rows of the page handed to the serializer; divides the serialize stage into a cost per row
+    public void returned(long rows) {
+        RequestTiming request = currentRequest.get();
+        counter("search.rows.returned", request != null && request.source != null ? request.source : "none")
+                .increment(rows);
+    }
+
+    void bindCache(String name, WeightedLruCache<?, ?> cache) {
+        new WeightedLruCacheMetrics(cache, name).bindTo(registry);
+    }
+
+    // Request scope, opened and closed on the request thread by the web layer
+    public void beginRequest() {
+        currentRequest.set(new RequestTiming());
+    }
+
+    // Called right before the response body is written; endRequest closes the serialize stage
+    public void serializationStarted() {
+        RequestTiming request = currentRequest.get();
+        if (request != null) {
+            request.serializeStart = System.nanoTime();
+        }
+    }
+
+    public RequestTiming endRequest() {
+        RequestTiming request = currentRequest.get();
+        if (request != null && request.serializeStart != 0) {
+            record(Stage.SERIALIZE, request.source != null ? request.source : "none", request.serializeStart);
+        }
+        currentRequest.remove();
+        return request;
+    }
+
+    private Counter counter(String name, String source) {
+        return counters.computeIfAbsent(name + ' ' + source,
+                key -> Counter.builder(name).tag("source", source).register(registry));
+    }
+
+    // Stage durations of one request
+    public static final class RequestTiming {
+
+        private final long[] nanos = new long[Stage.values().length];
+        private String source;
+        private long serializeStart;
+
+        // Server-Timing value, e.g. source;desc="resident";dur=0.02, filter;dur=8.41, total;dur=9.13
+        public String serverTiming(long totalNanos) {
+            StringBuilder header = new StringBuilder();
+            for (Stage stage : Stage.values()) {
+                if (nanos[stage.ordinal()] == 0 && !(stage == Stage.SOURCE && source != null)) {
+                    continue;
+                }
+                header.append(stage.tag);
+                if (stage == Stage.SOURCE && source != null) {
+                    header.append(";desc=\"").append(source).append('"');
+                }
+                header.append(";dur=").append(millis(nanos[stage.ordinal()])).append(", ");
+            }
+            return header.append("total;dur=").append(millis(totalNanos)).toString();
+        }
+
+        private static String millis(long nanos) {
+            return String.format(Locale.ROOT, "%.2f", nanos / 1_000_000.0);
+        }
+    }
+
+    // Standard cache.* meters for a WeightedLruCache, plus its weight in bytes
+    private static final class WeightedLruCacheMetrics extends CacheMeterBinder<WeightedLruCache<?, ?>> {
+
+        WeightedLruCacheMetrics(WeightedLruCache<?, ?> cache, String name) {
+            super(cache, name, Tags.empty());
+        }
+
+        @Override
+        protected Long size() {
+            WeightedLruCache<?, ?> cache = getCache();
+            return cache != null ? cache.size() : null;
+        }
+
+        @Override
+        protected long hitCount() {
+            WeightedLruCache<?, ?> cache = getCache();
+            return cache != null ? cache.hits() : 0;
+        }
+
+        @Override
+        protected Long missCount() {
+            WeightedLruCache<?, ?> cache = getCache();
+            return cache != null ? cache.misses() : null;
+        }
+
+        @Override
+        protected Long evictionCount() {
+            WeightedLruCache<?, ?> cache = getCache();
+            return cache != null ? cache.evictions() : null;
+        }
+
+        @Override
+        protected long putCount() {
+            WeightedLruCache<?, ?> cache = getCache();
+            return cache != null ? cache.puts() : 0;
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+            WeightedLruCache<?, ?> cache = getCache();
+            Gauge.builder("cache.weight", cache, WeightedLruCache::weightBytes)
+                    .tags(getTagsWithCacheName())
+                    .description("Approximate heap bytes held by the cache")
+                    .baseUnit("bytes")
+                    .register(registry);
+        }
+    }
+}
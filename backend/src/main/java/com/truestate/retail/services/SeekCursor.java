@@ -0,0 +1,68 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.models.SaleRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+// Position after the last row of a keyset page: the sort it belongs to, that row's sort
+// key and its id as the tie-breaker. Clients only ever see the opaque encoded form.
+public record SeekCursor(String sortBy, boolean ascending, String key, long id) {
+
+    public static SeekCursor of(String sortBy, String direction, String key, long id) {
+        return new SeekCursor(normalizeSortBy(sortBy), "asc".equalsIgnoreCase(direction), key, id);
+    }
+
+    public static SeekCursor after(SaleRecord sale, String sortBy, String direction) {
+        String field = normalizeSortBy(sortBy);
+        String key = switch (field) {
+            case "quantity" -> sale.getQuantity() != null ? sale.getQuantity().toString() : null;
+            case "customerName" -> sale.getCustomerName();
+            default -> sale.getDate() != null ? sale.getDate().toString() : null;
+        };
+        return of(field, direction, key, sale.getId());
+    }
+
+    // Null or blank means "first page"
+    public static SeekCursor decode(String encoded) {
+        if (encoded == null || encoded.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\n", 4);
+            SeekCursor cursor = new SeekCursor(parts[0], "asc".equals(parts[1]), parts[3].isEmpty() ? null : parts[3],
+                    Long.parseLong(parts[2]));
+            // A key that does not parse would otherwise only fail once a source compares with it
+            if (cursor.key != null && "quantity".equals(cursor.sortBy)) {
+                Integer.parseInt(cursor.key);
+            } else if (cursor.key != null && "date".equals(cursor.sortBy)) {
+                LocalDate.parse(cursor.key);
+            }
+            return cursor;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    public String encode() {
+        String raw = sortBy + "\n" + (ascending ? "asc" : "desc") + "\n" + id + "\n" + (key != null ? key : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // A cursor is only valid for the sort it was issued for
+    public boolean matches(String sortBy, String direction) {
+        return this.sortBy.equals(normalizeSortBy(sortBy)) && ascending == "asc".equalsIgnoreCase(direction);
+    }
+
+    public static String normalizeSortBy(String sortBy) {
+        if ("quantity".equalsIgnoreCase(sortBy)) {
+            return "quantity";
+        }
+        if ("customerName".equalsIgnoreCase(sortBy)) {
+            return "customerName";
+        }
+        return "date";
+    }
+}
@@ -0,0 +1,132 @@
+package com.truestate.retail.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+// Fork/join over fixed segments of a scan. Every segment is reduced on its own and the
+// partial results come back in segment order, so callers that combine them front to back
+// get the same answer whatever the thread count or completion order. Below the row
+// threshold the same segments run one after another on the calling thread.
+@Service
+public class SegmentedScan {
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final long minRows;
+    private final int segmentRows;
+
+    public SegmentedScan(@Value("${search.parallel.threads:0}") int threads,
+                         @Value("${search.parallel.min-rows:100000}") long minRows,
+                         @Value("${search.parallel.segment-rows:65536}") int segmentRows) {
+        this.parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.minRows = minRows;
+        this.segmentRows = Math.max(1024, segmentRows);
+        // A single thread gains nothing from a pool; everything then runs on the caller
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("scan-" + thread.getPoolIndex());
+            return thread;
+        }, null, false) : null;
+    }
+
+    public int segmentRows() {
+        return segmentRows;
+    }
+
+    // True when a scan visiting `rows` rows is worth spreading over the pool
+    public boolean parallel(long rows) {
+        return pool != null && rows >= minRows;
+    }
+
+    // Segments [from, to) of rows 0 .. rowCount, each of segmentRows rows except the last
+    <T> List<T> overRows(int rowCount, long rowsVisited, RowSegment<T> segment) {
+        int segments = Math.max(1, (rowCount + segmentRows - 1) / segmentRows);
+        return parts(segments, parallel(rowsVisited), index -> {
+            int from = index * segmentRows;
+            return segment.compute(from, (int) Math.min((long) from + segmentRows, rowCount));
+        });
+    }
+
+    // Results of parts 0 .. count - 1, in that order
+    @SuppressWarnings("unchecked")
+    <T> List<T> parts(int count, boolean parallel, Part<T> part) {
+        Object[] results = new Object[count];
+        if (!parallel || count < 2) {
+            for (int i = 0; i < count; i++) {
+                results[i] = compute(part, i);
+            }
+        } else {
+            pool.invoke(new PartRange<>(part, results, 0, count));
+        }
+        return (List<T>) Arrays.asList(results);
+    }
+
+    // Sorts on the pool for large arrays; the order is fully determined by the values
+    void sort(long[] values) {
+        if (parallel(values.length)) {
+            pool.submit(() -> Arrays.parallelSort(values)).join();
+        } else {
+            Arrays.sort(values);
+        }
+    }
+
+    public Map<String, Object> settings() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("threads", pool != null ? parallelism : 1);
+        settings.put("minRows", minRows);
+        settings.put("segmentRows", segmentRows);
+        return settings;
+    }
+
+    private static <T> T compute(Part<T> part, int index) {
+        try {
+            return part.compute(index);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Scan segment " + index + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    interface RowSegment<T> {
+        T compute(int from, int to) throws Exception;
+    }
+
+    interface Part<T> {
+        T compute(int index) throws Exception;
+    }
+
+    // Halves the range of parts until one is left, which is computed in place
+    private static final class PartRange<T> extends RecursiveAction {
+
+        private final Part<T> part;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+
+        PartRange(Part<T> part, Object[] results, int from, int to) {
+            this.part = part;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = SegmentedScan.compute(part, from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new PartRange<>(part, results, from, mid), new PartRange<>(part, results, mid, to));
+        }
+    }
+}
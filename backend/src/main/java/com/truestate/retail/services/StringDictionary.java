@@ -0,0 +1,67 @@
+package com.truestate.retail.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Maps the distinct values of a low-cardinality column to small int codes.
+// Code 0 is reserved for null so a zeroed code array reads as "missing".
+public class StringDictionary {
+
+    public static final int NULL_CODE = 0;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    public StringDictionary() {
+        values.add(null);
+    }
+
+    public int encode(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    // Returns -1 when the value was never seen, so lookups never grow the dictionary
+    public int lookup(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : -1;
+    }
+
+    // Independent copy for an append, so readers of this dictionary never see it change
+    StringDictionary copy() {
+        StringDictionary copy = new StringDictionary();
+        copy.codes.putAll(codes);
+        copy.values.addAll(values.subList(1, values.size()));
+        return copy;
+    }
+
+    public String decode(int code) {
+        return values.get(code);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public long estimatedBytes() {
+        long bytes = 64;
+        for (String value : values) {
+            // map entry + list slot + the string itself
+            bytes += 48 + MemoryFootprint.stringBytes(value);
+        }
+        return bytes;
+    }
+}
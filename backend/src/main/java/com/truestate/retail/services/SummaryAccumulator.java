@@ -0,0 +1,176 @@
+package com.truestate.retail.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntFunction;
+
+// Single-pass aggregation over primitive values. Group-by keys arrive as dictionary
+// codes so per-group totals are plain array slots rather than map lookups.
+final class SummaryAccumulator {
+
+    private long count;
+    private final MetricAccumulator quantity = new MetricAccumulator();
+    private final MetricAccumulator totalAmount = new MetricAccumulator();
+    private final MetricAccumulator finalAmount = new MetricAccumulator();
+    private final MetricAccumulator discount = new MetricAccumulator();
+
+    private final GroupAccumulator byRegion = new GroupAccumulator();
+    private final GroupAccumulator byCategory = new GroupAccumulator();
+    private final GroupAccumulator byPaymentMethod = new GroupAccumulator();
+
+    // quantity may be ColumnarSaleStore.MISSING_INT and amounts may be NaN
+    void add(int qty, double total, double fin, int regionCode, int categoryCode, int paymentCode) {
+        count++;
+        if (qty != ColumnarSaleStore.MISSING_INT) {
+            quantity.add(qty);
+        }
+        totalAmount.add(total);
+        finalAmount.add(fin);
+        double disc = total - fin;
+        discount.add(disc);
+
+        byRegion.add(regionCode, qty, total, fin, disc);
+        byCategory.add(categoryCode, qty, total, fin, disc);
+        byPaymentMethod.add(paymentCode, qty, total, fin, disc);
+    }
+
+    // Folds in a pre-aggregated rollup cell as if its rows had been added one by one
+    void addCell(RollupCube.Cell cell, int regionCode, int categoryCode, int paymentCode) {
+        count += cell.count;
+        quantity.merge(cell.quantity);
+        totalAmount.merge(cell.totalAmount);
+        finalAmount.merge(cell.finalAmount);
+        discount.merge(cell.discount);
+
+        byRegion.addTotals(regionCode, cell);
+        byCategory.addTotals(categoryCode, cell);
+        byPaymentMethod.addTotals(paymentCode, cell);
+    }
+
+    // Folds in the accumulator of a later scan segment
+    void merge(SummaryAccumulator other) {
+        count += other.count;
+        quantity.merge(other.quantity);
+        totalAmount.merge(other.totalAmount);
+        finalAmount.merge(other.finalAmount);
+        discount.merge(other.discount);
+
+        byRegion.merge(other.byRegion);
+        byCategory.merge(other.byCategory);
+        byPaymentMethod.merge(other.byPaymentMethod);
+    }
+
+    long count() {
+        return count;
+    }
+
+    SalesSummary toSummary(IntFunction<String> regions, IntFunction<String> categories, IntFunction<String> paymentMethods) {
+        return new SalesSummary(
+                count,
+                quantity.toMetric(),
+                totalAmount.toMetric(),
+                finalAmount.toMetric(),
+                discount.toMetric(),
+                byRegion.toGroups(regions),
+                byCategory.toGroups(categories),
+                byPaymentMethod.toGroups(paymentMethods)
+        );
+    }
+
+    static final class MetricAccumulator {
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        void add(double value) {
+            if (Double.isNaN(value)) {
+                return;
+            }
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        void merge(MetricAccumulator other) {
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        SalesSummary.Metric toMetric() {
+            if (count == 0) {
+                return new SalesSummary.Metric(0, 0, null, null, null);
+            }
+            return new SalesSummary.Metric(count, sum, sum / count, min, max);
+        }
+    }
+
+    static final class GroupAccumulator {
+        private long[] counts = new long[8];
+        private long[] quantities = new long[8];
+        private double[] totals = new double[8];
+        private double[] finals = new double[8];
+        private double[] discounts = new double[8];
+
+        void add(int code, int qty, double total, double fin, double disc) {
+            if (code >= counts.length) {
+                grow(Math.max(code + 1, counts.length * 2));
+            }
+            counts[code]++;
+            if (qty != ColumnarSaleStore.MISSING_INT) quantities[code] += qty;
+            if (!Double.isNaN(total)) totals[code] += total;
+            if (!Double.isNaN(fin)) finals[code] += fin;
+            if (!Double.isNaN(disc)) discounts[code] += disc;
+        }
+
+        void addTotals(int code, RollupCube.Cell cell) {
+            if (code >= counts.length) {
+                grow(Math.max(code + 1, counts.length * 2));
+            }
+            counts[code] += cell.count;
+            quantities[code] += (long) cell.quantity.sum;
+            totals[code] += cell.totalAmount.sum;
+            finals[code] += cell.finalAmount.sum;
+            discounts[code] += cell.discount.sum;
+        }
+
+        void merge(GroupAccumulator other) {
+            if (other.counts.length > counts.length) {
+                grow(other.counts.length);
+            }
+            for (int code = 0; code < other.counts.length; code++) {
+                counts[code] += other.counts[code];
+                quantities[code] += other.quantities[code];
+                totals[code] += other.totals[code];
+                finals[code] += other.finals[code];
+                discounts[code] += other.discounts[code];
+            }
+        }
+
+        List<SalesSummary.Group> toGroups(IntFunction<String> keys) {
+            List<SalesSummary.Group> groups = new ArrayList<>();
+            for (int code = 0; code < counts.length; code++) {
+                if (counts[code] > 0) {
+                    groups.add(new SalesSummary.Group(keys.apply(code), counts[code], quantities[code],
+                            totals[code], finals[code], discounts[code]));
+                }
+            }
+            // Same order as the ORDER BY on the database path
+            groups.sort(Comparator.comparing(SalesSummary.Group::key, Comparator.nullsFirst(Comparator.naturalOrder())));
+            return groups;
+        }
+
+        private void grow(int capacity) {
+            counts = Arrays.copyOf(counts, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            totals = Arrays.copyOf(totals, capacity);
+            finals = Arrays.copyOf(finals, capacity);
+            discounts = Arrays.copyOf(discounts, capacity);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.truestate.retail.services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Keeps the first `limit` items of a stream under the given order using a bounded
+// max-heap, so memory is proportional to the requested window, not the input.
+final class TopKCollector<T> {
+
+    private final Comparator<? super T> order;
+    private final PriorityQueue<T> heap;
+    private final int limit;
+
+    TopKCollector(int limit, Comparator<? super T> order) {
+        this.order = order;
+        this.limit = limit;
+        // Head of the queue is the worst item kept so far
+        this.heap = new PriorityQueue<>(Math.max(1, Math.min(limit, 1024)) + 1, order.reversed());
+    }
+
+    void offer(T item) {
+        if (limit <= 0) {
+            return;
+        }
+        if (heap.size() < limit) {
+            heap.add(item);
+        } else if (order.compare(item, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(item);
+        }
+    }
+
+    // Items in final order; the collector should not be used afterwards
+    List<T> sorted() {
+        List<T> items = new ArrayList<>(heap);
+        items.sort(order);
+        return items;
+    }
+}
@@ -0,0 +1,11 @@
+package com.truestate.retail.services;
+
+// How the total behind a search page is produced
+public enum TotalMode {
+    // Exact COUNT over the filter (Page)
+    EXACT,
+    // No count at all, only whether a next page exists (Slice)
+    NONE,
+    // Cheap estimate from statistics or a sample (Page with an estimated total)
+    APPROXIMATE
+}
@@ -0,0 +1,329 @@
+package com.truestate.retail.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+// Trigram inverted index for substring search on one text column. Postings are kept per
+// distinct value rather than per row, so a name repeated across many sales is indexed once,
+// and a value-to-rows table expands the matching values back into rows at the end.
+// Every value is indexed with two padding characters after its last character, so each
+// position starts a full gram: a query of three or more characters intersects the postings
+// of its grams and verifies the few survivors, and a shorter query is answered exactly by
+// the union of the grams it is a prefix of (the prefix index is a range of the sorted grams).
+public class TrigramIndex {
+
+    private static final char PAD = '\0';
+
+    private final int rowCount;
+    private final String[] values;
+    // Rows of value v are rows[rowStarts[v]] .. rows[rowStarts[v + 1] - 1]
+    private final int[] rowStarts;
+    private final int[] rows;
+    // Sorted packed grams and, in the same order, the ascending ids of the values containing them
+    private final long[] grams;
+    private final int[][] postings;
+    private final long normalizedStringBytes;
+
+    private TrigramIndex(int rowCount, String[] values, int[] rowStarts, int[] rows, long[] grams,
+                         int[][] postings, long normalizedStringBytes) {
+        this.rowCount = rowCount;
+        this.values = values;
+        this.rowStarts = rowStarts;
+        this.rows = rows;
+        this.grams = grams;
+        this.postings = postings;
+        this.normalizedStringBytes = normalizedStringBytes;
+    }
+
+    // `normalize` is applied to every value here and must already have been applied to the needle
+    public static TrigramIndex build(String[] column, int rowCount, UnaryOperator<String> normalize) {
+        return build(column, 0, rowCount, normalize);
+    }
+
+    // Indexes rows [fromRow, toRow) only; rows() still answers with row ids of the whole column
+    static TrigramIndex build(String[] column, int fromRow, int toRow, UnaryOperator<String> normalize) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> distinct = new ArrayList<>();
+        int[] valueOfRow = new int[toRow - fromRow];
+        long normalizedStringBytes = 0;
+        for (int row = fromRow; row < toRow; row++) {
+            String raw = column[row];
+            if (raw == null) {
+                valueOfRow[row - fromRow] = -1;
+                continue;
+            }
+            String value = normalize.apply(raw);
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = distinct.size();
+                ids.put(value, id);
+                distinct.add(value);
+                if (value != raw) {
+                    normalizedStringBytes += MemoryFootprint.stringBytes(value);
+                }
+            }
+            valueOfRow[row - fromRow] = id;
+        }
+        String[] values = distinct.toArray(String[]::new);
+
+        int[] rowStarts = new int[values.length + 1];
+        for (int value : valueOfRow) {
+            if (value >= 0) {
+                rowStarts[value + 1]++;
+            }
+        }
+        for (int v = 0; v < values.length; v++) {
+            rowStarts[v + 1] += rowStarts[v];
+        }
+        int[] rows = new int[rowStarts[values.length]];
+        int[] fill = Arrays.copyOf(rowStarts, values.length);
+        for (int i = 0; i < valueOfRow.length; i++) {
+            if (valueOfRow[i] >= 0) {
+                rows[fill[valueOfRow[i]]++] = fromRow + i;
+            }
+        }
+
+        // Two passes over the values: size every posting list, then fill it. Values are
+        // visited in id order, so each list comes out sorted.
+        GramTable gramIds = new GramTable();
+        int[] counts = new int[1024];
+        int[] lastValue = new int[1024];
+        Arrays.fill(lastValue, -1);
+        for (int v = 0; v < values.length; v++) {
+            String value = values[v];
+            for (int i = 0; i < value.length(); i++) {
+                int gramId = gramIds.idOf(gramAt(value, i));
+                if (gramId == counts.length) {
+                    counts = Arrays.copyOf(counts, gramId * 2);
+                    lastValue = Arrays.copyOf(lastValue, gramId * 2);
+                    Arrays.fill(lastValue, gramId, lastValue.length, -1);
+                }
+                if (lastValue[gramId] != v) {
+                    lastValue[gramId] = v;
+                    counts[gramId]++;
+                }
+            }
+        }
+
+        int[][] byGramId = new int[gramIds.size()][];
+        for (int g = 0; g < byGramId.length; g++) {
+            byGramId[g] = new int[counts[g]];
+            counts[g] = 0;
+            lastValue[g] = -1;
+        }
+        for (int v = 0; v < values.length; v++) {
+            String value = values[v];
+            for (int i = 0; i < value.length(); i++) {
+                int gramId = gramIds.idOf(gramAt(value, i));
+                if (lastValue[gramId] != v) {
+                    lastValue[gramId] = v;
+                    byGramId[gramId][counts[gramId]++] = v;
+                }
+            }
+        }
+
+        long[] grams = gramIds.grams();
+        Arrays.sort(grams);
+        int[][] postings = new int[grams.length][];
+        for (int i = 0; i < grams.length; i++) {
+            postings[i] = byGramId[gramIds.idOf(grams[i])];
+        }
+
+        return new TrigramIndex(toRow, values, rowStarts, rows, grams, postings, normalizedStringBytes);
+    }
+
+    // Rows whose value contains the (normalized, non-empty) needle
+    public BitSet rows(String needle) {
+        BitSet matchingValues = needle.length() < 3 ? prefixMatches(needle) : trigramMatches(needle);
+        BitSet result = new BitSet(rowCount);
+        for (int v = matchingValues.nextSetBit(0); v >= 0; v = matchingValues.nextSetBit(v + 1)) {
+            for (int i = rowStarts[v]; i < rowStarts[v + 1]; i++) {
+                result.set(rows[i]);
+            }
+        }
+        return result;
+    }
+
+    public int distinctValues() {
+        return values.length;
+    }
+
+    public int gramCount() {
+        return grams.length;
+    }
+
+    public long estimatedBytes() {
+        long bytes = MemoryFootprint.array(values.length, (int) MemoryFootprint.REFERENCE)
+                + MemoryFootprint.array(rowStarts.length, 4)
+                + MemoryFootprint.array(rows.length, 4)
+                + MemoryFootprint.array(grams.length, 8)
+                + MemoryFootprint.array(postings.length, (int) MemoryFootprint.REFERENCE);
+        for (int[] posting : postings) {
+            bytes += MemoryFootprint.array(posting.length, 4);
+        }
+        return bytes + normalizedStringBytes;
+    }
+
+    // One or two characters: every occurrence is the start of some padded gram, so the
+    // union of the grams in the prefix range is the exact answer, no verification needed
+    private BitSet prefixMatches(String needle) {
+        long low = pack(needle.charAt(0), needle.length() > 1 ? needle.charAt(1) : PAD, PAD);
+        long high = needle.length() > 1 ? low | 0xFFFFL : low | 0xFFFFFFFFL;
+        BitSet result = new BitSet(values.length);
+        for (int i = lowerBound(low); i < grams.length && grams[i] <= high; i++) {
+            for (int v : postings[i]) {
+                result.set(v);
+            }
+        }
+        return result;
+    }
+
+    // Values holding every gram of the needle, rarest posting list first, then checked
+    // for the needle itself since the grams may occur in a different arrangement
+    private BitSet trigramMatches(String needle) {
+        int gramTotal = needle.length() - 2;
+        int[][] lists = new int[gramTotal][];
+        for (int i = 0; i < gramTotal; i++) {
+            int index = Arrays.binarySearch(grams, pack(needle.charAt(i), needle.charAt(i + 1), needle.charAt(i + 2)));
+            if (index < 0) {
+                return new BitSet();
+            }
+            lists[i] = postings[index];
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+
+        int[] candidates = lists[0];
+        int candidateCount = candidates.length;
+        for (int i = 1; i < lists.length && candidateCount > 0; i++) {
+            if (lists[i] == lists[i - 1]) {
+                continue;
+            }
+            int[] narrowed = candidates == lists[0] ? new int[candidateCount] : candidates;
+            candidateCount = intersect(candidates, candidateCount, lists[i], narrowed);
+            candidates = narrowed;
+        }
+
+        BitSet result = new BitSet(values.length);
+        for (int i = 0; i < candidateCount; i++) {
+            int v = candidates[i];
+            if (values[v].contains(needle)) {
+                result.set(v);
+            }
+        }
+        return result;
+    }
+
+    // Writes the common ids of sorted `left` (first `count` entries) and `right` into `into`,
+    // which may be `left` itself; binary searches when `right` is much longer, merges otherwise
+    private static int intersect(int[] left, int count, int[] right, int[] into) {
+        int kept = 0;
+        if (right.length > count * 16) {
+            int from = 0;
+            for (int i = 0; i < count; i++) {
+                int found = Arrays.binarySearch(right, from, right.length, left[i]);
+                if (found >= 0) {
+                    into[kept++] = left[i];
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+            }
+            return kept;
+        }
+        int j = 0;
+        for (int i = 0; i < count && j < right.length; i++) {
+            while (j < right.length && right[j] < left[i]) {
+                j++;
+            }
+            if (j < right.length && right[j] == left[i]) {
+                into[kept++] = left[i];
+                j++;
+            }
+        }
+        return kept;
+    }
+
+    private int lowerBound(long gram) {
+        int index = Arrays.binarySearch(grams, gram);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static long gramAt(String value, int i) {
+        char second = i + 1 < value.length() ? value.charAt(i + 1) : PAD;
+        char third = i + 2 < value.length() ? value.charAt(i + 2) : PAD;
+        return pack(value.charAt(i), second, third);
+    }
+
+    private static long pack(char first, char second, char third) {
+        return ((long) first << 32) | ((long) second << 16) | third;
+    }
+
+    // Open-addressing gram -> dense id table; the build looks up every gram of every value
+    // twice, which boxed HashMap keys made the slowest part of loading
+    private static final class GramTable {
+
+        private long[] keys = new long[4096];
+        private int[] ids = new int[4096];
+        private long[] byId = new long[1024];
+        private int size;
+
+        GramTable() {
+            Arrays.fill(keys, -1);
+        }
+
+        // Id of the gram, assigning the next one on first sight
+        int idOf(long gram) {
+            int mask = keys.length - 1;
+            int slot = (int) (gram * 0x9E3779B97F4A7C15L >>> 40) & mask;
+            while (keys[slot] != -1) {
+                if (keys[slot] == gram) {
+                    return ids[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size == byId.length) {
+                byId = Arrays.copyOf(byId, size * 2);
+            }
+            byId[size] = gram;
+            keys[slot] = gram;
+            ids[slot] = size;
+            size++;
+            if (size * 2 > keys.length) {
+                rehash();
+            }
+            return size - 1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long[] grams() {
+            return Arrays.copyOf(byId, size);
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldIds = ids;
+            keys = new long[oldKeys.length * 2];
+            ids = new int[oldKeys.length * 2];
+            Arrays.fill(keys, -1);
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1) {
+                    int slot = (int) (oldKeys[i] * 0x9E3779B97F4A7C15L >>> 40) & mask;
+                    while (keys[slot] != -1) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    ids[slot] = oldIds[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.truestate.retail.services;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+// A text column's trigram index kept current under appends: one index over the rows loaded at
+// startup and small ones over the batches appended since. The sorted gram arrays cannot take
+// new rows in place, so each batch gets its own index, the batch indexes are folded into one
+// once there are many of them, and everything is rebuilt once the batches outgrow a quarter
+// of the base. Instances are immutable; an append returns a new one.
+public final class TrigramSegments {
+
+    private static final int MAX_SEGMENTS = 8;
+
+    private final UnaryOperator<String> normalize;
+    private final TrigramIndex base;
+    private final int baseRows;
+    private final List<TrigramIndex> segments;
+    private final int rows;
+
+    private TrigramSegments(UnaryOperator<String> normalize, TrigramIndex base, int baseRows,
+                            List<TrigramIndex> segments, int rows) {
+        this.normalize = normalize;
+        this.base = base;
+        this.baseRows = baseRows;
+        this.segments = segments;
+        this.rows = rows;
+    }
+
+    // `normalize` is applied to every value here and must already have been applied to the needle
+    public static TrigramSegments build(String[] column, int rowCount, UnaryOperator<String> normalize) {
+        return new TrigramSegments(normalize, TrigramIndex.build(column, rowCount, normalize), rowCount,
+                List.of(), rowCount);
+    }
+
+    // Also covers rows [covered rows, rowCount) of the column
+    public TrigramSegments appended(String[] column, int rowCount) {
+        if ((long) (rowCount - baseRows) * 4 > baseRows) {
+            return build(column, rowCount, normalize);
+        }
+        List<TrigramIndex> appended = new ArrayList<>(segments);
+        if (appended.size() < MAX_SEGMENTS) {
+            appended.add(TrigramIndex.build(column, rows, rowCount, normalize));
+        } else {
+            appended = new ArrayList<>(List.of(TrigramIndex.build(column, baseRows, rowCount, normalize)));
+        }
+        return new TrigramSegments(normalize, base, baseRows, List.copyOf(appended), rowCount);
+    }
+
+    // Rows whose value contains the (normalized, non-empty) needle
+    public BitSet rows(String needle) {
+        BitSet result = base.rows(needle);
+        for (TrigramIndex segment : segments) {
+            result.or(segment.rows(needle));
+        }
+        return result;
+    }
+
+    public int segmentCount() {
+        return 1 + segments.size();
+    }
+
+    public int gramCount() {
+        int grams = base.gramCount();
+        for (TrigramIndex segment : segments) {
+            grams += segment.gramCount();
+        }
+        return grams;
+    }
+
+    public long estimatedBytes() {
+        long bytes = base.estimatedBytes();
+        for (TrigramIndex segment : segments) {
+            bytes += segment.estimatedBytes();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,33 @@
+package com.truestate.retail.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Hands out one shared String per distinct value of a repeated column, so parsed records
+// that are kept around (result pages, cached pages, ingest batches) do not each carry a
+// copy of "Completed" or "Emp 58". Bounded: once a column turns out to have more distinct
+// values than expected, new values are passed through unshared. Safe across scan threads.
+final class ValueInterner {
+
+    private final int maxValues;
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+
+    ValueInterner(int maxValues) {
+        this.maxValues = maxValues;
+    }
+
+    String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = values.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (values.size() >= maxValues) {
+            return value;
+        }
+        shared = values.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+}
@@ -0,0 +1,129 @@
+package com.truestate.retail.services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+// Bounded LRU map for derived query results. Entries are weighed in approximate heap bytes
+// and the least recently used ones are dropped once the total passes the bound, so a few
+// large match lists cannot crowd the heap the way an entry-count limit would allow.
+// invalidateAll() bumps a generation, so a value computed from the old data while the cache
+// was being cleared is returned to its caller but never stored.
+final class WeightedLruCache<K, V> {
+
+    private final long maxBytes;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long weightBytes;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long puts;
+    private long evictions;
+    private long invalidations;
+
+    WeightedLruCache(long maxBytes, ToLongFunction<V> weigher) {
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+    }
+
+    V get(K key, Supplier<V> loader) {
+        if (maxBytes <= 0) {
+            return loader.get();
+        }
+        long loadGeneration;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.value();
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+        // Computed outside the lock; two concurrent misses on one key both compute and the last wins
+        V value = loader.get();
+        put(key, value, loadGeneration);
+        return value;
+    }
+
+    // Cached value or null, without loading; only hits are counted
+    synchronized V peek(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        hits++;
+        return entry.value();
+    }
+
+    synchronized void invalidateAll() {
+        generation++;
+        invalidations++;
+        entries.clear();
+        weightBytes = 0;
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("weightBytes", weightBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("invalidations", invalidations);
+        stats.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        return stats;
+    }
+
+    private synchronized void put(K key, V value, long loadGeneration) {
+        long weight = weigher.applyAsLong(value);
+        // Stale, or so large it would flush most of the cache for one query
+        if (loadGeneration != generation || weight > maxBytes / 4) {
+            return;
+        }
+        Entry<V> previous = entries.put(key, new Entry<>(value, weight));
+        if (previous != null) {
+            weightBytes -= previous.weight();
+        }
+        weightBytes += weight;
+        puts++;
+
+        Iterator<Entry<V>> eldest = entries.values().iterator();
+        while (weightBytes > maxBytes && eldest.hasNext()) {
+            weightBytes -= eldest.next().weight();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    synchronized long size() {
+        return entries.size();
+    }
+
+    synchronized long weightBytes() {
+        return weightBytes;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long puts() {
+        return puts;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    private record Entry<V>(V value, long weight) {}
+}
@@ -0,0 +1,67 @@
+package com.truestate.retail.services;
+
+// Date and age bounds of the rows in one partition, so a search can tell without visiting
+// them that none of the rows can match its windows, or that all of them pass. Missing dates
+// count as MISSING_INT like in the columns; missing ages are only flagged, since they pass
+// every age filter.
+final class ZoneMap {
+
+    private final int minDay;
+    private final int maxDay;
+    private final int minAge;
+    private final int maxAge;
+    private final boolean missingAge;
+
+    private ZoneMap(int minDay, int maxDay, int minAge, int maxAge, boolean missingAge) {
+        this.minDay = minDay;
+        this.maxDay = maxDay;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+        this.missingAge = missingAge;
+    }
+
+    // False when no row can fall inside both windows; the bounds are inclusive
+    boolean overlaps(int startDay, int endDay, int fromAge, int toAge) {
+        if (minDay > endDay || maxDay < startDay) {
+            return false;
+        }
+        return missingAge || (minAge <= toAge && maxAge >= fromAge);
+    }
+
+    // True when every row falls inside both windows, so the row checks can be left out
+    boolean within(int startDay, int endDay, int fromAge, int toAge) {
+        return minDay >= startDay && maxDay <= endDay && minAge >= fromAge && maxAge <= toAge;
+    }
+
+    static final class Builder {
+
+        private int minDay = Integer.MAX_VALUE;
+        private int maxDay = Integer.MIN_VALUE;
+        private int minAge = Integer.MAX_VALUE;
+        private int maxAge = Integer.MIN_VALUE;
+        private boolean missingAge;
+
+        void add(int day, int age) {
+            minDay = Math.min(minDay, day);
+            maxDay = Math.max(maxDay, day);
+            if (age == ColumnarSaleStore.MISSING_INT) {
+                missingAge = true;
+            } else {
+                minAge = Math.min(minAge, age);
+                maxAge = Math.max(maxAge, age);
+            }
+        }
+
+        void add(ZoneMap zone) {
+            minDay = Math.min(minDay, zone.minDay);
+            maxDay = Math.max(maxDay, zone.maxDay);
+            minAge = Math.min(minAge, zone.minAge);
+            maxAge = Math.max(maxAge, zone.maxAge);
+            missingAge |= zone.missingAge;
+        }
+
+        ZoneMap build() {
+            return new ZoneMap(minDay, maxDay, minAge, maxAge, missingAge);
+        }
+    }
+}
@@ -2,30 +2,74 @@ package com.truestate.retail.utils;
 
 import com.truestate.retail.models.SaleRecordRepository;
 import com.truestate.retail.services.CsvFallbackService;
+import com.truestate.retail.services.CsvIngestionService;
+import com.truestate.retail.services.ResidentDatasetService;
+import com.truestate.retail.services.SalesDataChangedEvent;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 @Component
 public class CsvDataLoader implements CommandLineRunner {
 
     private final SaleRecordRepository repository;
     private final CsvFallbackService csvFallbackService;
+    private final ResidentDatasetService residentDatasetService;
+    private final CsvIngestionService csvIngestionService;
 
     @Value("${csv.startup.load.enabled:false}")
     private boolean startupLoadEnabled;
 
-    public CsvDataLoader(SaleRecordRepository repository, CsvFallbackService csvFallbackService) {
+    // Set when the startup run found no CSV; its first copy then starts the loads
+    private volatile boolean waitingForCsv;
+    // Whoever claims this runs the loads, exactly once: the startup run, or the first download after it
+    private final AtomicBoolean loadsClaimed = new AtomicBoolean();
+
+    public CsvDataLoader(SaleRecordRepository repository, CsvFallbackService csvFallbackService,
+                         ResidentDatasetService residentDatasetService, CsvIngestionService csvIngestionService) {
         this.repository = repository;
         this.csvFallbackService = csvFallbackService;
+        this.residentDatasetService = residentDatasetService;
+        this.csvIngestionService = csvIngestionService;
     }
 
     @Override
     public void run(String... args) throws Exception {
         System.out.println("=== CSV Data Loader Starting ===");
+        if (!csvFallbackService.awaitCsvAvailable()) {
+            waitingForCsv = true;
+            // The copy may have arrived between the check and the flag
+            if (!csvFallbackService.awaitCsvAvailable()) {
+                System.out.println("CSV is not downloaded yet, loading once the first copy arrives");
+                return;
+            }
+        }
+        if (loadsClaimed.compareAndSet(false, true)) {
+            load();
+        }
+    }
 
+    // A remote CSV whose first download failed arrives on a retry; the loads it missed run then,
+    // on the fetch thread, which has nothing to revalidate until the next start
+    @EventListener
+    public void onSalesDataChanged(SalesDataChangedEvent event) {
+        if ("csv".equals(event.source()) && waitingForCsv && loadsClaimed.compareAndSet(false, true)) {
+            try {
+                load();
+            } catch (Exception e) {
+                System.err.println("Loading the downloaded CSV failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void load() throws Exception {
         if (!startupLoadEnabled) {
             System.out.println("CSV startup load is disabled (csv.startup.load.enabled=false). Skipping DB pre-load.");
+            loadResident();
             return;
         }
 
@@ -33,17 +77,28 @@ public class CsvDataLoader implements CommandLineRunner {
         System.out.println("Current record count in database: " + count);
 
         if (count > 0) {
-            System.out.println("Database already has data, skipping CSV load");
+            // The database answers every request, so a resident copy would only take up heap
+            System.out.println("Database already has data, skipping CSV load and resident dataset");
             return;
         }
 
-        // For large datasets on low-memory environments (like Render free tier),
-        // we no longer support bulk preloading of the entire CSV into H2.
-        // All CSV-backed queries should instead use CsvFallbackService.searchFromCsv(...),
-        // which streams the file and keeps memory usage bounded.
-        System.out.println("CSV startup load was requested but is not supported in this build. " +
-                "Use the streaming CSV fallback instead.");
+        try {
+            csvIngestionService.ingest();
+        } catch (Exception e) {
+            System.err.println("CSV ingestion failed, requests stay on the CSV paths: " + e.getMessage());
+            e.printStackTrace();
+        }
+        if (repository.count() == 0) {
+            loadResident();
+        }
 
         System.out.println("=== CSV Data Loader Finished ===");
     }
+
+    private void loadResident() {
+        if (residentDatasetService.isEnabled()) {
+            // Columnar copy of the CSV; falls back to streaming if it would not fit the heap budget
+            residentDatasetService.load();
+        }
+    }
 }
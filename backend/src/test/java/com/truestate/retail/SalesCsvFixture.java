@@ -0,0 +1,137 @@
+package com.truestate.retail;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+// Small, repeatable sales_data.csv for tests, served to the application through csv.url like
+// a deployment with a remote CSV. Every tenth quantity and about one age in fifty are blank,
+// so the paths that order or filter on nullable columns see missing values.
+public final class SalesCsvFixture {
+
+    public static final int ROWS = 1200;
+
+    public static final String HEADER = "Transaction ID,Date,Customer ID,Customer Name,Phone Number,Gender,Age,"
+            + "Customer Region,Customer Type,Product ID,Product Name,Brand,Product Category,Tags,Quantity,"
+            + "Price per Unit,Discount Percentage,Total Amount,Final Amount,Payment Method,Order Status,"
+            + "Delivery Type,Store ID,Store Location,Salesperson ID,Employee Name";
+
+    private static final String[] NAMES = {"Amit Sharma", "Priya Verma", "Rahul Gupta", "Sneha Singh", "Vikram Patel",
+            "Anjali Reddy", "Rohan Nair", "Neha Iyer", "Karan Joshi", "Pooja Mehta", "Arjun Kapoor", "Kavya Rao"};
+    private static final String[] REGIONS = {"North", "South", "West", "East", "Central"};
+    private static final String[] GENDERS = {"Female", "Male"};
+    private static final String[] CATEGORIES = {"Clothing", "Electronics", "Beauty"};
+    private static final String[] TAGS = {"fashion", "casual", "gadgets", "wireless", "skincare", "organic", "unisex"};
+    private static final String[] PAYMENT_METHODS = {"UPI", "Credit Card", "Debit Card", "Cash", "Wallet"};
+    private static final String[] ORDER_STATUSES = {"Completed", "Pending", "Cancelled", "Returned"};
+    private static final LocalDate FIRST_DAY = LocalDate.of(2022, 1, 1);
+
+    private static Path file;
+    private static Path cacheDir;
+
+    private SalesCsvFixture() {
+    }
+
+    // Points the application at the fixture file with the snapshot and result caches off, and
+    // lets DatabaseQueryPlansTest explain the statements Hibernate generates.
+    // Test classes that register the same properties share one application context.
+    public static void register(DynamicPropertyRegistry registry) {
+        registry.add("csv.url", () -> file().toUri().toString());
+        registry.add("csv.cache.dir", () -> cacheDir().toString());
+        registry.add("csv.snapshot.enabled", () -> "false");
+        registry.add("csv.startup.load.enabled", () -> "false");
+        registry.add("search.cache.page-bytes", () -> "0");
+        registry.add("search.cache.match-bytes", () -> "0");
+        registry.add("spring.jpa.properties.hibernate.session_factory.statement_inspector",
+                () -> "com.truestate.retail.services.ExplainStatementInspector");
+    }
+
+    public static synchronized Path file() {
+        if (file == null) {
+            try {
+                Path generated = Files.createTempFile("sales_data", ".csv");
+                generated.toFile().deleteOnExit();
+                write(generated, ROWS, 1, 20240917L);
+                file = generated;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return file;
+    }
+
+    private static synchronized Path cacheDir() {
+        if (cacheDir == null) {
+            try {
+                cacheDir = Files.createTempDirectory("retail-test");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return cacheDir;
+    }
+
+    // Writes `rows` rows with transaction ids from firstId on
+    public static void write(Path output, int rows, int firstId, long seed) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.write('\n');
+            for (int i = 0; i < rows; i++) {
+                out.write(line(firstId + i, new SplittableRandom(seed + firstId + i)));
+                out.write('\n');
+            }
+        }
+    }
+
+    private static String line(int id, SplittableRandom random) {
+        int customer = random.nextInt(NAMES.length);
+        int quantity = 1 + random.nextInt(10);
+        int discount = 5 * random.nextInt(5);
+        double price = 100 + random.nextInt(4900);
+        double total = price * quantity;
+        int store = 1 + random.nextInt(8);
+
+        StringBuilder line = new StringBuilder(256);
+        line.append(id).append(',');
+        line.append(FIRST_DAY.plusDays(random.nextInt(730))).append(',');
+        line.append("CUST-").append(customer + 1).append(',');
+        line.append(NAMES[customer]).append(',');
+        line.append("+91 9").append(100_000_000 + customer).append(',');
+        line.append(GENDERS[customer % GENDERS.length]).append(',');
+        if (random.nextInt(50) != 0) {
+            line.append(18 + random.nextInt(50));
+        }
+        line.append(',');
+        line.append(REGIONS[random.nextInt(REGIONS.length)]).append(',');
+        line.append("Returning").append(',');
+        line.append("PROD-").append(1 + random.nextInt(40)).append(',');
+        line.append("Product ").append(1 + random.nextInt(40)).append(',');
+        line.append("Brand").append(1 + random.nextInt(6)).append(',');
+        line.append(CATEGORIES[random.nextInt(CATEGORIES.length)]).append(',');
+        line.append('"').append(TAGS[random.nextInt(TAGS.length)]).append(',')
+                .append(TAGS[random.nextInt(TAGS.length)]).append('"').append(',');
+        if (id % 10 != 0) {
+            line.append(quantity);
+        }
+        line.append(',');
+        line.append(price).append(',');
+        line.append(discount).append(',');
+        line.append(total).append(',');
+        line.append(total * (100 - discount) / 100).append(',');
+        line.append(PAYMENT_METHODS[random.nextInt(PAYMENT_METHODS.length)]).append(',');
+        line.append(ORDER_STATUSES[random.nextInt(ORDER_STATUSES.length)]).append(',');
+        line.append("Standard").append(',');
+        line.append("ST-").append(store).append(',');
+        line.append("City").append(store).append(',');
+        line.append("SP-").append(store * 10 + random.nextInt(10)).append(',');
+        line.append("Emp ").append(store * 10 + random.nextInt(10));
+        return line.toString();
+    }
+}
@@ -0,0 +1,55 @@
+package com.truestate.retail.controllers;
+
+import com.truestate.retail.SalesCsvFixture;
+import com.truestate.retail.services.SeekCursor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class SaleRecordControllerTest {
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) {
+        SalesCsvFixture.register(registry);
+    }
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    void firstCursorPageIsServed() throws Exception {
+        mvc.perform(get("/api/sales").param("cursor", "").param("sortBy", "quantity").param("direction", "asc"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void malformedCursorIsBadRequest() throws Exception {
+        mvc.perform(get("/api/sales").param("cursor", "not a cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void cursorWithUnparseableKeyIsBadRequest() throws Exception {
+        String cursor = new SeekCursor("quantity", true, "many", 5).encode();
+        mvc.perform(get("/api/sales").param("cursor", cursor).param("sortBy", "quantity").param("direction", "asc"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void cursorForAnotherSortIsBadRequest() throws Exception {
+        String cursor = SeekCursor.of("quantity", "asc", "3", 5).encode();
+        mvc.perform(get("/api/sales").param("cursor", cursor).param("sortBy", "date").param("direction", "asc"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/api/sales").param("cursor", cursor).param("sortBy", "quantity").param("direction", "desc"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,106 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.SalesCsvFixture;
+import com.truestate.retail.models.SaleRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Approximate database totals against the exact count, on a CSV written in date order so ids
+// follow the dates: a sample taken from the first rows only would see the earliest months.
+// Runs on a database and CSV of its own.
+@SpringBootTest(properties = "search.estimate.sample-rows=200")
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class ApproximateTotalTest {
+
+    private static final int ROWS = 4_000;
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) throws IOException {
+        SalesCsvFixture.register(registry);
+        Path directory = Files.createTempDirectory("retail-estimate");
+        Path csv = directory.resolve("sales_data.csv");
+        SalesCsvFixture.write(csv, ROWS, 1, 99L);
+        sortByDate(csv);
+        registry.add("csv.url", () -> csv.toUri().toString());
+        registry.add("csv.cache.dir", () -> directory.resolve("cache").toString());
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:estimatetest;DB_CLOSE_DELAY=-1;MODE=MySQL");
+    }
+
+    @Autowired
+    private SaleRecordService saleRecordService;
+    @Autowired
+    private CsvIngestionService csvIngestionService;
+    @Autowired
+    private SaleRecordRepository repository;
+
+    @BeforeEach
+    void loadDatabase() throws Exception {
+        if (repository.count() == 0) {
+            csvIngestionService.ingest();
+        }
+    }
+
+    @Test
+    void dateFilteredEstimatesAreCloseToExactCount() {
+        assertEquals(ROWS, repository.count());
+        List<LocalDate[]> ranges = new ArrayList<>();
+        for (LocalDate quarter = LocalDate.of(2022, 1, 1); quarter.getYear() < 2024; quarter = quarter.plusMonths(3)) {
+            ranges.add(new LocalDate[]{quarter, quarter.plusMonths(3).minusDays(1)});
+        }
+        ranges.add(new LocalDate[]{LocalDate.of(2022, 1, 1), LocalDate.of(2022, 12, 31)});
+        ranges.add(new LocalDate[]{LocalDate.of(2023, 10, 1), LocalDate.of(2023, 12, 31)});
+
+        for (LocalDate[] range : ranges) {
+            long exact = total(range, List.of(), TotalMode.EXACT);
+            long estimate = total(range, List.of(), TotalMode.APPROXIMATE);
+            // Ids are taken every 20 rows, so a range boundary can shift the estimate by about that
+            assertTrue(Math.abs(estimate - exact) <= Math.max(exact / 10, 60),
+                    range[0] + ".." + range[1] + ": estimated " + estimate + ", exact " + exact);
+        }
+
+        // A second filter on top of the dates
+        LocalDate[] year = {LocalDate.of(2023, 1, 1), LocalDate.of(2023, 12, 31)};
+        long exact = total(year, List.of("North"), TotalMode.EXACT);
+        long estimate = total(year, List.of("North"), TotalMode.APPROXIMATE);
+        assertTrue(Math.abs(estimate - exact) <= Math.max(exact / 4, 60), "estimated " + estimate + ", exact " + exact);
+    }
+
+    private long total(LocalDate[] range, List<String> regions, TotalMode totalMode) {
+        Slice<?> page = saleRecordService.search(null, regions, null, null, null, null, null, null,
+                range[0], range[1], "date", "desc", 0, 10, totalMode, null);
+        return ((Page<?>) page).getTotalElements();
+    }
+
+    private static void sortByDate(Path csv) {
+        try {
+            List<String> lines = new ArrayList<>(Files.readAllLines(csv));
+            List<String> rows = new ArrayList<>(lines.subList(1, lines.size()));
+            rows.sort(Comparator.comparing(line -> line.split(",", 3)[1]));
+            rows.add(0, lines.get(0));
+            Files.write(csv, rows);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.SalesCsvFixture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The streaming CSV export is written a window of matches at a time. With windows far smaller
+// than the result it must still write every match once, in the order the resident export
+// writes them, ties on the sort key included.
+@SpringBootTest
+@AutoConfigureMockMvc
+class CsvExportTest {
+
+    private static final int WINDOW_ROWS = 97;
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) {
+        SalesCsvFixture.register(registry);
+    }
+
+    @Autowired
+    private CsvFallbackService csvFallbackService;
+    @Autowired
+    private ResidentDatasetService residentDatasetService;
+
+    private Object windowRows;
+
+    @BeforeEach
+    void smallWindows() {
+        assertTrue(residentDatasetService.load());
+        windowRows = ReflectionTestUtils.getField(csvFallbackService, "exportWindowRows");
+        ReflectionTestUtils.setField(csvFallbackService, "exportWindowRows", WINDOW_ROWS);
+    }
+
+    @AfterEach
+    void restoreWindows() {
+        ReflectionTestUtils.setField(csvFallbackService, "exportWindowRows", windowRows);
+    }
+
+    @Test
+    void windowedExportMatchesResidentExport() throws Exception {
+        List<SaleRecordSpecification.SearchCriteria> filters = List.of(
+                new SaleRecordSpecification.SearchCriteria(null, null, null, null, null, null, null, null, null, null),
+                new SaleRecordSpecification.SearchCriteria(null, List.of("North", "West"), null, null, null, null,
+                        null, null, LocalDate.of(2022, 6, 1), LocalDate.of(2023, 6, 30)));
+        for (SaleRecordSpecification.SearchCriteria criteria : filters) {
+            for (String sortBy : List.of("date", "quantity", "customerName")) {
+                for (String direction : List.of("asc", "desc")) {
+                    String check = criteria + " by " + sortBy + " " + direction;
+                    String csv = export(criteria, sortBy, direction, true);
+                    String resident = export(criteria, sortBy, direction, false);
+                    assertTrue(csv.lines().count() > WINDOW_ROWS, check);
+                    assertEquals(resident, csv, check);
+                }
+            }
+        }
+    }
+
+    private String export(SaleRecordSpecification.SearchCriteria criteria, String sortBy, String direction,
+                          boolean fromCsv) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SalesExportWriter writer = SalesExportWriter.create(ExportFormat.NDJSON, output);
+        if (fromCsv) {
+            csvFallbackService.exportFromCsv(criteria, sortBy, direction, writer);
+        } else {
+            residentDatasetService.export(criteria, sortBy, direction, writer);
+        }
+        writer.flush();
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
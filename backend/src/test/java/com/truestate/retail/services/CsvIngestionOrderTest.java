@@ -0,0 +1,94 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.SalesCsvFixture;
+import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.models.SaleRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The ingest with many small chunks spread over several parsers, so parsed batches reach the
+// writer out of order. Ids must still follow the file, so the id tie-break of the database
+// sorts orders equal keys like the resident dataset, which keeps rows in file order.
+// Runs on a database of its own.
+@SpringBootTest(properties = {
+        "csv.ingest.chunk-bytes=2048",
+        "csv.ingest.parsers=4",
+        "csv.ingest.queue-capacity=2",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=16"
+})
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class CsvIngestionOrderTest {
+
+    private static final SaleRecordSpecification.SearchCriteria ALL =
+            new SaleRecordSpecification.SearchCriteria(null, null, null, null, null, null, null, null, null, null);
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) {
+        SalesCsvFixture.register(registry);
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:ingestordertest;DB_CLOSE_DELAY=-1;MODE=MySQL");
+    }
+
+    @Autowired
+    private SaleRecordService saleRecordService;
+    @Autowired
+    private ResidentDatasetService residentDatasetService;
+    @Autowired
+    private CsvIngestionService csvIngestionService;
+    @Autowired
+    private SaleRecordRepository repository;
+
+    @BeforeEach
+    void loadSources() throws Exception {
+        assertTrue(residentDatasetService.load());
+        if (repository.count() == 0) {
+            csvIngestionService.ingest();
+        }
+    }
+
+    @Test
+    void idsFollowFileOrder() {
+        assertTrue((int) csvIngestionService.getLastReport().get("chunks") > 4);
+        List<SaleRecord> rows = repository.findAll(Sort.by("id"));
+        assertEquals(SalesCsvFixture.ROWS, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            // The fixture numbers its transactions in file order
+            assertEquals(String.valueOf(i + 1), rows.get(i).getTransactionId(), "row " + i);
+        }
+    }
+
+    @Test
+    void databaseBreaksTiesLikeResidentDataset() {
+        for (String sortBy : List.of("quantity", "date", "customerName")) {
+            for (String direction : List.of("asc", "desc")) {
+                // The database holds rows, so the service pages through it
+                assertEquals(transactions(residentDatasetService.searchAfter(ALL, sortBy, direction, null,
+                                SalesCsvFixture.ROWS).content()),
+                        transactions(saleRecordService.searchAfter(ALL, sortBy, direction, null,
+                                SalesCsvFixture.ROWS).content()),
+                        sortBy + " " + direction);
+            }
+        }
+    }
+
+    private static List<String> transactions(List<SaleRecord> rows) {
+        List<String> transactions = new ArrayList<>(rows.size());
+        for (SaleRecord row : rows) {
+            transactions.add(row.getTransactionId());
+        }
+        return transactions;
+    }
+}
@@ -0,0 +1,95 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.SalesCsvFixture;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Measured heap per resident row with the repeated descriptive columns dictionary-coded, against
+// the layout before: one String[] per column holding each row's own parsed String. Measured as
+// live heap after full collections, so it includes the object headers and padding the
+// MemoryFootprint estimate only models.
+class DictionaryFootprintTest {
+
+    private static final int ROWS = 100_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void dictionaryCodesShrinkResidentRows() throws Exception {
+        Path csv = directory.resolve("sales_data.csv");
+        SalesCsvFixture.write(csv, ROWS, 1, 42L);
+
+        long empty = liveHeap();
+        ColumnarSaleStore store = load(csv);
+        long coded = liveHeap() - empty;
+        assertEquals(ROWS, store.size());
+
+        // What the store held for customer type, brand, order status, delivery type, store
+        // location and employee name before: a reference per row to a String of its own, as
+        // the CSV parser creates one per field
+        List<StringDictionary> dictionaries = List.of(store.customerTypes, store.brands, store.orderStatuses,
+                store.deliveryTypes, store.storeLocations, store.employeeNames);
+        List<CodeColumn> codes = List.of(store.customerTypeCodes, store.brandCodes, store.orderStatusCodes,
+                store.deliveryTypeCodes, store.storeLocationCodes, store.employeeNameCodes);
+        String[][] stringColumns = new String[dictionaries.size()][store.transactionIds.length];
+        long codeColumns = 0;
+        for (int column = 0; column < stringColumns.length; column++) {
+            for (int row = 0; row < ROWS; row++) {
+                String value = dictionaries.get(column).decode(codes.get(column).get(row));
+                stringColumns[column][row] = value != null ? new String(value.toCharArray()) : null;
+            }
+            codeColumns += codes.get(column).estimatedBytes();
+        }
+        long strings = liveHeap() - empty - coded;
+        Reference.reachabilityFence(stringColumns);
+
+        long after = coded / ROWS;
+        long before = (coded - codeColumns + strings) / ROWS;
+        long estimated = store.estimatedBytes() / ROWS;
+        System.out.println("Resident bytes/row over " + ROWS + " rows: " + before + " with String columns, "
+                + after + " dictionary-coded (estimated " + estimated + ")");
+
+        // Six Strings of 4-15 chars take at least 48 bytes each plus the reference; a byte code replaces them
+        assertTrue(before - after >= 6 * 48, "saved only " + (before - after) + " bytes/row");
+        // The footprint report is what the heap budget relies on; it should stay close to the real cost
+        assertTrue(Math.abs(estimated - after) <= after / 5, "estimated " + estimated + " measured " + after);
+    }
+
+    // The parsed records are dropped once appended, so the store is the only owner of its Strings
+    private static ColumnarSaleStore load(Path csv) throws Exception {
+        CsvFallbackService parser = new CsvFallbackService(null, null, null, 1);
+        ColumnarSaleStore store = new ColumnarSaleStore();
+        try (Reader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             CSVParser records = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+            for (CSVRecord record : records) {
+                store.append(parser.mapCsvRecord(record));
+            }
+        }
+        return store;
+    }
+
+    private static long liveHeap() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
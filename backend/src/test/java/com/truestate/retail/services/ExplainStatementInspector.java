@@ -0,0 +1,27 @@
+package com.truestate.retail.services;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.function.Supplier;
+
+// Prefixes EXPLAIN to the SQL Hibernate generates while `explain` runs on the current thread,
+// so H2 returns the plan of exactly the statement a query would send. Other statements pass
+// through. Registered for the test application context by SalesCsvFixture.
+public class ExplainStatementInspector implements StatementInspector {
+
+    private static final ThreadLocal<Boolean> EXPLAINING = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        return Boolean.TRUE.equals(EXPLAINING.get()) ? "EXPLAIN " + sql : sql;
+    }
+
+    static <T> T explain(Supplier<T> query) {
+        EXPLAINING.set(true);
+        try {
+            return query.get();
+        } finally {
+            EXPLAINING.remove();
+        }
+    }
+}
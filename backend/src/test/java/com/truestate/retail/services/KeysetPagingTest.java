@@ -0,0 +1,130 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.SalesCsvFixture;
+import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.models.SaleRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Walks every page of a sort on the nullable quantity column in both directions and checks
+// each source returns every row once, with missing quantities first ascending and last
+// descending, the order H2 uses
+@SpringBootTest
+@AutoConfigureMockMvc
+class KeysetPagingTest {
+
+    private static final SaleRecordSpecification.SearchCriteria ALL =
+            new SaleRecordSpecification.SearchCriteria(null, null, null, null, null, null, null, null, null, null);
+    private static final int PAGE_SIZE = 37;
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) {
+        SalesCsvFixture.register(registry);
+    }
+
+    @Autowired
+    private SaleRecordService saleRecordService;
+    @Autowired
+    private ResidentDatasetService residentDatasetService;
+    @Autowired
+    private CsvFallbackService csvFallbackService;
+    @Autowired
+    private CsvIngestionService csvIngestionService;
+    @Autowired
+    private SaleRecordRepository repository;
+
+    @BeforeEach
+    void loadSources() throws Exception {
+        assertTrue(residentDatasetService.load());
+        if (repository.count() == 0) {
+            csvIngestionService.ingest();
+        }
+    }
+
+    @Test
+    void csvWalksNullableKeyInBothDirections() {
+        for (String direction : List.of("asc", "desc")) {
+            check(direction, walk(cursor -> csvFallbackService.searchAfterFromCsv(ALL, "quantity", direction,
+                    SeekCursor.decode(cursor), PAGE_SIZE)));
+        }
+    }
+
+    @Test
+    void residentWalksNullableKeyInBothDirections() {
+        for (String direction : List.of("asc", "desc")) {
+            check(direction, walk(cursor -> residentDatasetService.searchAfter(ALL, "quantity", direction,
+                    SeekCursor.decode(cursor), PAGE_SIZE)));
+        }
+    }
+
+    @Test
+    void databaseWalksNullableKeyInBothDirections() {
+        for (String direction : List.of("asc", "desc")) {
+            // The database holds rows, so the service pages through it
+            check(direction, walk(cursor -> saleRecordService.searchAfter(ALL, "quantity", direction, cursor, PAGE_SIZE)));
+        }
+    }
+
+    private interface PageSource {
+        CursorPage<SaleRecord> page(String cursor);
+    }
+
+    private static List<SaleRecord> walk(PageSource source) {
+        List<SaleRecord> rows = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<SaleRecord> page = source.page(cursor);
+            rows.addAll(page.content());
+            cursor = page.nextCursor();
+            assertTrue(rows.size() <= SalesCsvFixture.ROWS, "paging does not terminate");
+        } while (cursor != null);
+        return rows;
+    }
+
+    private static void check(String direction, List<SaleRecord> rows) {
+        Set<String> transactions = new HashSet<>();
+        for (SaleRecord row : rows) {
+            transactions.add(row.getTransactionId());
+        }
+        assertEquals(SalesCsvFixture.ROWS, rows.size(), direction);
+        assertEquals(SalesCsvFixture.ROWS, transactions.size(), direction);
+
+        boolean ascending = "asc".equals(direction);
+        long missing = rows.stream().filter(row -> row.getQuantity() == null).count();
+        assertEquals(SalesCsvFixture.ROWS / 10, missing, direction);
+        for (int i = 1; i < rows.size(); i++) {
+            SaleRecord previous = rows.get(i - 1);
+            SaleRecord current = rows.get(i);
+            int order = compareNullsFirst(previous.getQuantity(), current.getQuantity());
+            if (!ascending) {
+                order = -order;
+            }
+            assertTrue(order <= 0, direction + " order broken at row " + i);
+            if (Objects.equals(previous.getQuantity(), current.getQuantity())) {
+                assertTrue(ascending ? previous.getId() < current.getId() : previous.getId() > current.getId(),
+                        direction + " id tie-break broken at row " + i);
+            }
+        }
+    }
+
+    private static int compareNullsFirst(Integer a, Integer b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return Integer.compare(a, b);
+    }
+}
@@ -0,0 +1,153 @@
+package com.truestate.retail.services;
+
+import com.sun.net.httpserver.HttpServer;
+import com.truestate.retail.SalesCsvFixture;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+// The application against a stub server whose first answer is a 503 and whose retry stalls.
+// Concurrent clients must keep getting answers while the download hangs, and the copy that
+// finally arrives must be loaded into the resident dataset without a restart.
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class RemoteCsvRequestsTest {
+
+    private static final int CLIENTS = 16;
+    private static final int REQUESTS_PER_CLIENT = 25;
+
+    private static final AtomicInteger downloads = new AtomicInteger();
+    private static final CountDownLatch release = new CountDownLatch(1);
+    private static HttpServer server;
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) throws IOException {
+        SalesCsvFixture.register(registry);
+        byte[] body = Files.readAllBytes(SalesCsvFixture.file());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/sales_data.csv", exchange -> {
+            try {
+                if (downloads.incrementAndGet() == 1) {
+                    exchange.sendResponseHeaders(503, -1);
+                    return;
+                }
+                release.await();
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        Path cacheDir = Files.createTempDirectory("retail-remote");
+        registry.add("csv.url", () -> "http://127.0.0.1:" + server.getAddress().getPort() + "/sales_data.csv");
+        registry.add("csv.cache.dir", cacheDir::toString);
+        registry.add("csv.cache.retry-seconds", () -> "1");
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:remotetest;DB_CLOSE_DELAY=-1;MODE=MySQL");
+    }
+
+    @AfterAll
+    static void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ResidentDatasetService residentDatasetService;
+
+    @Test
+    void requestsAreAnsweredWhileDownloadStallsAndFirstCopyIsLoaded() throws Exception {
+        // The retry is now held by the server
+        waitFor(() -> downloads.get() == 2);
+
+        // The same number of requests from one client first, as the baseline
+        long start = System.nanoTime();
+        for (int i = 0; i < CLIENTS * REQUESTS_PER_CLIENT; i++) {
+            assertEquals(503, mockMvc.perform(get("/api/sales").param("page", "0").param("size", "10"))
+                    .andReturn().getResponse().getStatus());
+        }
+        long sequentialMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<List<Integer>>> running = new ArrayList<>();
+        start = System.nanoTime();
+        for (int client = 0; client < CLIENTS; client++) {
+            running.add(clients.submit(() -> {
+                List<Integer> statuses = new ArrayList<>();
+                for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+                    statuses.add(mockMvc.perform(get("/api/sales").param("page", "0").param("size", "10"))
+                            .andReturn().getResponse().getStatus());
+                }
+                return statuses;
+            }));
+        }
+        for (Future<List<Integer>> client : running) {
+            for (int status : client.get(30, TimeUnit.SECONDS)) {
+                assertEquals(503, status);
+            }
+        }
+        long concurrentMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        clients.shutdown();
+        // Every request was answered while the download was still held, none of them waited on it
+        assertEquals(2, downloads.get());
+        assertFalse(residentDatasetService.isLoaded());
+        int requests = CLIENTS * REQUESTS_PER_CLIENT;
+        System.out.println("While the CSV download stalled: " + requests * 1000 / sequentialMillis
+                + " requests/s from one client, " + requests * 1000 / concurrentMillis + " from " + CLIENTS);
+        // Clients do not queue behind one another; on a single core they at least keep pace
+        assertTrue(concurrentMillis <= 2 * sequentialMillis + 500,
+                CLIENTS + " clients took " + concurrentMillis + " ms, one client " + sequentialMillis + " ms");
+
+        // The first copy arrives on the retry and the startup loads run without a restart
+        release.countDown();
+        waitFor(residentDatasetService::isLoaded);
+        assertEquals(200, mockMvc.perform(get("/api/sales").param("page", "0").param("size", "10"))
+                .andReturn().getResponse().getStatus());
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (!condition.met()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+}
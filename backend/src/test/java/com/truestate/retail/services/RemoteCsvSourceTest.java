@@ -0,0 +1,227 @@
+package com.truestate.retail.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// RemoteCsvSource against a local HTTP server whose answers each test scripts
+class RemoteCsvSourceTest {
+
+    private static final String LAST_MODIFIED = "Mon, 02 Sep 2024 10:00:00 GMT";
+
+    @TempDir
+    Path cacheDir;
+
+    private HttpServer server;
+    private volatile Handler handler;
+    private final List<String> ifNoneMatch = new CopyOnWriteArrayList<>();
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws Exception;
+    }
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/sales_data.csv", exchange -> {
+            ifNoneMatch.add(String.valueOf(exchange.getRequestHeaders().getFirst("If-None-Match")));
+            try {
+                handler.handle(exchange);
+            } catch (Exception e) {
+                throw new IOException(e);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void unavailableUntilFirstCopyArrives() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        String body = csv(1, 50);
+        handler = exchange -> {
+            if (requests.incrementAndGet() == 1) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            release.await();
+            send(exchange, 200, body, "\"v1\"");
+        };
+
+        RemoteCsvSource source = source();
+        source.start();
+        // First answer is a 503: nothing to serve, and a retry is scheduled
+        assertThrows(CsvSourceUnavailableException.class, source::awaitFile);
+        assertTrue(String.valueOf(source.status().get("status")).startsWith("failed"));
+
+        // The retry is held by the server; searches still get 503 instead of waiting
+        waitFor(() -> requests.get() == 2);
+        assertThrows(CsvSourceUnavailableException.class, source::file);
+        assertTrue(events.isEmpty());
+
+        release.countDown();
+        waitFor(() -> !events.isEmpty());
+        assertEquals(body, Files.readString(source.file()));
+        assertEquals("downloaded", source.status().get("status"));
+    }
+
+    @Test
+    void notModifiedKeepsCachedCopy() throws Exception {
+        String body = csv(1, 50);
+        handler = exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))
+                    && LAST_MODIFIED.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            send(exchange, 200, body, "\"v1\"");
+        };
+        RemoteCsvSource first = source();
+        Path copy = first.awaitFile();
+        // Published once the first attempt is over, so listeners can wait on it themselves
+        waitFor(() -> events.size() == 1);
+        String validator = first.validator();
+
+        // A restart finds the copy and its validators in the cache directory
+        events.clear();
+        RemoteCsvSource restarted = source();
+        assertEquals(copy, restarted.awaitFile());
+        assertEquals(List.of("null", "\"v1\""), ifNoneMatch);
+        assertEquals("not modified", restarted.status().get("status"));
+        assertEquals(body, Files.readString(restarted.file()));
+        assertEquals(validator, restarted.validator());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void changedFileReplacesCopyAtomicallyUnderReaders() throws Exception {
+        String oldBody = csv(1, 2_000);
+        String newBody = csv(10_001, 3_000);
+        handler = exchange -> send(exchange, 200, oldBody, "\"v1\"");
+        source().awaitFile();
+
+        // The new version arrives slowly, in small pieces, while readers keep reading the copy
+        handler = exchange -> {
+            byte[] bytes = newBody.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("ETag", "\"v2\"");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int offset = 0; offset < bytes.length; offset += 4096) {
+                    out.write(bytes, offset, Math.min(4096, bytes.length - offset));
+                    out.flush();
+                    Thread.sleep(5);
+                }
+            }
+        };
+        RemoteCsvSource restarted = source();
+        AtomicBoolean replaced = new AtomicBoolean();
+        AtomicInteger oldReads = new AtomicInteger();
+        AtomicInteger newReads = new AtomicInteger();
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        List<Future<?>> running = new ArrayList<>();
+        restarted.start();
+        for (int i = 0; i < 4; i++) {
+            running.add(readers.submit(() -> {
+                // Keep reading until a reader has seen the new version at least once
+                while (!replaced.get()) {
+                    String read = Files.readString(restarted.file());
+                    if (read.equals(oldBody)) {
+                        oldReads.incrementAndGet();
+                    } else if (read.equals(newBody)) {
+                        newReads.incrementAndGet();
+                        replaced.set(true);
+                    } else {
+                        throw new AssertionError("read a partial copy of " + read.length() + " chars");
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> reader : running) {
+            reader.get(30, TimeUnit.SECONDS);
+        }
+        readers.shutdown();
+
+        assertTrue(oldReads.get() > 0, "readers started after the replace");
+        assertTrue(newReads.get() > 0);
+        assertEquals(newBody, Files.readString(restarted.file()));
+        assertEquals("\"v2\" " + newBody.getBytes(StandardCharsets.UTF_8).length, restarted.validator());
+        try (var files = Files.list(cacheDir)) {
+            assertEquals(List.of("sales_data.csv", "sales_data.csv.properties"),
+                    files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+    }
+
+    private RemoteCsvSource source() {
+        RemoteCsvSource source = new RemoteCsvSource(events::add);
+        ReflectionTestUtils.setField(source, "csvUrl",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/sales_data.csv");
+        ReflectionTestUtils.setField(source, "cacheDir", cacheDir.toString());
+        ReflectionTestUtils.setField(source, "retrySeconds", 1L);
+        return source;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body, String etag) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("ETag", etag);
+        exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String csv(int firstId, int rows) {
+        StringBuilder csv = new StringBuilder("Transaction ID,Date,Customer Name\n");
+        for (int id = firstId; id < firstId + rows; id++) {
+            csv.append(id).append(",2023-05-01,Customer ").append(id).append('\n');
+        }
+        return csv.toString();
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.met()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+}
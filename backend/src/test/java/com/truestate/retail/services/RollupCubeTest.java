@@ -0,0 +1,144 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.SalesCsvFixture;
+import com.truestate.retail.models.SaleRecord;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// The rollup cube must answer every filter it accepts exactly like a full scan of the rows:
+// the whole dataset, each value of each dimension, each age band and each month, before and
+// after an append. The append changes the resident dataset, so the context is not reused.
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class RollupCubeTest {
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) {
+        SalesCsvFixture.register(registry);
+    }
+
+    @Autowired
+    private ResidentDatasetService residentDatasetService;
+    @Autowired
+    private CsvFallbackService csvFallbackService;
+
+    @BeforeEach
+    void loadResident() {
+        residentDatasetService.load();
+    }
+
+    @Test
+    void rollupMatchesScan() {
+        checkAll();
+    }
+
+    @Test
+    void rollupMatchesScanAfterAppend() throws Exception {
+        Path batch = Files.createTempFile("sales_batch", ".csv");
+        try {
+            SalesCsvFixture.write(batch, 300, SalesCsvFixture.ROWS + 1, 7L);
+            List<SaleRecord> sales = new ArrayList<>();
+            try (Reader reader = Files.newBufferedReader(batch, StandardCharsets.UTF_8);
+                 CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+                for (CSVRecord record : parser) {
+                    sales.add(csvFallbackService.mapCsvRecord(record));
+                }
+            }
+            residentDatasetService.append(sales.subList(0, 100));
+            residentDatasetService.append(sales.subList(100, sales.size()));
+        } finally {
+            Files.deleteIfExists(batch);
+        }
+        checkAll();
+    }
+
+    private void checkAll() {
+        List<SaleRecordSpecification.SearchCriteria> checks = new ArrayList<>();
+        checks.add(criteria(null, null, null, null, null, null, null, null));
+        for (String region : List.of("North", "South", "West", "East", "Central")) {
+            checks.add(criteria(List.of(region), null, null, null, null, null, null, null));
+        }
+        for (String gender : List.of("Female", "Male")) {
+            checks.add(criteria(null, List.of(gender), null, null, null, null, null, null));
+        }
+        for (String category : List.of("Clothing", "Electronics", "Beauty")) {
+            checks.add(criteria(null, null, List.of(category), null, null, null, null, null));
+        }
+        for (String payment : List.of("UPI", "Credit Card", "Debit Card", "Cash", "Wallet")) {
+            checks.add(criteria(null, null, null, List.of(payment), null, null, null, null));
+        }
+        for (int band = 1; band < RollupCube.AGE_BAND_STARTS.length; band++) {
+            int max = band + 1 < RollupCube.AGE_BAND_STARTS.length ? RollupCube.AGE_BAND_STARTS[band + 1] - 1 : 200;
+            checks.add(criteria(null, null, null, null, RollupCube.AGE_BAND_STARTS[band], max, null, null));
+        }
+        for (LocalDate month = LocalDate.of(2022, 1, 1); month.getYear() < 2024; month = month.plusMonths(1)) {
+            checks.add(criteria(null, null, null, null, null, null, month, month.withDayOfMonth(month.lengthOfMonth())));
+        }
+        checks.add(criteria(List.of("North", "East"), List.of("Female"), List.of("Beauty", "Clothing"), null,
+                25, 44, LocalDate.of(2022, 3, 1), LocalDate.of(2023, 8, 31)));
+
+        for (SaleRecordSpecification.SearchCriteria check : checks) {
+            SalesSummary cube = residentDatasetService.rollupSummary(check);
+            assertNotNull(cube, "rollup cannot answer " + check);
+            assertSameSummary(residentDatasetService.scanSummary(check), cube, check.toString());
+        }
+    }
+
+    private static void assertSameSummary(SalesSummary scan, SalesSummary cube, String check) {
+        assertEquals(scan.count(), cube.count(), check);
+        assertMetric(scan.quantity(), cube.quantity(), check);
+        assertMetric(scan.totalAmount(), cube.totalAmount(), check);
+        assertMetric(scan.finalAmount(), cube.finalAmount(), check);
+        assertGroups(scan.byRegion(), cube.byRegion(), check);
+        assertGroups(scan.byCategory(), cube.byCategory(), check);
+        assertGroups(scan.byPaymentMethod(), cube.byPaymentMethod(), check);
+    }
+
+    // Sums are added up in a different order, so they may differ in the last bits
+    private static void assertMetric(SalesSummary.Metric scan, SalesSummary.Metric cube, String check) {
+        assertEquals(scan.count(), cube.count(), check);
+        assertEquals(scan.sum(), cube.sum(), 1e-9 * Math.max(1, Math.abs(scan.sum())), check);
+        assertEquals(scan.min(), cube.min(), check);
+        assertEquals(scan.max(), cube.max(), check);
+    }
+
+    private static void assertGroups(List<SalesSummary.Group> scan, List<SalesSummary.Group> cube, String check) {
+        assertEquals(scan.size(), cube.size(), check);
+        for (int i = 0; i < scan.size(); i++) {
+            assertEquals(scan.get(i).key(), cube.get(i).key(), check);
+            assertEquals(scan.get(i).count(), cube.get(i).count(), check);
+            assertEquals(scan.get(i).quantity(), cube.get(i).quantity(), check);
+            assertEquals(scan.get(i).totalAmount(), cube.get(i).totalAmount(),
+                    1e-9 * Math.max(1, Math.abs(scan.get(i).totalAmount())), check);
+        }
+    }
+
+    private static SaleRecordSpecification.SearchCriteria criteria(List<String> regions, List<String> genders,
+                                                                   List<String> categories, List<String> payments,
+                                                                   Integer minAge, Integer maxAge,
+                                                                   LocalDate startDate, LocalDate endDate) {
+        return new SaleRecordSpecification.SearchCriteria(null, regions, genders, minAge, maxAge,
+                categories, null, payments, startDate, endDate);
+    }
+}
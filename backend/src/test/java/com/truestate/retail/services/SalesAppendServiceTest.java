@@ -0,0 +1,105 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.SalesCsvFixture;
+import com.truestate.retail.models.SaleRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+
+// A batch that fails in either store must be in neither: the database and the resident dataset
+// end up with the same batches, those before the failure. Runs on a database of its own, as the
+// appends would otherwise show up in the other test classes.
+@SpringBootTest(properties = "sales.ingest.batch-rows=100")
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class SalesAppendServiceTest {
+
+    private static final SaleRecordSpecification.SearchCriteria ALL =
+            new SaleRecordSpecification.SearchCriteria(null, null, null, null, null, null, null, null, null, null);
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) {
+        SalesCsvFixture.register(registry);
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:appendtest;DB_CLOSE_DELAY=-1;MODE=MySQL");
+    }
+
+    @Autowired
+    private SalesAppendService salesAppendService;
+    @SpyBean
+    private CsvIngestionService csvIngestionService;
+    @SpyBean
+    private ResidentDatasetService residentDatasetService;
+    @Autowired
+    private SaleRecordRepository repository;
+
+    @BeforeEach
+    void loadSources() throws Exception {
+        reset(csvIngestionService, residentDatasetService);
+        assertTrue(residentDatasetService.load());
+        if (repository.count() == 0) {
+            csvIngestionService.ingest();
+        }
+    }
+
+    @Test
+    void failedDatabaseCommitIsNotPublishedInMemory() throws Exception {
+        long databaseRows = repository.count();
+        long residentRows = residentRows();
+        doCallRealMethod().doThrow(new IllegalStateException("commit failed"))
+                .when(csvIngestionService).append(anyList());
+
+        assertThrows(IllegalStateException.class, () -> append(250, SalesCsvFixture.ROWS + 1));
+
+        assertEquals(databaseRows + 100, repository.count());
+        assertEquals(residentRows + 100, residentRows());
+        assertEquals(100L, salesAppendService.getLastReport().get("rows"));
+    }
+
+    @Test
+    void failedResidentAppendIsNotCommitted() throws Exception {
+        long databaseRows = repository.count();
+        long residentRows = residentRows();
+        doCallRealMethod().doThrow(new IllegalStateException("out of memory"))
+                .when(residentDatasetService).prepareAppend(anyList());
+
+        assertThrows(IllegalStateException.class, () -> append(250, SalesCsvFixture.ROWS + 1_001));
+
+        assertEquals(databaseRows + 100, repository.count());
+        assertEquals(residentRows + 100, residentRows());
+        assertEquals(100L, salesAppendService.getLastReport().get("rows"));
+    }
+
+    private void append(int rows, int firstId) throws Exception {
+        Path batch = Files.createTempFile("sales_batch", ".csv");
+        try {
+            SalesCsvFixture.write(batch, rows, firstId, firstId);
+            try (InputStream body = Files.newInputStream(batch)) {
+                salesAppendService.appendCsv(body);
+            }
+        } finally {
+            Files.deleteIfExists(batch);
+        }
+    }
+
+    private long residentRows() {
+        return residentDatasetService.search(ALL, "date", "desc", 0, 1).getTotalElements();
+    }
+}
@@ -0,0 +1,149 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.SalesCsvFixture;
+import com.truestate.retail.models.SaleRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// Facets exclude each dimension's own filter. The database, resident and streaming CSV paths
+// implement that apart, so they must agree with each other and with what a plain search
+// returns once an option is the dimension's only selection. A row failing two filters must
+// be counted for neither, so a dimension's buckets add up to the rows every other filter keeps.
+@SpringBootTest
+@AutoConfigureMockMvc
+class SalesFacetsTest {
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) {
+        SalesCsvFixture.register(registry);
+    }
+
+    @Autowired
+    private SaleRecordAggregates aggregates;
+    @Autowired
+    private ResidentDatasetService residentDatasetService;
+    @Autowired
+    private CsvFallbackService csvFallbackService;
+    @Autowired
+    private SaleRecordService saleRecordService;
+    @Autowired
+    private CsvIngestionService csvIngestionService;
+    @Autowired
+    private SaleRecordRepository repository;
+
+    @BeforeEach
+    void loadSources() throws Exception {
+        residentDatasetService.load();
+        if (repository.count() == 0) {
+            csvIngestionService.ingest();
+        }
+    }
+
+    @Test
+    void sourcesAgreeAndMatchPlainSearches() {
+        List<SaleRecordSpecification.SearchCriteria> checks = List.of(
+                new SaleRecordSpecification.SearchCriteria(null, List.of("North", "East"), null, null, null,
+                        null, null, null, LocalDate.of(2022, 3, 1), LocalDate.of(2023, 8, 31)),
+                new SaleRecordSpecification.SearchCriteria("ra", List.of("North", "East", "West"), List.of("Female"),
+                        25, 44, List.of("Beauty", "Clothing"), List.of("fashion", "casual"), List.of("UPI", "Cash", "Wallet"),
+                        LocalDate.of(2022, 3, 1), LocalDate.of(2023, 8, 31)));
+
+        for (SaleRecordSpecification.SearchCriteria criteria : checks) {
+            SalesFacets database = aggregates.facets(criteria);
+            assertEquals(database, residentDatasetService.facets(criteria), "resident " + criteria);
+            assertEquals(database, csvFallbackService.facetsFromCsv(criteria), "csv " + criteria);
+            assertEquals(count(criteria), database.count(), criteria.toString());
+
+            for (FacetAccumulator.Dimension dimension : FacetAccumulator.DIMENSIONS) {
+                List<SalesFacets.Bucket> buckets = buckets(database, dimension);
+                assertFalse(buckets.isEmpty(), dimension + " " + criteria);
+                long total = 0;
+                Long ageless = null;
+                for (SalesFacets.Bucket bucket : buckets) {
+                    long plain = count(select(dimension.without(criteria), dimension, bucket.value()));
+                    if (dimension == FacetAccumulator.Dimension.AGE) {
+                        // Rows without an age pass every age range but sit in no band, so each
+                        // band's search returns its bucket plus the same ageless rows
+                        if (ageless == null) {
+                            ageless = plain - bucket.count();
+                        }
+                        plain -= ageless;
+                    }
+                    assertEquals(plain, bucket.count(), dimension + " " + bucket.value() + " " + criteria);
+                    total += bucket.count();
+                }
+                // Every row has exactly one value of these, so their buckets cover every row the
+                // other filters keep and none that another filter rejects
+                if (dimension != FacetAccumulator.Dimension.TAG && dimension != FacetAccumulator.Dimension.AGE) {
+                    assertEquals(count(dimension.without(criteria)), total, dimension + " " + criteria);
+                }
+            }
+        }
+    }
+
+    private long count(SaleRecordSpecification.SearchCriteria criteria) {
+        Page<?> page = (Page<?>) saleRecordService.search(criteria.query(), criteria.customerRegions(),
+                criteria.genders(), criteria.minAge(), criteria.maxAge(), criteria.productCategories(),
+                criteria.tags(), criteria.paymentMethods(), criteria.startDate(), criteria.endDate(),
+                "date", "desc", 0, 1, TotalMode.EXACT, null);
+        return page.getTotalElements();
+    }
+
+    private static List<SalesFacets.Bucket> buckets(SalesFacets facets, FacetAccumulator.Dimension dimension) {
+        return switch (dimension) {
+            case REGION -> facets.customerRegion();
+            case GENDER -> facets.gender();
+            case CATEGORY -> facets.productCategory();
+            case TAG -> facets.tag();
+            case PAYMENT_METHOD -> facets.paymentMethod();
+            case AGE -> facets.age();
+            case DATE -> facets.month();
+        };
+    }
+
+    // The criteria with `value` as the dimension's only selection; age bands and months become ranges
+    private static SaleRecordSpecification.SearchCriteria select(SaleRecordSpecification.SearchCriteria criteria,
+                                                                FacetAccumulator.Dimension dimension, String value) {
+        List<String> regions = criteria.customerRegions();
+        List<String> genders = criteria.genders();
+        List<String> categories = criteria.productCategories();
+        List<String> tags = criteria.tags();
+        List<String> payments = criteria.paymentMethods();
+        Integer minAge = criteria.minAge();
+        Integer maxAge = criteria.maxAge();
+        LocalDate startDate = criteria.startDate();
+        LocalDate endDate = criteria.endDate();
+        switch (dimension) {
+            case REGION -> regions = List.of(value);
+            case GENDER -> genders = List.of(value);
+            case CATEGORY -> categories = List.of(value);
+            case TAG -> tags = List.of(value);
+            case PAYMENT_METHOD -> payments = List.of(value);
+            case AGE -> {
+                String[] band = value.replace("+", "").split("-");
+                minAge = Integer.parseInt(band[0]);
+                maxAge = band.length > 1 ? Integer.parseInt(band[1]) : null;
+            }
+            case DATE -> {
+                YearMonth month = YearMonth.parse(value);
+                startDate = month.atDay(1);
+                endDate = month.atEndOfMonth();
+            }
+        }
+        return new SaleRecordSpecification.SearchCriteria(criteria.query(), regions, genders, minAge, maxAge,
+                categories, tags, payments, startDate, endDate);
+    }
+}
@@ -0,0 +1,128 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.SalesCsvFixture;
+import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.models.SaleRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The search page cache with its bounds on: requests that differ only in list order,
+// duplicates or blank values share an entry, and an append empties the cache so the next
+// search sees the new sale. Runs on a database of its own, as the append would otherwise
+// show up in the other test classes.
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class SearchCacheTest {
+
+    private static final List<String> REGIONS = List.of("North", "South", "West", "East", "Central");
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) {
+        SalesCsvFixture.register(registry);
+        registry.add("search.cache.page-bytes", () -> "16777216");
+        registry.add("search.cache.match-bytes", () -> "16777216");
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:cachetest;DB_CLOSE_DELAY=-1;MODE=MySQL");
+    }
+
+    @Autowired
+    private SaleRecordService saleRecordService;
+    @Autowired
+    private SalesAppendService salesAppendService;
+    @Autowired
+    private ResidentDatasetService residentDatasetService;
+    @Autowired
+    private CsvIngestionService csvIngestionService;
+    @Autowired
+    private SaleRecordRepository repository;
+
+    @BeforeEach
+    void loadSources() throws Exception {
+        assertTrue(residentDatasetService.load());
+        if (repository.count() == 0) {
+            csvIngestionService.ingest();
+        }
+    }
+
+    @Test
+    void equalCriteriaShareEntryAndAppendIsVisible() throws Exception {
+        Slice<?> first = search(null, REGIONS, null);
+        long hits = pageStat("hits");
+        long misses = pageStat("misses");
+
+        // Reordered and repeated regions, a blank query and an empty tag list select the same rows
+        List<String> reordered = List.of("Central", "North", "East", "West", "South", "North");
+        assertSame(first, search("  ", reordered, List.of()));
+        assertEquals(hits + 1, pageStat("hits"));
+        assertEquals(misses, pageStat("misses"));
+
+        // Dated after every fixture sale, so it heads a newest-first page
+        String transaction = String.valueOf(SalesCsvFixture.ROWS + 1);
+        appendSale(transaction, "2024-06-01");
+
+        Slice<?> after = search(null, REGIONS, null);
+        assertNotSame(first, after);
+        assertEquals(misses + 1, pageStat("misses"));
+        assertEquals(((Page<?>) first).getTotalElements() + 1, ((Page<?>) after).getTotalElements());
+        assertEquals(transaction, ((SaleRecord) after.getContent().get(0)).getTransactionId());
+    }
+
+    @Test
+    void resultLoadedDuringInvalidationIsNotStored() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(1 << 20, value -> value.length());
+        // The data changes while the value is computed from the old data
+        assertEquals("old", cache.get("key", () -> {
+            cache.invalidateAll();
+            return "old";
+        }));
+        assertEquals("new", cache.get("key", () -> "new"));
+        assertEquals(0, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    private Slice<?> search(String query, List<String> regions, List<String> tags) {
+        return saleRecordService.search(query, regions, null, null, null, null, tags, null, null, null,
+                "date", "desc", 0, 10, TotalMode.EXACT, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private long pageStat(String name) {
+        Map<String, Object> pages = (Map<String, Object>) saleRecordService.cacheStats().get("pages");
+        return ((Number) pages.get(name)).longValue();
+    }
+
+    private void appendSale(String transaction, String date) throws Exception {
+        Path batch = Files.createTempFile("sales_batch", ".csv");
+        try {
+            SalesCsvFixture.write(batch, 1, Integer.parseInt(transaction), 7L);
+            List<String> lines = Files.readAllLines(batch);
+            String[] fields = lines.get(1).split(",", 3);
+            lines.set(1, fields[0] + "," + date + "," + fields[2]);
+            Files.write(batch, lines);
+            try (InputStream body = Files.newInputStream(batch)) {
+                salesAppendService.appendCsv(body);
+            }
+        } finally {
+            Files.deleteIfExists(batch);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.SalesCsvFixture;
+import com.truestate.retail.models.SaleRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The resident and streaming CSV scans split into many small segments on several threads
+// must answer like one segment on the calling thread: the same pages, ties on the sort key
+// included, the same totals, facets and summary counts. Summed amounts with cents may differ
+// in the last bits, since the segments add them up in other groups.
+// Runs on a CSV and database of its own.
+@SpringBootTest(properties = {
+        "search.parallel.threads=4",
+        "search.parallel.min-rows=1",
+        "search.parallel.segment-rows=1024"
+})
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class SegmentedScanTest {
+
+    private static final int ROWS = 20_000;
+    private static final int PAGE_SIZE = 25;
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) throws IOException {
+        SalesCsvFixture.register(registry);
+        Path directory = Files.createTempDirectory("retail-segments");
+        Path csv = directory.resolve("sales_data.csv");
+        SalesCsvFixture.write(csv, ROWS, 1, 42L);
+        registry.add("csv.url", () -> csv.toUri().toString());
+        registry.add("csv.cache.dir", () -> directory.resolve("cache").toString());
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:segmenttest;DB_CLOSE_DELAY=-1;MODE=MySQL");
+    }
+
+    @Autowired
+    private CsvFallbackService csvFallbackService;
+    @Autowired
+    private ResidentDatasetService residentDatasetService;
+    @Autowired
+    private SegmentedScan segmentedScan;
+
+    @BeforeEach
+    void loadResident() {
+        assertTrue(residentDatasetService.load());
+    }
+
+    @Test
+    void segmentedScansMatchSingleSegment() throws Exception {
+        List<SaleRecordSpecification.SearchCriteria> filters = List.of(
+                new SaleRecordSpecification.SearchCriteria(null, null, null, null, null, null, null, null, null, null),
+                new SaleRecordSpecification.SearchCriteria("ra", List.of("North", "West"), null, 20, 50, null,
+                        List.of("fashion"), null, null, null),
+                new SaleRecordSpecification.SearchCriteria(null, List.of("South", "East"), null, null, null, null,
+                        null, null, LocalDate.of(2022, 4, 10), LocalDate.of(2022, 9, 20)));
+
+        assertTrue(segmentedScan.parallel(ROWS));
+        Map<String, Object> segmented = results(filters);
+        SegmentedScan single = new SegmentedScan(1, Long.MAX_VALUE, 1 << 30);
+        useScan(single);
+        Map<String, Object> unsplit;
+        try {
+            unsplit = results(filters);
+        } finally {
+            useScan(segmentedScan);
+        }
+        assertEquals(unsplit.keySet(), segmented.keySet());
+        for (String check : unsplit.keySet()) {
+            if (unsplit.get(check) instanceof SalesSummary summary) {
+                assertSummary(summary, (SalesSummary) segmented.get(check), check);
+            } else {
+                assertEquals(unsplit.get(check), segmented.get(check), check);
+            }
+        }
+    }
+
+    private Map<String, Object> results(List<SaleRecordSpecification.SearchCriteria> filters) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (SaleRecordSpecification.SearchCriteria criteria : filters) {
+            results.put("resident summary " + criteria, residentDatasetService.summarize(criteria));
+            results.put("csv summary " + criteria, csvFallbackService.summarizeFromCsv(criteria));
+            results.put("resident facets " + criteria, residentDatasetService.facets(criteria));
+            results.put("csv facets " + criteria, csvFallbackService.facetsFromCsv(criteria));
+            for (String sortBy : List.of("date", "quantity", "customerName")) {
+                for (String direction : List.of("asc", "desc")) {
+                    for (int page : new int[]{0, 13}) {
+                        String check = criteria + " by " + sortBy + " " + direction + " page " + page;
+                        results.put("resident " + check,
+                                page(residentDatasetService.search(criteria, sortBy, direction, page, PAGE_SIZE)));
+                        results.put("csv " + check, page(csvFallbackService.searchFromCsv(criteria.query(),
+                                criteria.customerRegions(), criteria.genders(), criteria.minAge(), criteria.maxAge(),
+                                criteria.productCategories(), criteria.tags(), criteria.paymentMethods(),
+                                criteria.startDate(), criteria.endDate(), sortBy, direction, page, PAGE_SIZE)));
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // Ids and transactions of the page, then the total
+    private static List<Object> page(Page<SaleRecord> page) {
+        List<Object> rows = new ArrayList<>();
+        for (SaleRecord row : page.getContent()) {
+            rows.add(row.getId() + "/" + row.getTransactionId());
+        }
+        rows.add(page.getTotalElements());
+        return rows;
+    }
+
+    private static void assertSummary(SalesSummary expected, SalesSummary actual, String check) {
+        assertEquals(expected.count(), actual.count(), check);
+        assertMetric(expected.quantity(), actual.quantity(), check + " quantity");
+        assertMetric(expected.totalAmount(), actual.totalAmount(), check + " totalAmount");
+        assertMetric(expected.finalAmount(), actual.finalAmount(), check + " finalAmount");
+        assertMetric(expected.discount(), actual.discount(), check + " discount");
+        assertGroups(expected.byRegion(), actual.byRegion(), check + " byRegion");
+        assertGroups(expected.byCategory(), actual.byCategory(), check + " byCategory");
+        assertGroups(expected.byPaymentMethod(), actual.byPaymentMethod(), check + " byPaymentMethod");
+    }
+
+    private static void assertMetric(SalesSummary.Metric expected, SalesSummary.Metric actual, String check) {
+        assertEquals(expected.count(), actual.count(), check);
+        assertEquals(expected.min(), actual.min(), check);
+        assertEquals(expected.max(), actual.max(), check);
+        assertSum(expected.sum(), actual.sum(), check);
+        assertEquals(expected.avg() == null, actual.avg() == null, check);
+        if (expected.avg() != null) {
+            assertSum(expected.avg(), actual.avg(), check);
+        }
+    }
+
+    private static void assertGroups(List<SalesSummary.Group> expected, List<SalesSummary.Group> actual,
+                                     String check) {
+        assertEquals(expected.size(), actual.size(), check);
+        for (int i = 0; i < expected.size(); i++) {
+            SalesSummary.Group want = expected.get(i);
+            SalesSummary.Group got = actual.get(i);
+            assertEquals(want.key(), got.key(), check);
+            assertEquals(want.count(), got.count(), check);
+            assertEquals(want.quantity(), got.quantity(), check);
+            assertSum(want.totalAmount(), got.totalAmount(), check);
+            assertSum(want.finalAmount(), got.finalAmount(), check);
+            assertSum(want.discount(), got.discount(), check);
+        }
+    }
+
+    private static void assertSum(double expected, double actual, String check) {
+        assertEquals(expected, actual, Math.abs(expected) * 1e-12, check);
+    }
+
+    private void useScan(SegmentedScan scan) {
+        ReflectionTestUtils.setField(residentDatasetService, "segmentedScan", scan);
+        ReflectionTestUtils.setField(csvFallbackService, "segmentedScan", scan);
+        // The CSV ranges and date partitions were cut for the other scan
+        csvFallbackService.onSalesDataChanged(new SalesDataChangedEvent("csv"));
+    }
+}
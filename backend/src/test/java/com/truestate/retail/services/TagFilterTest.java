@@ -0,0 +1,119 @@
+package com.truestate.retail.services;
+
+import com.truestate.retail.SalesCsvFixture;
+import com.truestate.retail.models.SaleRecord;
+import com.truestate.retail.models.SaleRecordRepository;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A requested tag matches whole tag names exactly on the database, resident and CSV paths:
+// not part of a tag, not text across the comma between two tags, not another letter case.
+// Each path must return the rows the fixture file says carry one of the requested tags.
+@SpringBootTest
+@AutoConfigureMockMvc
+class TagFilterTest {
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) {
+        SalesCsvFixture.register(registry);
+    }
+
+    @Autowired
+    private SaleRecordService saleRecordService;
+    @Autowired
+    private ResidentDatasetService residentDatasetService;
+    @Autowired
+    private CsvFallbackService csvFallbackService;
+    @Autowired
+    private CsvIngestionService csvIngestionService;
+    @Autowired
+    private SaleRecordRepository repository;
+
+    @BeforeEach
+    void loadSources() throws Exception {
+        assertTrue(residentDatasetService.load());
+        if (repository.count() == 0) {
+            csvIngestionService.ingest();
+        }
+    }
+
+    @Test
+    void sourcesMatchWholeTagNames() throws Exception {
+        List<List<String>> selections = List.of(
+                List.of("fashion"),
+                List.of("wireless", "organic"),
+                List.of("gadgets", " "),
+                List.of("Fashion"),
+                List.of("fash"),
+                List.of("fashion,casual"),
+                List.of("s,c"));
+        for (List<String> tags : selections) {
+            for (List<String> regions : List.of(List.<String>of(), List.of("North", "West"))) {
+                SaleRecordSpecification.SearchCriteria criteria = new SaleRecordSpecification.SearchCriteria(
+                        null, regions, null, null, null, null, tags, null, null, null);
+                String check = "tags " + tags + " regions " + regions;
+                long expected = fixtureCount(tags, regions);
+
+                assertEquals(expected, repository.count(SaleRecordSpecification.build(criteria)), "database " + check);
+                assertEquals(expected, residentDatasetService.count(criteria), "resident " + check);
+                Page<SaleRecord> csv = csvFallbackService.searchFromCsv(null, regions, null, null, null, null, tags,
+                        null, null, null, "quantity", "desc", 0, 20);
+                assertEquals(expected, csv.getTotalElements(), "csv " + check);
+
+                // The database holds rows, so the service pages through it; ties on quantity included
+                Page<?> database = (Page<?>) saleRecordService.search(null, regions, null, null, null, null, tags,
+                        null, null, null, "quantity", "desc", 0, 20, TotalMode.EXACT, null);
+                List<String> resident = transactions(
+                        residentDatasetService.search(criteria, "quantity", "desc", 0, 20).getContent());
+                assertEquals(resident, transactions(database.getContent()), check);
+                assertEquals(resident, transactions(csv.getContent()), check);
+            }
+        }
+        assertTrue(fixtureCount(List.of("fashion"), List.of()) > 0);
+    }
+
+    // Rows of the fixture file carrying one of `tags` after splitting on commas and trimming
+    private static long fixtureCount(List<String> tags, List<String> regions) throws Exception {
+        long count = 0;
+        try (Reader reader = Files.newBufferedReader(SalesCsvFixture.file());
+             CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(reader)) {
+            for (CSVRecord record : parser) {
+                if (!regions.isEmpty() && !regions.contains(record.get("Customer Region"))) {
+                    continue;
+                }
+                for (String tag : record.get("Tags").split(",")) {
+                    if (tags.contains(tag.trim())) {
+                        count++;
+                        break;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static List<String> transactions(List<?> rows) {
+        List<String> transactions = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            transactions.add(((SaleRecord) row).getTransactionId());
+        }
+        return transactions;
+    }
+}
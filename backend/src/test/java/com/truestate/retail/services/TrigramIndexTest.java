@@ -0,0 +1,130 @@
+package com.truestate.retail.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// The index must answer exactly like a `contains` scan over the normalized column, for
+// needles of one and two characters (prefix ranges) as well as longer ones (trigram
+// intersection plus verification), on one index and on a base with appended segments
+class TrigramIndexTest {
+
+    private static final UnaryOperator<String> LOWER = String::toLowerCase;
+    // A small alphabet makes grams recur in other arrangements, so verification has work to do
+    private static final String ALPHABET = "abcAB -9";
+
+    @Test
+    void matchesContainsScan() {
+        String[] column = column(4_000, new SplittableRandom(11));
+        TrigramIndex index = TrigramIndex.build(column, column.length, LOWER);
+        for (String needle : needles(column, new SplittableRandom(12))) {
+            assertEquals(scan(column, column.length, needle), index.rows(needle), "needle '" + needle + "'");
+        }
+    }
+
+    @Test
+    void segmentsMatchContainsScan() {
+        String[] column = column(6_000, new SplittableRandom(21));
+        TrigramSegments segments = TrigramSegments.build(column, 4_000, LOWER);
+        // Small batches become segments, folded into one after eight; together they stay under
+        // a quarter of the base
+        for (int rows = 4_100; rows <= 4_900; rows += 100) {
+            segments = segments.appended(column, rows);
+            for (String needle : needles(column, new SplittableRandom(rows))) {
+                assertEquals(scan(column, rows, needle), segments.rows(needle), rows + " rows, needle '" + needle + "'");
+            }
+        }
+        // Past a quarter of the base the index is rebuilt as a single base
+        segments = segments.appended(column, column.length);
+        assertEquals(1, segments.segmentCount());
+        for (String needle : needles(column, new SplittableRandom(22))) {
+            assertEquals(scan(column, column.length, needle), segments.rows(needle), "needle '" + needle + "'");
+        }
+    }
+
+    @Test
+    void caseSensitiveColumnMatchesContainsScan() {
+        String[] column = column(2_000, new SplittableRandom(31));
+        TrigramIndex index = TrigramIndex.build(column, column.length, value -> value);
+        for (String needle : List.of("A", "a", "AB", "Ab", "ab", "aBc", "B -", " ", "9", "99", "-9a")) {
+            BitSet expected = new BitSet();
+            for (int row = 0; row < column.length; row++) {
+                if (column[row] != null && column[row].contains(needle)) {
+                    expected.set(row);
+                }
+            }
+            assertEquals(expected, index.rows(needle), "needle '" + needle + "'");
+        }
+    }
+
+    // Values of 0 to 12 characters, a third of them repeated and a few missing
+    private static String[] column(int rows, SplittableRandom random) {
+        String[] column = new String[rows];
+        List<String> seen = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            int pick = random.nextInt(30);
+            if (pick == 0) {
+                continue;
+            }
+            if (pick < 10 && !seen.isEmpty()) {
+                column[row] = seen.get(random.nextInt(seen.size()));
+                continue;
+            }
+            StringBuilder value = new StringBuilder();
+            for (int i = random.nextInt(13); i > 0; i--) {
+                value.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            column[row] = value.toString();
+            seen.add(column[row]);
+        }
+        return column;
+    }
+
+    // Every one- and two-character needle over the alphabet, substrings of stored values and
+    // random strings that mostly occur nowhere
+    private static Set<String> needles(String[] column, SplittableRandom random) {
+        String lower = ALPHABET.toLowerCase();
+        Set<String> needles = new LinkedHashSet<>();
+        for (int i = 0; i < lower.length(); i++) {
+            needles.add(lower.substring(i, i + 1));
+            for (int j = 0; j < lower.length(); j++) {
+                needles.add("" + lower.charAt(i) + lower.charAt(j));
+            }
+        }
+        while (needles.size() < 400) {
+            String value = column[random.nextInt(column.length)];
+            if (value != null && !value.isEmpty()) {
+                int from = random.nextInt(value.length());
+                int to = from + 1 + random.nextInt(value.length() - from);
+                needles.add(value.substring(from, to).toLowerCase());
+            }
+            StringBuilder noise = new StringBuilder();
+            for (int i = 3 + random.nextInt(5); i > 0; i--) {
+                noise.append(lower.charAt(random.nextInt(lower.length())));
+            }
+            needles.add(noise.toString());
+        }
+        needles.add("zz");
+        needles.add("z");
+        needles.add("abcabcabcabcab");
+        return needles;
+    }
+
+    private static BitSet scan(String[] column, int rows, String needle) {
+        BitSet matches = new BitSet();
+        for (int row = 0; row < rows; row++) {
+            if (column[row] != null && column[row].toLowerCase().contains(needle)) {
+                matches.set(row);
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,43 @@
+package com.truestate.retail.utils;
+
+import com.truestate.retail.SalesCsvFixture;
+import com.truestate.retail.models.SaleRecordRepository;
+import com.truestate.retail.services.ResidentDatasetService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// With the startup load on, the database fills from the CSV and serves every request, so the
+// loader must leave the resident dataset unloaded. Runs on a database of its own.
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class CsvDataLoaderTest {
+
+    @DynamicPropertySource
+    static void csv(DynamicPropertyRegistry registry) {
+        SalesCsvFixture.register(registry);
+        registry.add("csv.startup.load.enabled", () -> "true");
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:loadertest;DB_CLOSE_DELAY=-1;MODE=MySQL");
+    }
+
+    @Autowired
+    private SaleRecordRepository repository;
+    @Autowired
+    private ResidentDatasetService residentDatasetService;
+
+    @Test
+    void databaseLoadSkipsResidentDataset() {
+        assertEquals(SalesCsvFixture.ROWS, repository.count());
+        assertTrue(residentDatasetService.isEnabled());
+        assertFalse(residentDatasetService.isLoaded());
+    }
+}
@@ -1,9 +1,17 @@
 import React, { useEffect, useState, useMemo, useCallback } from 'react';
-import { fetchSales } from '../services/salesApi.js';
+import { fetchSales, fetchSalesFacets, fetchSalesSummary } from '../services/salesApi.js';
 import '../styles/sales-page.css';
 
 const PAGE_SIZE = 10;
 
+// Dropdown options until the first facet counts arrive
+const DEFAULT_OPTIONS = {
+  customerRegion: ['North', 'South', 'East', 'West', 'Central'],
+  gender: ['Male', 'Female', 'Other'],
+  productCategory: ['Clothing', 'Beauty', 'Electronic', 'Grocery'],
+  paymentMethod: ['Cash', 'UPI', 'Debit Card', 'Credit Card']
+};
+
 // Debounce hook
 function useDebounce(value, delay) {
   const [debouncedValue, setDebouncedValue] = useState(value);
@@ -52,21 +60,40 @@ export function SalesPage() {
   const debouncedQuery = useDebounce(query, 500);
   const debouncedFilters = useDebounce(filters, 300);
 
-  // derived totals for current page
-  const { totalUnits, totalAmount, totalDiscount } = useMemo(() => {
-    const units = data.content.reduce((sum, row) => sum + (row.quantity || 0), 0);
-    const amount = data.content.reduce((sum, row) => sum + (row.totalAmount || 0), 0);
-    const discount = data.content.reduce(
-      (sum, row) => sum + ((row.totalAmount || 0) - (row.finalAmount || 0)),
-      0
-    );
-    return { totalUnits: units, totalAmount: amount, totalDiscount: discount };
-  }, [data]);
+  const [summary, setSummary] = useState(null);
+  const [facets, setFacets] = useState(null);
+
+  // totals across the whole filtered result, computed by the backend
+  const { totalUnits, totalAmount, totalDiscount } = useMemo(() => ({
+    totalUnits: summary?.quantity?.sum ?? 0,
+    totalAmount: summary?.totalAmount?.sum ?? 0,
+    totalDiscount: summary?.discount?.sum ?? 0
+  }), [summary]);
 
   useEffect(() => {
     loadData();
   }, [debouncedQuery, debouncedFilters, sortBy, direction, page]);
 
+  // summary only depends on the filters, not on sort or page
+  useEffect(() => {
+    fetchSalesSummary({ q: debouncedQuery, ...debouncedFilters })
+      .then(setSummary)
+      .catch(err => {
+        console.error('Failed to load summary', err);
+        setSummary(null);
+      });
+  }, [debouncedQuery, debouncedFilters]);
+
+  // per-option match counts for the dropdowns; each dimension ignores its own selection
+  useEffect(() => {
+    fetchSalesFacets({ q: debouncedQuery, ...debouncedFilters })
+      .then(setFacets)
+      .catch(err => {
+        console.error('Failed to load facets', err);
+        setFacets(null);
+      });
+  }, [debouncedQuery, debouncedFilters]);
+
   // Close dropdown when clicking outside
   useEffect(() => {
     function handleClickOutside(event) {
@@ -171,6 +198,16 @@ export function SalesPage() {
     setOpenDropdown(openDropdown === name ? null : name);
   }
 
+  // Values present in the data, plus selections that no longer match anything
+  function filterOptions(filterName) {
+    const options = facets ? facets[filterName].map(bucket => bucket.value) : DEFAULT_OPTIONS[filterName];
+    return [...options, ...filters[filterName].filter(value => !options.includes(value))];
+  }
+
+  function facetCount(filterName, value) {
+    return facets[filterName].find(bucket => bucket.value === value)?.count ?? 0;
+  }
+
   function handleCheckboxChange(filterName, value) {
     const current = filters[filterName] || [];
     const newValues = current.includes(value)
@@ -274,7 +311,7 @@ export function SalesPage() {
               </button>
               {openDropdown === 'customerRegion' && (
                 <div className="dropdown-menu">
-                  {['North', 'South', 'East', 'West', 'Central'].map(option => (
+                  {filterOptions('customerRegion').map(option => (
                     <label key={option} className="dropdown-option">
                       <input
                         type="checkbox"
@@ -282,6 +319,7 @@ export function SalesPage() {
                         onChange={() => handleCheckboxChange('customerRegion', option)}
                       />
                       {option}
+                      {facets && <span className="option-count">{facetCount('customerRegion', option)}</span>}
                     </label>
                   ))}
                 </div>
@@ -302,7 +340,7 @@ export function SalesPage() {
               </button>
               {openDropdown === 'gender' && (
                 <div className="dropdown-menu">
-                  {['Male', 'Female', 'Other'].map(option => (
+                  {filterOptions('gender').map(option => (
                     <label key={option} className="dropdown-option">
                       <input
                         type="checkbox"
@@ -310,6 +348,7 @@ export function SalesPage() {
                         onChange={() => handleCheckboxChange('gender', option)}
                       />
                       {option}
+                      {facets && <span className="option-count">{facetCount('gender', option)}</span>}
                     </label>
                   ))}
                 </div>
@@ -461,7 +500,7 @@ export function SalesPage() {
               </button>
               {openDropdown === 'productCategory' && (
                 <div className="dropdown-menu">
-                  {['Clothing', 'Beauty', 'Electronic', 'Grocery'].map(option => (
+                  {filterOptions('productCategory').map(option => (
                     <label key={option} className="dropdown-option">
                       <input
                         type="checkbox"
@@ -469,6 +508,7 @@ export function SalesPage() {
                         onChange={() => handleCheckboxChange('productCategory', option)}
                       />
                       {option}
+                      {facets && <span className="option-count">{facetCount('productCategory', option)}</span>}
                     </label>
                   ))}
                 </div>
@@ -509,7 +549,7 @@ export function SalesPage() {
               </button>
               {openDropdown === 'paymentMethod' && (
                 <div className="dropdown-menu">
-                  {['Cash', 'UPI', 'Debit Card', 'Credit Card'].map(option => (
+                  {filterOptions('paymentMethod').map(option => (
                     <label key={option} className="dropdown-option">
                       <input
                         type="checkbox"
@@ -517,6 +557,7 @@ export function SalesPage() {
                         onChange={() => handleCheckboxChange('paymentMethod', option)}
                       />
                       {option}
+                      {facets && <span className="option-count">{facetCount('paymentMethod', option)}</span>}
                     </label>
                   ))}
                 </div>
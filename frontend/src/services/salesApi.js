@@ -2,7 +2,13 @@ import axios from 'axios';
 
 const API_BASE = import.meta.env.VITE_API_URL || 'http://localhost:8080/api/sales';
 
-export async function fetchSales(params) {
+// Columns the sales table renders; the backend returns only these (plus id) per row
+const GRID_FIELDS = [
+  'transactionId', 'date', 'customerId', 'customerName', 'phoneNumber', 'gender', 'age',
+  'productCategory', 'quantity', 'finalAmount', 'customerRegion', 'productId', 'employeeName'
+];
+
+function buildFilterParams(params) {
   const queryParams = new URLSearchParams();
 
   if (params.q) queryParams.set('q', params.q);
@@ -23,10 +29,17 @@ export async function fetchSales(params) {
   if (startDate) queryParams.set('startDate', startDate);
   if (endDate) queryParams.set('endDate', endDate);
 
+  return queryParams;
+}
+
+export async function fetchSales(params) {
+  const queryParams = buildFilterParams(params);
+
   queryParams.set('sortBy', params.sortBy || 'date');
   queryParams.set('direction', params.direction || 'desc');
   queryParams.set('page', params.page ?? 0);
   queryParams.set('size', params.size ?? 10);
+  queryParams.set('fields', GRID_FIELDS.join(','));
 
   const url = `${API_BASE}?${queryParams.toString()}`;
 
@@ -39,3 +52,31 @@ export async function fetchSales(params) {
   });
   return response.data;
 }
+
+// Totals over every matching record, not just the current page
+export async function fetchSalesSummary(params) {
+  const queryParams = buildFilterParams(params);
+  const url = `${API_BASE}/summary?${queryParams.toString()}`;
+
+  const response = await axios.get(url, {
+    timeout: 120000,
+    headers: {
+      'Accept': 'application/json'
+    }
+  });
+  return response.data;
+}
+
+// Matches per filter option, each dimension counted without its own selection
+export async function fetchSalesFacets(params) {
+  const queryParams = buildFilterParams(params);
+  const url = `${API_BASE}/facets?${queryParams.toString()}`;
+
+  const response = await axios.get(url, {
+    timeout: 120000,
+    headers: {
+      'Accept': 'application/json'
+    }
+  });
+  return response.data;
+}